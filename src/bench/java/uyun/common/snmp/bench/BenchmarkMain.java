@@ -0,0 +1,22 @@
+package uyun.common.snmp.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行全部基准测试，并通过GC profiler输出每次操作的内存分配量（gc.alloc.rate.norm，单位字节/操作）
+ * <p>
+ * 参数为基准测试名称的正则表达式，缺省运行全部。也可以通过mvn -Pbench test-compile exec:exec运行
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : BenchmarkMain.class.getPackage().getName() + ".*")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
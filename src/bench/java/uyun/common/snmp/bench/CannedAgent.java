@@ -0,0 +1,52 @@
+package uyun.common.snmp.bench;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.TimeTicks;
+import uyun.common.snmp.PduSender;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.sim.MibResponder;
+import uyun.common.snmp.sim.SimulatedMib;
+
+/**
+ * 以内存中的MIB直接应答请求的PduSender，用于在不访问网络的情况下测量walk与walkTable的组装开销
+ */
+public class CannedAgent implements PduSender {
+	/**
+	 * ifXTable中常用的计数器列：ifHCInOctets、ifHCInUcastPkts、ifHCOutOctets、ifHCOutUcastPkts
+	 */
+	public static final SnmpOID[] IF_X_COLUMNS = {
+			new SnmpOID(".1.3.6.1.2.1.31.1.1.1.6"),
+			new SnmpOID(".1.3.6.1.2.1.31.1.1.1.7"),
+			new SnmpOID(".1.3.6.1.2.1.31.1.1.1.10"),
+			new SnmpOID(".1.3.6.1.2.1.31.1.1.1.11")
+	};
+
+	private final SimulatedMib mib = new SimulatedMib();
+	private final MibResponder responder = new MibResponder(mib);
+
+	/**
+	 * 构建一个包含指定行数ifXTable计数器列的代理
+	 *
+	 * @param rows 行数
+	 * @return
+	 */
+	public static CannedAgent ifXTable(int rows) {
+		CannedAgent agent = new CannedAgent();
+		for (int i = 1; i <= rows; i++) {
+			for (int j = 0; j < IF_X_COLUMNS.length; j++) {
+				OID oid = new OID(IF_X_COLUMNS[j].oid());
+				oid.append(i);
+				agent.mib.put(oid, new Counter64(i * 1000000L + j));
+			}
+		}
+		agent.mib.put(new OID(".1.3.6.1.2.1.31.1.5.0"), new TimeTicks(0));
+		return agent;
+	}
+
+	public PDU send(SnmpTarget param, PDU pdu) {
+		return responder.respond(pdu);
+	}
+}
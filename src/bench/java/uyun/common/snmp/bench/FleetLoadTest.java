@@ -0,0 +1,283 @@
+package uyun.common.snmp.bench;
+
+import org.snmp4j.PDU;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.metrics.DefaultSnmpMetrics;
+import uyun.common.snmp.metrics.LatencyHistogram;
+import uyun.common.snmp.metrics.OperationMetrics;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+import uyun.common.snmp.util.RateLimiter;
+import uyun.common.snmp.util.VirtualThreads;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以大量模拟设备测量端到端采集吞吐量，用于评估采集器的容量与比较不同的采集方式
+ * <p>
+ * 在本机启动一组SimulatedAgent，以指定的线程数循环对所有设备执行同一种操作，预热后输出：
+ * 每秒请求数、每秒变量数、请求与操作的p50/p99/p999延迟、超时与错误数量、采集线程每个变量消耗的CPU时间与内存分配。
+ * <p>
+ * 参数均为key=value形式，缺省值见下：
+ * <ul>
+ * <li>op=walkTable：get（一个请求批量获取多个变量）、getStep（每个变量一个请求）、walk、walkTable</li>
+ * <li>devices=1000：模拟设备数量</li>
+ * <li>interfaces=16：每个设备的接口数量，决定walk与walkTable的行数</li>
+ * <li>threads=32：采集线程数</li>
+ * <li>virtual=false：是否使用虚拟线程采集（需要Java 21），同时打开Snmp.setParkingWait；虚拟线程上不统计每个变量的CPU时间与内存分配</li>
+ * <li>seconds=30、warmup=5：测量与预热时间，单位秒</li>
+ * <li>rate=0：所有线程合计每秒最多执行的操作数，0表示不限制</li>
+ * <li>interval=0：Snmp对同一ip两个请求之间的间隔，单位毫秒，即snmp.interval.*</li>
+ * <li>latency=1、jitter=0、loss=0：模拟设备的响应延迟、抖动（毫秒）与丢包率</li>
+ * <li>timeout=1000、retry=1：采集的超时时间（毫秒）与重试次数</li>
+ * <li>spread=false：是否将设备分散到127.1.x.y的不同地址（仅Linux），使按ip的发包间隔与真实环境一致</li>
+ * </ul>
+ * 可以通过mvn -Pbench test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=uyun.common.snmp.bench.FleetLoadTest -Dexec.args="op=get devices=5000"运行。
+ * 注意模拟设备与采集在同一进程内，进程CPU时间包含模拟设备的消耗。
+ */
+public class FleetLoadTest {
+	private static final SnmpOID[] GET_OIDS = {
+			new SnmpOID("1.3.6.1.2.1.1.3.0"),
+			new SnmpOID("1.3.6.1.2.1.1.5.0"),
+			new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS + ".1"),
+			new SnmpOID(SimulatedMib.IF_HC_OUT_OCTETS + ".1")
+	};
+	private static final SnmpOID[] TABLE_COLUMNS = {
+			new SnmpOID(SimulatedMib.IF_DESCR),
+			new SnmpOID(SimulatedMib.IF_OPER_STATUS),
+			new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS),
+			new SnmpOID(SimulatedMib.IF_HC_OUT_OCTETS)
+	};
+
+	private final String op;
+	private final List<SnmpTarget> targets;
+	private final RateLimiter limiter;
+	private final AtomicLong next = new AtomicLong();
+	private final AtomicLong operations = new AtomicLong();
+	private final AtomicLong varbinds = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong cpuNanos = new AtomicLong();
+	private final AtomicLong allocated = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private volatile boolean measuring;
+	private volatile boolean stopped;
+
+	private FleetLoadTest(String op, List<SnmpTarget> targets, int rate) {
+		this.op = op;
+		this.targets = targets;
+		this.limiter = rate > 0 ? new RateLimiter(rate) : null;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Properties config = new Properties();
+		for (String arg : args) {
+			int index = arg.indexOf('=');
+			if (index <= 0)
+				throw new IllegalArgumentException("参数格式应为key=value：" + arg);
+			config.setProperty(arg.substring(0, index), arg.substring(index + 1));
+		}
+		String op = config.getProperty("op", "walkTable");
+		int devices = intValue(config, "devices", 1000);
+		int interfaces = intValue(config, "interfaces", 16);
+		int threads = intValue(config, "threads", 32);
+		int seconds = intValue(config, "seconds", 30);
+		int warmup = intValue(config, "warmup", 5);
+		boolean spread = Boolean.parseBoolean(config.getProperty("spread", "false"));
+		boolean virtual = Boolean.parseBoolean(config.getProperty("virtual", "false"));
+
+		// 必须在Snmp类初始化之前设置
+		String interval = config.getProperty("interval", "0");
+		System.setProperty("snmp.interval.0.0.0.0", interval);
+		System.setProperty("snmp.interval." + SimulatedFarm.HOST_DEFAULT, interval);
+
+		DeviceProfile profile = new DeviceProfile();
+		profile.setLatency(intValue(config, "latency", 1));
+		profile.setJitter(intValue(config, "jitter", 0));
+		profile.setLossRate(Double.parseDouble(config.getProperty("loss", "0")));
+		SimulatedMib mib = SimulatedMib.synthetic("sim", interfaces);
+
+		SimulatedFarm farm = new SimulatedFarm();
+		for (int i = 0; i < devices; i++) {
+			if (spread)
+				farm.add("127.1." + (i / 250) + "." + (i % 250 + 1), mib, profile);
+			else
+				farm.add(mib, profile);
+		}
+		List<SnmpTarget> targets = farm.getTargets();
+		for (SnmpTarget target : targets) {
+			target.setTimeout(intValue(config, "timeout", 1000));
+			target.setRetryTime(intValue(config, "retry", 1));
+		}
+
+		DefaultSnmpMetrics metrics = new DefaultSnmpMetrics();
+		Snmp.setMetrics(metrics);
+		final FleetLoadTest test = new FleetLoadTest(op, targets, intValue(config, "rate", 0));
+		System.out.println(String.format("op=%s devices=%d interfaces=%d threads=%d%s interval=%sms latency=%dms jitter=%dms loss=%s",
+				op, devices, interfaces, threads, virtual ? "(virtual)" : "", interval, profile.getLatency(), profile.getJitter(),
+				profile.getLossRate()));
+		if (virtual && !VirtualThreads.isSupported())
+			System.out.println("当前JVM不支持虚拟线程，使用平台线程");
+		Snmp.setParkingWait(virtual);
+
+		ThreadFactory factory = virtual ? VirtualThreads.factory("load-") : new ThreadFactory() {
+			private int count;
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "load-" + count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = factory.newThread(new Runnable() {
+				public void run() {
+					test.work();
+				}
+			});
+			workers[i].start();
+		}
+
+		Thread.sleep(warmup * 1000L);
+		metrics.reset();
+		long cpuStart = processCpuTime();
+		long start = System.nanoTime();
+		test.measuring = true;
+		long last = 0;
+		for (int s = 0; s < seconds; s++) {
+			Thread.sleep(1000);
+			long now = test.operations.get();
+			System.out.println(String.format("%3ds: %d ops/s, requests %d, timeouts %d", s + 1, now - last,
+					metrics.getRequestCount(), test.timeouts.get()));
+			last = now;
+		}
+		test.measuring = false;
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		long processCpu = processCpuTime() - cpuStart;
+		test.stopped = true;
+		for (Thread worker : workers)
+			worker.join();
+		farm.close();
+
+		test.report(metrics, elapsed, processCpu);
+	}
+
+	private void work() {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		// 虚拟线程不支持按线程统计CPU时间与内存分配
+		boolean perThread = !VirtualThreads.isVirtual(Thread.currentThread());
+		boolean counted = false;
+		long cpuStart = 0;
+		long allocStart = 0;
+		while (!stopped) {
+			if (measuring && !counted) {
+				counted = true;
+				if (perThread) {
+					cpuStart = threadBean.getCurrentThreadCpuTime();
+					allocStart = threadBean.getThreadAllocatedBytes(threadId);
+				}
+			} else if (!measuring && counted) {
+				break;
+			}
+			try {
+				if (limiter != null)
+					limiter.acquire();
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			SnmpTarget target = targets.get((int) (next.getAndIncrement() % targets.size()));
+			long begin = System.nanoTime();
+			int count = -1;
+			try {
+				count = execute(target);
+			} catch (SnmpException e) {
+				if (measuring) {
+					if (e.getErrorCode() == SnmpException.ERR_TIMEOUT)
+						timeouts.incrementAndGet();
+					else
+						errors.incrementAndGet();
+				}
+				continue;
+			}
+			if (!measuring)
+				continue;
+			if (count < 0) {
+				timeouts.incrementAndGet();
+				continue;
+			}
+			latency.record(System.nanoTime() - begin);
+			operations.incrementAndGet();
+			varbinds.addAndGet(count);
+		}
+		if (counted && perThread) {
+			cpuNanos.addAndGet(threadBean.getCurrentThreadCpuTime() - cpuStart);
+			allocated.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - allocStart);
+		}
+	}
+
+	/**
+	 * 执行一次操作
+	 *
+	 * @return 取得的变量数，walk超时返回-1
+	 */
+	private int execute(SnmpTarget target) throws SnmpException {
+		if ("get".equals(op)) {
+			return Snmp.get(target, GET_OIDS).length;
+		} else if ("getStep".equals(op)) {
+			return Snmp.getStepByStep(target, GET_OIDS).length;
+		} else if ("walk".equals(op)) {
+			SnmpVarBind[] result = Snmp.walk(target, new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS));
+			return result == null ? -1 : result.length;
+		} else if ("walkTable".equals(op)) {
+			SnmpTable table = Snmp.walkTable(target, TABLE_COLUMNS);
+			return table == null ? -1 : table.getRows().size() * TABLE_COLUMNS.length;
+		}
+		throw new IllegalArgumentException("不支持的操作：" + op);
+	}
+
+	private void report(DefaultSnmpMetrics metrics, double elapsed, long processCpu) {
+		long ops = operations.get();
+		long vbs = varbinds.get();
+		System.out.println();
+		System.out.println(String.format("operations: %d (%.0f/s), varbinds: %d (%.0f/s), requests: %d (%.0f/s)",
+				ops, ops / elapsed, vbs, vbs / elapsed, metrics.getRequestCount(), metrics.getRequestCount() / elapsed));
+		System.out.println(String.format("timeouts: %d, errors: %d, retries: %d, batch fallbacks: %d",
+				timeouts.get(), errors.get(), metrics.getRetryCount(), metrics.getBatchFallbackCount()));
+		System.out.println(String.format("operation latency (ms): mean %.2f, p50 %.2f, p99 %.2f, p999 %.2f, max %.2f",
+				latency.getMean() / 1000, latency.getPercentile(0.5) / 1000.0, latency.getPercentile(0.99) / 1000.0,
+				latency.getPercentile(0.999) / 1000.0, latency.getMax() / 1000.0));
+		for (OperationMetrics operation : metrics.getTotals().getOperations()) {
+			LatencyHistogram histogram = operation.getLatency();
+			System.out.println(String.format("%s request latency (ms): count %d, p50 %.2f, p99 %.2f, p999 %.2f",
+					PDU.getTypeString(operation.getPduType()), histogram.getCount(), histogram.getPercentile(0.5) / 1000.0,
+					histogram.getPercentile(0.99) / 1000.0, histogram.getPercentile(0.999) / 1000.0));
+		}
+		if (vbs > 0) {
+			System.out.println(String.format("per varbind: collector cpu %.0f ns, allocated %.0f bytes, process cpu %.0f ns",
+					(double) cpuNanos.get() / vbs, (double) allocated.get() / vbs, (double) processCpu / vbs));
+		}
+	}
+
+	private static long processCpuTime() {
+		return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+	}
+
+	private static int intValue(Properties config, String key, int defaultValue) {
+		String value = config.getProperty(key);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
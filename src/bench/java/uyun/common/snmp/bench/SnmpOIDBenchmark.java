@@ -0,0 +1,72 @@
+package uyun.common.snmp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import uyun.common.snmp.entity.SnmpOID;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnmpOID常用操作的基准测试，walkTable每行每列都会调用join、suboid与isChild
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnmpOIDBenchmark {
+	private SnmpOID column;
+	private SnmpOID instance;
+	private SnmpOID cell;
+	private SnmpOID sameCell;
+	private SnmpOID otherCell;
+
+	@Setup
+	public void setup() {
+		column = new SnmpOID(".1.3.6.1.2.1.31.1.1.1.6");
+		instance = new SnmpOID(".10001");
+		cell = new SnmpOID(".1.3.6.1.2.1.31.1.1.1.6.10001");
+		sameCell = new SnmpOID(".1.3.6.1.2.1.31.1.1.1.6.10001");
+		otherCell = new SnmpOID(".1.3.6.1.2.1.31.1.1.1.10.10001");
+	}
+
+	@Benchmark
+	public SnmpOID join() {
+		return SnmpOID.join(column, instance);
+	}
+
+	@Benchmark
+	public SnmpOID suboid() {
+		return cell.suboid(column.length());
+	}
+
+	@Benchmark
+	public boolean isChild() {
+		return column.isChild(cell);
+	}
+
+	@Benchmark
+	public boolean isChildMiss() {
+		return column.isChild(otherCell);
+	}
+
+	@Benchmark
+	public boolean equalsSame() {
+		return cell.equals(sameCell);
+	}
+
+	@Benchmark
+	public boolean equalsOther() {
+		return cell.equals(otherCell);
+	}
+
+	@Benchmark
+	public int hashCodeOid() {
+		return cell.hashCode();
+	}
+
+	@Benchmark
+	public SnmpOID parse() {
+		return new SnmpOID(".1.3.6.1.2.1.31.1.1.1.6.10001");
+	}
+}
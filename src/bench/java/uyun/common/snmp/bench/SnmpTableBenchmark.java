@@ -0,0 +1,60 @@
+package uyun.common.snmp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.smi.Counter64;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpVarBind;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnmpTable.getRow与SnmpRow.get的基准测试，查找的行位于表格中部
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnmpTableBenchmark {
+	@Param({"10", "100", "1000"})
+	public int rows;
+
+	private SnmpTable table;
+	private SnmpRow row;
+	private SnmpOID instance;
+	private SnmpOID lastColumn;
+
+	@Setup
+	public void setup() {
+		SnmpOID[] columns = CannedAgent.IF_X_COLUMNS;
+		table = new SnmpTable(columns);
+		for (int i = 1; i <= rows; i++) {
+			SnmpOID index = new SnmpOID(new int[]{i});
+			SnmpRow r = new SnmpRow(index, columns.length);
+			for (int j = 0; j < columns.length; j++)
+				r.set(j, new SnmpVarBind(SnmpOID.join(columns[j], index).oid(), new Counter64(i * 1000L + j)));
+			table.addRow(r);
+		}
+		instance = new SnmpOID(new int[]{rows / 2 + 1});
+		row = table.getRow(instance);
+		lastColumn = columns[columns.length - 1];
+	}
+
+	@Benchmark
+	public SnmpRow getRow() {
+		return table.getRow(instance);
+	}
+
+	@Benchmark
+	public SnmpVarBind rowGetByIndex() {
+		return row.get(row.size() - 1);
+	}
+
+	@Benchmark
+	public SnmpVarBind rowGetByColumn() {
+		return row.get(lastColumn);
+	}
+}
@@ -0,0 +1,82 @@
+package uyun.common.snmp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.smi.*;
+import uyun.common.snmp.entity.SnmpValue;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnmpValue类型转换的基准测试。decode系列每次新建SnmpValue，测量首次转换的开销，decodeInternedText与decodeText之差即驻留的开销；
+ * cached系列复用同一个SnmpValue
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnmpValueBenchmark {
+	private Counter64 counter64;
+	private Integer32 integer32;
+	private OctetString text;
+	private OctetString gbkText;
+	private OctetString mac;
+	private IpAddress ip;
+	private SnmpValue cachedText;
+	private Charset gbk;
+
+	@Setup
+	public void setup() throws Exception {
+		counter64 = new Counter64(123456789012345L);
+		integer32 = new Integer32(10001);
+		text = new OctetString("GigabitEthernet0/0/1");
+		gbk = Charset.forName("GBK");
+		gbkText = new OctetString("核心交换机-上联口".getBytes("GBK"));
+		mac = new OctetString(new byte[]{0x00, 0x1b, 0x2c, 0x3d, 0x4e, 0x5f});
+		ip = new IpAddress("192.168.10.1");
+		cachedText = new SnmpValue(text);
+		cachedText.toText();
+	}
+
+	@Benchmark
+	public long counter64ToLong() {
+		return new SnmpValue(counter64).toLong();
+	}
+
+	@Benchmark
+	public int integer32ToInteger() {
+		return new SnmpValue(integer32).toInteger();
+	}
+
+	@Benchmark
+	public String decodeText() {
+		return new SnmpValue(text).toText();
+	}
+
+	@Benchmark
+	public String decodeGbkText() {
+		return new SnmpValue(gbkText, gbk).toText();
+	}
+
+	@Benchmark
+	public String decodeInternedText() {
+		return new SnmpValue(text).toInternedText();
+	}
+
+	@Benchmark
+	public String cachedText() {
+		return cachedText.toText();
+	}
+
+	@Benchmark
+	public String toMac() {
+		return new SnmpValue(mac).toMac();
+	}
+
+	@Benchmark
+	public String toIp() {
+		return new SnmpValue(ip).toIp();
+	}
+}
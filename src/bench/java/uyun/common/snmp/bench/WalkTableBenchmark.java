@@ -0,0 +1,47 @@
+package uyun.common.snmp.bench;
+
+import org.openjdk.jmh.annotations.*;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.error.SnmpException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * walk与walkTable由响应组装结果的开销。响应由CannedAgent在内存中生成，不经过网络与SpeedController
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalkTableBenchmark {
+	@Param({"10", "100", "1000"})
+	public int rows;
+
+	private SnmpTarget target;
+
+	@Setup
+	public void setup() {
+		Snmp.setSender(CannedAgent.ifXTable(rows));
+		target = new SnmpTarget("127.0.0.1", "public");
+	}
+
+	@TearDown
+	public void tearDown() {
+		Snmp.setSender(null);
+	}
+
+	@Benchmark
+	public SnmpTable walkTable() throws SnmpException {
+		return Snmp.walkTable(target, CannedAgent.IF_X_COLUMNS);
+	}
+
+	@Benchmark
+	public SnmpVarBind[] walk() throws SnmpException {
+		return Snmp.walk(target, CannedAgent.IF_X_COLUMNS[0]);
+	}
+}
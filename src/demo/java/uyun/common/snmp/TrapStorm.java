@@ -0,0 +1,101 @@
+package uyun.common.snmp;
+
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import uyun.common.snmp.entity.SnmpTrap;
+import uyun.common.snmp.trap.TrapListener;
+import uyun.common.snmp.trap.TrapReceiver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 在本机回环地址上测量TrapReceiver的持续接收能力
+ * <p>
+ * 参数：TrapStorm [发送线程数] [秒数] [工作线程数] [端口]
+ */
+public class TrapStorm {
+	public static void main(String[] args) throws Exception {
+		int senders = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		int workers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		final int port = args.length > 3 ? Integer.parseInt(args[3]) : 10162;
+
+		final AtomicLong handled = new AtomicLong();
+		TrapReceiver receiver = new TrapReceiver("127.0.0.1", port, new TrapListener() {
+			public void onTrap(SnmpTrap trap) {
+				handled.incrementAndGet();
+			}
+		});
+		receiver.setWorkerCount(workers);
+		receiver.setReceiveBufferSize(8 * 1024 * 1024);
+		receiver.start();
+
+		final long deadline = System.currentTimeMillis() + seconds * 1000L;
+		final AtomicLong sent = new AtomicLong();
+		final AtomicInteger senderFailures = new AtomicInteger();
+		final AtomicReference<Exception> senderError = new AtomicReference<Exception>();
+		Thread[] threads = new Thread[senders];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						sendTraps(port, deadline, sent);
+					} catch (Exception e) {
+						senderFailures.incrementAndGet();
+						senderError.compareAndSet(null, e);
+					}
+				}
+			});
+			threads[i].start();
+		}
+
+		long last = 0;
+		for (int s = 0; s < seconds; s++) {
+			Thread.sleep(1000);
+			long now = handled.get();
+			System.out.println(String.format("handled %d traps/s, sent %d, dropped %d, queue %d", now - last,
+					sent.get(), receiver.getDropped(), receiver.getQueueSize()));
+			last = now;
+		}
+		for (Thread thread : threads)
+			thread.join();
+		Thread.sleep(1000);
+		receiver.close();
+
+		System.out.println(String.format("total: sent %d, received %d, handled %d, dropped %d, avg %d traps/s",
+				sent.get(), receiver.getReceived(), handled.get(), receiver.getDropped(), handled.get() / seconds));
+		if (senderFailures.get() > 0)
+			System.out.println(String.format("sender failures: %d of %d, first: %s", senderFailures.get(), senders,
+					senderError.get()));
+	}
+
+	private static void sendTraps(int port, long deadline, AtomicLong sent) throws Exception {
+		DefaultUdpTransportMapping transport = new DefaultUdpTransportMapping();
+		org.snmp4j.Snmp snmp = new org.snmp4j.Snmp(transport);
+		transport.listen();
+
+		CommunityTarget target = new CommunityTarget();
+		target.setCommunity(new OctetString("public"));
+		target.setAddress(new UdpAddress("127.0.0.1/" + port));
+		target.setVersion(SnmpConstants.version2c);
+
+		PDU pdu = new PDU();
+		pdu.setType(PDU.TRAP);
+		pdu.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(12345)));
+		pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, SnmpConstants.linkDown));
+		pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.1.3"), new Integer32(3)));
+		pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2.3"), new OctetString("GigabitEthernet0/3")));
+
+		while (System.currentTimeMillis() < deadline) {
+			for (int i = 0; i < 100; i++)
+				snmp.send(pdu, target);
+			sent.addAndGet(100);
+		}
+		snmp.close();
+	}
+}
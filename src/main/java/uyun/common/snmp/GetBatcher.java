@@ -0,0 +1,287 @@
+package uyun.common.snmp;
+
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.error.SnmpException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 合并发往同一设备的独立get请求
+ * <p>
+ * 对配置了batchWindow.&lt;ip&gt;的设备，一个get到达时等待最多batchWindow毫秒，期间到达的其它get排队，
+ * 之后将队列中的请求合并为一个不超过maxVarBinds.&lt;ip&gt;个变量的PDU发送，再将响应按请求拆分给各调用者。
+ * 队首请求的线程负责等待与发送，发送后将剩余队列交给新的队首；其余线程park等待结果，在虚拟线程上不会占住载体线程。
+ * 超过maxVarBinds的单个请求不与其它请求合并。合并的PDU以tooBig、genErr等错误响应时，各请求拆开单独重发，
+ * 不会因合并而失败。
+ */
+public class GetBatcher {
+	private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<String, Lane>();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong splits = new AtomicLong();
+
+	GetBatcher() {
+	}
+
+	/**
+	 * 返回发送的合并PDU数
+	 *
+	 * @return
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * 返回经过合并发送的get请求数，与getBatches之比即平均每个PDU合并的请求数
+	 *
+	 * @return
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * 返回合并PDU因tooBig、genErr等错误而拆分为单独请求重发的次数
+	 *
+	 * @return
+	 */
+	public long getSplits() {
+		return splits.get();
+	}
+
+	/**
+	 * 返回排队等待合并的请求数
+	 *
+	 * @return
+	 */
+	public int getQueued() {
+		int queued = 0;
+		for (Lane lane : lanes.values())
+			queued += lane.size();
+		return queued;
+	}
+
+	SnmpVarBind[] get(String key, SnmpTarget param, SnmpOID[] oids, int window, int maxVarBinds) throws SnmpException {
+		Lane lane = lanes.get(key);
+		if (lane == null) {
+			Lane created = new Lane();
+			lane = lanes.putIfAbsent(key, created);
+			if (lane == null)
+				lane = created;
+		}
+		return lane.get(param, oids, window * 1000000L, Math.max(1, maxVarBinds));
+	}
+
+	/**
+	 * 一个设备的请求队列
+	 */
+	private class Lane {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final List<Pending> queue = new ArrayList<Pending>();
+		private int queuedVarBinds;
+		private volatile Pending leader;
+
+		int size() {
+			lock.lock();
+			try {
+				return queue.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		SnmpVarBind[] get(SnmpTarget param, SnmpOID[] oids, long window, int maxVarBinds) throws SnmpException {
+			Pending pending = new Pending(oids);
+			Pending wake = null;
+			lock.lock();
+			try {
+				queue.add(pending);
+				queuedVarBinds += oids.length;
+				if (leader == null)
+					leader = pending;
+				else if (queuedVarBinds >= maxVarBinds)
+					wake = leader;
+			} finally {
+				lock.unlock();
+			}
+			if (wake != null)
+				LockSupport.unpark(wake.thread);
+
+			boolean interrupted = false;
+			while (!pending.finished && leader != pending) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					interrupted = true;
+			}
+			try {
+				if (!pending.finished)
+					lead(pending, param, window, maxVarBinds);
+			} finally {
+				if (interrupted)
+					Thread.currentThread().interrupt();
+			}
+			return pending.result();
+		}
+
+		/**
+		 * 作为队首等待合并窗口结束或队列已满，发送一批请求，再将队列交给新的队首
+		 * <p>
+		 * 无论发送是否出错，本批请求都会完成，队首都会交出，不会使其它调用者一直等待
+		 */
+		private void lead(Pending self, SnmpTarget param, long window, int maxVarBinds) {
+			List<Pending> batch = new ArrayList<Pending>();
+			Throwable failure = null;
+			try {
+				long deadline = self.enqueued + window;
+				long wait;
+				while ((wait = deadline - System.nanoTime()) > 0 && queuedVarBinds() < maxVarBinds) {
+					LockSupport.parkNanos(this, wait);
+					// 中断状态由调用方恢复
+					Thread.interrupted();
+				}
+
+				int count = 0;
+				lock.lock();
+				try {
+					while (!queue.isEmpty()) {
+						Pending next = queue.get(0);
+						if (!batch.isEmpty() && count + next.oids.length > maxVarBinds)
+							break;
+						queue.remove(0);
+						queuedVarBinds -= next.oids.length;
+						batch.add(next);
+						count += next.oids.length;
+					}
+				} finally {
+					lock.unlock();
+				}
+
+				send(param, batch, count);
+			} catch (Throwable e) {
+				failure = e;
+			} finally {
+				Pending next;
+				lock.lock();
+				try {
+					// 出错时队首可能尚未从队列中取出
+					if (queue.remove(self))
+						queuedVarBinds -= self.oids.length;
+					leader = queue.isEmpty() ? null : queue.get(0);
+					next = leader;
+				} finally {
+					lock.unlock();
+				}
+				if (!batch.contains(self))
+					batch.add(self);
+				for (Pending pending : batch) {
+					if (!pending.finished) {
+						pending.error = failure != null ? failure
+								: new SnmpException(SnmpException.ERR_UNKNOWN, "合并的get请求未完成");
+						pending.finished = true;
+					}
+				}
+
+				if (next != null)
+					LockSupport.unpark(next.thread);
+				for (Pending pending : batch) {
+					if (pending != self)
+						LockSupport.unpark(pending.thread);
+				}
+			}
+		}
+
+		private int queuedVarBinds() {
+			lock.lock();
+			try {
+				return queuedVarBinds;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void send(SnmpTarget param, List<Pending> batch, int count) {
+			SnmpOID[] merged = new SnmpOID[count];
+			int index = 0;
+			for (Pending pending : batch) {
+				System.arraycopy(pending.oids, 0, merged, index, pending.oids.length);
+				index += pending.oids.length;
+			}
+			batches.incrementAndGet();
+			requests.addAndGet(batch.size());
+
+			SnmpVarBind[] results = null;
+			Throwable error = null;
+			try {
+				results = Snmp.sendGet(param, merged);
+			} catch (SnmpException e) {
+				// tooBig、genErr等错误由合并引起时，各请求单独发送仍可能成功，不应因合并而失败
+				if (batch.size() > 1 && e.getErrorCode() == SnmpException.ERR_SNMPOPER) {
+					splits.incrementAndGet();
+					sendEach(param, batch);
+					return;
+				}
+				error = e;
+			} catch (Throwable e) {
+				error = e;
+			}
+
+			index = 0;
+			for (Pending pending : batch) {
+				if (error != null)
+					pending.error = error;
+				else if (results != null) {
+					pending.values = new SnmpVarBind[pending.oids.length];
+					System.arraycopy(results, index, pending.values, 0, pending.oids.length);
+				}
+				index += pending.oids.length;
+				pending.finished = true;
+			}
+		}
+
+		private void sendEach(SnmpTarget param, List<Pending> batch) {
+			for (Pending pending : batch) {
+				try {
+					pending.values = Snmp.sendGet(param, pending.oids);
+				} catch (Throwable e) {
+					pending.error = e;
+				}
+				pending.finished = true;
+			}
+		}
+	}
+
+	private static class Pending {
+		final SnmpOID[] oids;
+		final Thread thread = Thread.currentThread();
+		final long enqueued = System.nanoTime();
+		volatile boolean finished;
+		// 在设置finished之前写入
+		SnmpVarBind[] values;
+		Throwable error;
+
+		Pending(SnmpOID[] oids) {
+			this.oids = oids;
+		}
+
+		SnmpVarBind[] result() throws SnmpException {
+			if (error == null)
+				return values;
+			if (error instanceof SnmpException) {
+				SnmpException cause = (SnmpException) error;
+				throw new SnmpException(cause.getErrorCode(), cause.getMessage(), cause);
+			}
+			if (error instanceof Error)
+				throw (Error) error;
+			throw (RuntimeException) error;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package uyun.common.snmp;
+
+import org.snmp4j.PDU;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.error.SnmpException;
+
+/**
+ * PDU发送接口
+ * <p>
+ * Snmp的所有操作最终通过Snmp.send发送PDU。通过Snmp.setSender安装其它实现后，send直接交给该实现处理，
+ * 不再经过SpeedController限速、指标与网络，用于基准测试、模拟与录制回放。实现可以调用Snmp.NETWORK将请求发往真实设备。
+ */
+public interface PduSender {
+	/**
+	 * 发送一个PDU，并同步等待响应
+	 *
+	 * @param param 访问参数
+	 * @param pdu   要发送的PDU
+	 * @return 响应PDU，Trap等不需要响应的PDU返回null
+	 * @throws SnmpException 超时或通信错误时弹出此异常，错误码与Snmp.send相同
+	 */
+	PDU send(SnmpTarget param, PDU pdu) throws SnmpException;
+}
@@ -0,0 +1,16 @@
+package uyun.common.snmp;
+
+import uyun.common.snmp.entity.SnmpRow;
+
+/**
+ * 逐行接收walkTable结果的回调，用于在walkTable进行中处理结果，而不必等待整个表格返回
+ */
+public interface RowHandler {
+	/**
+	 * 收到一行，按行的获取顺序调用
+	 *
+	 * @param row 行
+	 * @return 返回false时停止walkTable
+	 */
+	boolean onRow(SnmpRow row);
+}
@@ -3,10 +3,14 @@ package uyun.common.snmp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snmp4j.*;
+import org.snmp4j.event.CounterEvent;
+import org.snmp4j.event.CounterListener;
 import org.snmp4j.event.ResponseEvent;
-import org.snmp4j.event.UsmUserEvent;
-import org.snmp4j.event.UsmUserListener;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.CounterSupport;
 import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.PduHandleCallback;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.security.*;
@@ -15,10 +19,25 @@ import org.snmp4j.transport.DefaultUdpTransportMapping;
 import uyun.common.snmp.entity.*;
 import uyun.common.snmp.error.ErrorUtil;
 import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.jfr.SnmpRequestEvent;
+import uyun.common.snmp.jfr.SnmpWalkEvent;
+import uyun.common.snmp.metrics.NoopSnmpMetrics;
+import uyun.common.snmp.metrics.SnmpMetrics;
+import uyun.common.snmp.state.DeviceState;
+import uyun.common.snmp.state.DeviceStateRegistry;
+import uyun.common.snmp.util.SingleFlight;
 import uyun.common.snmp.util.SpeedController;
+import uyun.common.snmp.util.VirtualThreads;
+import uyun.common.snmp.v3.LocalizedKeyCache;
+import uyun.common.snmp.v3.UsmUserRegistry;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 对Snmp基本操作行为进行封装 本类中，所有方法行为都是一致的，比如返回均为SnmpResult，返回null均表示超时，弹出异常则为相应的异常
@@ -38,7 +57,57 @@ public class Snmp {
 	 */
 	private static SpeedController controller;
 	private static RemoveableUSM usm;
+	private static DeviceStateRegistry devices = DeviceStateRegistry.getInstance();
 	private static OID SNMPV3_USM_STATS = new OID(".1.3.6.1.6.3.15.1.1");
+	/**
+	 * 超过此时间的synTime等待才记录为限速等待，单位纳秒
+	 */
+	private static final long THROTTLE_THRESHOLD = 500000;
+	private static volatile SnmpMetrics metrics = NoopSnmpMetrics.INSTANCE;
+	/**
+	 * 经由SpeedController限速与snmp4j发往真实设备的PduSender，为Snmp.send的默认实现
+	 */
+	public static final PduSender NETWORK = new PduSender() {
+		public PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+			return sendNetwork(param, pdu);
+		}
+	};
+	private static volatile PduSender sender = NETWORK;
+	/**
+	 * 协议栈的打开、关闭与恢复使用的锁，不使用synchronized，以免虚拟线程在恢复期间占住载体线程
+	 */
+	private static final ReentrantLock stackLock = new ReentrantLock();
+	/**
+	 * 等待响应时是否总是使用异步发送加park的方式，为false时只在虚拟线程上使用
+	 */
+	private static volatile boolean parkingWait;
+	/**
+	 * 异步发送时，在snmp4j的超时与重试之外额外等待的时间，单位毫秒
+	 */
+	private static final long PARKING_WAIT_SLACK = 1000;
+	/**
+	 * 是否合并相同的并发get、walk、walkTable调用
+	 */
+	private static volatile boolean singleFlight;
+	private static final GetBatcher getBatcher = new GetBatcher();
+	private static final SingleFlight<SnmpVarBind[]> getFlights = new SingleFlight<SnmpVarBind[]>() {
+		protected SnmpVarBind[] share(SnmpVarBind[] value) {
+			return value == null ? null : value.clone();
+		}
+	};
+	private static final SingleFlight<SnmpWalkResult<SnmpVarBind[]>> walkFlights = new SingleFlight<SnmpWalkResult<SnmpVarBind[]>>() {
+		protected SnmpWalkResult<SnmpVarBind[]> share(SnmpWalkResult<SnmpVarBind[]> value) {
+			return new SnmpWalkResult<SnmpVarBind[]>(value.getState(), value.getData().clone(), value.getToken());
+		}
+	};
+	private static final SingleFlight<SnmpWalkResult<SnmpTable>> tableFlights = new SingleFlight<SnmpWalkResult<SnmpTable>>() {
+		protected SnmpWalkResult<SnmpTable> share(SnmpWalkResult<SnmpTable> value) {
+			SnmpTable table = new SnmpTable(value.getData().getColumns());
+			for (SnmpRow row : value.getData())
+				table.addRow(row);
+			return new SnmpWalkResult<SnmpTable>(value.getState(), table, value.getToken());
+		}
+	};
 
 	/**
 	 * 调用此对象时，进行初始化。如果初始化失败，需要弹出RuntimeException异常。主程序捕捉到此异常的话，应该退出处理
@@ -46,24 +115,138 @@ public class Snmp {
 	static {
 		usm = new RemoveableUSM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
 		SecurityModels.getInstance().addSecurityModel(usm);
+		CounterSupport.getInstance().addCounterListener(new CounterListener() {
+			public void incrementCounter(CounterEvent event) {
+				if (SnmpConstants.snmp4jStatsReqTableRetries.equals(event.getOid())
+						&& event.getIndex() instanceof TransportIpAddress)
+					metrics.onRetry(((TransportIpAddress) event.getIndex()).getInetAddress().getHostAddress());
+			}
+		});
 		open();
 	}
 
+	/**
+	 * 设置指标采集实现，见SnmpMetrics。安装非空实现时会将snmp4j统计级别设置为extended，以便按设备记录重试次数
+	 *
+	 * @param metrics 指标采集实现，为null时恢复为不记录
+	 */
+	public static void setMetrics(SnmpMetrics metrics) {
+		if (metrics == null)
+			metrics = NoopSnmpMetrics.INSTANCE;
+		else if (metrics != NoopSnmpMetrics.INSTANCE)
+			SNMP4JSettings.setSnmp4jStatistics(SNMP4JSettings.Snmp4jStatistics.extended);
+		Snmp.metrics = metrics;
+	}
+
+	/**
+	 * 返回当前的指标采集实现
+	 *
+	 * @return
+	 */
+	public static SnmpMetrics getMetrics() {
+		return metrics;
+	}
+
 	public static void open() {
-		synchronized (Snmp.class) {
-			try {
-				transport = new DefaultUdpTransportMapping();
-				snmp = new org.snmp4j.Snmp(transport);
-				controller = SpeedController.getInstance();
-				transport.listen();
-			} catch (IOException e) {
-				throw new RuntimeException("SNMP类库初始化失败", new SnmpException(
-						SnmpException.ERR_IOERROR, "通信错误", e));
-			}
+		stackLock.lock();
+		try {
+			transport = new DefaultUdpTransportMapping();
+			snmp = new CountingSnmp(transport);
+			controller = SpeedController.getInstance();
+			transport.listen();
+		} catch (IOException e) {
+			throw new RuntimeException("SNMP类库初始化失败", new SnmpException(
+					SnmpException.ERR_IOERROR, "通信错误", e));
+		} finally {
+			stackLock.unlock();
 		}
 		logger.debug("SNMP4J 协议栈已启动");
 	}
 
+	/**
+	 * 设置PDU发送实现，见PduSender
+	 *
+	 * @param sender 发送实现，为null时恢复为NETWORK
+	 */
+	public static void setSender(PduSender sender) {
+		Snmp.sender = sender == null ? NETWORK : sender;
+	}
+
+	/**
+	 * 返回当前的PDU发送实现
+	 *
+	 * @return
+	 */
+	public static PduSender getSender() {
+		return sender;
+	}
+
+	/**
+	 * 设置等待响应的方式
+	 * <p>
+	 * snmp4j的同步发送在对象监视器上等待，在虚拟线程上等待时会占住载体线程。改为异步发送、
+	 * 在CountDownLatch上park等待后，大量虚拟线程可以同时以阻塞方式调用get、walk等方法。
+	 * 在虚拟线程上调用时总是使用此方式，设为true时平台线程也使用此方式。
+	 *
+	 * @param parkingWait
+	 */
+	public static void setParkingWait(boolean parkingWait) {
+		Snmp.parkingWait = parkingWait;
+	}
+
+	public static boolean isParkingWait() {
+		return parkingWait;
+	}
+
+	/**
+	 * 设置是否合并相同的并发调用
+	 * <p>
+	 * 打开后，对同一设备（ip、端口、版本与团体名或用户相同）以相同参数进行的get(SnmpTarget, SnmpOID[])、
+	 * walk(SnmpTarget, SnmpWalkRequest, SnmpOID)与walkTable(SnmpTarget, SnmpWalkRequest, SnmpOID[])调用，
+	 * 在一次调用进行中时到达的，不再发送请求，而是等待进行中的调用并共享其结果，只付出一次网络请求与发包间隔。
+	 * 共享的一方得到结果数组或表格的副本，其中的SnmpVarBind与SnmpRow是同一实例，不应修改。
+	 * 等待的一方沿用进行中调用的超时与重试参数。
+	 *
+	 * @param singleFlight
+	 */
+	public static void setSingleFlight(boolean singleFlight) {
+		Snmp.singleFlight = singleFlight;
+	}
+
+	public static boolean isSingleFlight() {
+		return singleFlight;
+	}
+
+	/**
+	 * 返回共享了其它调用结果的get、walk、walkTable调用数
+	 *
+	 * @return
+	 */
+	public static long getSingleFlightShared() {
+		return getFlights.getShared() + walkFlights.getShared() + tableFlights.getShared();
+	}
+
+	/**
+	 * 合并调用的键中与设备相关的部分，包含影响结果的访问参数
+	 */
+	private static String flightKey(SnmpTarget param) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(param.getIp()).append('/').append(param.getPort()).append(' ').append(param.getVersion());
+		if (param.isV3()) {
+			// 与SnmpTarget.equalsV3Param比较的字段一致，凭据错误的调用者不会共享其它调用者的成功结果
+			uyun.common.snmp.entity.SecurityLevel level = param.getSecurityLevel();
+			sb.append(' ').append(param.getSecurityUser()).append(' ').append(level);
+			if (level != uyun.common.snmp.entity.SecurityLevel.noAuthNoPriv) {
+				sb.append(' ').append(param.getAuthProtocol()).append(' ').append(param.getAuthPassword());
+				if (level != uyun.common.snmp.entity.SecurityLevel.authNoPriv)
+					sb.append(' ').append(param.getPrivProtocol()).append(' ').append(param.getPrivPassword());
+			}
+		} else
+			sb.append(' ').append(param.getCommunity());
+		return sb.append(' ').append(param.getCharset()).append(' ').append(param.getAllowRepeatTime())
+				.append(' ').append(param.isDiscardErrorRow()).toString();
+	}
+
 	/**
 	 * 根据指定参数发送一个pdu对象，并同步等待目标对象的返回
 	 *
@@ -73,34 +256,78 @@ public class Snmp {
 	 * @throws SnmpException 如果在操作时发送通信异常，则弹出此异常
 	 */
 	public static PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+		return sender.send(param, pdu);
+	}
+
+	private static PDU sendNetwork(SnmpTarget param, PDU pdu) throws SnmpException {
+		long queueStart = System.nanoTime();
+		// 在途请求超出设备的并发上限时排队，最长等待与一次请求的超时重试时间相同
+		SpeedController.DeviceLimit limit = controller.acquire(param.getIp(), param.getTimeout() * (param.getRetryTime() + 1));
+		try {
+			return sendNetwork(param, pdu, Snmp.metrics, queueStart);
+		} finally {
+			if (limit != null)
+				limit.release();
+		}
+	}
+
+	/**
+	 * @param queueStart 开始等待并发许可的时间，用于计算JFR事件中的排队时间
+	 */
+	private static PDU sendNetwork(SnmpTarget param, PDU pdu, SnmpMetrics metrics, long queueStart) throws SnmpException {
+		long waitStart = System.nanoTime();
 		controller.synTime(param.getIp());
+		long sendStart = System.nanoTime();
+		long wait = sendStart - waitStart;
+		if (wait > THROTTLE_THRESHOLD)
+			metrics.onThrottle(param.getIp(), wait);
+		// 包括等待并发许可与限速间隔的时间
+		long queueWait = sendStart - queueStart;
 
 		for (int i = 0; i < 3; i++) {
+			SnmpRequestEvent jfrEvent = new SnmpRequestEvent();
+			jfrEvent.begin();
+			AtomicInteger sends = jfrEvent.isEnabled() ? CountingSnmp.track(pdu) : null;
+			long start = System.nanoTime();
+			SnmpMetrics.Outcome outcome = SnmpMetrics.Outcome.UNKNOWN;
 			try {
-				ResponseEvent event = snmp.send(pdu, param.getTarget());
+				Target target = param.getTarget();
+				ResponseEvent event = pdu.isConfirmedPdu() && (parkingWait || VirtualThreads.isVirtual(Thread.currentThread()))
+						? sendAndPark(pdu, target) : snmp.send(pdu, target);
 				if (event != null && event.getResponse() != null) {
+					devices.responded(param, System.nanoTime() - start);
 					if (param.getVersion() == SnmpVersion.V3
 							&& event.getResponse().getVariableBindings().size() == 1
-							&& event.getResponse().getVariableBindings().get(0).getOid().startsWith(SNMPV3_USM_STATS))
+							&& event.getResponse().getVariableBindings().get(0).getOid().startsWith(SNMPV3_USM_STATS)) {
+						outcome = SnmpMetrics.Outcome.V3_PARAM_ERROR;
 						throw new SnmpException(SnmpException.ERR_V3_PARAM_ERROR, "Snmp V3 parameter error");
+					}
+					outcome = event.getResponse().getErrorStatus() == PDU.noError ? SnmpMetrics.Outcome.SUCCESS
+							: SnmpMetrics.Outcome.ERROR_STATUS;
 					return event.getResponse();
-				} else if (pdu.getType() == PDU.TRAP)
+				} else if (pdu.getType() == PDU.TRAP) {
+					outcome = SnmpMetrics.Outcome.SUCCESS;
 					return null;
-				else
+				} else {
+					outcome = SnmpMetrics.Outcome.TIMEOUT;
 					throw new SnmpException(SnmpException.ERR_TIMEOUT, "SNMP操作超时，请确认目标IP[" + param.getIp() + "]可以访问且Snmp相关配置正确");
+				}
 			} catch (Exception err) {
+				if (err instanceof IOException)
+					outcome = SnmpMetrics.Outcome.IO_ERROR;
 				if (err instanceof IllegalStateException ||
 						(err instanceof MessageException && err.getMessage().contains("Socket is closed"))) {
 					// 如果是协议栈错误
 					logger.warn("SNMP4J 协议栈错误次数：" + i, err);
-					synchronized (snmp) {
-						try {
-							close();
-							open();
-						} catch (Exception e) {
-							logger.warn("SNMP4J 协议栈恢复失败", e);
-							break;
-						}
+					stackLock.lock();
+					try {
+						close();
+						open();
+					} catch (Exception e) {
+						logger.warn("SNMP4J 协议栈恢复失败", e);
+						break;
+					} finally {
+						stackLock.unlock();
 					}
 				} else if (err instanceof SnmpException)    // 超时错误
 					throw (SnmpException) err;
@@ -108,6 +335,17 @@ public class Snmp {
 					throw new SnmpException(SnmpException.ERR_IOERROR, "SNMP IO错误：" + err.getMessage(), err);
 				else
 					throw new SnmpException(SnmpException.ERR_UNKNOWN, ErrorUtil.createMessage("未知错误", err), err);
+			} finally {
+				long rtt = System.nanoTime() - start;
+				metrics.onRequest(param.getIp(), pdu.getType(), outcome, rtt);
+				if (sends != null)
+					CountingSnmp.untrack(pdu);
+				jfrEvent.end();
+				if (jfrEvent.shouldCommit()) {
+					jfrEvent.set(param.getIp(), PDU.getTypeString(pdu.getType()), pdu.size(), i == 0 ? queueWait : 0, rtt,
+							sends == null ? 0 : Math.max(0, sends.get() - 1), outcome.name());
+					jfrEvent.commit();
+				}
 			}
 		}
 		logger.error("由于SNMP4J 协议栈错误，进程无法继续工作");
@@ -115,6 +353,68 @@ public class Snmp {
 		return null;
 	}
 
+	/**
+	 * 异步发送并park等待响应，超时由snmp4j按target的超时与重试判断，以null响应回调
+	 *
+	 * @return 与同步发送相同的ResponseEvent，等待被中断或超出预期时间时返回null
+	 */
+	private static ResponseEvent sendAndPark(PDU pdu, Target target) throws IOException {
+		final CountDownLatch done = new CountDownLatch(1);
+		final ResponseEvent[] result = new ResponseEvent[1];
+		final org.snmp4j.Snmp session = snmp;
+		ResponseListener listener = new ResponseListener() {
+			public void onResponse(ResponseEvent event) {
+				// 异步请求须在收到响应后取消，否则snmp4j会继续重试
+				session.cancel(event.getRequest(), this);
+				result[0] = event;
+				done.countDown();
+			}
+		};
+		session.send(pdu, target, null, listener);
+		try {
+			if (done.await(target.getTimeout() * (target.getRetries() + 1) + PARKING_WAIT_SLACK, TimeUnit.MILLISECONDS))
+				return result[0];
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		session.cancel(pdu, listener);
+		return null;
+	}
+
+	/**
+	 * 记录snmp4j对登记过的PDU实际发送的次数，包括内部重试。snmp4j不按请求提供重试次数，
+	 * 其重试与首次发送都经过sendMessage，且使用同一个PDU对象，因此按对象登记计数。
+	 */
+	private static class CountingSnmp extends org.snmp4j.Snmp {
+		private static final Map<PDU, AtomicInteger> sends = Collections.synchronizedMap(new IdentityHashMap<PDU, AtomicInteger>());
+
+		CountingSnmp(TransportMapping<? extends Address> transport) {
+			super(transport);
+		}
+
+		static AtomicInteger track(PDU pdu) {
+			AtomicInteger counter = new AtomicInteger();
+			sends.put(pdu, counter);
+			return counter;
+		}
+
+		static void untrack(PDU pdu) {
+			sends.remove(pdu);
+		}
+
+		@Override
+		@SuppressWarnings("rawtypes")
+		protected PduHandle sendMessage(PDU pdu, Target target, TransportMapping transport, PduHandleCallback<PDU> callback)
+				throws IOException {
+			if (!sends.isEmpty()) {
+				AtomicInteger counter = sends.get(pdu);
+				if (counter != null)
+					counter.incrementAndGet();
+			}
+			return super.sendMessage(pdu, target, transport, callback);
+		}
+	}
+
 	public static SnmpVarBind set(SnmpTarget param, SnmpPDU pdu) throws SnmpException {
 		pdu.setType(PDU.SET);
 		PDU ret = send(param, pdu);
@@ -127,7 +427,7 @@ public class Snmp {
 		}
 
 		VariableBinding vb = (VariableBinding) ret.getVariableBindings().iterator().next();
-		return new SnmpVarBind(vb.getOid(), vb.getVariable());
+		return new SnmpVarBind(vb.getOid(), vb.getVariable(), param.getCharset());
 	}
 
 	/**
@@ -193,7 +493,7 @@ public class Snmp {
 
 			VariableBinding vb = (VariableBinding) ret.getVariableBindings()
 					.iterator().next();
-			results.add(new SnmpVarBind(vb.getOid(), vb.getVariable()));
+			results.add(new SnmpVarBind(vb.getOid(), vb.getVariable(), param.getCharset()));
 		}
 		return results.toArray(new SnmpVarBind[0]);
 	}
@@ -218,8 +518,8 @@ public class Snmp {
 		PDU pdu = createPDU(param.getVersion());
 		pdu.setType(pduType);
 		
-		/*检查配置是否允许批处理，如果不运行就一步一步获取*/
-		if (!controller.isBatch(param.getIp())) {
+		/*检查配置是否允许批处理，以及之前是否发现设备不支持批处理，如果不允许就一步一步获取*/
+		if (!controller.isBatch(param.getIp()) || devices.isBatchUnsupported(param)) {
 			return sendBatchStepByStep(pduType, param, requests);
 		}
 
@@ -231,23 +531,28 @@ public class Snmp {
 			return null;
 		}
 		if (ret.getErrorStatus() != 0) {
-			if (ret.getErrorStatus() == 2)
+			if (ret.getErrorStatus() == 2) {
+				metrics.onBatchFallback(param.getIp(), pduType);
 				return sendBatchStepByStep(pduType, param, requests);
-			else if (ret.getErrorStatus() == SnmpException.ERR_ENDOFMIB)
+			} else if (ret.getErrorStatus() == SnmpException.ERR_ENDOFMIB)
 				throw new SnmpException(SnmpException.ERR_ENDOFMIB, "SNMP请求获取失败：EndOfMib");
 			else
 				throw new SnmpException(SnmpException.ERR_SNMPOPER,
 						"SNMP请求获取失败：" + ret.getErrorStatusText());
 		}
 
-		if (ret.getVariableBindings().size() != requests.length) // 如果通过批量获取，无法获取到与请求相同数量的oid，则应该重新逐个获取
+		if (ret.getVariableBindings().size() != requests.length) { // 如果通过批量获取，无法获取到与请求相同数量的oid，则应该重新逐个获取
+			if (requests.length > 1)
+				devices.setBatchUnsupported(param);
+			metrics.onBatchFallback(param.getIp(), pduType);
 			return sendBatchStepByStep(pduType, param, requests);
+		}
 
 		int index = 0;
 		SnmpVarBind[] results = new SnmpVarBind[ret.getVariableBindings().size()];
 		for (Iterator<?> iter = ret.getVariableBindings().iterator(); iter.hasNext(); ) {
 			VariableBinding vb = (VariableBinding) iter.next();
-			results[index++] = new SnmpVarBind(vb.getOid(), vb.getVariable());
+			results[index++] = new SnmpVarBind(vb.getOid(), vb.getVariable(), param.getCharset());
 		}
 
 		return results;
@@ -275,8 +580,44 @@ public class Snmp {
 	 * @return 返回成功得到值的结果数组。结果数组与请求数组相对应。
 	 * @throws SnmpException 当发现下列情况时弹出：Snmp操作错误
 	 */
-	public static SnmpVarBind[] get(SnmpTarget param, SnmpOID[] requests)
+	public static SnmpVarBind[] get(final SnmpTarget param, final SnmpOID[] requests)
 			throws SnmpException {
+		if (!singleFlight)
+			return batchGet(param, requests);
+		return getFlights.execute("get " + flightKey(param) + " " + Arrays.toString(requests), new SingleFlight.Call<SnmpVarBind[]>() {
+			public SnmpVarBind[] call() throws SnmpException {
+				return batchGet(param, requests);
+			}
+		});
+	}
+
+	/**
+	 * 返回get请求合并器，用于查看合并情况，合并的配置见SpeedController.getBatchWindow
+	 *
+	 * @return
+	 */
+	public static GetBatcher getGetBatcher() {
+		return getBatcher;
+	}
+
+	/**
+	 * 设备配置了合并等待时间时，与同一设备的其它get请求合并发送
+	 */
+	private static SnmpVarBind[] batchGet(SnmpTarget param, SnmpOID[] requests) throws SnmpException {
+		String ip = param.getIp();
+		int window = controller.getBatchWindow(ip);
+		if (window <= 0 || !controller.isBatch(ip) || devices.isBatchUnsupported(param))
+			return sendBatch(PDU.GET, param, requests);
+		int maxVarBinds = controller.getMaxVarBinds(ip);
+		if (requests.length >= maxVarBinds)
+			return sendBatch(PDU.GET, param, requests);
+		return getBatcher.get(flightKey(param), param, requests, window, maxVarBinds);
+	}
+
+	/**
+	 * 供GetBatcher发送合并后的请求
+	 */
+	static SnmpVarBind[] sendGet(SnmpTarget param, SnmpOID[] requests) throws SnmpException {
 		return sendBatch(PDU.GET, param, requests);
 	}
 
@@ -328,31 +669,108 @@ public class Snmp {
 	 * @return 返回walk成功的整个数据，按walk顺序排列。超时则返回null
 	 * @throws SnmpException 当发现下列情况时弹出：Snmp操作错误
 	 */
-	public static SnmpWalkResult<SnmpVarBind[]> walk(SnmpTarget param, SnmpWalkRequest request, SnmpOID root) throws SnmpException {
+	public static SnmpWalkResult<SnmpVarBind[]> walk(final SnmpTarget param, final SnmpWalkRequest request, final SnmpOID root) throws SnmpException {
+		if (!singleFlight)
+			return collectWalk(param, request, root, null);
+		String key = "walk " + flightKey(param) + " " + request.getMaxLength() + "/" + request.getTimeout() + " " + root;
+		return walkFlights.execute(key, new SingleFlight.Call<SnmpWalkResult<SnmpVarBind[]>>() {
+			public SnmpWalkResult<SnmpVarBind[]> call() throws SnmpException {
+				return collectWalk(param, request, root, null);
+			}
+		});
+	}
+
+	/**
+	 * 从续传令牌处继续walk，取得上次未完整结束的walk的下一段
+	 *
+	 * @param param   SNMP基本访问参数
+	 * @param request SNMPWALK请求参数，最大数量与超时对本段生效
+	 * @param token   上一段结果中的续传令牌
+	 * @return 本段取得的数据，仍未完整结束时带有下一段的续传令牌
+	 * @throws SnmpException 当发现下列情况时弹出：Snmp操作错误
+	 */
+	public static SnmpWalkResult<SnmpVarBind[]> walk(SnmpTarget param, SnmpWalkRequest request, SnmpWalkToken token) throws SnmpException {
+		if (token.isTable())
+			throw new IllegalArgumentException("walkTable的令牌不能用于walk：" + token);
+		return collectWalk(param, request, token.getRoot(), token);
+	}
+
+	private static SnmpWalkResult<SnmpVarBind[]> collectWalk(SnmpTarget param, SnmpWalkRequest request, SnmpOID root, SnmpWalkToken resume) throws SnmpException {
+		final ArrayList<SnmpVarBind> results = new ArrayList<SnmpVarBind>();
+		SnmpWalkResult<Integer> result = streamWalk(param, request, root, resume, new WalkHandler() {
+			public boolean onVarBind(SnmpVarBind varBind) {
+				results.add(varBind);
+				return true;
+			}
+		});
+		return new SnmpWalkResult<SnmpVarBind[]>(result.getState(), results.toArray(new SnmpVarBind[0]), result.getToken());
+	}
+
+	/**
+	 * 对指定的request oid进行walk子树操作，每取得一个变量即交给handler处理，不在内存中保存整个结果
+	 *
+	 * @param param   SNMP基本访问参数
+	 * @param request SNMPWALK请求参数
+	 * @param root    SNMPWALK的根OID
+	 * @param handler 结果回调，返回false时停止walk
+	 * @return walk的结束状态，handler停止walk时为OK
+	 * @throws SnmpException 当发现下列情况时弹出：Snmp操作错误
+	 */
+	public static SnmpWalkResult.State walk(SnmpTarget param, SnmpWalkRequest request, SnmpOID root, WalkHandler handler) throws SnmpException {
+		return streamWalk(param, request, root, null, handler).getState();
+	}
+
+	private static SnmpWalkResult<Integer> streamWalk(SnmpTarget param, SnmpWalkRequest request, SnmpOID root, SnmpWalkToken resume,
+	                                                  WalkHandler handler) throws SnmpException {
+		SnmpWalkEvent jfrEvent = new SnmpWalkEvent();
+		jfrEvent.begin();
+		SnmpWalkResult<Integer> result = null;
+		try {
+			result = doWalk(param, request, root, resume, handler);
+			return result;
+		} finally {
+			jfrEvent.end();
+			if (jfrEvent.shouldCommit()) {
+				jfrEvent.set(param.getIp(), "walk", root.toString(), result == null ? 0 : result.getData(),
+						result == null ? "ERROR" : result.getState().name());
+				jfrEvent.commit();
+			}
+		}
+	}
+
+	/**
+	 * @param resume 续传令牌，为null时从root开始
+	 * @return 结束状态、交给handler的变量数与续传令牌
+	 */
+	private static SnmpWalkResult<Integer> doWalk(SnmpTarget param, SnmpWalkRequest request, SnmpOID root, SnmpWalkToken resume,
+	                                              WalkHandler handler) throws SnmpException {
 		long start = System.currentTimeMillis();
 		SnmpOID[] requests = new SnmpOID[1];
-		ArrayList<SnmpVarBind> results = new ArrayList<SnmpVarBind>();
+		int count = 0;
 		SnmpVarBind[] ret;
-		int repeatCount = 0;
+		// 续传时继续累计上一段的重复次数，否则每段都从0开始，不断重复的设备永远不会结束
+		int repeatCount = resume == null ? 0 : resume.getRepeats();
 
 		//如果oid最后一位是0，直接使用get获得结果: NCC-1143
-		if (root.oid().last() == 0) {
+		if (resume == null && root.oid().last() == 0) {
 			SnmpVarBind r = get(param, root);
 			if (r.getValue() == null)
-				return new SnmpWalkResult(new SnmpVarBind[]{});
-			else
-				return new SnmpWalkResult(new SnmpVarBind[]{r});
+				return new SnmpWalkResult<Integer>(0);
+			handler.onVarBind(r);
+			return new SnmpWalkResult<Integer>(1);
 		}
 
 		SnmpWalkResult.State state = SnmpWalkResult.State.OK;
-		requests[0] = root;
+		requests[0] = resume == null ? root : resume.getLast();
 		while (true) {
 			try {
 				ret = getNext(param, requests);
 			} catch (SnmpException e) {
-				//如果超时并且尚未获得的数据，或者继续循环
-				if (e.getErrorCode() == SnmpException.ERR_TIMEOUT && results.size() > 0)
+				//已获得部分数据后超时，结束并返回续传令牌，尚未获得数据时弹出
+				if (e.getErrorCode() == SnmpException.ERR_TIMEOUT && count > 0) {
+					state = SnmpWalkResult.State.OVERTIME;
 					break;
+				}
 				else if (e.getErrorCode() == SnmpException.ERR_ENDOFMIB)
 					break;
 				else
@@ -371,13 +789,15 @@ public class Snmp {
 				} else
 					repeatCount = 0;
 
-				results.add(ret[0]);
+				count++;
+				if (!handler.onVarBind(ret[0]))
+					break;
 				//重置request[0],requests用于比较，节省了一个元素的空间开销，并无其他意思。
 				requests[0] = ret[0].getOid();
 			} else
 				break;
 
-			if (request.getMaxLength() > 0 && results.size() >= request.getMaxLength()) {
+			if (request.getMaxLength() > 0 && count >= request.getMaxLength()) {
 				state = SnmpWalkResult.State.EXCEED;
 				break;
 			}
@@ -387,7 +807,10 @@ public class Snmp {
 			}
 		}
 
-		return new SnmpWalkResult(state, (SnmpVarBind[]) results.toArray(new SnmpVarBind[0]));
+		if (state == SnmpWalkResult.State.OK)
+			return new SnmpWalkResult<Integer>(state, count);
+		return new SnmpWalkResult<Integer>(state, count, resume == null ? SnmpWalkToken.walk(root, requests[0], count, 1, repeatCount)
+				: SnmpWalkToken.walk(root, requests[0], resume.getCount() + count, resume.getSlices() + 1, repeatCount));
 	}
 
 	/**
@@ -410,15 +833,90 @@ public class Snmp {
 	 * @param columns walk表格请求列OID
 	 * @return
 	 */
-	public static SnmpWalkResult<SnmpTable> walkTable(SnmpTarget param, SnmpWalkRequest request, SnmpOID[] columns) throws SnmpException {
+	public static SnmpWalkResult<SnmpTable> walkTable(final SnmpTarget param, final SnmpWalkRequest request, final SnmpOID[] columns) throws SnmpException {
+		if (!singleFlight)
+			return collectTable(param, request, columns, null);
+		String key = "table " + flightKey(param) + " " + request.getMaxLength() + "/" + request.getTimeout() + " " + Arrays.toString(columns);
+		return tableFlights.execute(key, new SingleFlight.Call<SnmpWalkResult<SnmpTable>>() {
+			public SnmpWalkResult<SnmpTable> call() throws SnmpException {
+				return collectTable(param, request, columns, null);
+			}
+		});
+	}
+
+	/**
+	 * 从续传令牌处继续walkTable，取得上次未完整结束的表格的下一段
+	 *
+	 * @param param   snmp基本参数
+	 * @param request walk请求参数，最大数量与超时对本段生效
+	 * @param token   上一段结果中的续传令牌
+	 * @return 本段取得的行，仍未完整结束时带有下一段的续传令牌
+	 * @throws SnmpException
+	 */
+	public static SnmpWalkResult<SnmpTable> walkTable(SnmpTarget param, SnmpWalkRequest request, SnmpWalkToken token) throws SnmpException {
+		if (!token.isTable())
+			throw new IllegalArgumentException("walk的令牌不能用于walkTable：" + token);
+		return collectTable(param, request, token.getColumns(), token);
+	}
+
+	private static SnmpWalkResult<SnmpTable> collectTable(SnmpTarget param, SnmpWalkRequest request, SnmpOID[] columns, SnmpWalkToken resume) throws SnmpException {
+		final SnmpTable table = new SnmpTable(columns);
+		SnmpWalkResult<Integer> result = streamTable(param, request, columns, resume, new RowHandler() {
+			public boolean onRow(SnmpRow row) {
+				table.addRow(row);
+				return true;
+			}
+		});
+		return new SnmpWalkResult<SnmpTable>(result.getState(), table, result.getToken());
+	}
+
+	/**
+	 * 获取指定的列集的完整表格，每取得一行即交给handler处理，不在内存中保存整个表格
+	 *
+	 * @param param   snmp基本参数
+	 * @param request walk请求参数
+	 * @param columns walk表格请求列OID
+	 * @param handler 结果回调，返回false时停止walkTable
+	 * @return walkTable的结束状态，handler停止walkTable时为OK
+	 * @throws SnmpException
+	 */
+	public static SnmpWalkResult.State walkTable(SnmpTarget param, SnmpWalkRequest request, SnmpOID[] columns, RowHandler handler) throws SnmpException {
+		return streamTable(param, request, columns, null, handler).getState();
+	}
+
+	private static SnmpWalkResult<Integer> streamTable(SnmpTarget param, SnmpWalkRequest request, SnmpOID[] columns, SnmpWalkToken resume,
+	                                                   RowHandler handler) throws SnmpException {
+		SnmpWalkEvent jfrEvent = new SnmpWalkEvent();
+		jfrEvent.begin();
+		SnmpWalkResult<Integer> result = null;
+		try {
+			result = doWalkTable(param, request, columns, resume, handler);
+			return result;
+		} finally {
+			jfrEvent.end();
+			if (jfrEvent.shouldCommit()) {
+				jfrEvent.set(param.getIp(), "walkTable", Arrays.toString(columns),
+						result == null ? 0 : result.getData(),
+						result == null ? "ERROR" : result.getState().name());
+				jfrEvent.commit();
+			}
+		}
+	}
+
+	/**
+	 * @param resume 续传令牌，为null时从第一行开始
+	 * @return 结束状态、交给handler的行数与续传令牌
+	 */
+	private static SnmpWalkResult<Integer> doWalkTable(SnmpTarget param, SnmpWalkRequest request, SnmpOID[] columns, SnmpWalkToken resume,
+	                                                   RowHandler handler) throws SnmpException {
 		long start = System.currentTimeMillis();
-		SnmpTable table = new SnmpTable(columns);
+		int count = 0;
 		SnmpOID[] requests = new SnmpOID[columns.length];
 		SnmpVarBind[] ret;
 		int j;
 
 		// 遍历所有实例
-		SnmpOID currInstance = null;
+		SnmpOID currInstance = resume == null ? null : resume.getLast();
 		int sameRetry = 0;
 		SnmpWalkResult.State state = SnmpWalkResult.State.OK;
 		while (true) {
@@ -436,9 +934,11 @@ public class Snmp {
 			try {
 				ret = getNext(param, requests);
 			} catch (SnmpException e) {
-				//如果超时并且尚未获得的数据，或者继续循环
-				if (e.getErrorCode() == SnmpException.ERR_TIMEOUT && table.getRows().size() > 0)
+				//已获得部分数据后超时，结束并返回续传令牌，尚未获得数据时弹出
+				if (e.getErrorCode() == SnmpException.ERR_TIMEOUT && count > 0) {
+					state = SnmpWalkResult.State.OVERTIME;
 					break;
+				}
 				else if (e.getErrorCode() == SnmpException.ERR_ENDOFMIB)
 					break;
 				else
@@ -502,8 +1002,10 @@ public class Snmp {
 
 			// 如果行顺利分析完成，包括有不完整行，但param允许保留不完整行
 			if (j >= requests.length) {
-				table.addRow(row);
-				if (request.getMaxLength() > 0 && table.getRows().size() >= request.getMaxLength()) {
+				count++;
+				if (!handler.onRow(row))
+					break;
+				if (request.getMaxLength() > 0 && count >= request.getMaxLength()) {
 					state = SnmpWalkResult.State.EXCEED;
 					break;
 				}
@@ -515,7 +1017,10 @@ public class Snmp {
 			}
 		}
 
-		return new SnmpWalkResult(state, table);
+		if (state == SnmpWalkResult.State.OK)
+			return new SnmpWalkResult<Integer>(state, count);
+		return new SnmpWalkResult<Integer>(state, count, resume == null ? SnmpWalkToken.table(columns, currInstance, count, 1)
+				: SnmpWalkToken.table(columns, currInstance, resume.getCount() + count, resume.getSlices() + 1));
 	}
 
 	/**
@@ -529,6 +1034,25 @@ public class Snmp {
 	 */
 	public static SnmpTable walkTable(SnmpTarget param, SnmpOID[] columns,
 									  SnmpOID[] instances) throws SnmpException {
+		SnmpWalkEvent jfrEvent = new SnmpWalkEvent();
+		jfrEvent.begin();
+		SnmpTable result = null;
+		try {
+			result = doWalkTable(param, columns, instances);
+			return result;
+		} finally {
+			jfrEvent.end();
+			if (jfrEvent.shouldCommit()) {
+				jfrEvent.set(param.getIp(), "walkTable", Arrays.toString(columns),
+						result == null ? 0 : result.getRows().size(),
+						result == null ? "ERROR" : SnmpWalkResult.State.OK.name());
+				jfrEvent.commit();
+			}
+		}
+	}
+
+	private static SnmpTable doWalkTable(SnmpTarget param, SnmpOID[] columns,
+										 SnmpOID[] instances) throws SnmpException {
 		SnmpTable table = new SnmpTable(columns);
 		SnmpOID[] requests = new SnmpOID[columns.length];
 		SnmpVarBind[] ret;
@@ -622,6 +1146,83 @@ public class Snmp {
 		}
 	}
 
+	/**
+	 * 预先生成SNMPv3用户在指定engineID下的本地化密钥，并以本地化用户的形式加入USM，
+	 * 之后对该engineID设备的请求不再需要由口令生成密钥。密钥生成结果在相同口令、协议与engineID间共享，见LocalizedKeyCache
+	 *
+	 * @param param    SNMPv3访问参数
+	 * @param engineID 目标设备的权威引擎ID
+	 */
+	public static void prelocalize(SnmpTarget param, byte[] engineID) {
+		if (!param.isV3())
+			return;
+		param.getTarget();
+		usm.localize(param, new OctetString(param.getSecurityUser()), engineID);
+	}
+
+	/**
+	 * 发现SNMPv3设备的权威引擎ID，并加入snmp4j的engineID缓存，之后对该设备的请求不再需要先进行发现。
+	 * 如果缓存中已有该设备的engineID，直接返回
+	 *
+	 * @param param SNMPv3访问参数
+	 * @return 权威引擎ID
+	 * @throws SnmpException 超时或通信错误时弹出此异常
+	 */
+	public static byte[] discoverEngineId(SnmpTarget param) throws SnmpException {
+		Address address = param.getTarget().getAddress();
+		MPv3 mpv3 = (MPv3) snmp.getMessageProcessingModel(MPv3.ID);
+		OctetString exist = mpv3.getEngineID(address);
+		if (exist != null && exist.length() > 0)
+			return exist.getValue();
+
+		for (int i = 0; i <= param.getRetryTime(); i++) {
+			byte[] engineID = snmp.discoverAuthoritativeEngineID(address, param.getTimeout());
+			if (engineID != null && engineID.length > 0)
+				return engineID;
+		}
+		throw new SnmpException(SnmpException.ERR_TIMEOUT, "SNMPv3引擎ID发现超时，请确认目标IP[" + param.getIp() + "]可以访问");
+	}
+
+	/**
+	 * 将snmp4j中记录的设备SNMPv3引擎状态（engineID、启动次数与当前引擎时间）写入state，用于保存快照
+	 *
+	 * @param state 设备状态
+	 * @return 如果设备有已知的engineID，返回true
+	 */
+	public static boolean exportEngineState(DeviceState state) {
+		MPv3 mpv3 = (MPv3) snmp.getMessageProcessingModel(MPv3.ID);
+		OctetString engineID = mpv3.getEngineID(new UdpAddress(state.getIp() + "/" + state.getPort()));
+		if (engineID == null || engineID.length() == 0)
+			return false;
+
+		UsmTimeEntry entry = usm.getTimeTable().getEntry(engineID);
+		if (entry == null)
+			state.setEngine(engineID.getValue(), 0, 0);
+		else
+			state.setEngine(engineID.getValue(), entry.getEngineBoots(),
+					(int) (System.nanoTime() / 1000000000L) + entry.getTimeDiff());
+		return true;
+	}
+
+	/**
+	 * 按state中保存的SNMPv3引擎状态恢复snmp4j的engineID缓存与引擎时间表，恢复后对该设备的请求不再需要先进行发现。
+	 * 如果设备在此期间重启，snmp4j会在第一次请求时收到notInTimeWindow报告并重新同步
+	 *
+	 * @param state   设备状态
+	 * @param elapsed 保存快照至今经过的时间，单位秒，用于推算当前引擎时间
+	 */
+	public static void importEngineState(DeviceState state, int elapsed) {
+		byte[] engineID = state.getEngineID();
+		if (engineID == null || engineID.length == 0)
+			return;
+
+		OctetString id = new OctetString(engineID);
+		MPv3 mpv3 = (MPv3) snmp.getMessageProcessingModel(MPv3.ID);
+		mpv3.addEngineID(new UdpAddress(state.getIp() + "/" + state.getPort()), id);
+		if (state.getEngineBoots() > 0 && usm.getTimeTable().getEntry(id) == null)
+			usm.getTimeTable().addEntry(new UsmTimeEntry(id, state.getEngineBoots(), state.getEngineTime() + elapsed));
+	}
+
 	/**
 	 * 关闭释放当前Snmp资源
 	 *
@@ -637,79 +1238,111 @@ public class Snmp {
 		}
 	}
 
+	/**
+	 * 支持按用户替换V3参数的USM
+	 * <p>
+	 * 用户参数保存在UsmUserRegistry中，读取不加锁，修改按用户分段加锁。替换参数时，先使新参数在注册表中生效并替换用户模板，
+	 * 再删除旧参数生成的本地化条目，期间并发的请求会通过getUser按新参数重新本地化，不会出现Unknown security name错误。
+	 */
 	private static class RemoveableUSM extends USM {
-		private static Map<String, Entry> entries = new HashMap<String, Entry>();
+		private final UsmUserRegistry registry = new UsmUserRegistry();
 
 		public RemoveableUSM(SecurityProtocols securityProtocols, OctetString localEngineID, int engineBoots) {
 			super(securityProtocols, localEngineID, engineBoots);
-
-			addUsmUserListener(new UsmUserListener() {
-				public void usmUserChange(UsmUserEvent event) {
-					if (event.getType() == UsmUserEvent.USER_ADDED) {
-						String user = event.getUser().getUserName().toString();
-
-						synchronized (entries) {
-							Entry entry = entries.get(user);
-							if (entry == null) {
-								logger.warn("存在错误SNMPV3 USER添加");
-								return;
-							}
-							entry.entries.add(event.getUser());
-						}
-					}
-				}
-			});
 		}
 
 		private void setUser(SnmpTarget param, OctetString user) {
 			if (!param.isV3())
 				return;
 
-			Entry entry = entries.get(param.getSecurityUser());
-			if (entry != null && entry.target.equalsV3Param(param))
+			if (registry.matches(param))
 				return;
 
-			synchronized (entries) {
-				if (entry == null) {
-					entry = new Entry(param.clone());
-					entries.put(param.getSecurityUser(), entry);
+			Lock lock = registry.lockFor(param.getSecurityUser());
+			lock.lock();
+			try {
+				if (registry.matches(param))
+					return;
+				SnmpTarget previous = registry.put(param);
+
+				UsmUser usm;
+				if (param.getSecurityLevel().getLevel() == SecurityLevel.authNoPriv.getSnmpValue()) {
+					usm = new UsmUser(user, param.getAuthProtocol().getOID(), new OctetString(param.getAuthPassword()), null, null);
+				} else if (param.getSecurityLevel().getLevel() == SecurityLevel.authPriv.getSnmpValue()) {
+					usm = new UsmUser(user, param.getAuthProtocol().getOID(), new OctetString(param.getAuthPassword()), param
+							.getPrivProtocol().getOID(), new OctetString(param.getPrivPassword()));
 				} else {
-					entry.target = param.clone();
-					for (UsmUserEntry uue : entry.entries) {
-						this.removeAllUsers(uue.getUserName());
-						logger.debug("remove: {}", uue);
-					}
-					entry.entries.clear();
+					usm = new UsmUser(user, null, null, null, null);
 				}
+				logger.debug("add: {}", usm);
+				addUser(user, usm);
+
+				if (previous != null)
+					removeLocalizedUsers(user);
+			} finally {
+				lock.unlock();
 			}
+		}
 
-			UsmUser usm;
-			if (param.getSecurityLevel().getLevel() == SecurityLevel.authNoPriv.getSnmpValue()) {
-				usm = new UsmUser(user, param.getAuthProtocol().getOID(), new OctetString(param.getAuthPassword()), null, null);
-			} else if (param.getSecurityLevel().getLevel() == SecurityLevel.authPriv.getSnmpValue()) {
-				usm = new UsmUser(user, param.getAuthProtocol().getOID(), new OctetString(param.getAuthPassword()), param
-								.getPrivProtocol().getOID(), new OctetString(param.getPrivPassword()));
-			}  else {
-				usm = new UsmUser(user, null, null, null, null);
+		/**
+		 * 删除用户在各engineID下的本地化条目，保留用户模板
+		 */
+		private void removeLocalizedUsers(OctetString user) {
+			for (UsmUserEntry entry : getUserTable().getUserEntries(user)) {
+				OctetString engineID = entry.getEngineID();
+				if (engineID != null && engineID.length() > 0) {
+					removeAllUsers(user, engineID);
+					logger.debug("remove: {}", entry);
+				}
 			}
-			logger.debug("add: {}", usm);
-			snmp.getUSM().addUser(user, usm);
 		}
 
+		/**
+		 * 在USM中没有该用户在engineID下的本地化条目时，使用LocalizedKeyCache生成密钥，
+		 * 避免snmp4j为每个新发现的engineID重新由口令生成密钥
+		 */
 		@Override
-		public void removeAllUsers() {
-			super.removeAllUsers();
-			entries.clear();
+		public UsmUserEntry getUser(OctetString engineID, OctetString securityName) {
+			if (engineID != null && engineID.length() > 0 && securityName != null && securityName.length() > 0) {
+				for (int i = 0; i < 3; i++) {
+					UsmUserEntry exist = getUserTable().getUser(engineID, securityName);
+					if (exist != null)
+						return exist;
+
+					SnmpTarget param = registry.get(securityName.toString());
+					if (param == null)
+						break;
+					UsmUserEntry entry = localize(param, securityName, engineID.getValue());
+					if (registry.get(securityName.toString()) == param)
+						return entry;
+					// 本地化期间用户参数被替换，删除按旧参数生成的条目后重试
+					removeAllUsers(securityName, engineID);
+				}
+			}
+			return super.getUser(engineID, securityName);
 		}
 
-		private class Entry {
-			SnmpTarget target;
-			List<UsmUserEntry> entries = new ArrayList<UsmUserEntry>(2);
-
-			public Entry(SnmpTarget target) {
-				super();
-				this.target = target;
+		private UsmUserEntry localize(SnmpTarget param, OctetString user, byte[] engineID) {
+			if (param.getSecurityLevel().getLevel() == SecurityLevel.noAuthNoPriv.getSnmpValue())
+				return super.getUser(new OctetString(engineID), user);
+
+			LocalizedKeyCache cache = LocalizedKeyCache.getInstance();
+			OID authProtocol = param.getAuthProtocol().getOID();
+			byte[] authKey = cache.getAuthKey(authProtocol, param.getAuthPassword(), engineID);
+			OID privProtocol = null;
+			byte[] privKey = null;
+			if (param.getSecurityLevel().getLevel() == SecurityLevel.authPriv.getSnmpValue()) {
+				privProtocol = param.getPrivProtocol().getOID();
+				privKey = cache.getPrivKey(authProtocol, privProtocol, param.getPrivPassword(), engineID);
 			}
+			logger.debug("localize: {}@{}", user, new OctetString(engineID).toHexString());
+			return addLocalizedUser(engineID, user, authProtocol, authKey, privProtocol, privKey);
+		}
+
+		@Override
+		public void removeAllUsers() {
+			super.removeAllUsers();
+			registry.clear();
 		}
 	}
 }
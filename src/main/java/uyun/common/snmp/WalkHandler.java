@@ -0,0 +1,16 @@
+package uyun.common.snmp;
+
+import uyun.common.snmp.entity.SnmpVarBind;
+
+/**
+ * 逐个接收walk结果的回调，用于在walk进行中处理结果，而不必等待整个子树返回
+ */
+public interface WalkHandler {
+	/**
+	 * 收到一个变量，按walk顺序调用
+	 *
+	 * @param varBind 变量
+	 * @return 返回false时停止walk
+	 */
+	boolean onVarBind(SnmpVarBind varBind);
+}
@@ -0,0 +1,107 @@
+package uyun.common.snmp.delta;
+
+import org.snmp4j.smi.OID;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * 上一次采集的基线，只保存按OID升序排列的键与值指纹，不保存值本身
+ * <p>
+ * walk的键为变量oid，每个键一个指纹；表格的键为行索引，每个键按列保存width个指纹。
+ */
+class Baseline {
+	final OID[] keys;
+	final long[] fingerprints;
+	final int width;
+
+	Baseline(OID[] keys, long[] fingerprints, int width) {
+		this.keys = keys;
+		this.fingerprints = fingerprints;
+		this.width = width;
+	}
+
+	int size() {
+		return keys.length;
+	}
+
+	/**
+	 * 二分查找键
+	 *
+	 * @return 找到时返回下标，否则返回-1
+	 */
+	int indexOf(OID key) {
+		int index = Arrays.binarySearch(keys, key);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * 采集过程中逐个加入键与指纹，结束时生成新的基线
+	 */
+	static class Builder {
+		private final int width;
+		private OID[] keys = new OID[64];
+		private long[] fingerprints;
+		private int count;
+		private boolean sorted = true;
+
+		Builder(int width) {
+			this.width = width;
+			this.fingerprints = new long[keys.length * width];
+		}
+
+		void add(OID key, long[] values, int offset) {
+			if (count == keys.length) {
+				keys = Arrays.copyOf(keys, count * 2);
+				fingerprints = Arrays.copyOf(fingerprints, count * 2 * width);
+			}
+			if (count > 0 && keys[count - 1].compareTo(key) >= 0)
+				sorted = false;
+			keys[count] = key;
+			System.arraycopy(values, offset, fingerprints, count * width, width);
+			count++;
+		}
+
+		/**
+		 * 加入上次基线中排在after之后的记录，用于采集未完整结束时保留未采集到的部分
+		 */
+		void addTail(Baseline previous, OID after, BitSet seen) {
+			int start = Arrays.binarySearch(previous.keys, after);
+			start = start < 0 ? -start - 1 : start + 1;
+			for (int i = start; i < previous.keys.length; i++) {
+				if (!seen.get(i))
+					add(previous.keys[i], previous.fingerprints, i * width);
+			}
+		}
+
+		Baseline build() {
+			OID[] sortedKeys = Arrays.copyOf(keys, count);
+			long[] sortedPrints = Arrays.copyOf(fingerprints, count * width);
+			if (!sorted) {
+				// 设备返回的顺序不是升序时，连同指纹一起排序，重复的键保留最后一个
+				Integer[] order = new Integer[count];
+				for (int i = 0; i < count; i++)
+					order[i] = i;
+				Arrays.sort(order, new Comparator<Integer>() {
+					public int compare(Integer a, Integer b) {
+						int compare = keys[a].compareTo(keys[b]);
+						return compare != 0 ? compare : a - b;
+					}
+				});
+				int n = 0;
+				for (int i = 0; i < count; i++) {
+					int from = order[i];
+					if (i + 1 < count && keys[order[i + 1]].equals(keys[from]))
+						continue;
+					sortedKeys[n] = keys[from];
+					System.arraycopy(fingerprints, from * width, sortedPrints, n * width, width);
+					n++;
+				}
+				sortedKeys = Arrays.copyOf(sortedKeys, n);
+				sortedPrints = Arrays.copyOf(sortedPrints, n * width);
+			}
+			return new Baseline(sortedKeys, sortedPrints, width);
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package uyun.common.snmp.delta;
+
+import org.snmp4j.smi.OID;
+import uyun.common.snmp.RowHandler;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.WalkHandler;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkRequest;
+import uyun.common.snmp.entity.SnmpWalkResult;
+import uyun.common.snmp.error.SnmpException;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 增量变化检测
+ * <p>
+ * 对同一设备、同一根oid（或同一组列）的连续walk，只报告与上次相比新增、删除与值变化的变量或行。
+ * 比较在walk进行中逐个完成，不在内存中保存整个结果；上次的结果只以键与64位值指纹的形式保存。
+ * <p>
+ * 设备按oid升序返回时，删除在walk越过被删除的键时即报告；未按升序返回的部分，可能先报告删除、
+ * 再作为新增报告。walk因超时（包括设备中途不再应答）或超出长度而未完整结束时，不报告最后一个键之后的删除，这部分基线保留到下次比较；
+ * walk弹出异常时不更新基线，下次walk仍与原基线比较，已报告过的变化会再次报告。
+ * <p>
+ * 本类的实例可以在多个线程间共享，同一键的并发walk以最后结束的一次作为基线。
+ */
+public class DeltaTracker {
+	private final ConcurrentMap<String, Baseline> baselines = new ConcurrentHashMap<String, Baseline>();
+
+	/**
+	 * 对root进行walk，并向listener报告与上次walk相比的变化
+	 *
+	 * @param param    SNMP基本访问参数
+	 * @param request  SNMPWALK请求参数
+	 * @param root     SNMPWALK的根OID
+	 * @param listener 变化回调
+	 * @return walk的结束状态
+	 * @throws SnmpException 当发现下列情况时弹出：Snmp操作错误
+	 */
+	public SnmpWalkResult.State walk(SnmpTarget param, SnmpWalkRequest request, SnmpOID root,
+	                                 final WalkDeltaListener listener) throws SnmpException {
+		String key = key(param) + " " + root;
+		final Merge merge = new Merge(baselines.get(key), 1);
+		SnmpWalkResult.State state = Snmp.walk(param, request, root, new WalkHandler() {
+			private final long[] fingerprint = new long[1];
+
+			public boolean onVarBind(SnmpVarBind varBind) {
+				OID oid = varBind.getOid().oid();
+				fingerprint[0] = Fingerprint.of(varBind);
+				int index = merge.next(oid, fingerprint);
+				reportRemoved(merge, listener);
+				if (index == Merge.ADDED)
+					listener.onAdded(varBind);
+				else if (index == Merge.CHANGED)
+					listener.onChanged(varBind);
+				return true;
+			}
+		});
+		if (state == SnmpWalkResult.State.OK)
+			merge.finish();
+		reportRemoved(merge, listener);
+		baselines.put(key, merge.build(state));
+		return state;
+	}
+
+	/**
+	 * 使用默认的walk请求参数，见{@link #walk(SnmpTarget, SnmpWalkRequest, SnmpOID, WalkDeltaListener)}
+	 */
+	public SnmpWalkResult.State walk(SnmpTarget param, SnmpOID root, WalkDeltaListener listener) throws SnmpException {
+		return walk(param, new SnmpWalkRequest(), root, listener);
+	}
+
+	/**
+	 * 获取columns指定的表格，并向listener报告与上次相比的变化
+	 *
+	 * @param param    snmp基本参数
+	 * @param request  walk请求参数
+	 * @param columns  walk表格请求列OID
+	 * @param listener 变化回调
+	 * @return walkTable的结束状态
+	 * @throws SnmpException
+	 */
+	public SnmpWalkResult.State walkTable(SnmpTarget param, SnmpWalkRequest request, SnmpOID[] columns,
+	                                      final TableDeltaListener listener) throws SnmpException {
+		String key = key(param) + " " + Arrays.toString(columns);
+		final int width = columns.length;
+		final Merge merge = new Merge(baselines.get(key), width);
+		SnmpWalkResult.State state = Snmp.walkTable(param, request, columns, new RowHandler() {
+			private final long[] fingerprints = new long[width];
+
+			public boolean onRow(SnmpRow row) {
+				for (int i = 0; i < width; i++)
+					fingerprints[i] = Fingerprint.of(row.get(i));
+				int index = merge.next(row.getInstance().oid(), fingerprints);
+				reportRemoved(merge, listener);
+				if (index == Merge.ADDED)
+					listener.onRowAdded(row);
+				else if (index == Merge.CHANGED)
+					listener.onRowChanged(row, merge.changed);
+				return true;
+			}
+		});
+		if (state == SnmpWalkResult.State.OK)
+			merge.finish();
+		reportRemoved(merge, listener);
+		baselines.put(key, merge.build(state));
+		return state;
+	}
+
+	/**
+	 * 使用默认的walk请求参数，见{@link #walkTable(SnmpTarget, SnmpWalkRequest, SnmpOID[], TableDeltaListener)}
+	 */
+	public SnmpWalkResult.State walkTable(SnmpTarget param, SnmpOID[] columns, TableDeltaListener listener) throws SnmpException {
+		return walkTable(param, new SnmpWalkRequest(), columns, listener);
+	}
+
+	/**
+	 * 删除设备的所有基线，之后的walk所有结果都作为新增报告
+	 *
+	 * @param param
+	 * @return 删除的基线数
+	 */
+	public int forget(SnmpTarget param) {
+		String prefix = key(param) + " ";
+		int count = 0;
+		for (Iterator<String> it = baselines.keySet().iterator(); it.hasNext(); ) {
+			if (it.next().startsWith(prefix)) {
+				it.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 删除所有基线
+	 */
+	public void clear() {
+		baselines.clear();
+	}
+
+	/**
+	 * 返回保存的基线数
+	 *
+	 * @return
+	 */
+	public int size() {
+		return baselines.size();
+	}
+
+	private static String key(SnmpTarget param) {
+		return param.getIp() + "/" + param.getPort();
+	}
+
+	private static void reportRemoved(Merge merge, WalkDeltaListener listener) {
+		for (int i = 0; i < merge.removedCount; i++)
+			listener.onRemoved(new SnmpOID(merge.removed[i]));
+		merge.removedCount = 0;
+	}
+
+	private static void reportRemoved(Merge merge, TableDeltaListener listener) {
+		for (int i = 0; i < merge.removedCount; i++)
+			listener.onRowRemoved(new SnmpOID(merge.removed[i]));
+		merge.removedCount = 0;
+	}
+
+	/**
+	 * 一次walk与上次基线的逐个比较
+	 */
+	private static class Merge {
+		static final int SAME = 0;
+		static final int ADDED = 1;
+		static final int CHANGED = 2;
+
+		private final Baseline previous;
+		private final int width;
+		private final BitSet seen = new BitSet();
+		private final Baseline.Builder builder;
+		final boolean[] changed;
+		// 上次基线中下一个尚未越过的键
+		private int cursor;
+		private OID last;
+		// 待报告的删除，报告后清零
+		OID[] removed = new OID[4];
+		int removedCount;
+
+		Merge(Baseline previous, int width) {
+			this.previous = previous;
+			this.width = width;
+			this.builder = new Baseline.Builder(width);
+			this.changed = new boolean[width];
+		}
+
+		/**
+		 * 比较一条新记录，越过的上次记录中未出现的作为删除，放入removed
+		 *
+		 * @return SAME、ADDED或CHANGED，为CHANGED时changed中标记了变化的列
+		 */
+		int next(OID key, long[] fingerprints) {
+			builder.add(key, fingerprints, 0);
+			if (last == null || last.compareTo(key) < 0)
+				last = key;
+			if (previous == null)
+				return ADDED;
+
+			while (cursor < previous.size() && previous.keys[cursor].compareTo(key) < 0) {
+				if (!seen.get(cursor))
+					pushRemoved(previous.keys[cursor]);
+				cursor++;
+			}
+			int index = previous.indexOf(key);
+			// 已作为删除报告过的键，重新作为新增报告
+			if (index < 0 || (index < cursor && !seen.get(index)))
+				return ADDED;
+			if (index == cursor)
+				cursor++;
+			// 同一次walk中重复的键
+			if (seen.get(index))
+				return SAME;
+			seen.set(index);
+
+			boolean any = false;
+			int offset = index * width;
+			for (int i = 0; i < width; i++) {
+				changed[i] = previous.fingerprints[offset + i] != fingerprints[i];
+				any |= changed[i];
+			}
+			return any ? CHANGED : SAME;
+		}
+
+		/**
+		 * walk完整结束，上次记录中剩余未出现的都作为删除
+		 */
+		void finish() {
+			if (previous == null)
+				return;
+			for (; cursor < previous.size(); cursor++) {
+				if (!seen.get(cursor))
+					pushRemoved(previous.keys[cursor]);
+			}
+		}
+
+		Baseline build(SnmpWalkResult.State state) {
+			// 未完整结束时保留上次基线中未采集到的尾部
+			if (state != SnmpWalkResult.State.OK && previous != null) {
+				if (last == null)
+					return previous;
+				builder.addTail(previous, last, seen);
+			}
+			return builder.build();
+		}
+
+		private void pushRemoved(OID oid) {
+			if (removedCount == removed.length)
+				removed = Arrays.copyOf(removed, removedCount * 2);
+			removed[removedCount++] = oid;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package uyun.common.snmp.delta;
+
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.IpAddress;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UnsignedInteger32;
+import org.snmp4j.smi.Variable;
+import uyun.common.snmp.entity.SnmpVarBind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * 值的64位FNV-1a指纹，连同类型一起计算，同值不同类型的变量指纹不同
+ */
+class Fingerprint {
+	/**
+	 * 缺失的变量或单元格的指纹
+	 */
+	static final long ABSENT = 0;
+	private static final long OFFSET = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private Fingerprint() {
+	}
+
+	static long of(SnmpVarBind varBind) {
+		if (varBind == null)
+			return ABSENT;
+		Variable value = varBind.getValue().variable();
+		if (value == null)
+			return ABSENT;
+
+		long hash = mix(OFFSET, value.getSyntax());
+		if (value instanceof Integer32)
+			hash = mix(hash, ((Integer32) value).getValue());
+		else if (value instanceof UnsignedInteger32)
+			hash = mix(hash, ((UnsignedInteger32) value).getValue());
+		else if (value instanceof Counter64)
+			hash = mix(hash, ((Counter64) value).getValue());
+		else if (value instanceof OctetString)
+			hash = mix(hash, ((OctetString) value).getValue());
+		else if (value instanceof IpAddress)
+			hash = mix(hash, ((IpAddress) value).toByteArray());
+		else if (value instanceof OID) {
+			for (int v : ((OID) value).getValue())
+				hash = mix(hash, v);
+		} else if (!value.isException()) {
+			ByteArrayOutputStream ber = new ByteArrayOutputStream(value.getBERLength());
+			try {
+				value.encodeBER(ber);
+			} catch (IOException e) {
+				throw new IllegalStateException("无法编码变量：" + value, e);
+			}
+			hash = mix(hash, ber.toByteArray());
+		}
+		// 避免与ABSENT冲突
+		return hash == ABSENT ? 1 : hash;
+	}
+
+	private static long mix(long hash, byte[] bytes) {
+		for (byte b : bytes) {
+			hash ^= b & 0xFF;
+			hash *= PRIME;
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		for (int i = 0; i < 8; i++) {
+			hash ^= value & 0xFF;
+			hash *= PRIME;
+			value >>>= 8;
+		}
+		return hash;
+	}
+}
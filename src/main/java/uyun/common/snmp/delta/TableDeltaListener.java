@@ -0,0 +1,31 @@
+package uyun.common.snmp.delta;
+
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+
+/**
+ * 接收表格变化的回调，在walkTable进行中按行的获取顺序调用
+ */
+public interface TableDeltaListener {
+	/**
+	 * 上次没有、本次新出现的行，首次walkTable时所有行都通过此方法报告
+	 *
+	 * @param row
+	 */
+	void onRowAdded(SnmpRow row);
+
+	/**
+	 * 有单元格与上次不同的行
+	 *
+	 * @param row     完整的行
+	 * @param changed 与列对应，为true的列值发生了变化（包括单元格出现或消失）
+	 */
+	void onRowChanged(SnmpRow row, boolean[] changed);
+
+	/**
+	 * 上次存在、本次已不存在的行
+	 *
+	 * @param instance 行索引
+	 */
+	void onRowRemoved(SnmpOID instance);
+}
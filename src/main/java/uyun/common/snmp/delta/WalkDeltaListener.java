@@ -0,0 +1,30 @@
+package uyun.common.snmp.delta;
+
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpVarBind;
+
+/**
+ * 接收walk变化的回调，在walk进行中按walk顺序调用
+ */
+public interface WalkDeltaListener {
+	/**
+	 * 上次walk没有、本次新出现的变量，首次walk时所有变量都通过此方法报告
+	 *
+	 * @param varBind
+	 */
+	void onAdded(SnmpVarBind varBind);
+
+	/**
+	 * 值与上次walk不同的变量
+	 *
+	 * @param varBind
+	 */
+	void onChanged(SnmpVarBind varBind);
+
+	/**
+	 * 上次walk存在、本次已不存在的变量
+	 *
+	 * @param oid
+	 */
+	void onRemoved(SnmpOID oid);
+}
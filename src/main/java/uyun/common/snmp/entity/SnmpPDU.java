@@ -27,6 +27,8 @@ import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.smi.VariableBinding;
 
+import java.io.UnsupportedEncodingException;
+
 public class SnmpPDU extends PDU {
 	private static final long serialVersionUID = 1L;
 
@@ -50,13 +52,19 @@ public class SnmpPDU extends PDU {
 	 * 添加一个字符串类型的VarBind,可以指定字符值的类型
 	 * @param oid
 	 * @param val
-	 * @param charsetName
+	 * @param charsetName 字符集名称，为null时使用平台默认字符集
 	 */
 	public void addStringVarBind(String oid, String val, String charsetName) {
 		if (logger.isDebugEnabled()) {
 			logger.debug("Set VarBind{" + oid + ":" + val + "}");
 		}
-		VariableBinding varbind = new VariableBinding(new OID(oid), new OctetString(val));
+		OctetString value;
+		try {
+			value = charsetName == null ? new OctetString(val) : new OctetString(val.getBytes(charsetName));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalArgumentException(String.format("不存在的字符集[%s]", charsetName), e);
+		}
+		VariableBinding varbind = new VariableBinding(new OID(oid), value);
 		add(varbind);
 	}
 
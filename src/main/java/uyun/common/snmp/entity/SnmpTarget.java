@@ -3,6 +3,8 @@ package uyun.common.snmp.entity;
 import org.snmp4j.Target;
 import uyun.common.snmp.Snmp;
 
+import java.nio.charset.Charset;
+
 /**
  * 对Snmp参数提供一个统一的对象进行封装
  */
@@ -44,7 +46,8 @@ public class SnmpTarget implements Cloneable {
 	private String authPassword;
 	private PrivProtocol privProtocol = PrivProtocol.AES128;
 	private String privPassword;
-	private Target target;
+	private Charset charset;
+	private volatile Target target;
 
 	/**
 	 * 构建一个SnmpTarget，参数保持默认如下
@@ -338,6 +341,25 @@ public class SnmpTarget implements Cloneable {
 		this.target = null;
 	}
 
+	/**
+	 * 返回文本类型（OctetString）采集值的解码字符集
+	 *
+	 * @return 字符集，为null表示使用平台默认字符集
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * 设置文本类型（OctetString）采集值的解码字符集，如中文设备的ifAlias、sysLocation通常为GBK编码
+	 *
+	 * @param charsetName 字符集名称，如GBK、UTF-8，为null表示使用平台默认字符集
+	 * @throws IllegalArgumentException 如果字符集不存在，则弹出此异常
+	 */
+	public void setCharset(String charsetName) {
+		this.charset = charsetName == null ? null : Charset.forName(charsetName);
+	}
+
 	/* 暂不启用
 	public String getEngineId() {
 		return engineId;
@@ -393,9 +415,17 @@ public class SnmpTarget implements Cloneable {
 		return version == SnmpVersion.V3;
 	}
 
+	/**
+	 * 返回snmp4j Target，参数修改后重新构建。需要在多个线程间共享、且不再修改的参数，建议使用SnmpTargetSpec
+	 *
+	 * @return
+	 */
 	public Target getTarget() {
-		if (target == null)
-			target = Snmp.createTarget(this);
-		return target;
+		Target result = target;
+		if (result == null) {
+			result = Snmp.createTarget(this);
+			target = result;
+		}
+		return result;
 	}
 }
@@ -0,0 +1,384 @@
+package uyun.common.snmp.entity;
+
+import org.snmp4j.smi.Address;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 不可变的SNMP访问参数
+ * <p>
+ * 通过Builder构建，构建时一次性生成snmp4j的Target与Address，V3参数同时注册到USM，之后getTarget不再重新构建，
+ * 可以在多个线程间安全共享。所有setter均弹出UnsupportedOperationException。
+ * <p>
+ * 相同参数的SnmpTargetSpec通过全局缓存共享同一个实例，大量采集任务使用相同参数时只生成一次Target。
+ * 本类继承SnmpTarget，可直接用于Snmp的所有方法。
+ */
+public class SnmpTargetSpec extends SnmpTarget {
+	/**
+	 * 全局缓存的最大数量，超出后新的参数不再缓存
+	 */
+	public static final int CACHE_MAX = 100000;
+	private static final ConcurrentMap<SnmpTargetSpec, SnmpTargetSpec> cache = new ConcurrentHashMap<SnmpTargetSpec, SnmpTargetSpec>();
+
+	private final int hash;
+
+	private SnmpTargetSpec(Builder builder) {
+		super.setIp(builder.ip);
+		super.setPort(builder.port);
+		super.setVersion(builder.version);
+		super.setCommunity(builder.community);
+		super.setTimeout(builder.timeout);
+		super.setRetryTime(builder.retryTime);
+		super.setAllowRepeatTime(builder.allowRepeatTime);
+		super.setDiscardErrorRow(builder.discardErrorRow);
+		super.setSecurityLevel(builder.securityLevel);
+		super.setSecurityUser(builder.securityUser);
+		super.setAuthProtocol(builder.authProtocol);
+		super.setAuthPassword(builder.authPassword);
+		super.setPrivProtocol(builder.privProtocol);
+		super.setPrivPassword(builder.privPassword);
+		super.setCharset(builder.charset == null ? null : builder.charset.name());
+		this.hash = computeHash();
+	}
+
+	/**
+	 * 返回与param参数相同的SnmpTargetSpec
+	 *
+	 * @param param 访问参数
+	 * @return 如果param本身就是SnmpTargetSpec，直接返回
+	 */
+	public static SnmpTargetSpec of(SnmpTarget param) {
+		if (param instanceof SnmpTargetSpec)
+			return (SnmpTargetSpec) param;
+		return new Builder(param).build();
+	}
+
+	/**
+	 * 返回全局缓存的数量
+	 *
+	 * @return
+	 */
+	public static int cacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * 清空全局缓存，已经获取的实例不受影响
+	 */
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	private static SnmpTargetSpec intern(SnmpTargetSpec spec) {
+		SnmpTargetSpec exist = cache.get(spec);
+		if (exist != null)
+			return exist;
+		if (cache.size() < CACHE_MAX) {
+			exist = cache.putIfAbsent(spec, spec);
+			if (exist != null)
+				return exist;
+		}
+
+		// 只有放入缓存的实例（或缓存已满时的新实例）才生成Target并注册USM用户，并发构建时落选的实例不做注册
+		spec.getTarget();
+		return spec;
+	}
+
+	/**
+	 * 返回构建时解析的目标地址
+	 *
+	 * @return
+	 */
+	public Address getAddress() {
+		return getTarget().getAddress();
+	}
+
+	@Override
+	public SnmpTargetSpec clone() {
+		return this;
+	}
+
+	@Override
+	public void setDiscardErrorRow(boolean discardErrorRow) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setVersion(SnmpVersion version) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setIp(String ip) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setPort(int port) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setRetryTime(int retryTime) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setTimeout(long timeout) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setAllowRepeatTime(int allowRepeatTime) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setCommunity(String community) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setSecurityLevel(SecurityLevel securityLevel) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setAuthProtocol(AuthProtocol pro) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setAuthPassword(String authPassword) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setPrivProtocol(PrivProtocol privProtocol) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setPrivPassword(String privPassword) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setSecurityUser(String securityUser) {
+		throw unsupported();
+	}
+
+	@Override
+	public void setCharset(String charsetName) {
+		throw unsupported();
+	}
+
+	private static UnsupportedOperationException unsupported() {
+		return new UnsupportedOperationException("SnmpTargetSpec不可修改，请通过SnmpTargetSpec.Builder重新构建");
+	}
+
+	private int computeHash() {
+		int h = nullHash(getIp());
+		h = h * 31 + getPort();
+		h = h * 31 + getVersion().hashCode();
+		h = h * 31 + nullHash(getCommunity());
+		h = h * 31 + (int) (getTimeout() ^ (getTimeout() >>> 32));
+		h = h * 31 + getRetryTime();
+		h = h * 31 + getAllowRepeatTime();
+		h = h * 31 + (isDiscardErrorRow() ? 1 : 0);
+		h = h * 31 + nullHash(getSecurityLevel());
+		h = h * 31 + nullHash(getSecurityUser());
+		h = h * 31 + nullHash(getAuthProtocol());
+		h = h * 31 + nullHash(getAuthPassword());
+		h = h * 31 + nullHash(getPrivProtocol());
+		h = h * 31 + nullHash(getPrivPassword());
+		h = h * 31 + nullHash(getCharset());
+		return h;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SnmpTargetSpec))
+			return false;
+		SnmpTargetSpec another = (SnmpTargetSpec) obj;
+		return hash == another.hash
+				&& nullEquals(getIp(), another.getIp())
+				&& getPort() == another.getPort()
+				&& getVersion() == another.getVersion()
+				&& nullEquals(getCommunity(), another.getCommunity())
+				&& getTimeout() == another.getTimeout()
+				&& getRetryTime() == another.getRetryTime()
+				&& getAllowRepeatTime() == another.getAllowRepeatTime()
+				&& isDiscardErrorRow() == another.isDiscardErrorRow()
+				&& getSecurityLevel() == another.getSecurityLevel()
+				&& nullEquals(getSecurityUser(), another.getSecurityUser())
+				&& getAuthProtocol() == another.getAuthProtocol()
+				&& nullEquals(getAuthPassword(), another.getAuthPassword())
+				&& getPrivProtocol() == another.getPrivProtocol()
+				&& nullEquals(getPrivPassword(), another.getPrivPassword())
+				&& nullEquals(getCharset(), another.getCharset());
+	}
+
+	private static int nullHash(Object value) {
+		return value == null ? 0 : value.hashCode();
+	}
+
+	private static boolean nullEquals(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * SnmpTargetSpec构建器，默认值与SnmpTarget相同。构建器本身不是线程安全的
+	 */
+	public static class Builder {
+		private String ip;
+		private int port = PORT_DEFAULT;
+		private SnmpVersion version = SnmpVersion.V2C;
+		private String community = COMMUNITY_DEFAULT;
+		private long timeout = TIMEOUT_DEFAULT;
+		private int retryTime = RETRYTIME_DEFAULT;
+		private int allowRepeatTime = ALLOWREPEATTIME_DEFAULT;
+		private boolean discardErrorRow = DISCARDERRORROW_DEFAULT;
+		private SecurityLevel securityLevel;
+		private String securityUser;
+		private AuthProtocol authProtocol = AuthProtocol.MD5;
+		private String authPassword;
+		private PrivProtocol privProtocol = PrivProtocol.AES128;
+		private String privPassword;
+		private Charset charset;
+
+		/**
+		 * @param ip 目标设备IP
+		 */
+		public Builder(String ip) {
+			this.ip = ip;
+		}
+
+		/**
+		 * 以一个已有的访问参数为初值
+		 *
+		 * @param param
+		 */
+		public Builder(SnmpTarget param) {
+			this.ip = param.getIp();
+			this.port = param.getPort();
+			this.version = param.getVersion();
+			this.community = param.getCommunity();
+			this.timeout = param.getTimeout();
+			this.retryTime = param.getRetryTime();
+			this.allowRepeatTime = param.getAllowRepeatTime();
+			this.discardErrorRow = param.isDiscardErrorRow();
+			this.securityLevel = param.getSecurityLevel();
+			this.securityUser = param.getSecurityUser();
+			this.authProtocol = param.getAuthProtocol();
+			this.authPassword = param.getAuthPassword();
+			this.privProtocol = param.getPrivProtocol();
+			this.privPassword = param.getPrivPassword();
+			this.charset = param.getCharset();
+		}
+
+		public Builder ip(String ip) {
+			this.ip = ip;
+			return this;
+		}
+
+		public Builder port(int port) {
+			this.port = port;
+			return this;
+		}
+
+		public Builder version(SnmpVersion version) {
+			this.version = version;
+			return this;
+		}
+
+		public Builder community(String community) {
+			this.community = community;
+			return this;
+		}
+
+		/**
+		 * @param timeout 超时时间，单位毫秒
+		 */
+		public Builder timeout(long timeout) {
+			this.timeout = timeout;
+			return this;
+		}
+
+		public Builder retryTime(int retryTime) {
+			this.retryTime = retryTime;
+			return this;
+		}
+
+		public Builder allowRepeatTime(int allowRepeatTime) {
+			this.allowRepeatTime = allowRepeatTime;
+			return this;
+		}
+
+		public Builder discardErrorRow(boolean discardErrorRow) {
+			this.discardErrorRow = discardErrorRow;
+			return this;
+		}
+
+		/**
+		 * 设置SNMPv3参数，同时将版本设置为V3
+		 *
+		 * @param securityLevel 安全级别
+		 * @param securityUser  用户名
+		 * @param authProtocol  验证协议，noAuthNoPriv时可以为null
+		 * @param authPassword  验证口令，noAuthNoPriv时可以为null
+		 * @param privProtocol  加密协议，authPriv以外可以为null
+		 * @param privPassword  加密口令，authPriv以外可以为null
+		 */
+		public Builder v3(SecurityLevel securityLevel, String securityUser, AuthProtocol authProtocol,
+						  String authPassword, PrivProtocol privProtocol, String privPassword) {
+			this.version = SnmpVersion.V3;
+			this.securityLevel = securityLevel;
+			this.securityUser = securityUser;
+			this.authProtocol = authProtocol;
+			this.authPassword = authPassword;
+			this.privProtocol = privProtocol;
+			this.privPassword = privPassword;
+			return this;
+		}
+
+		/**
+		 * @param charsetName 文本类型采集值的解码字符集，为null表示使用平台默认字符集
+		 */
+		public Builder charset(String charsetName) {
+			this.charset = charsetName == null ? null : Charset.forName(charsetName);
+			return this;
+		}
+
+		/**
+		 * 构建参数，相同参数返回缓存中的同一实例
+		 *
+		 * @return
+		 * @throws IllegalArgumentException 参数不完整时弹出此异常
+		 */
+		public SnmpTargetSpec build() {
+			if (ip == null)
+				throw new IllegalArgumentException("必须提供目标设备IP");
+			if (version == SnmpVersion.V3) {
+				if (securityLevel == null || securityUser == null)
+					throw new IllegalArgumentException("SNMPV3参数必须提供securityLevel与securityUser");
+				if (securityLevel != SecurityLevel.noAuthNoPriv) {
+					if (authProtocol == null || authPassword == null)
+						throw new IllegalArgumentException("SNMPV3 authNoPriv验证级别必须提供authProtocol与authPassword");
+					if (securityLevel != SecurityLevel.authNoPriv && (privProtocol == null || privPassword == null))
+						throw new IllegalArgumentException("SNMPV3 authPriv验证级别必须提供privProtocol与privPassword");
+				}
+			}
+			return intern(new SnmpTargetSpec(this));
+		}
+	}
+}
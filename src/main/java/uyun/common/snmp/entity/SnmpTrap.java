@@ -0,0 +1,142 @@
+package uyun.common.snmp.entity;
+
+/**
+ * 接收到的一个Trap或Inform
+ * <p>
+ * 不论是v1还是v2c、v3的Trap，都统一转换为v2c形式表示：trapOid为snmpTrapOID.0的值，uptime为sysUpTime.0的值，
+ * varBinds为除去这两个头部变量之外的其它变量。v1 Trap的转换规则见RFC3584 3.1节。
+ */
+public class SnmpTrap {
+	private final String source;
+	private final int port;
+	private final SnmpVersion version;
+	private final String securityName;
+	private final SnmpOID trapOid;
+	private final long uptime;
+	private final SnmpVarBind[] varBinds;
+	private final boolean inform;
+	private final long receivedTime;
+	private String agentAddress;
+
+	public SnmpTrap(String source, int port, SnmpVersion version, String securityName, SnmpOID trapOid, long uptime,
+					SnmpVarBind[] varBinds, boolean inform, long receivedTime) {
+		this.source = source;
+		this.port = port;
+		this.version = version;
+		this.securityName = securityName;
+		this.trapOid = trapOid;
+		this.uptime = uptime;
+		this.varBinds = varBinds;
+		this.inform = inform;
+		this.receivedTime = receivedTime;
+	}
+
+	/**
+	 * 发送方IP地址，即UDP包的源地址
+	 *
+	 * @return
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * 发送方UDP端口
+	 *
+	 * @return
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	public SnmpVersion getVersion() {
+		return version;
+	}
+
+	/**
+	 * v1、v2c时为community，v3时为securityName
+	 *
+	 * @return
+	 */
+	public String getSecurityName() {
+		return securityName;
+	}
+
+	/**
+	 * Trap类型OID，即snmpTrapOID.0的值，如linkDown为.1.3.6.1.6.3.1.1.5.3
+	 *
+	 * @return
+	 */
+	public SnmpOID getTrapOid() {
+		return trapOid;
+	}
+
+	/**
+	 * 发送方的sysUpTime，单位1/100秒，未携带时为-1
+	 *
+	 * @return
+	 */
+	public long getUptime() {
+		return uptime;
+	}
+
+	/**
+	 * Trap所携带的变量，不包含sysUpTime.0与snmpTrapOID.0
+	 *
+	 * @return
+	 */
+	public SnmpVarBind[] getVarBinds() {
+		return varBinds;
+	}
+
+	/**
+	 * 查找指定OID子树下的第一个变量，如getVarBind(ifIndex)返回ifIndex.N
+	 *
+	 * @param oid 变量OID或其父OID
+	 * @return 找不到时返回null
+	 */
+	public SnmpVarBind getVarBind(SnmpOID oid) {
+		for (SnmpVarBind varBind : varBinds) {
+			if (oid.equals(varBind.getOid()) || oid.isChild(varBind.getOid()))
+				return varBind;
+		}
+		return null;
+	}
+
+	/**
+	 * 是否为Inform
+	 *
+	 * @return
+	 */
+	public boolean isInform() {
+		return inform;
+	}
+
+	/**
+	 * 本地接收时间，单位毫秒
+	 *
+	 * @return
+	 */
+	public long getReceivedTime() {
+		return receivedTime;
+	}
+
+	/**
+	 * v1 Trap中的agent-addr字段，其它版本为null
+	 *
+	 * @return
+	 */
+	public String getAgentAddress() {
+		return agentAddress;
+	}
+
+	public void setAgentAddress(String agentAddress) {
+		this.agentAddress = agentAddress;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("trap[source: %s ver: %s oid: %s uptime: %d varbinds: %d]", source, version, trapOid,
+				uptime, varBinds.length);
+	}
+}
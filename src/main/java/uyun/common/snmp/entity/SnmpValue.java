@@ -13,6 +13,9 @@ import org.snmp4j.smi.Opaque;
 import org.snmp4j.smi.TimeTicks;
 import org.snmp4j.smi.UnsignedInteger32;
 import org.snmp4j.smi.Variable;
+import uyun.common.snmp.util.StringPool;
+
+import java.nio.charset.Charset;
 
 /**
  * 封装snmp值对象，避免直接处理各种snmp数据类型
@@ -34,6 +37,8 @@ public class SnmpValue {
 	public static final int TYPE_OID = 12;
 
 	private Variable value;
+	private Charset charset;
+	private String text;
 
 	/**
 	 * 从snmp4j的variable构造一个值对象
@@ -44,6 +49,17 @@ public class SnmpValue {
 		this.value = variable;
 	}
 
+	/**
+	 * 从snmp4j的variable构造一个值对象，并指定toText时OctetString所使用的字符集
+	 *
+	 * @param variable
+	 * @param charset  字符集，为null时使用平台默认字符集
+	 */
+	public SnmpValue(Variable variable, Charset charset) {
+		this.value = variable;
+		this.charset = charset;
+	}
+
 	public SnmpValue() {
 	}
 
@@ -59,6 +75,15 @@ public class SnmpValue {
 			return value.toString();
 	}
 
+	/**
+	 * 获得snmp4j的variable对象
+	 *
+	 * @return 值为空时返回null
+	 */
+	public Variable variable() {
+		return value;
+	}
+
 	public SnmpOID toOid() {
 		if (value instanceof OID)
 			return new SnmpOID((OID) value);
@@ -102,20 +127,59 @@ public class SnmpValue {
 	 * 2.如果你的oid值为mac地址，就一定使用toString
 	 * 3.如果你的oid值为ip地址，就一定使用toIP
 	 * 4.如果你的oid值为其它数据，视情况，可使用toString或getBytes
+	 * <p>
+	 * 文本使用采集参数中指定的字符集解码（见SnmpTarget.setCharset），只在首次调用时解码一次。
+	 * 需要长期保存ifDescr等大量重复的文本时，使用{@link #toInternedText()}。
 	 *
 	 * @return 返回转换后的文本
 	 * @throws IllegalArgumentException 如果值非OctetString类型，则弹出此异常
 	 */
 	public String toText() throws IllegalArgumentException {
+		if (text == null)
+			text = decode(charset);
+		return text;
+	}
+
+	/**
+	 * 返回toText的共享实例，相同内容的文本在不同行、不同设备间共享同一个字符串实例
+	 * <p>
+	 * 驻留需要经过StringPool的分段锁并占用一个弱引用条目，只应用于大量重复且需要长期保存的文本，
+	 * 序列号、sysUpTime等一次性的文本使用toText即可。
+	 *
+	 * @return 返回转换后的文本
+	 * @throws IllegalArgumentException 如果值非OctetString类型，则弹出此异常
+	 */
+	public String toInternedText() throws IllegalArgumentException {
+		text = StringPool.getInstance().intern(toText());
+		return text;
+	}
+
+	/**
+	 * 使用指定的字符集返回OctetString的文本表示，其它规则见{@link #toText()}
+	 *
+	 * @param charsetName 字符集名称，如GBK、UTF-8
+	 * @return 返回转换后的文本
+	 * @throws IllegalArgumentException 如果字符集不存在，则弹出此异常
+	 */
+	public String toText(String charsetName) throws IllegalArgumentException {
+		Charset cs = Charset.forName(charsetName);
+		if (cs.equals(charset))
+			return toText();
+		return decode(cs);
+	}
+
+	private String decode(Charset cs) {
 		if (value instanceof OctetString) {
 			byte[] datas = ((OctetString) value).getValue();
 			if (datas.length == 0)
-				return new String("");
+				return "";
 
 			int len = datas.length;
 			if (datas[datas.length - 1] == 0)
 				len = len - 1;
-			return new String(datas, 0, len);
+			if (cs == null)
+				return new String(datas, 0, len);
+			return new String(datas, 0, len, cs);
 		} else
 			return value.toString();
 	}
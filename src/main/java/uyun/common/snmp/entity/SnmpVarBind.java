@@ -3,6 +3,8 @@ package uyun.common.snmp.entity;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.Variable;
 
+import java.nio.charset.Charset;
+
 /**
  * 成对的保存oid与snmp值，方便get、walk等方法返回
  */
@@ -21,6 +23,18 @@ public class SnmpVarBind {
 		this.value = new SnmpValue(variable);
 	}
 
+	/**
+	 * 根据snmp4j的oid与variable构建一个结果，并指定文本值解码所使用的字符集
+	 *
+	 * @param oid      snmp4j的oid
+	 * @param variable snmp4j的variable
+	 * @param charset  字符集，为null时使用平台默认字符集
+	 */
+	public SnmpVarBind(OID oid, Variable variable, Charset charset) {
+		this.oid = new SnmpOID(oid);
+		this.value = new SnmpValue(variable, charset);
+	}
+
 	/**
 	 * 通过SnmpOID构造一个结果，但值为null
 	 *
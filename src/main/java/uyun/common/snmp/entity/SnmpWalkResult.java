@@ -6,14 +6,20 @@ package uyun.common.snmp.entity;
 public class SnmpWalkResult<T> {
 	private State state;
 	private T data;
+	private SnmpWalkToken token;
 
 	public SnmpWalkResult(T data) {
 		this(State.OK, data);
 	}
 
 	public SnmpWalkResult(State state, T data) {
+		this(state, data, null);
+	}
+
+	public SnmpWalkResult(State state, T data, SnmpWalkToken token) {
 		this.state = state;
 		this.data = data;
+		this.token = token;
 	}
 
 	/**
@@ -32,6 +38,14 @@ public class SnmpWalkResult<T> {
 		return data;
 	}
 
+	/**
+	 * 续传令牌，未完整结束时用于从中断处继续walk
+	 * @return 采集正常完成时返回null
+	 */
+	public SnmpWalkToken getToken() {
+		return token;
+	}
+
 	/**
 	 * 采集状态
 	 */
@@ -41,7 +55,7 @@ public class SnmpWalkResult<T> {
 		 */
 		OK,
 		/**
-		 * 采集超时
+		 * 采集超时，包括超出请求参数的超时，以及已取得部分结果后设备不再应答
 		 */
 		OVERTIME,
 		/**
@@ -0,0 +1,190 @@
+package uyun.common.snmp.entity;
+
+/**
+ * walk的续传令牌
+ * <p>
+ * walk或walkTable因超时或超出最大数量而未完整结束时，结果中带有此令牌，记录walk的根oid（或列）、
+ * 最后取得的oid（或行索引）与已取得的数量。将令牌传给Snmp.walk或Snmp.walkTable的续传重载，
+ * 即从中断处继续，从而可以把很大的walk分为多段，在多个采集周期中完成。
+ * <p>
+ * 令牌同时记录最后取得的oid已连续重复的次数，续传时继续累计，使不断返回同一oid的设备在分段walk中同样能结束。
+ * <p>
+ * 令牌可以通过toString保存为文本，再通过parse恢复。
+ */
+public class SnmpWalkToken {
+	private static final String KIND_WALK = "walk";
+	private static final String KIND_TABLE = "table";
+
+	private final boolean table;
+	private final SnmpOID[] roots;
+	private final SnmpOID last;
+	private final int count;
+	private final int slices;
+	private final int repeats;
+
+	private SnmpWalkToken(boolean table, SnmpOID[] roots, SnmpOID last, int count, int slices, int repeats) {
+		this.table = table;
+		this.roots = roots;
+		this.last = last;
+		this.count = count;
+		this.slices = slices;
+		this.repeats = repeats;
+	}
+
+	/**
+	 * 建立walk的续传令牌
+	 *
+	 * @param root   walk的根oid
+	 * @param last   最后取得的oid，下次从其后继续
+	 * @param count  已取得的变量数
+	 * @param slices 已完成的分段数
+	 * @return
+	 */
+	public static SnmpWalkToken walk(SnmpOID root, SnmpOID last, int count, int slices) {
+		return walk(root, last, count, slices, 0);
+	}
+
+	/**
+	 * 建立walk的续传令牌
+	 *
+	 * @param root    walk的根oid
+	 * @param last    最后取得的oid，下次从其后继续
+	 * @param count   已取得的变量数
+	 * @param slices  已完成的分段数
+	 * @param repeats 设备连续重复返回last的次数
+	 * @return
+	 */
+	public static SnmpWalkToken walk(SnmpOID root, SnmpOID last, int count, int slices, int repeats) {
+		return new SnmpWalkToken(false, new SnmpOID[]{root}, last, count, slices, repeats);
+	}
+
+	/**
+	 * 建立walkTable的续传令牌
+	 *
+	 * @param columns 表格的列
+	 * @param last    最后取得的行索引，下次从其后继续
+	 * @param count   已取得的行数
+	 * @param slices  已完成的分段数
+	 * @return
+	 */
+	public static SnmpWalkToken table(SnmpOID[] columns, SnmpOID last, int count, int slices) {
+		return new SnmpWalkToken(true, columns.clone(), last, count, slices, 0);
+	}
+
+	/**
+	 * 是否为walkTable的令牌
+	 *
+	 * @return
+	 */
+	public boolean isTable() {
+		return table;
+	}
+
+	/**
+	 * walk的根oid，walkTable的令牌弹出IllegalStateException
+	 *
+	 * @return
+	 */
+	public SnmpOID getRoot() {
+		if (table)
+			throw new IllegalStateException("walkTable的令牌没有根oid");
+		return roots[0];
+	}
+
+	/**
+	 * walkTable的列，walk的令牌弹出IllegalStateException
+	 *
+	 * @return
+	 */
+	public SnmpOID[] getColumns() {
+		if (!table)
+			throw new IllegalStateException("walk的令牌没有列");
+		return roots.clone();
+	}
+
+	/**
+	 * 最后取得的oid，walkTable的令牌为最后取得的行索引
+	 *
+	 * @return
+	 */
+	public SnmpOID getLast() {
+		return last;
+	}
+
+	/**
+	 * 从首段开始累计取得的变量数或行数
+	 *
+	 * @return
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * 从首段开始累计完成的分段数
+	 *
+	 * @return
+	 */
+	public int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * 设备连续重复返回最后取得的oid的次数
+	 *
+	 * @return
+	 */
+	public int getRepeats() {
+		return repeats;
+	}
+
+	/**
+	 * 返回可以通过parse恢复的文本形式，如walk|.1.3.6.1.2.1.2|.1.3.6.1.2.1.2.2.1.2.5|20|1|0
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(table ? KIND_TABLE : KIND_WALK).append('|');
+		for (int i = 0; i < roots.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(roots[i]);
+		}
+		return sb.append('|').append(last).append('|').append(count).append('|').append(slices).append('|').append(repeats).toString();
+	}
+
+	/**
+	 * 从toString的文本恢复令牌
+	 *
+	 * @param text
+	 * @return
+	 * @throws IllegalArgumentException 文本格式错误时弹出
+	 */
+	public static SnmpWalkToken parse(String text) throws IllegalArgumentException {
+		String[] parts = text.split("\\|", -1);
+		// 兼容没有重复次数的旧格式
+		if ((parts.length != 5 && parts.length != 6) || !(KIND_WALK.equals(parts[0]) || KIND_TABLE.equals(parts[0])))
+			throw new IllegalArgumentException("无效的walk令牌：" + text);
+		boolean table = KIND_TABLE.equals(parts[0]);
+		String[] items = parts[1].split(",");
+		if (!table && items.length != 1)
+			throw new IllegalArgumentException("无效的walk令牌：" + text);
+		SnmpOID[] roots = new SnmpOID[items.length];
+		try {
+			for (int i = 0; i < items.length; i++)
+				roots[i] = new SnmpOID(items[i]);
+			return new SnmpWalkToken(table, roots, new SnmpOID(parts[2]),
+					Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), parts.length == 6 ? Integer.parseInt(parts[5]) : 0);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("无效的walk令牌：" + text, e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof SnmpWalkToken && toString().equals(obj.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+}
@@ -28,6 +28,10 @@ public class SnmpException extends Exception {
 	 * SNMP V3相关的参数错误
 	 */
 	public static final int ERR_V3_PARAM_ERROR = 4;
+	/**
+	 * 超出设备的并发请求限制，等待队列已满或排队等待超时而被拒绝
+	 */
+	public static final int ERR_REJECTED = 5;
 	/**
 	 * SNMP采集到MIB结尾时的错误消息
 	 */
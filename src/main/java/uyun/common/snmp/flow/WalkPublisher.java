@@ -0,0 +1,284 @@
+package uyun.common.snmp.flow;
+
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkRequest;
+import uyun.common.snmp.entity.SnmpWalkResult;
+import uyun.common.snmp.entity.SnmpWalkToken;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.util.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以Flow.Publisher发布walk或walkTable的结果
+ * <p>
+ * 按订阅者的请求数分段walk：每段最多取得订阅者尚未满足的请求数（且不超过sliceSize）个结果，
+ * 之后在续传令牌处暂停，直到订阅者再次request才继续向设备发送请求。下游处理变慢时不再发送getNext，
+ * 也不在内存中缓存结果。各段沿用Snmp.walk、walkTable的处理，包括重复oid、endOfMibView与超时的判断，
+ * 重复oid的次数由续传令牌跨段累计。
+ * <p>
+ * 已发布部分结果后设备不再应答时，以OVERTIME状态调用onComplete，并保留续传令牌；尚未发布任何结果时超时调用onError。
+ * <p>
+ * SnmpWalkRequest的最大数量对整个walk生效；超时只计算向设备请求的时间，不包括等待订阅者request的时间。
+ * 每次subscribe都进行一次独立的walk。walk结束后，可以将onSubscribe收到的Subscription转换为
+ * {@link WalkSubscription}，取得结束状态与续传令牌。
+ *
+ * @param <T> SnmpVarBind或SnmpRow
+ */
+public abstract class WalkPublisher<T> implements Flow.Publisher<T> {
+	/**
+	 * 默认的每段最大结果数
+	 */
+	public static final int SLICE_SIZE_DEFAULT = 64;
+
+	private final SnmpTarget param;
+	private final SnmpWalkRequest request;
+	private final Executor executor;
+	private volatile int sliceSize = SLICE_SIZE_DEFAULT;
+
+	WalkPublisher(SnmpTarget param, SnmpWalkRequest request, Executor executor) {
+		this.param = param;
+		this.request = request;
+		this.executor = executor == null ? defaultExecutor() : executor;
+	}
+
+	/**
+	 * 发布root子树的walk结果
+	 *
+	 * @param param    SNMP基本访问参数
+	 * @param request  SNMPWALK请求参数
+	 * @param root     SNMPWALK的根OID
+	 * @param executor 执行walk的线程池，为null时使用默认线程池（支持时为虚拟线程）
+	 * @return
+	 */
+	public static WalkPublisher<SnmpVarBind> walk(SnmpTarget param, SnmpWalkRequest request, final SnmpOID root, Executor executor) {
+		return new WalkPublisher<SnmpVarBind>(param, request, executor) {
+			SnmpWalkResult<List<SnmpVarBind>> fetch(SnmpTarget param, SnmpWalkRequest slice, SnmpWalkToken token) throws SnmpException {
+				SnmpWalkResult<SnmpVarBind[]> result = token == null ? Snmp.walk(param, slice, root) : Snmp.walk(param, slice, token);
+				return new SnmpWalkResult<List<SnmpVarBind>>(result.getState(), Arrays.asList(result.getData()), result.getToken());
+			}
+
+			String describe() {
+				return root.toString();
+			}
+		};
+	}
+
+	/**
+	 * 发布columns指定表格的行
+	 *
+	 * @param param    snmp基本参数
+	 * @param request  walk请求参数
+	 * @param columns  walk表格请求列OID
+	 * @param executor 执行walk的线程池，为null时使用默认线程池（支持时为虚拟线程）
+	 * @return
+	 */
+	public static WalkPublisher<SnmpRow> walkTable(SnmpTarget param, SnmpWalkRequest request, final SnmpOID[] columns, Executor executor) {
+		return new WalkPublisher<SnmpRow>(param, request, executor) {
+			SnmpWalkResult<List<SnmpRow>> fetch(SnmpTarget param, SnmpWalkRequest slice, SnmpWalkToken token) throws SnmpException {
+				SnmpWalkResult<SnmpTable> result = token == null ? Snmp.walkTable(param, slice, columns) : Snmp.walkTable(param, slice, token);
+				return new SnmpWalkResult<List<SnmpRow>>(result.getState(), new ArrayList<SnmpRow>(result.getData().getRows()),
+						result.getToken());
+			}
+
+			String describe() {
+				return Arrays.toString(columns);
+			}
+		};
+	}
+
+	/**
+	 * 设置每段最大结果数，订阅者请求的数量很大时，walk仍按此大小分段发布
+	 *
+	 * @param sliceSize
+	 */
+	public void setSliceSize(int sliceSize) {
+		if (sliceSize <= 0)
+			throw new IllegalArgumentException("每段结果数必须大于0：" + sliceSize);
+		this.sliceSize = sliceSize;
+	}
+
+	/**
+	 * 取得一段结果
+	 *
+	 * @param token 为null时从头开始
+	 */
+	abstract SnmpWalkResult<List<T>> fetch(SnmpTarget param, SnmpWalkRequest slice, SnmpWalkToken token) throws SnmpException;
+
+	abstract String describe();
+
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("subscriber");
+		WalkSubscription subscription = new WalkSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	private static ExecutorService defaultExecutor() {
+		return DefaultExecutor.INSTANCE;
+	}
+
+	/**
+	 * 首次使用时才创建默认线程池
+	 */
+	private static class DefaultExecutor {
+		static final ExecutorService INSTANCE = Executors.newCachedThreadPool(VirtualThreads.factory("snmp-walk-publisher-"));
+	}
+
+	/**
+	 * 一次订阅，即一次walk
+	 * <p>
+	 * 对订阅者的调用都在executor的线程中串行进行。
+	 */
+	public class WalkSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile boolean done;
+		private volatile Throwable pendingError;
+		private volatile SnmpWalkResult.State state;
+		private volatile SnmpWalkToken token;
+		private long emitted;
+		private long elapsed;
+
+		WalkSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0)
+				pendingError = new IllegalArgumentException("request的数量必须大于0：" + n);
+			else {
+				while (true) {
+					long current = demand.get();
+					long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+					if (demand.compareAndSet(current, next))
+						break;
+				}
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * walk的结束状态
+		 *
+		 * @return 尚未结束、取消或出错时返回null
+		 */
+		public SnmpWalkResult.State getState() {
+			return state;
+		}
+
+		/**
+		 * 续传令牌，可以交给Snmp.walk或walkTable继续
+		 *
+		 * @return 正常完成时返回null
+		 */
+		public SnmpWalkToken getToken() {
+			return token;
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() != 0)
+				return;
+			try {
+				executor.execute(this);
+			} catch (RuntimeException e) {
+				done = true;
+				subscriber.onError(e);
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+			do {
+				drain();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void drain() {
+			while (!done && !cancelled) {
+				if (pendingError != null) {
+					done = true;
+					subscriber.onError(pendingError);
+					return;
+				}
+				long wanted = demand.get();
+				if (wanted <= 0)
+					return;
+
+				int size = (int) Math.min(wanted, sliceSize);
+				if (request.getMaxLength() > 0)
+					size = (int) Math.min(size, request.getMaxLength() - emitted);
+				int timeout = request.getTimeout() > 0 ? (int) (request.getTimeout() - elapsed) : 0;
+
+				SnmpWalkResult<List<T>> slice;
+				long start = System.currentTimeMillis();
+				try {
+					slice = fetch(param, new SnmpWalkRequest(size, timeout), token);
+				} catch (SnmpException e) {
+					// 与walk相同，已取得部分结果后超时以OVERTIME结束，保留当前令牌以便继续
+					if (e.getErrorCode() == SnmpException.ERR_TIMEOUT && emitted > 0)
+						complete(SnmpWalkResult.State.OVERTIME);
+					else {
+						done = true;
+						subscriber.onError(e);
+					}
+					return;
+				} catch (RuntimeException e) {
+					done = true;
+					subscriber.onError(e);
+					return;
+				} finally {
+					elapsed += System.currentTimeMillis() - start;
+				}
+
+				for (T item : slice.getData()) {
+					if (cancelled)
+						return;
+					emitted++;
+					if (demand.get() != Long.MAX_VALUE)
+						demand.decrementAndGet();
+					subscriber.onNext(item);
+				}
+				token = slice.getToken();
+				if (token == null)
+					complete(SnmpWalkResult.State.OK);
+				else if (request.getMaxLength() > 0 && emitted >= request.getMaxLength())
+					complete(SnmpWalkResult.State.EXCEED);
+				else if (slice.getState() == SnmpWalkResult.State.OVERTIME
+						|| (request.getTimeout() > 0 && elapsed >= request.getTimeout()))
+					complete(SnmpWalkResult.State.OVERTIME);
+			}
+		}
+
+		private void complete(SnmpWalkResult.State state) {
+			this.state = state;
+			done = true;
+			if (!cancelled)
+				subscriber.onComplete();
+		}
+
+		public String toString() {
+			return param.getIp() + " " + describe() + " emitted: " + emitted;
+		}
+	}
+}
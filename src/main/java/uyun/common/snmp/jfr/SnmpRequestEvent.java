@@ -0,0 +1,68 @@
+package uyun.common.snmp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 单个SNMP请求的JFR事件，由Snmp.send发出
+ * <p>
+ * 事件时长为请求本身的耗时（包括snmp4j内部重试），不包括SpeedController中的等待，等待时间见queueWait，
+ * 包括等待设备并发许可与限速间隔的时间。
+ * 未开启JFR记录时，shouldCommit返回false，不会填充任何字段。
+ */
+@Name("uyun.snmp.Request")
+@Label("SNMP Request")
+@Category({"SNMP"})
+@Description("SNMP request sent by Snmp.send")
+@StackTrace(false)
+public class SnmpRequestEvent extends jdk.jfr.Event {
+	@Label("Target")
+	private String target;
+
+	@Label("PDU Type")
+	private String pduType;
+
+	@Label("VarBind Count")
+	private int varBinds;
+
+	@Label("Queue Wait")
+	@Description("Time spent waiting for a concurrency permit and the rate limit in SpeedController before sending")
+	@Timespan(Timespan.NANOSECONDS)
+	private long queueWait;
+
+	@Label("RTT")
+	@Timespan(Timespan.NANOSECONDS)
+	private long rtt;
+
+	@Label("Retries")
+	@Description("Retransmissions actually sent by SNMP4J for this request")
+	private int retries;
+
+	@Label("Outcome")
+	private String outcome;
+
+	/**
+	 * 填充事件字段
+	 *
+	 * @param target    设备IP
+	 * @param pduType   PDU类型名称
+	 * @param varBinds  请求的变量数量
+	 * @param queueWait 等待并发许可与限速的时间，单位纳秒
+	 * @param rtt       请求耗时，单位纳秒
+	 * @param retries   实际发送的重试次数
+	 * @param outcome   请求结果
+	 */
+	public void set(String target, String pduType, int varBinds, long queueWait, long rtt, int retries, String outcome) {
+		this.target = target;
+		this.pduType = pduType;
+		this.varBinds = varBinds;
+		this.queueWait = queueWait;
+		this.rtt = rtt;
+		this.retries = retries;
+		this.outcome = outcome;
+	}
+}
@@ -0,0 +1,52 @@
+package uyun.common.snmp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * walk与walkTable操作的JFR事件，事件时长为整个操作的耗时
+ */
+@Name("uyun.snmp.Walk")
+@Label("SNMP Walk")
+@Category({"SNMP"})
+@Description("SNMP walk or table walk performed by Snmp.walk/walkTable")
+@StackTrace(false)
+public class SnmpWalkEvent extends jdk.jfr.Event {
+	@Label("Target")
+	private String target;
+
+	@Label("Operation")
+	@Description("walk or walkTable")
+	private String operation;
+
+	@Label("Root")
+	@Description("Root OID of a walk, or the column OIDs of a table walk")
+	private String root;
+
+	@Label("Row Count")
+	private int rows;
+
+	@Label("State")
+	@Description("SnmpWalkResult.State, or ERROR if the walk failed")
+	private String state;
+
+	/**
+	 * 填充事件字段
+	 *
+	 * @param target    设备IP
+	 * @param operation walk或walkTable
+	 * @param root      walk根OID，或walkTable的列OID
+	 * @param rows      采集到的行数，walk为变量数量
+	 * @param state     SnmpWalkResult.State名称，失败时为ERROR
+	 */
+	public void set(String target, String operation, String root, int rows, String state) {
+		this.target = target;
+		this.operation = operation;
+		this.root = root;
+		this.rows = rows;
+		this.state = state;
+	}
+}
@@ -0,0 +1,248 @@
+package uyun.common.snmp.metrics;
+
+import org.snmp4j.PDU;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 内置的SNMP指标实现
+ * <p>
+ * 按设备与PDU类型记录请求结果计数与延迟直方图，同时维护全部设备的汇总。所有记录均为无锁的原子操作。
+ * 可通过getTotals、getDevice读取，也可通过registerMBean注册到JMX。
+ */
+public class DefaultSnmpMetrics implements SnmpMetrics, SnmpMetricsMXBean {
+	/**
+	 * 默认的JMX对象名
+	 */
+	public static final String OBJECT_NAME_DEFAULT = "uyun.common.snmp:type=SnmpMetrics";
+	private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+	private final DeviceMetrics totals = new DeviceMetrics("*");
+	private final ConcurrentMap<String, DeviceMetrics> devices = new ConcurrentHashMap<String, DeviceMetrics>();
+	private ObjectName objectName;
+
+	public void onRequest(String device, int pduType, Outcome outcome, long latencyNanos) {
+		totals.onRequest(pduType, outcome, latencyNanos);
+		device(device).onRequest(pduType, outcome, latencyNanos);
+	}
+
+	public void onRetry(String device) {
+		totals.onRetry();
+		device(device).onRetry();
+	}
+
+	public void onBatchFallback(String device, int pduType) {
+		totals.onBatchFallback();
+		device(device).onBatchFallback();
+	}
+
+	public void onThrottle(String device, long waitNanos) {
+		totals.onThrottle(waitNanos);
+		device(device).onThrottle(waitNanos);
+	}
+
+	private DeviceMetrics device(String device) {
+		DeviceMetrics metrics = devices.get(device);
+		if (metrics == null) {
+			DeviceMetrics created = new DeviceMetrics(device);
+			metrics = devices.putIfAbsent(device, created);
+			if (metrics == null)
+				metrics = created;
+		}
+		return metrics;
+	}
+
+	/**
+	 * 返回全部设备的汇总指标
+	 *
+	 * @return
+	 */
+	public DeviceMetrics getTotals() {
+		return totals;
+	}
+
+	/**
+	 * 返回单个设备的指标
+	 *
+	 * @param device 设备IP
+	 * @return 不存在时返回null
+	 */
+	public DeviceMetrics getDevice(String device) {
+		return devices.get(device);
+	}
+
+	/**
+	 * 返回所有设备的指标
+	 *
+	 * @return
+	 */
+	public Collection<DeviceMetrics> getDeviceMetrics() {
+		return Collections.unmodifiableCollection(devices.values());
+	}
+
+	/**
+	 * 删除单个设备的指标，用于设备下线后释放内存
+	 *
+	 * @param device 设备IP
+	 */
+	public void removeDevice(String device) {
+		devices.remove(device);
+	}
+
+	/**
+	 * 以默认对象名注册到平台MBeanServer
+	 *
+	 * @throws JMException
+	 */
+	public void registerMBean() throws JMException {
+		registerMBean(OBJECT_NAME_DEFAULT);
+	}
+
+	/**
+	 * 注册到平台MBeanServer，已存在同名对象时替换
+	 *
+	 * @param name JMX对象名
+	 * @throws JMException
+	 */
+	public synchronized void registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(name);
+		try {
+			server.registerMBean(this, objectName);
+		} catch (InstanceAlreadyExistsException e) {
+			server.unregisterMBean(objectName);
+			server.registerMBean(this, objectName);
+		}
+		this.objectName = objectName;
+	}
+
+	/**
+	 * 从平台MBeanServer注销
+	 *
+	 * @throws JMException
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (InstanceNotFoundException e) {
+			// 已被注销
+		}
+		objectName = null;
+	}
+
+	public long getRequestCount() {
+		long count = 0;
+		for (OperationMetrics operation : totals.getOperations())
+			count += operation.getTotal();
+		return count;
+	}
+
+	public long getTimeoutCount() {
+		return countOf(Outcome.TIMEOUT);
+	}
+
+	public long getErrorCount() {
+		return countOf(Outcome.ERROR_STATUS) + countOf(Outcome.V3_PARAM_ERROR) + countOf(Outcome.IO_ERROR)
+				+ countOf(Outcome.UNKNOWN);
+	}
+
+	private long countOf(Outcome outcome) {
+		long count = 0;
+		for (OperationMetrics operation : totals.getOperations())
+			count += operation.getCount(outcome);
+		return count;
+	}
+
+	public long getRetryCount() {
+		return totals.getRetries();
+	}
+
+	public long getBatchFallbackCount() {
+		return totals.getBatchFallbacks();
+	}
+
+	public long getThrottleCount() {
+		return totals.getThrottled();
+	}
+
+	public double getThrottleWaitMillis() {
+		return totals.getThrottleNanos() / 1000000.0;
+	}
+
+	public Map<String, Long> getRequestCountByOperation() {
+		return counts(totals);
+	}
+
+	public Map<String, Double> getLatencyMillis() {
+		return latency(totals);
+	}
+
+	public String[] getDevices() {
+		return devices.keySet().toArray(new String[0]);
+	}
+
+	public Map<String, Long> getDeviceCounts(String device) {
+		DeviceMetrics metrics = devices.get(device);
+		if (metrics == null)
+			return Collections.emptyMap();
+		Map<String, Long> result = counts(metrics);
+		result.put("retries", metrics.getRetries());
+		result.put("batchFallbacks", metrics.getBatchFallbacks());
+		result.put("throttled", metrics.getThrottled());
+		return result;
+	}
+
+	public Map<String, Double> getDeviceLatencyMillis(String device) {
+		DeviceMetrics metrics = devices.get(device);
+		if (metrics == null)
+			return Collections.emptyMap();
+		return latency(metrics);
+	}
+
+	/**
+	 * 清空所有指标
+	 */
+	public void reset() {
+		totals.reset();
+		devices.clear();
+	}
+
+	private static Map<String, Long> counts(DeviceMetrics metrics) {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (OperationMetrics operation : metrics.getOperations()) {
+			String type = PDU.getTypeString(operation.getPduType());
+			for (Outcome outcome : Outcome.values()) {
+				long count = operation.getCount(outcome);
+				if (count > 0)
+					result.put(type + "." + outcome.name(), count);
+			}
+		}
+		return result;
+	}
+
+	private static Map<String, Double> latency(DeviceMetrics metrics) {
+		Map<String, Double> result = new TreeMap<String, Double>();
+		for (OperationMetrics operation : metrics.getOperations()) {
+			String type = PDU.getTypeString(operation.getPduType());
+			LatencyHistogram histogram = operation.getLatency();
+			result.put(type + ".mean", histogram.getMean() / 1000);
+			for (double percentile : PERCENTILES)
+				result.put(type + ".p" + (int) Math.round(percentile * 100), histogram.getPercentile(percentile) / 1000.0);
+			result.put(type + ".max", histogram.getMax() / 1000.0);
+		}
+		return result;
+	}
+}
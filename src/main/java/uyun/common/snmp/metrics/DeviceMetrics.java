@@ -0,0 +1,131 @@
+package uyun.common.snmp.metrics;
+
+import org.snmp4j.PDU;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 单个设备（或全部设备汇总）的指标
+ */
+public class DeviceMetrics {
+	/**
+	 * PDU类型的取值范围为PDU.GET(-96)至PDU.REPORT(-88)
+	 */
+	private static final int PDU_TYPE_BASE = PDU.GET;
+	private static final int PDU_TYPE_COUNT = PDU.REPORT - PDU.GET + 1;
+
+	private final String device;
+	private final AtomicReferenceArray<OperationMetrics> operations = new AtomicReferenceArray<OperationMetrics>(PDU_TYPE_COUNT + 1);
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong batchFallbacks = new AtomicLong();
+	private final AtomicLong throttled = new AtomicLong();
+	private final AtomicLong throttleNanos = new AtomicLong();
+
+	DeviceMetrics(String device) {
+		this.device = device;
+	}
+
+	/**
+	 * @return 设备IP，汇总指标为"*"
+	 */
+	public String getDevice() {
+		return device;
+	}
+
+	void onRequest(int pduType, SnmpMetrics.Outcome outcome, long latencyNanos) {
+		operation(pduType, true).record(outcome, latencyNanos);
+	}
+
+	void onRetry() {
+		retries.incrementAndGet();
+	}
+
+	void onBatchFallback() {
+		batchFallbacks.incrementAndGet();
+	}
+
+	void onThrottle(long waitNanos) {
+		throttled.incrementAndGet();
+		throttleNanos.addAndGet(waitNanos);
+	}
+
+	/**
+	 * 返回指定PDU类型的请求指标
+	 *
+	 * @param pduType PDU类型，见org.snmp4j.PDU中的常量
+	 * @return 没有该类型的请求时返回null
+	 */
+	public OperationMetrics getOperation(int pduType) {
+		return operation(pduType, false);
+	}
+
+	/**
+	 * 返回所有有请求的PDU类型的指标
+	 *
+	 * @return
+	 */
+	public List<OperationMetrics> getOperations() {
+		List<OperationMetrics> result = new ArrayList<OperationMetrics>();
+		for (int i = 0; i < operations.length(); i++) {
+			OperationMetrics metrics = operations.get(i);
+			if (metrics != null)
+				result.add(metrics);
+		}
+		return result;
+	}
+
+	private OperationMetrics operation(int pduType, boolean create) {
+		int slot = pduType - PDU_TYPE_BASE;
+		if (slot < 0 || slot >= PDU_TYPE_COUNT)
+			slot = PDU_TYPE_COUNT;
+		OperationMetrics metrics = operations.get(slot);
+		if (metrics == null && create) {
+			operations.compareAndSet(slot, null, new OperationMetrics(pduType));
+			metrics = operations.get(slot);
+		}
+		return metrics;
+	}
+
+	/**
+	 * @return snmp4j重试次数
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return 批量请求降级为逐个请求的次数
+	 */
+	public long getBatchFallbacks() {
+		return batchFallbacks.get();
+	}
+
+	/**
+	 * @return 在SpeedController中等待的请求数量
+	 */
+	public long getThrottled() {
+		return throttled.get();
+	}
+
+	/**
+	 * @return 在SpeedController中等待的总时间，单位纳秒
+	 */
+	public long getThrottleNanos() {
+		return throttleNanos.get();
+	}
+
+	void reset() {
+		for (int i = 0; i < operations.length(); i++) {
+			OperationMetrics metrics = operations.get(i);
+			if (metrics != null)
+				metrics.reset();
+		}
+		retries.set(0);
+		batchFallbacks.set(0);
+		throttled.set(0);
+		throttleNanos.set(0);
+	}
+}
@@ -0,0 +1,115 @@
+package uyun.common.snmp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的对数分桶延迟直方图
+ * <p>
+ * 以微秒为单位，每个2的幂区间再分为2个桶，共64个桶，覆盖1微秒至约35分钟，分位值取桶上界，最多比实际值高50%。
+ * 记录只需一次数组原子自增与两次原子累加，适合在每个请求上调用。
+ */
+public class LatencyHistogram {
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * 记录一个延迟
+	 *
+	 * @param nanos 单位纳秒
+	 */
+	public void record(long nanos) {
+		long micros = nanos / 1000;
+		buckets.incrementAndGet(index(micros));
+		sum.addAndGet(micros);
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros))
+			current = max.get();
+	}
+
+	/**
+	 * 返回记录的数量
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			count += buckets.get(i);
+		return count;
+	}
+
+	/**
+	 * 返回平均延迟
+	 *
+	 * @return 单位微秒，没有记录时为0
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : (double) sum.get() / count;
+	}
+
+	/**
+	 * 返回最大延迟
+	 *
+	 * @return 单位微秒
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * 返回指定分位的延迟，取所在桶的上界
+	 *
+	 * @param quantile 分位，0至1之间，如0.99
+	 * @return 单位微秒，没有记录时为0
+	 */
+	public long getPercentile(double quantile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(upperBound(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * 清空记录
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets.set(i, 0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int index(long micros) {
+		if (micros < 2)
+			return micros <= 0 ? 0 : 1;
+		int log = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) ((micros >>> (log - 1)) & 1);
+		return Math.min(BUCKETS - 1, 2 * log + sub);
+	}
+
+	static long upperBound(int index) {
+		if (index <= 1)
+			return index;
+		int log = index / 2;
+		long half = 1L << (log - 1);
+		return (1L << log) + (index % 2 + 1) * half - 1;
+	}
+}
@@ -0,0 +1,20 @@
+package uyun.common.snmp.metrics;
+
+/**
+ * 不记录任何指标的默认实现
+ */
+public class NoopSnmpMetrics implements SnmpMetrics {
+	public static final NoopSnmpMetrics INSTANCE = new NoopSnmpMetrics();
+
+	public void onRequest(String device, int pduType, Outcome outcome, long latencyNanos) {
+	}
+
+	public void onRetry(String device) {
+	}
+
+	public void onBatchFallback(String device, int pduType) {
+	}
+
+	public void onThrottle(String device, long waitNanos) {
+	}
+}
@@ -0,0 +1,65 @@
+package uyun.common.snmp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一种PDU类型的请求指标：按结果计数与延迟直方图
+ */
+public class OperationMetrics {
+	private final int pduType;
+	private final AtomicLongArray outcomes = new AtomicLongArray(SnmpMetrics.Outcome.values().length);
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	OperationMetrics(int pduType) {
+		this.pduType = pduType;
+	}
+
+	void record(SnmpMetrics.Outcome outcome, long latencyNanos) {
+		outcomes.incrementAndGet(outcome.ordinal());
+		latency.record(latencyNanos);
+	}
+
+	/**
+	 * @return PDU类型，见org.snmp4j.PDU中的常量
+	 */
+	public int getPduType() {
+		return pduType;
+	}
+
+	/**
+	 * 返回指定结果的请求数量
+	 *
+	 * @param outcome
+	 * @return
+	 */
+	public long getCount(SnmpMetrics.Outcome outcome) {
+		return outcomes.get(outcome.ordinal());
+	}
+
+	/**
+	 * 返回请求总数
+	 *
+	 * @return
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (int i = 0; i < outcomes.length(); i++)
+			total += outcomes.get(i);
+		return total;
+	}
+
+	/**
+	 * 返回延迟直方图，包括所有结果的请求
+	 *
+	 * @return
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	void reset() {
+		for (int i = 0; i < outcomes.length(); i++)
+			outcomes.set(i, 0);
+		latency.reset();
+	}
+}
@@ -0,0 +1,73 @@
+package uyun.common.snmp.metrics;
+
+/**
+ * SNMP操作指标采集接口
+ * <p>
+ * 通过Snmp.setMetrics安装实现，Snmp在每个请求完成、snmp4j重试、批量请求降级为逐个请求、以及SpeedController限速等待时回调。
+ * 回调发生在采集线程或snmp4j的定时线程中，实现必须线程安全，且开销应尽量小，不得阻塞。
+ * 默认实现为NoopSnmpMetrics，内置实现见DefaultSnmpMetrics。
+ */
+public interface SnmpMetrics {
+	/**
+	 * 请求结果
+	 */
+	enum Outcome {
+		/**
+		 * 收到响应且errorStatus为0
+		 */
+		SUCCESS,
+		/**
+		 * 收到响应但errorStatus不为0
+		 */
+		ERROR_STATUS,
+		/**
+		 * 超时
+		 */
+		TIMEOUT,
+		/**
+		 * SNMPv3参数错误
+		 */
+		V3_PARAM_ERROR,
+		/**
+		 * IO通信错误
+		 */
+		IO_ERROR,
+		/**
+		 * 其它错误
+		 */
+		UNKNOWN
+	}
+
+	/**
+	 * 一个请求完成，包括snmp4j内部的重试
+	 *
+	 * @param device       设备IP
+	 * @param pduType      PDU类型，见org.snmp4j.PDU中的常量
+	 * @param outcome      请求结果
+	 * @param latencyNanos 请求耗时，单位纳秒，不包括限速等待时间
+	 */
+	void onRequest(String device, int pduType, Outcome outcome, long latencyNanos);
+
+	/**
+	 * snmp4j对一个请求进行了一次重试
+	 *
+	 * @param device 设备IP
+	 */
+	void onRetry(String device);
+
+	/**
+	 * 批量请求失败或返回数量不符，降级为逐个请求
+	 *
+	 * @param device  设备IP
+	 * @param pduType PDU类型
+	 */
+	void onBatchFallback(String device, int pduType);
+
+	/**
+	 * 请求在SpeedController中等待了发送间隔
+	 *
+	 * @param device    设备IP
+	 * @param waitNanos 等待时间，单位纳秒
+	 */
+	void onThrottle(String device, long waitNanos);
+}
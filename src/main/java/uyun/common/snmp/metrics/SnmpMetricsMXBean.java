@@ -0,0 +1,42 @@
+package uyun.common.snmp.metrics;
+
+import java.util.Map;
+
+/**
+ * DefaultSnmpMetrics的JMX接口，延迟单位均为毫秒
+ * <p>
+ * 按操作统计的键为"PDU类型.结果"，如"GET.SUCCESS"、"GETNEXT.TIMEOUT"；延迟的键为"PDU类型.统计项"，统计项为mean、p50、p90、p99、max。
+ */
+public interface SnmpMetricsMXBean {
+	long getRequestCount();
+
+	long getTimeoutCount();
+
+	long getErrorCount();
+
+	long getRetryCount();
+
+	long getBatchFallbackCount();
+
+	long getThrottleCount();
+
+	double getThrottleWaitMillis();
+
+	Map<String, Long> getRequestCountByOperation();
+
+	Map<String, Double> getLatencyMillis();
+
+	String[] getDevices();
+
+	/**
+	 * 返回单个设备的计数，除按操作统计的键外，另有retries、batchFallbacks、throttled
+	 *
+	 * @param device 设备IP
+	 * @return 设备不存在时返回空表
+	 */
+	Map<String, Long> getDeviceCounts(String device);
+
+	Map<String, Double> getDeviceLatencyMillis(String device);
+
+	void reset();
+}
@@ -0,0 +1,114 @@
+package uyun.common.snmp.poll;
+
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.error.SnmpException;
+
+/**
+ * 周期采集任务，由PollScheduler按interval周期执行
+ *
+ * @param <T> 采集结果类型
+ */
+public class PollJob<T> {
+	/**
+	 * 到了下一次采集的时间而上一次仍未完成时的处理方式
+	 */
+	public enum Overrun {
+		/**
+		 * 跳过本次采集
+		 */
+		SKIP,
+		/**
+		 * 上一次完成后立即补做一次，多次错过也只补做一次
+		 */
+		DELAY
+	}
+
+	private final String id;
+	private final SnmpTarget target;
+	private final long interval;
+	private final TargetTask<T> task;
+	private final PollListener<T> listener;
+	private Overrun overrun = Overrun.SKIP;
+
+	/**
+	 * @param id       任务标识，同一PollScheduler中唯一
+	 * @param target   设备访问参数
+	 * @param interval 采集周期，单位毫秒
+	 * @param task     采集任务
+	 * @param listener 结果回调
+	 */
+	public PollJob(String id, SnmpTarget target, long interval, TargetTask<T> task, PollListener<T> listener) {
+		if (interval <= 0)
+			throw new IllegalArgumentException("采集周期必须大于0：" + interval);
+		this.id = id;
+		this.target = target;
+		this.interval = interval;
+		this.task = task;
+		this.listener = listener;
+	}
+
+	/**
+	 * 周期get指定的oid
+	 */
+	public static PollJob<SnmpVarBind[]> get(String id, SnmpTarget target, long interval, final SnmpOID[] oids,
+	                                         PollListener<SnmpVarBind[]> listener) {
+		return new PollJob<SnmpVarBind[]>(id, target, interval, new TargetTask<SnmpVarBind[]>() {
+			public SnmpVarBind[] poll(SnmpTarget target) throws SnmpException {
+				return Snmp.get(target, oids);
+			}
+		}, listener);
+	}
+
+	/**
+	 * 周期获取columns指定的表格
+	 */
+	public static PollJob<SnmpTable> walkTable(String id, SnmpTarget target, long interval, final SnmpOID[] columns,
+	                                           PollListener<SnmpTable> listener) {
+		return new PollJob<SnmpTable>(id, target, interval, new TargetTask<SnmpTable>() {
+			public SnmpTable poll(SnmpTarget target) throws SnmpException {
+				return Snmp.walkTable(target, columns);
+			}
+		}, listener);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public SnmpTarget getTarget() {
+		return target;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public TargetTask<T> getTask() {
+		return task;
+	}
+
+	public PollListener<T> getListener() {
+		return listener;
+	}
+
+	public Overrun getOverrun() {
+		return overrun;
+	}
+
+	/**
+	 * 设置上一次采集未完成时的处理方式，默认为SKIP
+	 *
+	 * @param overrun
+	 */
+	public void setOverrun(Overrun overrun) {
+		this.overrun = overrun;
+	}
+
+	public String toString() {
+		return id + "[" + target.getIp() + ", " + interval + "ms]";
+	}
+}
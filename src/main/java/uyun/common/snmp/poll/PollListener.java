@@ -0,0 +1,24 @@
+package uyun.common.snmp.poll;
+
+/**
+ * 接收周期采集结果的回调，在执行采集的线程中调用
+ *
+ * @param <T> 采集结果类型
+ */
+public interface PollListener<T> {
+	/**
+	 * 一次采集完成，成功或失败见outcome
+	 *
+	 * @param job
+	 * @param outcome
+	 */
+	void onResult(PollJob<T> job, PollOutcome<T> outcome);
+
+	/**
+	 * 到了下一次采集的时间，上一次采集仍未完成
+	 *
+	 * @param job
+	 * @param running 上一次采集已进行的时间，单位毫秒
+	 */
+	void onOverrun(PollJob<T> job, long running);
+}
@@ -0,0 +1,57 @@
+package uyun.common.snmp.poll;
+
+import uyun.common.snmp.entity.SnmpTarget;
+
+/**
+ * 一个设备的采集结果，成功时带有结果，失败时带有异常
+ *
+ * @param <T> 采集结果类型
+ */
+public class PollOutcome<T> {
+	private final SnmpTarget target;
+	private final T result;
+	private final Exception error;
+	private final long elapsed;
+
+	PollOutcome(SnmpTarget target, T result, Exception error, long elapsed) {
+		this.target = target;
+		this.result = result;
+		this.error = error;
+		this.elapsed = elapsed;
+	}
+
+	public SnmpTarget getTarget() {
+		return target;
+	}
+
+	/**
+	 * 采集结果
+	 *
+	 * @return 采集失败时返回null
+	 */
+	public T getResult() {
+		return result;
+	}
+
+	/**
+	 * 采集失败的原因，通常为SnmpException，任务弹出的运行时异常也在这里返回
+	 *
+	 * @return 采集成功时返回null
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	/**
+	 * 采集耗时，单位毫秒
+	 *
+	 * @return
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+}
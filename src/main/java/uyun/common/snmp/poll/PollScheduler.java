@@ -0,0 +1,370 @@
+package uyun.common.snmp.poll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uyun.common.snmp.error.ErrorUtil;
+import uyun.common.snmp.util.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 周期采集调度器
+ * <p>
+ * 使用时间轮调度：一个线程每tick推进一格，到期的任务交给执行线程池（默认为虚拟线程）执行。
+ * 同一周期的任务按加入顺序以黄金分割序列错开相位，任意数量的任务都均匀分布在周期内。
+ * 序列从每个调度器随机选取的起点开始，第一个任务也不在整周期的时钟边界上，
+ * 相位相对于时钟边界固定，不会集中在整分钟发包。每次执行时间还可以加上随机抖动。
+ * <p>
+ * 任务按固定频率执行，到期时上一次仍未完成的，视为超时运行，通知PollListener.onOverrun，并按PollJob.Overrun跳过或补做。
+ */
+public class PollScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(PollScheduler.class);
+	/**
+	 * 默认的tick间隔，单位毫秒
+	 */
+	public static final long TICK_DEFAULT = 20;
+	/**
+	 * 默认的时间轮格数
+	 */
+	public static final int WHEEL_SIZE_DEFAULT = 1024;
+	private static final double GOLDEN_RATIO = 0.6180339887498949;
+
+	private final String name;
+	private final long tickNanos;
+	private final List<Entry<?>>[] wheel;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Executor executor;
+	private final boolean ownExecutor;
+	private final ConcurrentMap<String, Entry<?>> entries = new ConcurrentHashMap<String, Entry<?>>();
+	private final ConcurrentMap<Long, Phases> phases = new ConcurrentHashMap<Long, Phases>();
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong overruns = new AtomicLong();
+	private final Random random = new Random();
+	private volatile long jitter;
+	private final long startNanos = System.nanoTime();
+	// 当前已处理到的tick，只在持有lock时访问
+	private long currentTick;
+	private volatile Thread ticker;
+	private volatile boolean closed;
+
+	/**
+	 * 使用默认的tick间隔、时间轮格数与虚拟线程执行
+	 *
+	 * @param name 线程名前缀
+	 */
+	public PollScheduler(String name) {
+		this(name, TICK_DEFAULT, WHEEL_SIZE_DEFAULT, null);
+	}
+
+	/**
+	 * @param name      线程名前缀
+	 * @param tick      tick间隔，单位毫秒，即调度精度
+	 * @param wheelSize 时间轮格数，周期超过tick * wheelSize的任务在时间轮上多转几圈
+	 * @param executor  执行采集的线程池，为null时使用每个任务一个虚拟线程（不支持时为平台线程）的线程池，在close时关闭
+	 */
+	public PollScheduler(String name, long tick, int wheelSize, Executor executor) {
+		if (tick <= 0 || wheelSize <= 0)
+			throw new IllegalArgumentException("tick间隔与时间轮格数必须大于0");
+		this.name = name;
+		this.tickNanos = tick * 1000000L;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		List<Entry<?>>[] wheel = new List[wheelSize];
+		for (int i = 0; i < wheelSize; i++)
+			wheel[i] = new ArrayList<Entry<?>>();
+		this.wheel = wheel;
+		this.ownExecutor = executor == null;
+		this.executor = executor == null ? Executors.newCachedThreadPool(VirtualThreads.factory(name + "-")) : executor;
+	}
+
+	/**
+	 * 设置每次执行时间的随机抖动，实际执行时间在计划时间之后[0, jitter)毫秒内，默认为0
+	 *
+	 * @param jitter
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = Math.max(0, jitter);
+	}
+
+	/**
+	 * 启动调度线程
+	 */
+	public void start() {
+		lock.lock();
+		try {
+			if (ticker != null)
+				return;
+			if (closed)
+				throw new IllegalStateException("调度器已关闭：" + name);
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					tickLoop();
+				}
+			}, name + "-wheel");
+			thread.setDaemon(true);
+			ticker = thread;
+			thread.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 停止调度，正在执行的采集不受影响
+	 */
+	public void close() {
+		closed = true;
+		Thread thread = ticker;
+		if (thread != null)
+			LockSupport.unpark(thread);
+		if (ownExecutor)
+			((ExecutorService) executor).shutdown();
+	}
+
+	/**
+	 * 加入任务，已有相同id的任务时替换
+	 *
+	 * @param job
+	 */
+	public <T> void schedule(PollJob<T> job) {
+		if (closed)
+			throw new IllegalStateException("调度器已关闭：" + name);
+		long interval = job.getInterval();
+		Phases sequence = phases.get(interval);
+		if (sequence == null) {
+			Phases created = new Phases(random.nextDouble());
+			sequence = phases.putIfAbsent(interval, created);
+			if (sequence == null)
+				sequence = created;
+		}
+		double phase = sequence.start + sequence.next.getAndIncrement() * GOLDEN_RATIO;
+		long offset = (long) ((phase - Math.floor(phase)) * interval);
+
+		// 相位相对于整周期的时钟边界
+		long now = System.currentTimeMillis();
+		long due = now - now % interval + offset;
+		if (due <= now)
+			due += interval;
+
+		Entry<T> entry = new Entry<T>(job, System.nanoTime() + (due - now) * 1000000L);
+		Entry<?> previous = entries.put(job.getId(), entry);
+		if (previous != null)
+			previous.cancelled = true;
+		insert(entry, entry.firstDue);
+	}
+
+	/**
+	 * 删除任务，正在执行的采集不受影响
+	 *
+	 * @param id
+	 * @return 任务存在时返回true
+	 */
+	public boolean cancel(String id) {
+		Entry<?> entry = entries.remove(id);
+		if (entry == null)
+			return false;
+		entry.cancelled = true;
+		return true;
+	}
+
+	/**
+	 * 返回任务数
+	 *
+	 * @return
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * 返回已开始的采集次数
+	 *
+	 * @return
+	 */
+	public long getRuns() {
+		return runs.get();
+	}
+
+	/**
+	 * 返回超时运行的次数
+	 *
+	 * @return
+	 */
+	public long getOverruns() {
+		return overruns.get();
+	}
+
+	private void insert(Entry<?> entry, long dueNanos) {
+		long deadline = (dueNanos - startNanos + tickNanos - 1) / tickNanos;
+		lock.lock();
+		try {
+			if (deadline <= currentTick)
+				deadline = currentTick + 1;
+			entry.rounds = (deadline - currentTick - 1) / wheel.length;
+			wheel[(int) (deadline % wheel.length)].add(entry);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void tickLoop() {
+		List<Entry<?>> expired = new ArrayList<Entry<?>>();
+		while (!closed) {
+			long next;
+			lock.lock();
+			try {
+				next = startNanos + (currentTick + 1) * tickNanos;
+			} finally {
+				lock.unlock();
+			}
+			long wait;
+			while (!closed && (wait = next - System.nanoTime()) > 0)
+				LockSupport.parkNanos(this, wait);
+			if (closed)
+				break;
+
+			lock.lock();
+			try {
+				currentTick++;
+				Iterator<Entry<?>> it = wheel[(int) (currentTick % wheel.length)].iterator();
+				while (it.hasNext()) {
+					Entry<?> entry = it.next();
+					if (entry.cancelled)
+						it.remove();
+					else if (entry.rounds > 0)
+						entry.rounds--;
+					else {
+						it.remove();
+						expired.add(entry);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			for (Entry<?> entry : expired) {
+				try {
+					entry.fire();
+				} catch (Throwable e) {
+					ErrorUtil.warn(logger, "调度采集任务失败：" + entry.job, e);
+				}
+			}
+			expired.clear();
+		}
+	}
+
+	/**
+	 * 一个周期的相位序列
+	 */
+	private static class Phases {
+		final double start;
+		final AtomicInteger next = new AtomicInteger();
+
+		Phases(double start) {
+			this.start = start;
+		}
+	}
+
+	/**
+	 * 时间轮上的任务
+	 */
+	private class Entry<T> implements Runnable {
+		final PollJob<T> job;
+		final long firstDue;
+		final AtomicBoolean running = new AtomicBoolean();
+		// 上一次完成后是否需要补做
+		final AtomicBoolean delayed = new AtomicBoolean();
+		volatile boolean cancelled;
+		// 以下字段只在调度线程中访问
+		long rounds;
+		long cycle;
+		volatile long runStart;
+
+		Entry(PollJob<T> job, long firstDue) {
+			this.job = job;
+			this.firstDue = firstDue;
+		}
+
+		/**
+		 * 到期时先按固定频率安排下一次，再执行本次
+		 */
+		void fire() {
+			if (cancelled)
+				return;
+			cycle++;
+			long jitter = PollScheduler.this.jitter;
+			long due = firstDue + cycle * job.getInterval() * 1000000L;
+			if (jitter > 0)
+				due += (long) (random.nextDouble() * jitter * 1000000L);
+			insert(this, due);
+
+			if (running.compareAndSet(false, true)) {
+				submit();
+				return;
+			}
+			overruns.incrementAndGet();
+			if (job.getOverrun() == PollJob.Overrun.DELAY)
+				delayed.set(true);
+			try {
+				job.getListener().onOverrun(job, (System.nanoTime() - runStart) / 1000000L);
+			} catch (RuntimeException e) {
+				ErrorUtil.warn(logger, "采集任务回调失败：" + job, e);
+			}
+			// 可能在设置delayed之前刚好完成
+			if (delayed.get() && running.compareAndSet(false, true)) {
+				delayed.set(false);
+				submit();
+			}
+		}
+
+		private void submit() {
+			runStart = System.nanoTime();
+			runs.incrementAndGet();
+			try {
+				executor.execute(this);
+			} catch (RuntimeException e) {
+				running.set(false);
+				ErrorUtil.warn(logger, "提交采集任务失败：" + job, e);
+			}
+		}
+
+		public void run() {
+			while (true) {
+				long start = System.currentTimeMillis();
+				PollOutcome<T> outcome;
+				try {
+					outcome = new PollOutcome<T>(job.getTarget(), job.getTask().poll(job.getTarget()), null,
+							System.currentTimeMillis() - start);
+				} catch (Exception e) {
+					outcome = new PollOutcome<T>(job.getTarget(), null, e, System.currentTimeMillis() - start);
+				}
+				try {
+					job.getListener().onResult(job, outcome);
+				} catch (RuntimeException e) {
+					ErrorUtil.warn(logger, "采集任务回调失败：" + job, e);
+				}
+
+				if (cancelled || !delayed.compareAndSet(true, false)) {
+					running.set(false);
+					// 可能在清除running之前又被标记为补做
+					if (cancelled || !delayed.compareAndSet(true, false) || !running.compareAndSet(false, true))
+						return;
+				}
+				runStart = System.nanoTime();
+				runs.incrementAndGet();
+			}
+		}
+	}
+}
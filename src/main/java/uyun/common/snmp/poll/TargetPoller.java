@@ -0,0 +1,93 @@
+package uyun.common.snmp.poll;
+
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.util.VirtualThreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 以顺序代码批量采集大量设备的辅助类
+ * <p>
+ * 设备按targetsPerThread分组，每组在一个线程中依次采集，各组并行。运行在Java 21及以上时使用虚拟线程，
+ * Snmp的阻塞调用在等待响应时只park虚拟线程（见Snmp.setParkingWait），一个JVM可以用顺序代码同时采集数万台设备；
+ * 不支持虚拟线程时使用平台线程，并增大分组使线程数不超过maxPlatformThreads。
+ */
+public class TargetPoller {
+	/**
+	 * 不支持虚拟线程时默认的最大线程数
+	 */
+	public static final int MAX_PLATFORM_THREADS_DEFAULT = 256;
+
+	private final ThreadFactory factory;
+	private final int targetsPerThread;
+	private int maxPlatformThreads = MAX_PLATFORM_THREADS_DEFAULT;
+
+	/**
+	 * @param name             线程名前缀
+	 * @param targetsPerThread 每个线程依次采集的设备数，小于1时按1处理
+	 */
+	public TargetPoller(String name, int targetsPerThread) {
+		this.factory = VirtualThreads.factory(name + "-");
+		this.targetsPerThread = Math.max(1, targetsPerThread);
+	}
+
+	/**
+	 * 设置不支持虚拟线程时的最大线程数
+	 *
+	 * @param maxPlatformThreads
+	 */
+	public void setMaxPlatformThreads(int maxPlatformThreads) {
+		this.maxPlatformThreads = Math.max(1, maxPlatformThreads);
+	}
+
+	/**
+	 * 采集所有设备，等待全部完成后返回
+	 *
+	 * @param targets 设备访问参数
+	 * @param task    对每个设备执行的采集任务
+	 * @return 与targets顺序相同的采集结果
+	 * @throws InterruptedException 等待时被中断，此时尚未完成的分组在后台继续运行
+	 */
+	public <T> List<PollOutcome<T>> pollAll(final List<? extends SnmpTarget> targets, final TargetTask<T> task)
+			throws InterruptedException {
+		int groupSize = targetsPerThread;
+		if (!VirtualThreads.isSupported())
+			groupSize = Math.max(groupSize, (targets.size() + maxPlatformThreads - 1) / maxPlatformThreads);
+
+		final Object[] outcomes = new Object[targets.size()];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int from = 0; from < targets.size(); from += groupSize) {
+			final int start = from;
+			final int end = Math.min(targets.size(), from + groupSize);
+			Thread thread = factory.newThread(new Runnable() {
+				public void run() {
+					for (int i = start; i < end; i++)
+						outcomes[i] = poll(targets.get(i), task);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		List<PollOutcome<T>> results = new ArrayList<PollOutcome<T>>(outcomes.length);
+		for (Object outcome : outcomes) {
+			@SuppressWarnings("unchecked")
+			PollOutcome<T> typed = (PollOutcome<T>) outcome;
+			results.add(typed);
+		}
+		return results;
+	}
+
+	private static <T> PollOutcome<T> poll(SnmpTarget target, TargetTask<T> task) {
+		long start = System.currentTimeMillis();
+		try {
+			return new PollOutcome<T>(target, task.poll(target), null, System.currentTimeMillis() - start);
+		} catch (Exception e) {
+			return new PollOutcome<T>(target, null, e, System.currentTimeMillis() - start);
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package uyun.common.snmp.poll;
+
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.error.SnmpException;
+
+/**
+ * 对一个设备执行的采集任务，通常以阻塞方式调用Snmp.get、walk等方法
+ *
+ * @param <T> 采集结果类型
+ */
+public interface TargetTask<T> {
+	/**
+	 * 采集一个设备
+	 *
+	 * @param target 设备访问参数
+	 * @return 采集结果
+	 * @throws SnmpException 采集失败
+	 */
+	T poll(SnmpTarget target) throws SnmpException;
+}
@@ -0,0 +1,337 @@
+package uyun.common.snmp.rate;
+
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpValue;
+import uyun.common.snmp.entity.SnmpVarBind;
+
+/**
+ * 计数器速率计算引擎
+ * <p>
+ * 按 设备 + OID（含实例） 保存每个计数器序列的上一次采样，并计算两次采样间的增量与每秒速率，主要规则如下：
+ * 1.Counter32在数值变小时按2^32回绕计算；Counter64只有在高位从满值变为0时才认为是回绕，否则认为是计数器清零
+ * 2.如果提供了sysUpTime（TimeTicks，单位1/100秒），则以其差值作为采样间隔，sysUpTime回退（设备重启）或
+ * 明显慢于本地时间流逝（两次采样间设备重启过）时，认为出现不连续，本次只重置基线
+ * 3.长期未更新的序列可通过prune剔除
+ * <p>
+ * 为支持百万级序列而不给GC带来压力，所有序列状态都保存在按段划分的原始类型数组中，序列以 设备+OID 的64位哈希为键，
+ * 不为每个序列创建对象。64位哈希在千万级序列下的冲突概率可以忽略。
+ * 本类线程安全，各段独立加锁。
+ */
+public class CounterRateEngine {
+	/**
+	 * 默认序列空闲剔除时间，单位毫秒
+	 */
+	public static final long IDLE_TIMEOUT_DEFAULT = 30 * 60 * 1000;
+	/**
+	 * 表示未提供sysUpTime
+	 */
+	public static final long UPTIME_UNKNOWN = -1;
+
+	private static final long COUNTER32_MODULUS = 1L << 32;
+	private static final long TIMETICKS_MODULUS = 1L << 32;
+	private static final int SEGMENT_COUNT = 64;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	private final long idleTimeout;
+
+	/**
+	 * 构建一个速率计算引擎，序列空闲剔除时间为默认值
+	 */
+	public CounterRateEngine() {
+		this(1024, IDLE_TIMEOUT_DEFAULT);
+	}
+
+	/**
+	 * 构建一个速率计算引擎
+	 *
+	 * @param expectedSeries 预计的序列数量，用于预分配空间
+	 * @param idleTimeout    序列空闲剔除时间，单位毫秒，见prune
+	 */
+	public CounterRateEngine(int expectedSeries, long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		int perSegment = (int) (Math.max(expectedSeries, SEGMENT_COUNT) / SEGMENT_COUNT / LOAD_FACTOR) + 1;
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment(perSegment);
+	}
+
+	/**
+	 * 使用本地当前时间提交一个采样，见{@link #update(String, SnmpOID, SnmpValue, long, long, RateSample)}
+	 */
+	public RateSample update(String device, SnmpVarBind varBind, long uptime, RateSample out) {
+		return update(device, varBind.getOid(), varBind.getValue(), uptime, System.currentTimeMillis(), out);
+	}
+
+	/**
+	 * 提交一个计数器采样，并计算与上一次采样之间的增量与速率
+	 *
+	 * @param device    设备标识，一般为IP
+	 * @param oid       计数器OID，包含实例部份，如ifInOctets.3
+	 * @param value     计数器值
+	 * @param uptime    与本采样同一次采集得到的sysUpTime，单位1/100秒，未知时为UPTIME_UNKNOWN
+	 * @param timestamp 本地采集时间，单位毫秒
+	 * @param out       用于保存结果的对象，为null时创建一个新的对象
+	 * @return 计算结果，即out参数
+	 * @throws NumberFormatException 如果value非数字类型，则弹出此异常
+	 */
+	public RateSample update(String device, SnmpOID oid, SnmpValue value, long uptime, long timestamp, RateSample out) {
+		if (out == null)
+			out = new RateSample();
+
+		int type = value.getType();
+		long current = value.toLong();
+		if (type == SnmpValue.TYPE_COUNTER32)
+			current &= 0xffffffffL;
+
+		long key = hash(device, oid);
+		Segment segment = segments[(int) (key >>> 58) & (SEGMENT_COUNT - 1)];
+		synchronized (segment) {
+			int index = segment.find(key);
+			if (index < 0) {
+				segment.insert(key, current, timestamp, uptime);
+				out.set(RateSample.Status.FIRST, 0, 0, 0);
+				return out;
+			}
+
+			long previous = segment.values[index];
+			long previousTime = segment.times[index];
+			long previousUptime = segment.uptimes[index];
+			segment.values[index] = current;
+			segment.times[index] = timestamp;
+			segment.uptimes[index] = uptime;
+
+			long interval = interval(previousTime, previousUptime, timestamp, uptime);
+			if (interval <= 0) {
+				out.set(RateSample.Status.DISCONTINUITY, 0, 0, 0);
+				return out;
+			}
+
+			RateSample.Status status = RateSample.Status.OK;
+			long delta = current - previous;
+			if (lessUnsigned(current, previous)) {
+				if (type == SnmpValue.TYPE_COUNTER32)
+					delta = current + COUNTER32_MODULUS - previous;
+				else if (type == SnmpValue.TYPE_COUNTER64 && (previous >>> 60) == 0xf && (current >>> 60) == 0)
+					delta = current - previous; // 无符号减法自然得到回绕后的增量
+				else {
+					out.set(RateSample.Status.DISCONTINUITY, 0, interval, 0);
+					return out;
+				}
+				status = RateSample.Status.WRAPPED;
+			}
+
+			out.set(status, delta, interval, unsignedToDouble(delta) * 1000 / interval);
+			return out;
+		}
+	}
+
+	/**
+	 * 计算两次采样间的间隔，单位毫秒，返回值<=0表示不连续
+	 */
+	private static long interval(long previousTime, long previousUptime, long timestamp, long uptime) {
+		long wallInterval = timestamp - previousTime;
+		if (uptime < 0 || previousUptime < 0)
+			return wallInterval;
+
+		long ticks = uptime - previousUptime;
+		if (ticks < 0) {
+			// sysUpTime约497天回绕一次，只有在上次采样接近最大值时才认为是回绕，否则是设备重启
+			long wrapped = uptime + TIMETICKS_MODULUS - previousUptime;
+			if (wallInterval > 0 && wrapped * 10 <= wallInterval * 2 + 1000)
+				ticks = wrapped;
+			else
+				return -1;
+		}
+
+		// 设备时间流逝明显少于本地时间，说明两次采样间设备重启过
+		long interval = ticks * 10;
+		if (wallInterval - interval > Math.max(2000, wallInterval / 10))
+			return -1;
+		return interval;
+	}
+
+	/**
+	 * 剔除在idleTimeout时间内没有更新过的序列
+	 *
+	 * @param now 当前时间，单位毫秒
+	 * @return 剔除的序列数量
+	 */
+	public int prune(long now) {
+		long expire = now - idleTimeout;
+		int removed = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				removed += segment.prune(expire);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * 以本地当前时间剔除空闲序列，见{@link #prune(long)}
+	 */
+	public int prune() {
+		return prune(System.currentTimeMillis());
+	}
+
+	/**
+	 * 返回当前保存的序列数量
+	 *
+	 * @return
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * 清除所有序列
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	private static boolean lessUnsigned(long a, long b) {
+		return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+	}
+
+	private static double unsignedToDouble(long value) {
+		if (value >= 0)
+			return value;
+		return (double) (value >>> 1) * 2 + (value & 1);
+	}
+
+	/**
+	 * 计算 设备+OID 的64位哈希，0保留为空槽标记
+	 */
+	static long hash(String device, SnmpOID oid) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < device.length(); i++) {
+			h ^= device.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= 0xff;
+		h *= 0x100000001b3L;
+		int[] values = oid.oid().getValue();
+		for (int i = 0; i < values.length; i++) {
+			h ^= values[i];
+			h *= 0x100000001b3L;
+		}
+		// fmix64，使高低位分布均匀
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * 线性探测的开放寻址表，各数组下标一一对应
+	 */
+	private static class Segment {
+		long[] keys;
+		long[] values;
+		long[] times;
+		long[] uptimes;
+		int size;
+		int threshold;
+
+		Segment(int capacity) {
+			allocate(tableSize(capacity));
+		}
+
+		private static int tableSize(int capacity) {
+			int n = 16;
+			while (n < capacity)
+				n <<= 1;
+			return n;
+		}
+
+		private void allocate(int length) {
+			keys = new long[length];
+			values = new long[length];
+			times = new long[length];
+			uptimes = new long[length];
+			threshold = (int) (length * LOAD_FACTOR);
+		}
+
+		int find(long key) {
+			int mask = keys.length - 1;
+			int i = (int) key & mask;
+			while (true) {
+				long k = keys[i];
+				if (k == key)
+					return i;
+				if (k == 0)
+					return -1;
+				i = (i + 1) & mask;
+			}
+		}
+
+		void insert(long key, long value, long time, long uptime) {
+			if (size >= threshold)
+				rehash(keys.length << 1, Long.MIN_VALUE);
+			put(key, value, time, uptime);
+		}
+
+		private void put(long key, long value, long time, long uptime) {
+			int mask = keys.length - 1;
+			int i = (int) key & mask;
+			while (keys[i] != 0)
+				i = (i + 1) & mask;
+			keys[i] = key;
+			values[i] = value;
+			times[i] = time;
+			uptimes[i] = uptime;
+			size++;
+		}
+
+		int prune(long expire) {
+			int before = size;
+			int live = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != 0 && times[i] >= expire)
+					live++;
+			}
+			if (live == before)
+				return 0;
+
+			int length = keys.length;
+			while (length > 16 && live < (length >> 2) * LOAD_FACTOR)
+				length >>= 1;
+			rehash(length, expire);
+			return before - size;
+		}
+
+		/**
+		 * 重建表，同时丢弃times小于expire的序列
+		 */
+		private void rehash(int length, long expire) {
+			long[] oldKeys = keys;
+			long[] oldValues = values;
+			long[] oldTimes = times;
+			long[] oldUptimes = uptimes;
+			allocate(length);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0 && oldTimes[i] >= expire)
+					put(oldKeys[i], oldValues[i], oldTimes[i], oldUptimes[i]);
+			}
+		}
+
+		void clear() {
+			allocate(16);
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package uyun.common.snmp.rate;
+
+/**
+ * 计数器速率计算结果
+ * <p>
+ * 本对象为可复用对象，调用方可在循环中重复传入同一个实例，以避免每个采样产生新的对象
+ */
+public class RateSample {
+	private Status status = Status.FIRST;
+	private long delta;
+	private long interval;
+	private double rate;
+
+	/**
+	 * 计算状态
+	 *
+	 * @return
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * 两次采样间的计数器增量，按无符号数处理。仅当isValid()为true时有意义
+	 *
+	 * @return
+	 */
+	public long getDelta() {
+		return delta;
+	}
+
+	/**
+	 * 两次采样间的时间间隔，单位毫秒。优先使用sysUpTime计算，无sysUpTime时使用本地采集时间计算
+	 *
+	 * @return
+	 */
+	public long getInterval() {
+		return interval;
+	}
+
+	/**
+	 * 每秒速率，仅当isValid()为true时有意义
+	 *
+	 * @return
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * 是否得到了有效的增量与速率
+	 *
+	 * @return
+	 */
+	public boolean isValid() {
+		return status == Status.OK || status == Status.WRAPPED;
+	}
+
+	void set(Status status, long delta, long interval, double rate) {
+		this.status = status;
+		this.delta = delta;
+		this.interval = interval;
+		this.rate = rate;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("rate[status: %s delta: %d interval: %d rate: %.3f]", status, delta, interval, rate);
+	}
+
+	/**
+	 * 速率计算状态
+	 */
+	public enum Status {
+		/**
+		 * 该序列的首个采样，或在剔除后重新出现，只记录基线，无速率
+		 */
+		FIRST,
+		/**
+		 * 正常计算出速率
+		 */
+		OK,
+		/**
+		 * 计数器发生了回绕，已按回绕计算出速率
+		 */
+		WRAPPED,
+		/**
+		 * 检测到不连续（设备重启、sysUpTime回退、计数器被清零等），本次只重置基线，无速率
+		 */
+		DISCONTINUITY;
+	}
+}
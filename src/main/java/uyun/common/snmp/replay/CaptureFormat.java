@@ -0,0 +1,102 @@
+package uyun.common.snmp.replay;
+
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERSerializable;
+import org.snmp4j.smi.VariableBinding;
+import uyun.common.snmp.entity.SnmpTarget;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 录制文件格式
+ * <p>
+ * 文件头为MAGIC与版本号，之后是连续的记录，每条记录以类型字节开头，后跟设备（ip/端口）：
+ * <ul>
+ * <li>RESPONSE：请求PDU与响应PDU，均为BER编码</li>
+ * <li>ERROR：请求PDU、错误码与错误信息</li>
+ * <li>VARBIND：一个BER编码的变量</li>
+ * </ul>
+ * PDU前有一个字节标明是PDU、PDUv1还是ScopedPDU。文件异常结束时，最后一条不完整的记录被忽略。
+ */
+class CaptureFormat {
+	static final int MAGIC = 0x534E5250;
+	static final int VERSION = 1;
+	private static final int MAX_RECORD = 1 << 20;
+
+	static final int RECORD_RESPONSE = 1;
+	static final int RECORD_ERROR = 2;
+	static final int RECORD_VARBIND = 3;
+
+	private static final int PDU_V2 = 0;
+	private static final int PDU_V1 = 1;
+	private static final int PDU_SCOPED = 3;
+
+	private CaptureFormat() {
+	}
+
+	static String device(SnmpTarget param) {
+		return device(param.getIp(), param.getPort());
+	}
+
+	static String device(String ip, int port) {
+		return ip + "/" + port;
+	}
+
+	/**
+	 * 生成请求的匹配键，相同类型与oid的请求视为同一个请求
+	 */
+	static String requestKey(PDU pdu) {
+		StringBuilder sb = new StringBuilder(pdu.size() * 24 + 16);
+		sb.append(pdu.getType());
+		if (pdu.getType() == PDU.GETBULK)
+			sb.append('/').append(pdu.getNonRepeaters()).append('/').append(pdu.getMaxRepetitions());
+		for (int i = 0; i < pdu.size(); i++)
+			sb.append(' ').append(pdu.get(i).getOid().toDottedString());
+		return sb.toString();
+	}
+
+	static void writePdu(DataOutputStream out, PDU pdu) throws IOException {
+		out.writeByte(pdu instanceof ScopedPDU ? PDU_SCOPED : pdu instanceof PDUv1 ? PDU_V1 : PDU_V2);
+		writeBer(out, pdu);
+	}
+
+	static PDU readPdu(DataInputStream in) throws IOException {
+		int kind = in.readUnsignedByte();
+		PDU pdu = kind == PDU_SCOPED ? new ScopedPDU() : kind == PDU_V1 ? new PDUv1() : new PDU();
+		pdu.decodeBER(readBer(in));
+		return pdu;
+	}
+
+	static void writeVarBind(DataOutputStream out, VariableBinding vb) throws IOException {
+		writeBer(out, vb);
+	}
+
+	static VariableBinding readVarBind(DataInputStream in) throws IOException {
+		VariableBinding vb = new VariableBinding();
+		vb.decodeBER(readBer(in));
+		return vb;
+	}
+
+	private static void writeBer(DataOutputStream out, BERSerializable value) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(value.getBERLength());
+		value.encodeBER(buffer);
+		out.writeInt(buffer.size());
+		buffer.writeTo(out);
+	}
+
+	private static BERInputStream readBer(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_RECORD)
+			throw new IOException("记录长度错误：" + length);
+		byte[] data = new byte[length];
+		in.readFully(data);
+		return new BERInputStream(ByteBuffer.wrap(data));
+	}
+}
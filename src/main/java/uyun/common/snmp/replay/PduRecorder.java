@@ -0,0 +1,160 @@
+package uyun.common.snmp.replay;
+
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.VariableBinding;
+import uyun.common.snmp.PduSender;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.error.SnmpException;
+
+import java.io.*;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 录制Snmp请求与响应的PduSender
+ * <p>
+ * 包装另一个PduSender（默认为Snmp.NETWORK），将经过的请求写入录制文件，之后可以通过PduReplayer在没有网络的情况下回放。
+ * 通过Snmp.setSender安装后，get、walk、walkTable等所有操作都会被录制：
+ * <pre>
+ * PduRecorder recorder = new PduRecorder(file, PduRecorder.Mode.EXCHANGES);
+ * Snmp.setSender(recorder);
+ * try {
+ *     Snmp.walkTable(param, columns);
+ * } finally {
+ *     Snmp.setSender(null);
+ *     recorder.close();
+ * }
+ * </pre>
+ * 录制文件使用BER编码，见CaptureFormat。
+ */
+public class PduRecorder implements PduSender {
+	/**
+	 * 录制方式
+	 */
+	public enum Mode {
+		/**
+		 * 录制每一对请求与响应，包括超时等错误，回放时按原顺序重现设备的行为
+		 */
+		EXCHANGES,
+		/**
+		 * 只录制响应中的变量，每个设备的每个oid只保存第一次取得的值，回放时以这些变量组成的MIB树应答请求
+		 */
+		VARBINDS
+	}
+
+	private final PduSender delegate;
+	private final Mode mode;
+	private final DataOutputStream out;
+	private final Set<String> recorded = new HashSet<String>();
+	private long records;
+
+	/**
+	 * 构建一个录制真实设备响应的录制器
+	 *
+	 * @param file 录制文件，已存在时被覆盖
+	 * @param mode 录制方式
+	 * @throws IOException 无法创建文件时弹出此异常
+	 */
+	public PduRecorder(File file, Mode mode) throws IOException {
+		this(file, mode, Snmp.NETWORK);
+	}
+
+	public PduRecorder(File file, Mode mode, PduSender delegate) throws IOException {
+		this.delegate = delegate;
+		this.mode = mode;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(CaptureFormat.MAGIC);
+		out.writeByte(CaptureFormat.VERSION);
+	}
+
+	public PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+		PDU response;
+		try {
+			response = delegate.send(param, pdu);
+		} catch (SnmpException e) {
+			if (mode == Mode.EXCHANGES)
+				recordError(param, pdu, e);
+			throw e;
+		}
+		if (response != null) {
+			if (mode == Mode.EXCHANGES)
+				recordResponse(param, pdu, response);
+			else
+				recordVarBinds(param, response);
+		}
+		return response;
+	}
+
+	private synchronized void recordResponse(SnmpTarget param, PDU request, PDU response) throws SnmpException {
+		try {
+			out.writeByte(CaptureFormat.RECORD_RESPONSE);
+			out.writeUTF(CaptureFormat.device(param));
+			CaptureFormat.writePdu(out, request);
+			CaptureFormat.writePdu(out, response);
+			records++;
+		} catch (IOException e) {
+			throw new SnmpException(SnmpException.ERR_IOERROR, "写入录制文件失败", e);
+		}
+	}
+
+	private synchronized void recordError(SnmpTarget param, PDU request, SnmpException error) throws SnmpException {
+		try {
+			out.writeByte(CaptureFormat.RECORD_ERROR);
+			out.writeUTF(CaptureFormat.device(param));
+			CaptureFormat.writePdu(out, request);
+			out.writeInt(error.getErrorCode());
+			out.writeUTF(error.getMessage() == null ? "" : error.getMessage());
+			records++;
+		} catch (IOException e) {
+			throw new SnmpException(SnmpException.ERR_IOERROR, "写入录制文件失败", e);
+		}
+	}
+
+	private synchronized void recordVarBinds(SnmpTarget param, PDU response) throws SnmpException {
+		if (response.getErrorStatus() != PDU.noError)
+			return;
+		String device = CaptureFormat.device(param);
+		try {
+			for (int i = 0; i < response.size(); i++) {
+				VariableBinding vb = response.get(i);
+				if (Null.isExceptionSyntax(vb.getSyntax()) || !recorded.add(device + " " + vb.getOid()))
+					continue;
+				out.writeByte(CaptureFormat.RECORD_VARBIND);
+				out.writeUTF(device);
+				CaptureFormat.writeVarBind(out, vb);
+				records++;
+			}
+		} catch (IOException e) {
+			throw new SnmpException(SnmpException.ERR_IOERROR, "写入录制文件失败", e);
+		}
+	}
+
+	/**
+	 * 返回已录制的记录数
+	 *
+	 * @return
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * 将缓冲的记录写入文件
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * 结束录制并关闭文件。关闭前应先通过Snmp.setSender移除本录制器
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+}
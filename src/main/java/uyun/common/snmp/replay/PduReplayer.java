@@ -0,0 +1,186 @@
+package uyun.common.snmp.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.VariableBinding;
+import uyun.common.snmp.PduSender;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.sim.MibResponder;
+import uyun.common.snmp.sim.SimulatedMib;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 回放PduRecorder录制文件的PduSender
+ * <p>
+ * 通过Snmp.setSender安装后，Snmp的所有操作都由录制文件应答，不访问网络：
+ * <ul>
+ * <li>录制了请求与响应的设备，按请求的类型与oid匹配录制的响应，同一请求录制了多次时按录制顺序依次返回，用完后重复最后一次；
+ * 录制时的超时等错误同样以SnmpException重现</li>
+ * <li>只录制了变量的设备，以这些变量组成的MIB树应答请求</li>
+ * </ul>
+ * 设备以ip与端口区分，没有录制的设备或请求以ERR_TIMEOUT错误响应。本类是线程安全的。
+ */
+public class PduReplayer implements PduSender {
+	private static final Logger logger = LoggerFactory.getLogger(PduReplayer.class);
+
+	private final Map<String, Map<String, Replay>> exchanges = new HashMap<String, Map<String, Replay>>();
+	private final Map<String, MibResponder> responders = new HashMap<String, MibResponder>();
+
+	private PduReplayer() {
+	}
+
+	/**
+	 * 读取录制文件
+	 *
+	 * @param file 录制文件
+	 * @return
+	 * @throws IOException 文件无法读取或不是录制文件时弹出此异常
+	 */
+	public static PduReplayer load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			return load(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static PduReplayer load(DataInputStream in) throws IOException {
+		if (in.readInt() != CaptureFormat.MAGIC)
+			throw new IOException("不是SNMP录制文件");
+		int version = in.readByte();
+		if (version != CaptureFormat.VERSION)
+			throw new IOException("不支持的录制文件版本：" + version);
+
+		PduReplayer replayer = new PduReplayer();
+		int records = 0;
+		while (true) {
+			int type = in.read();
+			if (type < 0)
+				break;
+			try {
+				replayer.read(type, in);
+				records++;
+			} catch (EOFException e) {
+				logger.warn("录制文件不完整，已读取{}条记录", records);
+				break;
+			}
+		}
+		logger.debug("已读取录制文件，记录数：{}", records);
+		return replayer;
+	}
+
+	private void read(int type, DataInputStream in) throws IOException {
+		String device = in.readUTF();
+		switch (type) {
+			case CaptureFormat.RECORD_RESPONSE: {
+				PDU request = CaptureFormat.readPdu(in);
+				PDU response = CaptureFormat.readPdu(in);
+				exchanges(device, request).add(new Exchange(response, null));
+				break;
+			}
+			case CaptureFormat.RECORD_ERROR: {
+				PDU request = CaptureFormat.readPdu(in);
+				SnmpException error = new SnmpException(in.readInt(), in.readUTF());
+				exchanges(device, request).add(new Exchange(null, error));
+				break;
+			}
+			case CaptureFormat.RECORD_VARBIND: {
+				VariableBinding vb = CaptureFormat.readVarBind(in);
+				MibResponder responder = responders.get(device);
+				if (responder == null) {
+					responder = new MibResponder(new SimulatedMib());
+					responders.put(device, responder);
+				}
+				responder.getMib().put(vb.getOid(), vb.getVariable());
+				break;
+			}
+			default:
+				throw new IOException("未知的记录类型：" + type);
+		}
+	}
+
+	private List<Exchange> exchanges(String device, PDU request) {
+		Map<String, Replay> deviceExchanges = exchanges.get(device);
+		if (deviceExchanges == null) {
+			deviceExchanges = new HashMap<String, Replay>();
+			exchanges.put(device, deviceExchanges);
+		}
+		String key = CaptureFormat.requestKey(request);
+		Replay replay = deviceExchanges.get(key);
+		if (replay == null) {
+			replay = new Replay();
+			deviceExchanges.put(key, replay);
+		}
+		return replay.exchanges;
+	}
+
+	public PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+		String device = CaptureFormat.device(param);
+		Map<String, Replay> deviceExchanges = exchanges.get(device);
+		if (deviceExchanges != null) {
+			Replay replay = deviceExchanges.get(CaptureFormat.requestKey(pdu));
+			if (replay != null) {
+				Exchange exchange = replay.next();
+				if (exchange.error != null)
+					throw new SnmpException(exchange.error.getErrorCode(), exchange.error.getMessage());
+				PDU response = (PDU) exchange.response.clone();
+				response.setRequestID(pdu.getRequestID());
+				return response;
+			}
+		}
+
+		MibResponder responder = responders.get(device);
+		if (responder != null)
+			return responder.respond(pdu);
+		if (pdu.getType() == PDU.TRAP)
+			return null;
+		throw new SnmpException(SnmpException.ERR_TIMEOUT, "录制文件中没有对应的请求[设备: " + device + "，请求: "
+				+ CaptureFormat.requestKey(pdu) + "]");
+	}
+
+	/**
+	 * 返回录制文件中的所有设备，格式为ip/端口
+	 *
+	 * @return
+	 */
+	public Set<String> getDevices() {
+		Set<String> devices = new HashSet<String>(exchanges.keySet());
+		devices.addAll(responders.keySet());
+		return devices;
+	}
+
+	private static class Replay {
+		final List<Exchange> exchanges = new ArrayList<Exchange>(1);
+		final AtomicInteger position = new AtomicInteger();
+
+		Exchange next() {
+			int index = position.getAndIncrement();
+			if (index >= exchanges.size()) {
+				position.set(exchanges.size());
+				index = exchanges.size() - 1;
+			}
+			return exchanges.get(index);
+		}
+	}
+
+	private static class Exchange {
+		final PDU response;
+		final SnmpException error;
+
+		Exchange(PDU response, SnmpException error) {
+			this.response = response;
+			this.error = error;
+		}
+	}
+}
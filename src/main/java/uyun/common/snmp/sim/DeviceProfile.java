@@ -0,0 +1,107 @@
+package uyun.common.snmp.sim;
+
+/**
+ * 模拟设备的行为参数，包括响应延迟、丢包与各类设备缺陷。
+ * 所有参数都可以在模拟设备运行中修改，对之后收到的请求生效
+ */
+public class DeviceProfile {
+	private volatile String community = "public";
+	private volatile long latency;
+	private volatile long jitter;
+	private volatile double lossRate;
+	private volatile int maxVarBinds;
+	private volatile boolean noBatch;
+	private volatile int repeatEvery;
+
+	public String getCommunity() {
+		return community;
+	}
+
+	/**
+	 * 设置团体名，团体名不符的请求被直接丢弃，与多数设备的行为一致。默认为public
+	 *
+	 * @param community
+	 */
+	public void setCommunity(String community) {
+		this.community = community;
+	}
+
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * 设置每个请求的响应延迟
+	 *
+	 * @param latency 单位毫秒，默认为0
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	public long getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * 设置响应延迟的抖动，实际延迟在latency与latency + jitter之间均匀分布
+	 *
+	 * @param jitter 单位毫秒，默认为0
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	public double getLossRate() {
+		return lossRate;
+	}
+
+	/**
+	 * 设置请求丢失的比例，丢失的请求不做任何响应
+	 *
+	 * @param lossRate 0至1之间，默认为0
+	 */
+	public void setLossRate(double lossRate) {
+		this.lossRate = lossRate;
+	}
+
+	public int getMaxVarBinds() {
+		return maxVarBinds;
+	}
+
+	/**
+	 * 设置一个响应最多包含的变量数量，模拟设备的报文大小限制。
+	 * GET/GETNEXT请求超出时响应tooBig错误，GETBULK请求超出时截断响应
+	 *
+	 * @param maxVarBinds 为0表示不限制，默认为0
+	 */
+	public void setMaxVarBinds(int maxVarBinds) {
+		this.maxVarBinds = maxVarBinds;
+	}
+
+	public boolean isNoBatch() {
+		return noBatch;
+	}
+
+	/**
+	 * 设置是否模拟不支持批量请求的设备：一个请求包含多个变量时，只响应第一个变量
+	 *
+	 * @param noBatch 默认为false
+	 */
+	public void setNoBatch(boolean noBatch) {
+		this.noBatch = noBatch;
+	}
+
+	public int getRepeatEvery() {
+		return repeatEvery;
+	}
+
+	/**
+	 * 设置模拟返回重复oid的设备：每repeatEvery个GETNEXT请求中，有一个原样返回请求的oid而不是下一个oid
+	 *
+	 * @param repeatEvery 为0表示不重复，默认为0
+	 */
+	public void setRepeatEvery(int repeatEvery) {
+		this.repeatEvery = repeatEvery;
+	}
+}
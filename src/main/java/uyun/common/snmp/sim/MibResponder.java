@@ -0,0 +1,162 @@
+package uyun.common.snmp.sim;
+
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.smi.Null;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 根据MIB树与设备行为参数生成响应PDU，不涉及网络，可以直接作为PduSender的实现基础。
+ * <p>
+ * 支持GET、GETNEXT与GETBULK，请求为PDUv1时按SNMPv1的方式以noSuchName错误响应不存在的节点，
+ * 否则以noSuchObject与endOfMibView响应，请求为ScopedPDU时响应沿用其上下文。SET请求一律响应为不可写。
+ * 延迟与丢包不在本类处理，由调用方根据DeviceProfile实现。
+ */
+public class MibResponder {
+	private final SimulatedMib mib;
+	private final DeviceProfile profile;
+	private final AtomicLong getNextCount = new AtomicLong();
+
+	public MibResponder(SimulatedMib mib) {
+		this(mib, new DeviceProfile());
+	}
+
+	public MibResponder(SimulatedMib mib, DeviceProfile profile) {
+		this.mib = mib;
+		this.profile = profile;
+	}
+
+	public SimulatedMib getMib() {
+		return mib;
+	}
+
+	public DeviceProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * 生成响应
+	 *
+	 * @param request 请求
+	 * @return 响应PDU，类型为RESPONSE，请求ID与请求相同
+	 */
+	public PDU respond(PDU request) {
+		boolean v1 = request instanceof PDUv1;
+		PDU response;
+		if (v1)
+			response = new PDUv1();
+		else if (request instanceof ScopedPDU) {
+			ScopedPDU scoped = new ScopedPDU();
+			scoped.setContextEngineID(((ScopedPDU) request).getContextEngineID());
+			scoped.setContextName(((ScopedPDU) request).getContextName());
+			response = scoped;
+		} else
+			response = new PDU();
+		response.setType(PDU.RESPONSE);
+		response.setRequestID(request.getRequestID());
+
+		switch (request.getType()) {
+			case PDU.GET:
+			case PDU.GETNEXT:
+				return get(request, response, v1);
+			case PDU.GETBULK:
+				return getBulk(request, response);
+			default:
+				return error(request, response, v1 ? PDU.readOnly : PDU.notWritable, 1);
+		}
+	}
+
+	private PDU get(PDU request, PDU response, boolean v1) {
+		int count = request.size();
+		if (profile.isNoBatch() && count > 1)
+			count = 1;
+		int maxVarBinds = profile.getMaxVarBinds();
+		if (maxVarBinds > 0 && count > maxVarBinds) {
+			response.setErrorStatus(PDU.tooBig);
+			return response;
+		}
+
+		boolean next = request.getType() == PDU.GETNEXT;
+		int repeatEvery = profile.getRepeatEvery();
+		boolean repeat = next && repeatEvery > 0 && getNextCount.incrementAndGet() % repeatEvery == 0;
+		for (int i = 0; i < count; i++) {
+			OID oid = request.get(i).getOid();
+			Variable value = mib.get(oid);
+			if (!next || (repeat && value != null)) {
+				if (value == null) {
+					if (v1)
+						return error(request, response, PDU.noSuchName, i + 1);
+					value = Null.noSuchObject;
+				}
+				response.add(new VariableBinding(oid, value));
+				continue;
+			}
+
+			Map.Entry<OID, Variable> entry = mib.next(oid);
+			if (entry == null) {
+				if (v1)
+					return error(request, response, PDU.noSuchName, i + 1);
+				response.add(new VariableBinding(oid, Null.endOfMibView));
+			} else {
+				response.add(new VariableBinding(entry.getKey(), entry.getValue()));
+			}
+		}
+		return response;
+	}
+
+	private PDU getBulk(PDU request, PDU response) {
+		int nonRepeaters = Math.max(0, Math.min(request.getNonRepeaters(), request.size()));
+		int repeaters = request.size() - nonRepeaters;
+		int maxRepetitions = Math.max(0, request.getMaxRepetitions());
+		int limit = profile.getMaxVarBinds() > 0 ? profile.getMaxVarBinds() : Integer.MAX_VALUE;
+		if (profile.isNoBatch())
+			limit = Math.min(limit, 1);
+
+		for (int i = 0; i < nonRepeaters && response.size() < limit; i++)
+			response.add(next(request.get(i).getOid()));
+
+		OID[] last = new OID[repeaters];
+		for (int i = 0; i < repeaters; i++)
+			last[i] = request.get(nonRepeaters + i).getOid();
+		for (int r = 0; r < maxRepetitions; r++) {
+			boolean end = true;
+			for (int i = 0; i < repeaters; i++) {
+				if (response.size() >= limit)
+					return response;
+				VariableBinding vb = next(last[i]);
+				response.add(vb);
+				if (!Null.isExceptionSyntax(vb.getSyntax()))
+					end = false;
+				last[i] = vb.getOid();
+			}
+			if (end)
+				break;
+		}
+		return response;
+	}
+
+	private VariableBinding next(OID oid) {
+		Map.Entry<OID, Variable> entry = mib.next(oid);
+		if (entry == null)
+			return new VariableBinding(oid, Null.endOfMibView);
+		return new VariableBinding(entry.getKey(), entry.getValue());
+	}
+
+	private static PDU error(PDU request, PDU response, int status, int index) {
+		List<VariableBinding> vbs = new ArrayList<VariableBinding>(request.size());
+		for (int i = 0; i < request.size(); i++)
+			vbs.add(new VariableBinding(request.get(i).getOid(), request.get(i).getVariable()));
+		response.setVariableBindings(vbs);
+		response.setErrorStatus(status);
+		response.setErrorIndex(index);
+		return response;
+	}
+}
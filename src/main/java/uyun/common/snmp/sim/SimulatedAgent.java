@@ -0,0 +1,281 @@
+package uyun.common.snmp.sim;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUser;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import uyun.common.snmp.entity.SecurityLevel;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVersion;
+import uyun.common.snmp.error.ErrorUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的模拟SNMP设备
+ * <p>
+ * 在本机UDP端口上以snmp4j的代理端传输层接收SNMPv1/v2c请求，由MibResponder根据MIB树生成响应，
+ * 并按DeviceProfile模拟响应延迟、抖动、丢包与设备缺陷，使测试与基准测试不需要访问真实设备。
+ * 有延迟的响应由定时线程发送，不阻塞接收线程。
+ * <p>
+ * 启动前通过setEngineID与addUser启用SNMPv3后，同时接收SNMPv3请求，引擎ID发现、引擎时间同步与USM验证、加密由snmp4j完成。
+ * <p>
+ * 注意Snmp默认对同一ip的两个请求之间间隔50毫秒，测量吞吐量时应通过系统属性snmp.interval.127.0.0.1=0取消间隔，
+ * 或将多个模拟设备绑定到不同的环回地址。
+ */
+public class SimulatedAgent {
+	private static final Logger logger = LoggerFactory.getLogger(SimulatedAgent.class);
+
+	private final MibResponder responder;
+	private final ScheduledExecutorService scheduler;
+	private final boolean ownScheduler;
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong responded = new AtomicLong();
+	private DefaultUdpTransportMapping transport;
+	private UdpAddress address;
+	private byte[] engineID;
+	private final List<UsmUser> users = new ArrayList<UsmUser>();
+
+	/**
+	 * 构建一个使用默认行为参数的模拟设备
+	 *
+	 * @param mib MIB树
+	 */
+	public SimulatedAgent(SimulatedMib mib) {
+		this(mib, new DeviceProfile());
+	}
+
+	public SimulatedAgent(SimulatedMib mib, DeviceProfile profile) {
+		this(mib, profile, null);
+	}
+
+	/**
+	 * @param mib       MIB树，可以由多个模拟设备共享
+	 * @param profile   行为参数
+	 * @param scheduler 发送延迟响应的定时线程池，为null时自行创建，多个模拟设备可以共享同一个线程池
+	 */
+	public SimulatedAgent(SimulatedMib mib, DeviceProfile profile, ScheduledExecutorService scheduler) {
+		this.responder = new MibResponder(mib, profile);
+		this.ownScheduler = scheduler == null;
+		this.scheduler = scheduler == null ? createScheduler("snmp-sim", 1) : scheduler;
+	}
+
+	static ScheduledExecutorService createScheduler(final String name, int threads) {
+		return Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+			private final AtomicLong count = new AtomicLong();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * 设置本设备的SNMPv3权威引擎ID，设置后启用SNMPv3，需要在start前调用
+	 *
+	 * @param engineID 权威引擎ID，为null时不支持SNMPv3
+	 */
+	public synchronized void setEngineID(byte[] engineID) {
+		if (transport != null)
+			throw new IllegalStateException("模拟设备已经启动：" + address);
+		this.engineID = engineID == null ? null : engineID.clone();
+	}
+
+	/**
+	 * 添加SNMPv3用户，使用param中的用户名、安全级别、协议与口令，需要在start前调用
+	 *
+	 * @param param SNMPv3访问参数
+	 */
+	public synchronized void addUser(SnmpTarget param) {
+		if (transport != null)
+			throw new IllegalStateException("模拟设备已经启动：" + address);
+		if (!param.isV3())
+			throw new IllegalArgumentException("不是SNMPv3参数：" + param);
+		OctetString user = new OctetString(param.getSecurityUser());
+		if (param.getSecurityLevel() == SecurityLevel.noAuthNoPriv)
+			users.add(new UsmUser(user, null, null, null, null));
+		else if (param.getSecurityLevel() == SecurityLevel.authNoPriv)
+			users.add(new UsmUser(user, param.getAuthProtocol().getOID(), new OctetString(param.getAuthPassword()), null, null));
+		else
+			users.add(new UsmUser(user, param.getAuthProtocol().getOID(), new OctetString(param.getAuthPassword()),
+					param.getPrivProtocol().getOID(), new OctetString(param.getPrivPassword())));
+	}
+
+	/**
+	 * 开始在指定地址上监听
+	 *
+	 * @param host 本机地址，如127.0.0.1
+	 * @param port 端口，为0时自动选择空闲端口
+	 * @throws IOException 端口被占用等无法监听时弹出此异常
+	 */
+	public synchronized void start(String host, int port) throws IOException {
+		if (transport != null)
+			throw new IllegalStateException("模拟设备已经启动：" + address);
+
+		InetAddress inetAddress = InetAddress.getByName(host);
+		DefaultUdpTransportMapping transport = new DefaultUdpTransportMapping(new UdpAddress(inetAddress, port));
+		MessageDispatcherImpl dispatcher = new MessageDispatcherImpl();
+		dispatcher.addMessageProcessingModel(new MPv1());
+		dispatcher.addMessageProcessingModel(new MPv2c());
+		if (engineID != null) {
+			// 使用独立的USM，不影响本进程中Snmp使用的全局SecurityModels
+			USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(engineID), 1);
+			for (UsmUser user : users)
+				usm.addUser(user);
+			dispatcher.addMessageProcessingModel(new MPv3(usm));
+		}
+		dispatcher.addTransportMapping(transport);
+		transport.addTransportListener(dispatcher);
+		dispatcher.addCommandResponder(new CommandResponder() {
+			public void processPdu(CommandResponderEvent event) {
+				receive(event);
+			}
+		});
+		// getListenAddress只返回实际绑定的端口，地址以传入的为准
+		UdpAddress address = new UdpAddress(inetAddress, transport.getListenAddress().getPort());
+		transport.setThreadName("snmp-sim-" + address);
+		transport.listen();
+		this.transport = transport;
+		this.address = address;
+		logger.debug("模拟设备已启动：{}", address);
+	}
+
+	/**
+	 * 停止监听，自行创建的定时线程池同时关闭
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (ownScheduler)
+			scheduler.shutdownNow();
+		if (transport != null) {
+			transport.close();
+			transport = null;
+			address = null;
+		}
+	}
+
+	private void receive(final CommandResponderEvent event) {
+		PDU request = event.getPDU();
+		if (request == null)
+			return;
+		received.incrementAndGet();
+		event.setProcessed(true);
+
+		DeviceProfile profile = responder.getProfile();
+		String community = profile.getCommunity();
+		// SNMPv3请求由USM验证，securityName为用户名
+		boolean v3 = event.getMessageProcessingModel() == MPv3.ID;
+		if ((!v3 && community != null && !Arrays.equals(community.getBytes(), event.getSecurityName()))
+				|| (profile.getLossRate() > 0 && ThreadLocalRandom.current().nextDouble() < profile.getLossRate())) {
+			dropped.incrementAndGet();
+			return;
+		}
+
+		final PDU response = responder.respond(request);
+		long delay = profile.getLatency();
+		if (profile.getJitter() > 0)
+			delay += ThreadLocalRandom.current().nextLong(profile.getJitter() + 1);
+		if (delay <= 0) {
+			reply(event, response);
+			return;
+		}
+		scheduler.schedule(new Runnable() {
+			public void run() {
+				reply(event, response);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void reply(CommandResponderEvent event, PDU response) {
+		try {
+			event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(), event.getSecurityModel(),
+					event.getSecurityName(), event.getSecurityLevel(), response, event.getMaxSizeResponsePDU(),
+					event.getStateReference(), new StatusInformation());
+			responded.incrementAndGet();
+		} catch (MessageException e) {
+			ErrorUtil.warn(logger, "模拟设备发送响应失败：" + event.getPeerAddress(), e);
+		}
+	}
+
+	/**
+	 * 返回访问本模拟设备的参数，版本为V2C
+	 *
+	 * @return
+	 */
+	public SnmpTarget getTarget() {
+		UdpAddress address = getAddress();
+		SnmpTarget target = new SnmpTarget(address.getInetAddress().getHostAddress(), responder.getProfile().getCommunity());
+		target.setPort(address.getPort());
+		target.setVersion(SnmpVersion.V2C);
+		return target;
+	}
+
+	/**
+	 * 返回监听地址
+	 *
+	 * @return
+	 * @throws IllegalStateException 尚未启动时弹出此异常
+	 */
+	public synchronized UdpAddress getAddress() {
+		if (address == null)
+			throw new IllegalStateException("模拟设备尚未启动");
+		return address;
+	}
+
+	public SimulatedMib getMib() {
+		return responder.getMib();
+	}
+
+	public DeviceProfile getProfile() {
+		return responder.getProfile();
+	}
+
+	/**
+	 * 返回收到的请求数量，包括被丢弃的请求
+	 *
+	 * @return
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * 返回因团体名不符或模拟丢包而丢弃的请求数量
+	 *
+	 * @return
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getResponded() {
+		return responded.get();
+	}
+}
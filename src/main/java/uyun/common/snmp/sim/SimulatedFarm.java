@@ -0,0 +1,115 @@
+package uyun.common.snmp.sim;
+
+import uyun.common.snmp.entity.SnmpTarget;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * 一组模拟设备，用于模拟大量设备的采集压力
+ * <p>
+ * 每个模拟设备占用一个UDP端口与一个接收线程，延迟响应由所有设备共享的定时线程池发送。
+ * 设备默认绑定在127.0.0.1的不同端口上；Linux下整个127.0.0.0/8都是环回地址，
+ * 也可以通过add(host, ...)将设备分散到不同地址，使Snmp按ip的发包间隔控制与真实环境一致。
+ */
+public class SimulatedFarm {
+	/**
+	 * 默认的监听地址
+	 */
+	public static final String HOST_DEFAULT = "127.0.0.1";
+
+	private final ScheduledExecutorService scheduler;
+	private final List<SimulatedAgent> agents = new CopyOnWriteArrayList<SimulatedAgent>();
+
+	public SimulatedFarm() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param schedulerThreads 发送延迟响应的线程数
+	 */
+	public SimulatedFarm(int schedulerThreads) {
+		this.scheduler = SimulatedAgent.createScheduler("snmp-sim-farm", schedulerThreads);
+	}
+
+	/**
+	 * 启动count个共享同一MIB树、各自使用独立行为参数的模拟设备
+	 *
+	 * @param count 设备数量
+	 * @param mib   MIB树
+	 * @return 新启动的设备
+	 * @throws IOException 无法监听时弹出此异常，已启动的设备保持运行
+	 */
+	public List<SimulatedAgent> addAll(int count, SimulatedMib mib) throws IOException {
+		List<SimulatedAgent> added = new ArrayList<SimulatedAgent>(count);
+		for (int i = 0; i < count; i++)
+			added.add(add(HOST_DEFAULT, mib, new DeviceProfile()));
+		return added;
+	}
+
+	/**
+	 * 在127.0.0.1的空闲端口上启动一个模拟设备
+	 *
+	 * @param mib     MIB树
+	 * @param profile 行为参数
+	 * @return
+	 * @throws IOException 无法监听时弹出此异常
+	 */
+	public SimulatedAgent add(SimulatedMib mib, DeviceProfile profile) throws IOException {
+		return add(HOST_DEFAULT, mib, profile);
+	}
+
+	/**
+	 * 在指定地址的空闲端口上启动一个模拟设备
+	 *
+	 * @param host    本机地址
+	 * @param mib     MIB树
+	 * @param profile 行为参数
+	 * @return
+	 * @throws IOException 无法监听时弹出此异常
+	 */
+	public SimulatedAgent add(String host, SimulatedMib mib, DeviceProfile profile) throws IOException {
+		SimulatedAgent agent = new SimulatedAgent(mib, profile, scheduler);
+		agent.start(host, 0);
+		agents.add(agent);
+		return agent;
+	}
+
+	public List<SimulatedAgent> getAgents() {
+		return new ArrayList<SimulatedAgent>(agents);
+	}
+
+	/**
+	 * 返回访问所有模拟设备的参数
+	 *
+	 * @return
+	 */
+	public List<SnmpTarget> getTargets() {
+		List<SnmpTarget> targets = new ArrayList<SnmpTarget>(agents.size());
+		for (SimulatedAgent agent : agents)
+			targets.add(agent.getTarget());
+		return targets;
+	}
+
+	public int size() {
+		return agents.size();
+	}
+
+	/**
+	 * 停止所有模拟设备
+	 */
+	public void close() {
+		for (SimulatedAgent agent : agents) {
+			try {
+				agent.close();
+			} catch (IOException e) {
+				// 关闭环回端口失败不影响其它设备
+			}
+		}
+		agents.clear();
+		scheduler.shutdownNow();
+	}
+}
@@ -0,0 +1,201 @@
+package uyun.common.snmp.sim;
+
+import org.snmp4j.smi.*;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 模拟设备使用的MIB树
+ * <p>
+ * 以OID有序保存节点值，可以在模拟设备运行中修改。可以通过代码构建，也可以从snmprec格式的录制文件读取，
+ * snmprec是snmpsim使用的录制格式，每行一个节点：<code>oid|tag|value</code>，tag为BER类型编号，
+ * 带x后缀时value为十六进制，如<code>1.3.6.1.2.1.1.5.0|4|router-1</code>、<code>1.3.6.1.2.1.2.2.1.6.1|4x|00e04c680001</code>。
+ */
+public class SimulatedMib {
+	/**
+	 * ifTable与ifXTable中常用的列
+	 */
+	public static final String IF_DESCR = "1.3.6.1.2.1.2.2.1.2";
+	public static final String IF_OPER_STATUS = "1.3.6.1.2.1.2.2.1.8";
+	public static final String IF_HC_IN_OCTETS = "1.3.6.1.2.1.31.1.1.1.6";
+	public static final String IF_HC_OUT_OCTETS = "1.3.6.1.2.1.31.1.1.1.10";
+	public static final String IF_HIGH_SPEED = "1.3.6.1.2.1.31.1.1.1.15";
+
+	private final ConcurrentNavigableMap<OID, Variable> nodes = new ConcurrentSkipListMap<OID, Variable>();
+
+	/**
+	 * 构建一个包含system组、ifTable与ifXTable部分列的MIB
+	 *
+	 * @param sysName    设备名称
+	 * @param interfaces 接口数量
+	 * @return
+	 */
+	public static SimulatedMib synthetic(String sysName, int interfaces) {
+		SimulatedMib mib = new SimulatedMib();
+		mib.put("1.3.6.1.2.1.1.1.0", new OctetString("Simulated SNMP Agent"));
+		mib.put("1.3.6.1.2.1.1.2.0", new OID("1.3.6.1.4.1.8072.3.2.10"));
+		mib.put("1.3.6.1.2.1.1.3.0", new TimeTicks(0));
+		mib.put("1.3.6.1.2.1.1.5.0", new OctetString(sysName));
+		mib.put("1.3.6.1.2.1.2.1.0", new Integer32(interfaces));
+		for (int i = 1; i <= interfaces; i++) {
+			mib.put(IF_DESCR + "." + i, new OctetString("eth" + (i - 1)));
+			mib.put(IF_OPER_STATUS + "." + i, new Integer32(1));
+			mib.put(IF_HC_IN_OCTETS + "." + i, new Counter64(i * 1000000L));
+			mib.put(IF_HC_OUT_OCTETS + "." + i, new Counter64(i * 2000000L));
+			mib.put(IF_HIGH_SPEED + "." + i, new Gauge32(1000));
+		}
+		return mib;
+	}
+
+	/**
+	 * 读取snmprec格式的录制文件
+	 *
+	 * @param file 录制文件，UTF-8编码
+	 * @return
+	 * @throws IOException 读取失败或格式错误时弹出此异常
+	 */
+	public static SimulatedMib load(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"));
+		try {
+			return load(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * 读取snmprec格式的录制内容，空行与#开头的行被忽略
+	 *
+	 * @param reader
+	 * @return
+	 * @throws IOException 读取失败或格式错误时弹出此异常
+	 */
+	public static SimulatedMib load(Reader reader) throws IOException {
+		SimulatedMib mib = new SimulatedMib();
+		BufferedReader in = new BufferedReader(reader);
+		String line;
+		int lineNo = 0;
+		while ((line = in.readLine()) != null) {
+			lineNo++;
+			if (line.length() == 0 || line.startsWith("#"))
+				continue;
+			int first = line.indexOf('|');
+			int second = first < 0 ? -1 : line.indexOf('|', first + 1);
+			if (second < 0)
+				throw new IOException(String.format("snmprec格式错误[行: %d]：%s", lineNo, line));
+			try {
+				mib.put(new OID(line.substring(0, first)),
+						parseValue(line.substring(first + 1, second), line.substring(second + 1)));
+			} catch (RuntimeException e) {
+				throw new IOException(String.format("snmprec格式错误[行: %d]：%s", lineNo, line), e);
+			}
+		}
+		return mib;
+	}
+
+	private static Variable parseValue(String tag, String value) {
+		// 忽略snmpsim的变化模块，如65:numeric
+		int colon = tag.indexOf(':');
+		if (colon >= 0)
+			tag = tag.substring(0, colon);
+		boolean hex = tag.endsWith("x");
+		if (hex)
+			tag = tag.substring(0, tag.length() - 1);
+
+		int type = Integer.parseInt(tag);
+		if (hex && type == SMIConstants.SYNTAX_OCTET_STRING)
+			return OctetString.fromHexStringPairs(value);
+		if (hex && type == SMIConstants.SYNTAX_OPAQUE)
+			return new Opaque(OctetString.fromHexStringPairs(value).getValue());
+		switch (type) {
+			case SMIConstants.SYNTAX_INTEGER32:
+				return new Integer32(Integer.parseInt(value));
+			case SMIConstants.SYNTAX_OCTET_STRING:
+				return new OctetString(value);
+			case SMIConstants.SYNTAX_NULL:
+				return new Null();
+			case SMIConstants.SYNTAX_OBJECT_IDENTIFIER:
+				return new OID(value);
+			case SMIConstants.SYNTAX_IPADDRESS:
+				return new IpAddress(value);
+			case SMIConstants.SYNTAX_COUNTER32:
+				return new Counter32(Long.parseLong(value));
+			case SMIConstants.SYNTAX_GAUGE32:
+				return new Gauge32(Long.parseLong(value));
+			case SMIConstants.SYNTAX_TIMETICKS:
+				return new TimeTicks(Long.parseLong(value));
+			case SMIConstants.SYNTAX_COUNTER64:
+				return new Counter64(new BigInteger(value).longValue());
+			default:
+				throw new IllegalArgumentException("不支持的类型：" + type);
+		}
+	}
+
+	/**
+	 * 写入snmprec格式的内容，可以再通过load读取
+	 *
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void save(Writer writer) throws IOException {
+		for (Map.Entry<OID, Variable> entry : nodes.entrySet()) {
+			Variable value = entry.getValue();
+			writer.write(entry.getKey().toDottedString());
+			writer.write('|');
+			if (value instanceof OctetString && !((OctetString) value).isPrintable()) {
+				writer.write(value.getSyntax() + "x|" + ((OctetString) value).toHexString().replace(":", ""));
+			} else if (value instanceof OID) {
+				writer.write(value.getSyntax() + "|" + ((OID) value).toDottedString());
+			} else if (value instanceof Counter64) {
+				writer.write(value.getSyntax() + "|" + Long.toUnsignedString(value.toLong()));
+			} else if (value instanceof UnsignedInteger32) {
+				writer.write(value.getSyntax() + "|" + value.toLong());
+			} else {
+				writer.write(value.getSyntax() + "|" + value.toString());
+			}
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	public void put(String oid, Variable value) {
+		put(new OID(oid), value);
+	}
+
+	public void put(OID oid, Variable value) {
+		nodes.put(oid, value);
+	}
+
+	public void remove(OID oid) {
+		nodes.remove(oid);
+	}
+
+	/**
+	 * 返回节点值
+	 *
+	 * @param oid
+	 * @return 不存在时返回null
+	 */
+	public Variable get(OID oid) {
+		return nodes.get(oid);
+	}
+
+	/**
+	 * 返回oid之后的第一个节点
+	 *
+	 * @param oid
+	 * @return 已到MIB末尾时返回null
+	 */
+	public Map.Entry<OID, Variable> next(OID oid) {
+		return nodes.higherEntry(oid);
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+}
@@ -0,0 +1,126 @@
+package uyun.common.snmp.state;
+
+/**
+ * 单个设备在运行期间学习到的状态
+ * <p>
+ * 包括响应时间、是否支持批量请求，以及SNMPv3的权威引擎ID、启动次数与引擎时间。本对象由DeviceStateRegistry维护，
+ * 除响应时间外均可通过WarmStartStore保存到本地文件，在进程重启后恢复。
+ */
+public class DeviceState {
+	/**
+	 * 响应时间EWMA的平滑系数
+	 */
+	private static final double RTT_ALPHA = 0.125;
+
+	private final String ip;
+	private final int port;
+	private long rtt = -1;
+	private long batchUnsupportedSince;
+	private long lastSeen;
+	private byte[] engineID;
+	private int engineBoots;
+	private int engineTime;
+
+	public DeviceState(String ip, int port) {
+		this.ip = ip;
+		this.port = port;
+	}
+
+	public String getIp() {
+		return ip;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * 响应时间的指数加权移动平均值
+	 *
+	 * @return 单位微秒，尚无响应时为-1
+	 */
+	public synchronized long getRtt() {
+		return rtt;
+	}
+
+	/**
+	 * 记录一次响应
+	 *
+	 * @param rtt 本次响应时间，单位微秒
+	 * @param now 当前时间
+	 */
+	synchronized void responded(long rtt, long now) {
+		if (this.rtt < 0)
+			this.rtt = rtt;
+		else
+			this.rtt += (long) ((rtt - this.rtt) * RTT_ALPHA);
+		this.lastSeen = now;
+	}
+
+	/**
+	 * 最近一次发现设备不支持批量请求的时间
+	 *
+	 * @return 0表示未发现
+	 */
+	public synchronized long getBatchUnsupportedSince() {
+		return batchUnsupportedSince;
+	}
+
+	synchronized void setBatchUnsupportedSince(long batchUnsupportedSince) {
+		this.batchUnsupportedSince = batchUnsupportedSince;
+	}
+
+	/**
+	 * 最近一次收到响应的时间
+	 *
+	 * @return
+	 */
+	public synchronized long getLastSeen() {
+		return lastSeen;
+	}
+
+	synchronized void setLastSeen(long lastSeen) {
+		this.lastSeen = lastSeen;
+	}
+
+	/**
+	 * SNMPv3权威引擎ID
+	 *
+	 * @return 非V3设备或未发现时为null
+	 */
+	public synchronized byte[] getEngineID() {
+		return engineID;
+	}
+
+	public synchronized int getEngineBoots() {
+		return engineBoots;
+	}
+
+	/**
+	 * 记录engineID时的设备引擎时间，单位秒
+	 *
+	 * @return
+	 */
+	public synchronized int getEngineTime() {
+		return engineTime;
+	}
+
+	/**
+	 * 设置SNMPv3引擎状态
+	 *
+	 * @param engineID    权威引擎ID
+	 * @param engineBoots 启动次数
+	 * @param engineTime  当前引擎时间，单位秒
+	 */
+	public synchronized void setEngine(byte[] engineID, int engineBoots, int engineTime) {
+		this.engineID = engineID;
+		this.engineBoots = engineBoots;
+		this.engineTime = engineTime;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("device[%s/%d rtt: %dus lastSeen: %d batchUnsupportedSince: %d]", ip, port, rtt, lastSeen,
+				batchUnsupportedSince);
+	}
+}
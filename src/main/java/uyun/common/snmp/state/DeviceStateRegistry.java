@@ -0,0 +1,148 @@
+package uyun.common.snmp.state;
+
+import uyun.common.snmp.entity.SnmpTarget;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 设备运行状态注册表
+ * <p>
+ * 以ip与端口为键保存每个设备的DeviceState，由Snmp在收到响应与发现设备不支持批量请求时更新。
+ */
+public class DeviceStateRegistry {
+	/**
+	 * 默认的批量请求重新探测间隔，单位毫秒。发现设备不支持批量请求后，在此间隔内直接逐个请求，之后再重新尝试批量请求
+	 */
+	public static final long BATCH_RETRY_INTERVAL_DEFAULT = 60 * 60 * 1000L;
+	private static final DeviceStateRegistry inst = new DeviceStateRegistry();
+
+	private final ConcurrentMap<String, DeviceState> devices = new ConcurrentHashMap<String, DeviceState>();
+	private volatile long batchRetryInterval = BATCH_RETRY_INTERVAL_DEFAULT;
+
+	public static DeviceStateRegistry getInstance() {
+		return inst;
+	}
+
+	/**
+	 * 返回设备状态
+	 *
+	 * @param ip   设备ip
+	 * @param port 设备端口
+	 * @return 不存在时返回null
+	 */
+	public DeviceState get(String ip, int port) {
+		return devices.get(key(ip, port));
+	}
+
+	/**
+	 * 返回设备状态，不存在时创建
+	 *
+	 * @param ip   设备ip
+	 * @param port 设备端口
+	 * @return
+	 */
+	public DeviceState getOrCreate(String ip, int port) {
+		String key = key(ip, port);
+		DeviceState state = devices.get(key);
+		if (state == null) {
+			DeviceState created = new DeviceState(ip, port);
+			state = devices.putIfAbsent(key, created);
+			if (state == null)
+				state = created;
+		}
+		return state;
+	}
+
+	/**
+	 * 加入或替换一个设备状态，用于从快照恢复
+	 *
+	 * @param state
+	 */
+	public void put(DeviceState state) {
+		devices.put(key(state.getIp(), state.getPort()), state);
+	}
+
+	/**
+	 * 记录一次响应
+	 *
+	 * @param param    访问参数
+	 * @param rttNanos 响应时间，单位纳秒
+	 */
+	public void responded(SnmpTarget param, long rttNanos) {
+		getOrCreate(param.getIp(), param.getPort()).responded(rttNanos / 1000, System.currentTimeMillis());
+	}
+
+	/**
+	 * 记录设备不支持批量请求
+	 *
+	 * @param param 访问参数
+	 */
+	public void setBatchUnsupported(SnmpTarget param) {
+		getOrCreate(param.getIp(), param.getPort()).setBatchUnsupportedSince(System.currentTimeMillis());
+	}
+
+	/**
+	 * 判断是否在重新探测间隔内发现过设备不支持批量请求
+	 *
+	 * @param param 访问参数
+	 * @return
+	 */
+	public boolean isBatchUnsupported(SnmpTarget param) {
+		DeviceState state = devices.get(key(param.getIp(), param.getPort()));
+		if (state == null)
+			return false;
+		long since = state.getBatchUnsupportedSince();
+		return since > 0 && System.currentTimeMillis() - since < batchRetryInterval;
+	}
+
+	/**
+	 * 设置批量请求重新探测间隔
+	 *
+	 * @param batchRetryInterval 单位毫秒
+	 */
+	public void setBatchRetryInterval(long batchRetryInterval) {
+		this.batchRetryInterval = batchRetryInterval;
+	}
+
+	/**
+	 * 返回所有设备状态的快照
+	 *
+	 * @return
+	 */
+	public Collection<DeviceState> getAll() {
+		return new ArrayList<DeviceState>(devices.values());
+	}
+
+	/**
+	 * 删除在指定时间之前没有响应的设备
+	 *
+	 * @param before 时间点
+	 * @return 删除的数量
+	 */
+	public int prune(long before) {
+		int count = 0;
+		for (Iterator<DeviceState> iter = devices.values().iterator(); iter.hasNext(); ) {
+			if (iter.next().getLastSeen() < before) {
+				iter.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int size() {
+		return devices.size();
+	}
+
+	public void clear() {
+		devices.clear();
+	}
+
+	private static String key(String ip, int port) {
+		return ip + "/" + port;
+	}
+}
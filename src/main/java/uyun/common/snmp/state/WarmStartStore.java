@@ -0,0 +1,354 @@
+package uyun.common.snmp.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.smi.OID;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.error.ErrorUtil;
+import uyun.common.snmp.v3.LocalizedKeyCache;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 设备运行状态的本地快照
+ * <p>
+ * 将DeviceStateRegistry中的设备状态（是否支持批量请求、SNMPv3引擎ID/启动次数/引擎时间）保存到本地文件，
+ * 进程重启后读取并恢复，使重启后的第一轮采集不必重新学习这些状态。可选地同时保存SNMPv3本地化密钥。
+ * 响应时间不参与请求的超时选择，不保存，重启后重新统计。
+ * <p>
+ * 文件为紧凑的二进制格式，末尾带CRC32校验，写入时先写临时文件再改名，读取时校验失败则整个文件丢弃。
+ * 超过maxAge没有响应的设备在保存与恢复时都会被丢弃。
+ */
+public class WarmStartStore {
+	private static final Logger logger = LoggerFactory.getLogger(WarmStartStore.class);
+	/**
+	 * 默认的状态过期时间，单位毫秒
+	 */
+	public static final long MAX_AGE_DEFAULT = 24 * 60 * 60 * 1000L;
+	private static final int MAGIC = 0x534E5753;
+	private static final int VERSION = 2;
+	/**
+	 * 版本1的快照中每个设备多保存了响应时间，读取时跳过
+	 */
+	private static final int VERSION_WITH_RTT = 1;
+
+	private final File file;
+	private final DeviceStateRegistry registry;
+	private long maxAge = MAX_AGE_DEFAULT;
+	private boolean persistKeys;
+	private ScheduledExecutorService timer;
+
+	/**
+	 * 构建一个快照存储，使用全局的DeviceStateRegistry
+	 *
+	 * @param file 快照文件
+	 */
+	public WarmStartStore(File file) {
+		this(file, DeviceStateRegistry.getInstance());
+	}
+
+	public WarmStartStore(File file, DeviceStateRegistry registry) {
+		this.file = file;
+		this.registry = registry;
+	}
+
+	/**
+	 * 设置状态过期时间，超过此时间没有响应的设备不再保存与恢复
+	 *
+	 * @param maxAge 单位毫秒
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * 设置是否保存SNMPv3本地化密钥，默认为false。
+	 * 本地化密钥可以直接用于对应设备的验证与加密，开启时快照文件只有所有者可读写（支持POSIX权限的平台）
+	 *
+	 * @param persistKeys
+	 */
+	public void setPersistKeys(boolean persistKeys) {
+		this.persistKeys = persistKeys;
+	}
+
+	/**
+	 * 启动定时保存线程
+	 *
+	 * @param interval 保存间隔，单位毫秒
+	 */
+	public synchronized void start(long interval) {
+		if (timer != null)
+			return;
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "snmp-warm-start");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					save();
+				} catch (Throwable e) {
+					ErrorUtil.warn(logger, "保存设备状态快照失败：" + file, e);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止定时保存线程，并立即保存一次
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (timer != null) {
+			timer.shutdown();
+			timer = null;
+		}
+		save();
+	}
+
+	/**
+	 * 保存快照
+	 *
+	 * @return 保存的设备数量
+	 * @throws IOException
+	 */
+	public synchronized int save() throws IOException {
+		long now = System.currentTimeMillis();
+		registry.prune(now - maxAge);
+		Collection<DeviceState> devices = registry.getAll();
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(devices.size() * 64 + 64);
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(now);
+
+		Set<Bytes> engineIDs = new HashSet<Bytes>();
+		out.writeInt(devices.size());
+		for (DeviceState state : devices) {
+			if (Snmp.exportEngineState(state))
+				engineIDs.add(new Bytes(state.getEngineID()));
+			out.writeUTF(state.getIp());
+			out.writeInt(state.getPort());
+			out.writeLong(state.getLastSeen());
+			out.writeLong(state.getBatchUnsupportedSince());
+			writeBytes(out, state.getEngineID());
+			out.writeInt(state.getEngineBoots());
+			out.writeInt(state.getEngineTime());
+		}
+
+		List<LocalizedKeyCache.Entry> keys = new ArrayList<LocalizedKeyCache.Entry>();
+		if (persistKeys) {
+			for (LocalizedKeyCache.Entry entry : LocalizedKeyCache.getInstance().entries()) {
+				if (engineIDs.contains(new Bytes(entry.getEngineID())))
+					keys.add(entry);
+			}
+		}
+		out.writeInt(keys.size());
+		for (LocalizedKeyCache.Entry entry : keys) {
+			out.writeUTF(entry.getAuthProtocol().toDottedString());
+			out.writeUTF(entry.getPrivProtocol() == null ? "" : entry.getPrivProtocol().toDottedString());
+			writeBytes(out, entry.getPasswordDigest());
+			writeBytes(out, entry.getEngineID());
+			writeBytes(out, entry.getKey());
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		write(buffer.toByteArray(), persistKeys);
+		logger.debug("已保存设备状态快照：{}，设备数：{}，密钥数：{}", file, devices.size(), keys.size());
+		return devices.size();
+	}
+
+	/**
+	 * 读取快照并恢复设备状态，应在采集开始前调用。文件不存在或已损坏时不恢复任何状态
+	 *
+	 * @return 恢复的设备数量
+	 */
+	public synchronized int restore() {
+		if (!file.exists())
+			return 0;
+
+		byte[] data;
+		try {
+			data = read();
+		} catch (IOException e) {
+			ErrorUtil.warn(logger, "读取设备状态快照失败：" + file, e);
+			return 0;
+		}
+
+		try {
+			return restore(data);
+		} catch (IOException e) {
+			ErrorUtil.warn(logger, "设备状态快照已损坏：" + file, e);
+			return 0;
+		}
+	}
+
+	private int restore(byte[] data) throws IOException {
+		if (data.length < 8)
+			throw new IOException("文件长度错误");
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length - 8);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		in.skipBytes(data.length - 8);
+		if (in.readLong() != crc.getValue())
+			throw new IOException("校验失败");
+
+		in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 8));
+		if (in.readInt() != MAGIC)
+			throw new IOException("不是设备状态快照文件");
+		int version = in.readByte();
+		if (version != VERSION && version != VERSION_WITH_RTT)
+			throw new IOException("不支持的快照版本：" + version);
+
+		long now = System.currentTimeMillis();
+		long savedAt = in.readLong();
+		int elapsed = (int) (Math.max(0, now - savedAt) / 1000);
+
+		Set<Bytes> engineIDs = new HashSet<Bytes>();
+		int restored = 0;
+		int devices = in.readInt();
+		for (int i = 0; i < devices; i++) {
+			DeviceState state = new DeviceState(in.readUTF(), in.readInt());
+			state.setLastSeen(in.readLong());
+			if (version == VERSION_WITH_RTT)
+				in.readLong();
+			state.setBatchUnsupportedSince(in.readLong());
+			byte[] engineID = readBytes(in);
+			int engineBoots = in.readInt();
+			int engineTime = in.readInt();
+			if (now - state.getLastSeen() > maxAge)
+				continue;
+
+			if (engineID != null) {
+				state.setEngine(engineID, engineBoots, engineTime);
+				Snmp.importEngineState(state, elapsed);
+				engineIDs.add(new Bytes(engineID));
+			}
+			registry.put(state);
+			restored++;
+		}
+
+		int keys = 0;
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			String authProtocol = in.readUTF();
+			String privProtocol = in.readUTF();
+			byte[] passwordDigest = readBytes(in);
+			byte[] engineID = readBytes(in);
+			byte[] key = readBytes(in);
+			if (persistKeys && engineIDs.contains(new Bytes(engineID))) {
+				LocalizedKeyCache.getInstance().put(new LocalizedKeyCache.Entry(new OID(authProtocol),
+						privProtocol.length() == 0 ? null : new OID(privProtocol), passwordDigest, engineID, key));
+				keys++;
+			}
+		}
+
+		logger.info("已恢复设备状态快照：{}，设备数：{}，丢弃：{}，密钥数：{}", file, restored, devices - restored, keys);
+		return restored;
+	}
+
+	/**
+	 * @param ownerOnly 为true时临时文件在写入前即设为只有所有者可读写，改名后快照文件保持该权限
+	 */
+	private void write(byte[] data, boolean ownerOnly) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		if (ownerOnly)
+			createOwnerOnly(tmp);
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			out.write(data);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			// 部分平台上目标文件存在时改名失败
+			if (!file.delete() || !tmp.renameTo(file))
+				throw new IOException("无法替换快照文件：" + file);
+		}
+	}
+
+	private static void createOwnerOnly(File tmp) throws IOException {
+		Path path = tmp.toPath();
+		Files.deleteIfExists(path);
+		if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			return;
+		}
+		// 不支持POSIX权限的平台上尽量收回其他用户的读写权限
+		Files.createFile(path);
+		if (!tmp.setReadable(false, false) || !tmp.setReadable(true, true)
+				|| !tmp.setWritable(false, false) || !tmp.setWritable(true, true))
+			logger.warn("无法限制快照文件的访问权限：{}", tmp);
+	}
+
+	private byte[] read() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			byte[] data = new byte[(int) file.length()];
+			in.readFully(data);
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+		if (value == null) {
+			out.writeShort(0);
+			return;
+		}
+		out.writeShort(value.length);
+		out.write(value);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		int length = in.readUnsignedShort();
+		if (length == 0)
+			return null;
+		byte[] value = new byte[length];
+		in.readFully(value);
+		return value;
+	}
+
+	private static class Bytes {
+		final byte[] value;
+
+		Bytes(byte[] value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(value);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Bytes && Arrays.equals(value, ((Bytes) obj).value);
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package uyun.common.snmp.store;
+
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import uyun.common.snmp.entity.SnmpWalkResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 以内存映射方式打开的快照文件
+ * <p>
+ * 文件内容不读入堆内存，只在访问某条记录时从最近的重启点开始解码，顺序遍历时逐条解码。
+ * 不再使用的快照只占用操作系统的页缓存。本类及子类的实例可以在多个线程间共享。
+ * <p>
+ * 映射在实例被回收时才释放，close只是使实例不可再用。
+ */
+public abstract class Snapshot {
+	private final File file;
+	private final Charset charset;
+	private volatile ByteBuffer buffer;
+	private final SnmpWalkResult.State state;
+	private final long savedAt;
+	private final int count;
+	private final int interval;
+	private final OID[] columns;
+	private final int[] restarts;
+
+	Snapshot(File file, Charset charset, int expectedKind) throws IOException {
+		this.file = file;
+		this.charset = charset;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("快照文件过大：" + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+
+		try {
+			ByteBuffer in = buffer.duplicate();
+			if (in.getInt() != SnapshotCodec.MAGIC)
+				throw new IOException("不是快照文件：" + file);
+			int version = in.get();
+			if (version != SnapshotCodec.VERSION)
+				throw new IOException("不支持的快照版本：" + version);
+			int kind = in.get();
+			if (kind != expectedKind)
+				throw new IOException("快照类型不符：" + file);
+			state = SnmpWalkResult.State.values()[in.get()];
+			savedAt = in.getLong();
+			count = in.getInt();
+			interval = in.getInt();
+			columns = new OID[(int) SnapshotCodec.readVarint(in)];
+			for (int i = 0; i < columns.length; i++)
+				columns[i] = SnapshotCodec.readOid(in);
+
+			int index = buffer.getInt(buffer.limit() - 4);
+			restarts = new int[buffer.getInt(buffer.limit() - 8)];
+			in.position(index);
+			for (int i = 0; i < restarts.length; i++)
+				restarts[i] = in.getInt();
+		} catch (RuntimeException e) {
+			throw new IOException("快照文件已损坏：" + file, e);
+		}
+	}
+
+	/**
+	 * 返回保存快照的时间
+	 *
+	 * @return
+	 */
+	public long getSavedAt() {
+		return savedAt;
+	}
+
+	/**
+	 * 返回快照对应的采集状态
+	 *
+	 * @return
+	 */
+	public SnmpWalkResult.State getState() {
+		return state;
+	}
+
+	/**
+	 * 返回记录数，walk快照为变量数，表格快照为行数
+	 *
+	 * @return
+	 */
+	public int size() {
+		return count;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 使实例不可再用，之后的访问弹出IllegalStateException
+	 */
+	public void close() {
+		buffer = null;
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+
+	OID[] getColumnOids() {
+		return columns;
+	}
+
+	/**
+	 * 返回定位到第一条记录之前的游标
+	 */
+	Cursor start() {
+		return new Cursor(0);
+	}
+
+	/**
+	 * 返回定位到第index条记录之前的游标
+	 */
+	Cursor seek(int index) {
+		if (index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("index: " + index + ", size: " + count);
+		Cursor cursor = new Cursor(index / interval);
+		while (cursor.index < index - 1)
+			cursor.next(false);
+		return cursor;
+	}
+
+	/**
+	 * 按键查找，键按OID升序保存
+	 *
+	 * @return 找到时返回定位到该记录、尚未读取值的游标，找不到时返回null
+	 */
+	Cursor find(OID key) {
+		int low = 0;
+		int high = restarts.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			Cursor cursor = new Cursor(mid);
+			cursor.readKey();
+			if (cursor.key().compareTo(key) <= 0)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		if (restarts.length == 0)
+			return null;
+
+		Cursor cursor = new Cursor(low);
+		int end = Math.min(count, (low + 1) * interval);
+		while (cursor.index + 1 < end) {
+			cursor.readKey();
+			int compare = cursor.key().compareTo(key);
+			if (compare == 0)
+				return cursor;
+			if (compare > 0)
+				return null;
+			cursor.skipValues();
+		}
+		return null;
+	}
+
+	/**
+	 * 顺序解码记录的游标，每条记录先readKey，再readValues或skipValues
+	 */
+	class Cursor {
+		private final ByteBuffer in;
+		private int[] key = new int[16];
+		private int keyLength;
+		int index;
+
+		/**
+		 * 定位到重启点之前
+		 */
+		Cursor(int restart) {
+			ByteBuffer buffer = Snapshot.this.buffer;
+			if (buffer == null)
+				throw new IllegalStateException("快照已关闭：" + file);
+			in = buffer.duplicate();
+			// 没有记录时不会读取
+			in.position(restarts.length == 0 ? 0 : restarts[restart]);
+			index = restart * interval - 1;
+		}
+
+		boolean hasNext() {
+			return index + 1 < count;
+		}
+
+		void readKey() {
+			try {
+				int shared = (int) SnapshotCodec.readVarint(in);
+				int suffix = (int) SnapshotCodec.readVarint(in);
+				if (shared + suffix > key.length) {
+					int[] grown = new int[Math.max(key.length * 2, shared + suffix)];
+					System.arraycopy(key, 0, grown, 0, keyLength);
+					key = grown;
+				}
+				for (int i = 0; i < suffix; i++)
+					key[shared + i] = (int) SnapshotCodec.readVarint(in);
+				keyLength = shared + suffix;
+				index++;
+			} catch (BufferUnderflowException e) {
+				throw new IllegalStateException("快照文件已损坏：" + file, e);
+			}
+		}
+
+		OID key() {
+			return new OID(key, 0, keyLength);
+		}
+
+		Variable[] readValues() {
+			Variable[] values = new Variable[Math.max(1, columns.length)];
+			try {
+				for (int i = 0; i < values.length; i++)
+					values[i] = SnapshotCodec.readValue(in, true);
+			} catch (Exception e) {
+				throw new IllegalStateException("快照文件已损坏：" + file, e);
+			}
+			return values;
+		}
+
+		void skipValues() {
+			try {
+				for (int i = 0, n = Math.max(1, columns.length); i < n; i++)
+					SnapshotCodec.readValue(in, false);
+			} catch (Exception e) {
+				throw new IllegalStateException("快照文件已损坏：" + file, e);
+			}
+		}
+
+		void next(boolean decode) {
+			readKey();
+			if (decode)
+				readValues();
+			else
+				skipValues();
+		}
+	}
+}
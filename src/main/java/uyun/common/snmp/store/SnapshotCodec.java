@@ -0,0 +1,314 @@
+package uyun.common.snmp.store;
+
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.smi.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 快照文件的编码
+ * <p>
+ * 文件结构：
+ * <pre>
+ * 头部：MAGIC(int) 版本(byte) 类型(byte) 采集状态(byte) 保存时间(long) 记录数(int) 重启间隔(int) 列数(varint) 列oid...
+ * 记录：与上一个键共享的前缀长度(varint) 后缀长度(varint) 后缀各数字(varint)... 值...
+ * 尾部：重启点偏移(int)... 重启点数量(int) 尾部偏移(int)
+ * </pre>
+ * 键为walk的oid或表格的行索引，每restartInterval条记录设置一个重启点，重启点上的键不与前一个键共享前缀，
+ * 以便从任意重启点开始解码。值以BER类型编号开头，整数类使用varint，有符号整数先做zigzag编码，
+ * 0表示表格中缺失的单元格，255表示以BER编码保存的其它类型。
+ */
+class SnapshotCodec {
+	static final int MAGIC = 0x534E5353;
+	static final int VERSION = 1;
+	static final int KIND_WALK = 1;
+	static final int KIND_TABLE = 2;
+	static final int RESTART_INTERVAL = 32;
+
+	static final int TAG_ABSENT = 0;
+	static final int TAG_BER = 255;
+
+	private SnapshotCodec() {
+	}
+
+	/**
+	 * 快照文件的写入器，先在内存中完成编码，再一次写入文件
+	 */
+	static class Writer {
+		private final Output out = new Output();
+		private final int kind;
+		private int[] last = new int[0];
+		private int lastLength;
+		private int count;
+		private int[] restarts = new int[16];
+		private int restartCount;
+
+		Writer(int kind, int state, long savedAt, int count, OID[] columns) {
+			this.kind = kind;
+			out.writeInt(MAGIC);
+			out.write(VERSION);
+			out.write(kind);
+			out.write(state);
+			out.writeLong(savedAt);
+			out.writeInt(count);
+			out.writeInt(RESTART_INTERVAL);
+			out.writeVarint(columns.length);
+			for (OID column : columns)
+				out.writeOid(column);
+		}
+
+		void writeKey(OID key) {
+			int[] value = key.getValue();
+			int shared = 0;
+			if (count % RESTART_INTERVAL == 0) {
+				if (restartCount == restarts.length)
+					restarts = Arrays.copyOf(restarts, restartCount * 2);
+				restarts[restartCount++] = out.size();
+			} else {
+				int max = Math.min(lastLength, value.length);
+				while (shared < max && last[shared] == value[shared])
+					shared++;
+			}
+			out.writeVarint(shared);
+			out.writeVarint(value.length - shared);
+			for (int i = shared; i < value.length; i++)
+				out.writeVarint(value[i] & 0xFFFFFFFFL);
+			last = value;
+			lastLength = value.length;
+			count++;
+		}
+
+		void writeValue(Variable value) throws IOException {
+			if (value == null) {
+				out.write(TAG_ABSENT);
+				return;
+			}
+			int syntax = value.getSyntax();
+			switch (syntax) {
+				case SMIConstants.SYNTAX_INTEGER32:
+					out.write(syntax);
+					int i = ((Integer32) value).getValue();
+					out.writeVarint(((i << 1) ^ (i >> 31)) & 0xFFFFFFFFL);
+					return;
+				case SMIConstants.SYNTAX_COUNTER32:
+				case SMIConstants.SYNTAX_GAUGE32:
+				case SMIConstants.SYNTAX_TIMETICKS:
+				case SMIConstants.SYNTAX_COUNTER64:
+					out.write(syntax);
+					out.writeVarint(value.toLong());
+					return;
+				case SMIConstants.SYNTAX_OCTET_STRING:
+				case SMIConstants.SYNTAX_OPAQUE:
+				case SMIConstants.SYNTAX_IPADDRESS:
+					if (value instanceof OctetString || value instanceof IpAddress) {
+						byte[] bytes = value instanceof IpAddress ? ((IpAddress) value).toByteArray()
+								: ((OctetString) value).getValue();
+						out.write(syntax);
+						out.writeVarint(bytes.length);
+						out.write(bytes, 0, bytes.length);
+						return;
+					}
+					break;
+				case SMIConstants.SYNTAX_OBJECT_IDENTIFIER:
+					out.write(syntax);
+					out.writeOid((OID) value);
+					return;
+				case SMIConstants.SYNTAX_NULL:
+				case SMIConstants.EXCEPTION_NO_SUCH_OBJECT:
+				case SMIConstants.EXCEPTION_NO_SUCH_INSTANCE:
+				case SMIConstants.EXCEPTION_END_OF_MIB_VIEW:
+					out.write(syntax);
+					return;
+			}
+			ByteArrayOutputStream ber = new ByteArrayOutputStream(value.getBERLength());
+			value.encodeBER(ber);
+			out.write(TAG_BER);
+			out.writeVarint(ber.size());
+			out.write(ber.toByteArray(), 0, ber.size());
+		}
+
+		/**
+		 * 写入尾部并保存到文件，先写临时文件再改名，保存过程中读取的一方总是看到完整的文件
+		 */
+		void save(File file) throws IOException {
+			int index = out.size();
+			for (int i = 0; i < restartCount; i++)
+				out.writeInt(restarts[i]);
+			out.writeInt(restartCount);
+			out.writeInt(index);
+
+			File tmp = new File(file.getPath() + ".tmp");
+			FileOutputStream stream = new FileOutputStream(tmp);
+			try {
+				stream.write(out.buffer(), 0, out.size());
+			} finally {
+				stream.close();
+			}
+			if (!tmp.renameTo(file)) {
+				// 部分平台上目标文件存在时改名失败
+				if (!file.delete() || !tmp.renameTo(file))
+					throw new IOException("无法替换快照文件：" + file);
+			}
+		}
+	}
+
+	static long readVarint(ByteBuffer in) {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+			shift += 7;
+		}
+	}
+
+	static OID readOid(ByteBuffer in) {
+		int[] value = new int[(int) readVarint(in)];
+		for (int i = 0; i < value.length; i++)
+			value[i] = (int) readVarint(in);
+		return new OID(value);
+	}
+
+	/**
+	 * 读取一个值
+	 *
+	 * @param in
+	 * @param decode 为false时只跳过该值
+	 * @return 缺失的单元格或decode为false时返回null
+	 */
+	static Variable readValue(ByteBuffer in, boolean decode) throws IOException {
+		int tag = in.get() & 0xFF;
+		switch (tag) {
+			case TAG_ABSENT:
+				return null;
+			case SMIConstants.SYNTAX_INTEGER32: {
+				long zigzag = readVarint(in);
+				int value = (int) (zigzag >>> 1) ^ -(int) (zigzag & 1);
+				return decode ? new Integer32(value) : null;
+			}
+			case SMIConstants.SYNTAX_COUNTER32:
+				return decode ? new Counter32(readVarint(in)) : skipVarint(in);
+			case SMIConstants.SYNTAX_GAUGE32:
+				return decode ? new Gauge32(readVarint(in)) : skipVarint(in);
+			case SMIConstants.SYNTAX_TIMETICKS:
+				return decode ? new TimeTicks(readVarint(in)) : skipVarint(in);
+			case SMIConstants.SYNTAX_COUNTER64:
+				return decode ? new Counter64(readVarint(in)) : skipVarint(in);
+			case SMIConstants.SYNTAX_OCTET_STRING:
+			case SMIConstants.SYNTAX_OPAQUE:
+			case SMIConstants.SYNTAX_IPADDRESS: {
+				int length = (int) readVarint(in);
+				if (!decode) {
+					in.position(in.position() + length);
+					return null;
+				}
+				byte[] bytes = new byte[length];
+				in.get(bytes);
+				if (tag == SMIConstants.SYNTAX_OCTET_STRING)
+					return new OctetString(bytes);
+				return tag == SMIConstants.SYNTAX_OPAQUE ? new Opaque(bytes) : new IpAddress(bytes);
+			}
+			case SMIConstants.SYNTAX_OBJECT_IDENTIFIER: {
+				if (decode)
+					return readOid(in);
+				int length = (int) readVarint(in);
+				for (int i = 0; i < length; i++)
+					readVarint(in);
+				return null;
+			}
+			case SMIConstants.SYNTAX_NULL:
+				return decode ? new Null() : null;
+			case SMIConstants.EXCEPTION_NO_SUCH_OBJECT:
+				return Null.noSuchObject;
+			case SMIConstants.EXCEPTION_NO_SUCH_INSTANCE:
+				return Null.noSuchInstance;
+			case SMIConstants.EXCEPTION_END_OF_MIB_VIEW:
+				return Null.endOfMibView;
+			case TAG_BER: {
+				int length = (int) readVarint(in);
+				if (!decode) {
+					in.position(in.position() + length);
+					return null;
+				}
+				byte[] bytes = new byte[length];
+				in.get(bytes);
+				return AbstractVariable.createFromBER(new BERInputStream(ByteBuffer.wrap(bytes)));
+			}
+			default:
+				throw new IOException("快照文件已损坏，未知的值类型：" + tag);
+		}
+	}
+
+	private static Variable skipVarint(ByteBuffer in) {
+		readVarint(in);
+		return null;
+	}
+
+	/**
+	 * 可增长的字节缓冲，避免ByteArrayOutputStream的同步开销
+	 */
+	private static class Output {
+		private byte[] buffer = new byte[4096];
+		private int size;
+
+		void write(int b) {
+			ensure(1);
+			buffer[size++] = (byte) b;
+		}
+
+		void write(byte[] bytes, int offset, int length) {
+			ensure(length);
+			System.arraycopy(bytes, offset, buffer, size, length);
+			size += length;
+		}
+
+		void writeInt(int value) {
+			ensure(4);
+			buffer[size++] = (byte) (value >>> 24);
+			buffer[size++] = (byte) (value >>> 16);
+			buffer[size++] = (byte) (value >>> 8);
+			buffer[size++] = (byte) value;
+		}
+
+		void writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+
+		void writeVarint(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[size++] = (byte) value;
+		}
+
+		void writeOid(OID oid) {
+			int[] value = oid.getValue();
+			writeVarint(value.length);
+			for (int v : value)
+				writeVarint(v & 0xFFFFFFFFL);
+		}
+
+		int size() {
+			return size;
+		}
+
+		byte[] buffer() {
+			return buffer;
+		}
+
+		private void ensure(int length) {
+			if (size + length > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package uyun.common.snmp.store;
+
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkResult;
+
+import org.snmp4j.smi.OctetString;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 按设备保存最近一次walk与walkTable结果的快照目录
+ * <p>
+ * 每个设备一个子目录，每个walk根oid或表格列组合一个文件，新的结果替换旧的快照。
+ * 表格文件以第一列与所有列的SHA-256摘要命名，打开时再与文件头中保存的列比较。
+ * 读取时返回内存映射的WalkSnapshot/TableSnapshot，大量设备的历史结果只占用页缓存而不占用堆内存。
+ * <pre>
+ * SnapshotStore store = new SnapshotStore(new File("data/snapshots"));
+ * store.saveWalk(param, root, Snmp.walk(param, SnmpWalkRequest.DEFAULT, root));
+ * WalkSnapshot last = store.openWalk(param, root);
+ * </pre>
+ */
+public class SnapshotStore {
+	private final File dir;
+
+	/**
+	 * @param dir 快照目录，不存在时自动创建
+	 */
+	public SnapshotStore(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * 保存walk结果
+	 *
+	 * @param param  访问参数
+	 * @param root   walk的根oid
+	 * @param result walk结果
+	 * @return 快照文件
+	 * @throws IOException
+	 */
+	public File saveWalk(SnmpTarget param, SnmpOID root, SnmpWalkResult<SnmpVarBind[]> result) throws IOException {
+		File file = walkFile(param, root);
+		mkdirs(file.getParentFile());
+		WalkSnapshot.write(file, result);
+		return file;
+	}
+
+	/**
+	 * 保存walkTable结果
+	 *
+	 * @param param  访问参数
+	 * @param result walkTable结果
+	 * @return 快照文件
+	 * @throws IOException
+	 */
+	public File saveTable(SnmpTarget param, SnmpWalkResult<SnmpTable> result) throws IOException {
+		File file = tableFile(param, result.getData().getColumns());
+		mkdirs(file.getParentFile());
+		TableSnapshot.write(file, result);
+		return file;
+	}
+
+	/**
+	 * 打开walk快照，文本值使用param中的字符集解码
+	 *
+	 * @param param 访问参数
+	 * @param root  walk的根oid
+	 * @return 没有快照时返回null
+	 * @throws IOException 快照无法读取或已损坏时弹出此异常
+	 */
+	public WalkSnapshot openWalk(SnmpTarget param, SnmpOID root) throws IOException {
+		File file = walkFile(param, root);
+		return file.exists() ? WalkSnapshot.open(file, param.getCharset()) : null;
+	}
+
+	/**
+	 * 打开表格快照，文本值使用param中的字符集解码
+	 *
+	 * @param param   访问参数
+	 * @param columns 表格的列，须与保存时相同
+	 * @return 没有快照，或快照中保存的列与columns不同时返回null
+	 * @throws IOException 快照无法读取或已损坏时弹出此异常
+	 */
+	public TableSnapshot openTable(SnmpTarget param, SnmpOID[] columns) throws IOException {
+		File file = tableFile(param, columns);
+		if (!file.exists())
+			return null;
+		TableSnapshot snapshot = TableSnapshot.open(file, param.getCharset());
+		if (!Arrays.equals(columns, snapshot.getColumns())) {
+			snapshot.close();
+			return null;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * 删除一个设备的所有快照
+	 *
+	 * @param param 访问参数
+	 * @return 删除的文件数
+	 */
+	public int delete(SnmpTarget param) {
+		File deviceDir = deviceDir(param);
+		File[] files = deviceDir.listFiles();
+		int count = 0;
+		if (files != null) {
+			for (File file : files) {
+				if (file.delete())
+					count++;
+			}
+		}
+		deviceDir.delete();
+		return count;
+	}
+
+	private File deviceDir(SnmpTarget param) {
+		return new File(dir, param.getIp().replace(':', '_') + "_" + param.getPort());
+	}
+
+	private File walkFile(SnmpTarget param, SnmpOID root) {
+		return new File(deviceDir(param), root.oid().toDottedString() + ".walk");
+	}
+
+	private File tableFile(SnmpTarget param, SnmpOID[] columns) {
+		StringBuilder names = new StringBuilder();
+		for (SnmpOID column : columns)
+			names.append(column.oid().toDottedString()).append(',');
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(names.toString().getBytes(StandardCharsets.US_ASCII));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		return new File(deviceDir(param), columns[0].oid().toDottedString() + "-"
+				+ new OctetString(digest).toHexString().replace(":", "") + ".table");
+	}
+
+	private static void mkdirs(File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("无法创建快照目录：" + dir);
+	}
+}
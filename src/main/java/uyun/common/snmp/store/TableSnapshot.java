@@ -0,0 +1,161 @@
+package uyun.common.snmp.store;
+
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.Variable;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * walkTable结果的快照，以内存映射方式按需解码，见Snapshot。
+ * 每行只保存行索引与各列的值，单元格的oid在解码时由列oid与行索引拼接得到
+ */
+public class TableSnapshot extends Snapshot implements Iterable<SnmpRow> {
+	private static final Comparator<SnmpRow> ORDER = new Comparator<SnmpRow>() {
+		public int compare(SnmpRow a, SnmpRow b) {
+			return a.getInstance().oid().compareTo(b.getInstance().oid());
+		}
+	};
+
+	private final SnmpOID[] columns;
+
+	private TableSnapshot(File file, Charset charset) throws IOException {
+		super(file, charset, SnapshotCodec.KIND_TABLE);
+		OID[] oids = getColumnOids();
+		columns = new SnmpOID[oids.length];
+		for (int i = 0; i < oids.length; i++)
+			columns[i] = new SnmpOID(oids[i]);
+	}
+
+	/**
+	 * 打开快照文件
+	 *
+	 * @param file    快照文件
+	 * @param charset 文本值的解码字符集，为null时使用平台默认字符集
+	 * @return
+	 * @throws IOException 文件无法读取或已损坏时弹出此异常
+	 */
+	public static TableSnapshot open(File file, Charset charset) throws IOException {
+		return new TableSnapshot(file, charset);
+	}
+
+	/**
+	 * 将walkTable结果写入快照文件，行按行索引升序保存
+	 *
+	 * @param file   快照文件，已存在时被替换
+	 * @param result walkTable结果
+	 * @throws IOException
+	 */
+	public static void write(File file, SnmpWalkResult<SnmpTable> result) throws IOException {
+		SnmpTable table = result.getData();
+		SnmpOID[] columns = table.getColumns();
+		if (columns.length == 0)
+			throw new IllegalArgumentException("表格至少需要一列");
+		OID[] oids = new OID[columns.length];
+		for (int i = 0; i < columns.length; i++)
+			oids[i] = columns[i].oid();
+		List<SnmpRow> rows = new ArrayList<SnmpRow>(table.getRows());
+		Collections.sort(rows, ORDER);
+
+		SnapshotCodec.Writer writer = new SnapshotCodec.Writer(SnapshotCodec.KIND_TABLE, result.getState().ordinal(),
+				System.currentTimeMillis(), rows.size(), oids);
+		for (SnmpRow row : rows) {
+			writer.writeKey(row.getInstance().oid());
+			for (int i = 0; i < columns.length; i++) {
+				SnmpVarBind cell = i < row.size() ? row.get(i) : null;
+				writer.writeValue(cell == null || cell.getValue() == null ? null : cell.getValue().variable());
+			}
+		}
+		writer.save(file);
+	}
+
+	public SnmpOID[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * 返回第index行
+	 *
+	 * @param index
+	 * @return
+	 */
+	public SnmpRow getRow(int index) {
+		Cursor cursor = seek(index);
+		cursor.readKey();
+		return row(cursor);
+	}
+
+	/**
+	 * 查找指定行索引的行
+	 *
+	 * @param instance 行索引
+	 * @return 找不到时返回null
+	 */
+	public SnmpRow getRow(SnmpOID instance) {
+		Cursor cursor = find(instance.oid());
+		return cursor == null ? null : row(cursor);
+	}
+
+	/**
+	 * 解码全部行，得到与写入时相同的walkTable结果
+	 *
+	 * @return
+	 */
+	public SnmpWalkResult<SnmpTable> toResult() {
+		SnmpTable table = new SnmpTable(getColumns());
+		for (SnmpRow row : this)
+			table.addRow(row);
+		return new SnmpWalkResult<SnmpTable>(getState(), table);
+	}
+
+	/**
+	 * 按行索引顺序逐行解码
+	 *
+	 * @return
+	 */
+	public Iterator<SnmpRow> iterator() {
+		final Cursor cursor = start();
+		return new Iterator<SnmpRow>() {
+			public boolean hasNext() {
+				return cursor.hasNext();
+			}
+
+			public SnmpRow next() {
+				if (!cursor.hasNext())
+					throw new NoSuchElementException();
+				cursor.readKey();
+				return row(cursor);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private SnmpRow row(Cursor cursor) {
+		OID instance = cursor.key();
+		Variable[] values = cursor.readValues();
+		SnmpRow row = new SnmpRow(new SnmpOID(instance), columns.length);
+		for (int i = 0; i < columns.length; i++) {
+			if (values[i] == null)
+				continue;
+			OID oid = new OID(columns[i].oid());
+			oid.append(instance);
+			row.set(i, new SnmpVarBind(oid, values[i], getCharset()));
+		}
+		return row;
+	}
+}
@@ -0,0 +1,121 @@
+package uyun.common.snmp.store;
+
+import org.snmp4j.smi.OID;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * walk结果的快照，以内存映射方式按需解码，见Snapshot
+ */
+public class WalkSnapshot extends Snapshot implements Iterable<SnmpVarBind> {
+	private static final Comparator<SnmpVarBind> ORDER = new Comparator<SnmpVarBind>() {
+		public int compare(SnmpVarBind a, SnmpVarBind b) {
+			return a.getOid().oid().compareTo(b.getOid().oid());
+		}
+	};
+
+	private WalkSnapshot(File file, Charset charset) throws IOException {
+		super(file, charset, SnapshotCodec.KIND_WALK);
+	}
+
+	/**
+	 * 打开快照文件
+	 *
+	 * @param file    快照文件
+	 * @param charset 文本值的解码字符集，为null时使用平台默认字符集
+	 * @return
+	 * @throws IOException 文件无法读取或已损坏时弹出此异常
+	 */
+	public static WalkSnapshot open(File file, Charset charset) throws IOException {
+		return new WalkSnapshot(file, charset);
+	}
+
+	/**
+	 * 将walk结果写入快照文件，变量按oid升序保存
+	 *
+	 * @param file   快照文件，已存在时被替换
+	 * @param result walk结果
+	 * @throws IOException
+	 */
+	public static void write(File file, SnmpWalkResult<SnmpVarBind[]> result) throws IOException {
+		SnmpVarBind[] data = result.getData() == null ? new SnmpVarBind[0] : result.getData().clone();
+		Arrays.sort(data, ORDER);
+		SnapshotCodec.Writer writer = new SnapshotCodec.Writer(SnapshotCodec.KIND_WALK, result.getState().ordinal(),
+				System.currentTimeMillis(), data.length, new OID[0]);
+		for (SnmpVarBind vb : data) {
+			writer.writeKey(vb.getOid().oid());
+			writer.writeValue(vb.getValue() == null ? null : vb.getValue().variable());
+		}
+		writer.save(file);
+	}
+
+	/**
+	 * 返回第index个变量
+	 *
+	 * @param index
+	 * @return
+	 */
+	public SnmpVarBind get(int index) {
+		Cursor cursor = seek(index);
+		cursor.readKey();
+		return new SnmpVarBind(cursor.key(), cursor.readValues()[0], getCharset());
+	}
+
+	/**
+	 * 查找指定oid的变量
+	 *
+	 * @param oid
+	 * @return 找不到时返回null
+	 */
+	public SnmpVarBind find(SnmpOID oid) {
+		Cursor cursor = find(oid.oid());
+		return cursor == null ? null : new SnmpVarBind(cursor.key(), cursor.readValues()[0], getCharset());
+	}
+
+	/**
+	 * 解码全部变量，得到与写入时相同的walk结果
+	 *
+	 * @return
+	 */
+	public SnmpWalkResult<SnmpVarBind[]> toResult() {
+		SnmpVarBind[] data = new SnmpVarBind[size()];
+		int i = 0;
+		for (SnmpVarBind vb : this)
+			data[i++] = vb;
+		return new SnmpWalkResult<SnmpVarBind[]>(getState(), data);
+	}
+
+	/**
+	 * 按oid顺序逐个解码变量
+	 *
+	 * @return
+	 */
+	public Iterator<SnmpVarBind> iterator() {
+		final Cursor cursor = start();
+		return new Iterator<SnmpVarBind>() {
+			public boolean hasNext() {
+				return cursor.hasNext();
+			}
+
+			public SnmpVarBind next() {
+				if (!cursor.hasNext())
+					throw new NoSuchElementException();
+				cursor.readKey();
+				return new SnmpVarBind(cursor.key(), cursor.readValues()[0], getCharset());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
@@ -0,0 +1,50 @@
+package uyun.common.snmp.trap;
+
+import uyun.common.snmp.entity.SnmpTrap;
+
+/**
+ * 去重窗口内相同Trap的汇总结果
+ */
+public class AggregatedTrap {
+	private final SnmpTrap first;
+	private final SnmpTrap last;
+	private final int count;
+
+	public AggregatedTrap(SnmpTrap first, SnmpTrap last, int count) {
+		this.first = first;
+		this.last = last;
+		this.count = count;
+	}
+
+	/**
+	 * 窗口内收到的第一个Trap
+	 *
+	 * @return
+	 */
+	public SnmpTrap getFirst() {
+		return first;
+	}
+
+	/**
+	 * 窗口内收到的最后一个Trap，count为1时与first相同
+	 *
+	 * @return
+	 */
+	public SnmpTrap getLast() {
+		return last;
+	}
+
+	/**
+	 * 窗口内收到的相同Trap数量
+	 *
+	 * @return
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s x %d", first, count);
+	}
+}
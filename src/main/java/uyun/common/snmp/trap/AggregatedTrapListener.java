@@ -0,0 +1,13 @@
+package uyun.common.snmp.trap;
+
+/**
+ * 去重汇总后的Trap处理接口
+ */
+public interface AggregatedTrapListener {
+	/**
+	 * 处理一个去重窗口的汇总结果
+	 *
+	 * @param trap
+	 */
+	void onAggregatedTrap(AggregatedTrap trap);
+}
@@ -0,0 +1,287 @@
+package uyun.common.snmp.trap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTrap;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.error.ErrorUtil;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trap风暴抑制与去重
+ * <p>
+ * 以 发送方IP + snmpTrapOID + 指定变量的值 为键，在固定时间窗口内对相同的Trap进行汇总：
+ * 某个键的第一个Trap开启一个窗口，窗口内后续相同的Trap只计数，窗口结束时向下游输出一个带数量的AggregatedTrap。
+ * 如linkDown/linkUp通常以ifIndex作为键变量，使同一设备不同端口的Trap分别汇总。
+ * <p>
+ * 同时存在的窗口数量受maxEntries限制，超出时新的键不再汇总，直接以数量1输出，以保证内存有界。
+ * 本类可直接作为TrapReceiver的TrapListener使用，线程安全。
+ */
+public class TrapDeduplicator implements TrapListener {
+	private static final Logger logger = LoggerFactory.getLogger(TrapDeduplicator.class);
+	/**
+	 * 默认最大窗口数量
+	 */
+	public static final int MAX_ENTRIES_DEFAULT = 100000;
+
+	private final long window;
+	private final SnmpOID[] keyOids;
+	private final AggregatedTrapListener listener;
+	private final int maxEntries;
+	private final HashMap<Key, Entry> entries = new HashMap<Key, Entry>();
+	/**
+	 * 按窗口开启的Trap接收时间排列，因此过期的窗口总是在头部。
+	 * 多个接收线程入队的Trap并不按接收时间先后到达，不能依赖插入顺序
+	 */
+	private final PriorityQueue<Entry> deadlines = new PriorityQueue<Entry>(11, new Comparator<Entry>() {
+		public int compare(Entry o1, Entry o2) {
+			long t1 = o1.first.getReceivedTime();
+			long t2 = o2.first.getReceivedTime();
+			return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+		}
+	});
+	private ScheduledExecutorService timer;
+
+	private long received;
+	private long emitted;
+	private long overflow;
+
+	/**
+	 * 构建一个Trap去重器
+	 *
+	 * @param window   去重窗口，单位毫秒
+	 * @param keyOids  参与去重键计算的变量OID（或其父OID），如ifIndex，可以为空数组
+	 * @param listener 汇总结果输出
+	 */
+	public TrapDeduplicator(long window, SnmpOID[] keyOids, AggregatedTrapListener listener) {
+		this(window, keyOids, listener, MAX_ENTRIES_DEFAULT);
+	}
+
+	/**
+	 * 构建一个Trap去重器
+	 *
+	 * @param window     去重窗口，单位毫秒
+	 * @param keyOids    参与去重键计算的变量OID（或其父OID），如ifIndex，可以为空数组
+	 * @param listener   汇总结果输出
+	 * @param maxEntries 最大同时存在的窗口数量
+	 */
+	public TrapDeduplicator(long window, SnmpOID[] keyOids, AggregatedTrapListener listener, int maxEntries) {
+		if (window <= 0)
+			throw new IllegalArgumentException("去重窗口必须大于0");
+		this.window = window;
+		this.keyOids = keyOids == null ? new SnmpOID[0] : keyOids;
+		this.listener = listener;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * 启动定时输出线程，以窗口的1/4为周期检查并输出已结束的窗口。
+	 * 如果不调用本方法，则需要调用方定期调用flush(long)
+	 */
+	public synchronized void start() {
+		if (timer != null)
+			return;
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "snmp-trap-dedup");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long period = Math.max(10, window / 4);
+		timer.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					flush(System.currentTimeMillis());
+				} catch (Throwable e) {
+					ErrorUtil.warn(logger, "Trap去重输出失败", e);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止定时输出线程，并立即输出所有未结束的窗口
+	 */
+	public synchronized void close() {
+		if (timer != null) {
+			timer.shutdown();
+			timer = null;
+		}
+		flush(Long.MAX_VALUE);
+	}
+
+	public void onTrap(SnmpTrap trap) {
+		Key key = new Key(trap, keyOids);
+		AggregatedTrap passThrough = null;
+		AggregatedTrap expired = null;
+		synchronized (entries) {
+			received++;
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				if (trap.getReceivedTime() - entry.first.getReceivedTime() < window) {
+					entry.last = trap;
+					entry.count++;
+					return;
+				}
+				// 窗口已结束但定时输出尚未执行，先输出旧窗口，再为这个Trap开启新的窗口
+				entries.remove(key);
+				deadlines.remove(entry);
+				emitted++;
+				expired = new AggregatedTrap(entry.first, entry.last, entry.count);
+			}
+			if (entries.size() < maxEntries) {
+				entry = new Entry(key, trap);
+				entries.put(key, entry);
+				deadlines.add(entry);
+			} else {
+				overflow++;
+				emitted++;
+				passThrough = new AggregatedTrap(trap, trap, 1);
+			}
+		}
+		if (expired != null)
+			emit(expired);
+		if (passThrough != null)
+			emit(passThrough);
+	}
+
+	/**
+	 * 输出所有在now之前已结束的窗口
+	 *
+	 * @param now 当前时间，单位毫秒，与SnmpTrap.getReceivedTime相同的时间基准
+	 * @return 输出的汇总数量
+	 */
+	public int flush(long now) {
+		List<AggregatedTrap> expired = null;
+		synchronized (entries) {
+			while (!deadlines.isEmpty()) {
+				Entry entry = deadlines.peek();
+				if (now - entry.first.getReceivedTime() < window)
+					break;
+				deadlines.poll();
+				entries.remove(entry.key);
+				if (expired == null)
+					expired = new ArrayList<AggregatedTrap>();
+				expired.add(new AggregatedTrap(entry.first, entry.last, entry.count));
+			}
+			if (expired != null)
+				emitted += expired.size();
+		}
+
+		if (expired == null)
+			return 0;
+		for (AggregatedTrap trap : expired)
+			emit(trap);
+		return expired.size();
+	}
+
+	private void emit(AggregatedTrap trap) {
+		try {
+			listener.onAggregatedTrap(trap);
+		} catch (Throwable e) {
+			ErrorUtil.warn(logger, "Trap汇总处理失败：" + trap, e);
+		}
+	}
+
+	/**
+	 * 已接收的Trap数量
+	 *
+	 * @return
+	 */
+	public long getReceived() {
+		synchronized (entries) {
+			return received;
+		}
+	}
+
+	/**
+	 * 已输出的汇总数量
+	 *
+	 * @return
+	 */
+	public long getEmitted() {
+		synchronized (entries) {
+			return emitted;
+		}
+	}
+
+	/**
+	 * 由于窗口数量达到上限而未汇总、直接输出的Trap数量
+	 *
+	 * @return
+	 */
+	public long getOverflow() {
+		synchronized (entries) {
+			return overflow;
+		}
+	}
+
+	/**
+	 * 当前未结束的窗口数量
+	 *
+	 * @return
+	 */
+	public int getPending() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	private static class Entry {
+		final Key key;
+		final SnmpTrap first;
+		SnmpTrap last;
+		int count = 1;
+
+		Entry(Key key, SnmpTrap first) {
+			this.key = key;
+			this.first = first;
+			this.last = first;
+		}
+	}
+
+	private static class Key {
+		final String source;
+		final SnmpOID trapOid;
+		final String[] values;
+		final int hash;
+
+		Key(SnmpTrap trap, SnmpOID[] keyOids) {
+			this.source = trap.getSource();
+			this.trapOid = trap.getTrapOid();
+			this.values = new String[keyOids.length];
+			int h = (source == null ? 0 : source.hashCode()) * 31 + trapOid.hashCode();
+			for (int i = 0; i < keyOids.length; i++) {
+				SnmpVarBind varBind = trap.getVarBind(keyOids[i]);
+				values[i] = varBind == null || varBind.getValue() == null ? "" : varBind.getValue().toString();
+				h = h * 31 + values[i].hashCode();
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key another = (Key) obj;
+			return hash == another.hash
+					&& (source == null ? another.source == null : source.equals(another.source))
+					&& trapOid.equals(another.trapOid)
+					&& Arrays.equals(values, another.values);
+		}
+	}
+}
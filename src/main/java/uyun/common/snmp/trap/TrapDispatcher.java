@@ -0,0 +1,100 @@
+package uyun.common.snmp.trap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTrap;
+import uyun.common.snmp.error.ErrorUtil;
+import uyun.common.snmp.util.OidTrie;
+
+import java.util.List;
+
+/**
+ * 按snmpTrapOID前缀路由Trap
+ * <p>
+ * 处理器注册到Trap OID子树上，如.1.3.6.1.6.3.1.1.5（标准Trap）或某厂商的企业OID。
+ * 路由通过OidTrie完成，每个Trap只遍历一次其OID，与注册的处理器数量无关。
+ * 默认只交给最具体的处理器，设置dispatchAll后交给所有匹配的处理器，没有匹配时交给defaultListener。
+ */
+public class TrapDispatcher implements TrapListener {
+	private static final Logger logger = LoggerFactory.getLogger(TrapDispatcher.class);
+
+	private final OidTrie<TrapListener> listeners = new OidTrie<TrapListener>();
+	private final boolean dispatchAll;
+	private volatile TrapListener defaultListener;
+
+	/**
+	 * 构建一个只交给最具体处理器的路由器
+	 */
+	public TrapDispatcher() {
+		this(false);
+	}
+
+	/**
+	 * 构建一个路由器
+	 *
+	 * @param dispatchAll 为true时交给所有匹配的处理器，按前缀由短到长的顺序调用
+	 */
+	public TrapDispatcher(boolean dispatchAll) {
+		this.dispatchAll = dispatchAll;
+	}
+
+	/**
+	 * 为指定的Trap OID子树注册一个处理器
+	 *
+	 * @param trapOid  Trap OID或其父OID
+	 * @param listener 处理器
+	 */
+	public void register(SnmpOID trapOid, TrapListener listener) {
+		listeners.add(trapOid, listener);
+	}
+
+	/**
+	 * 删除一个已注册的处理器
+	 *
+	 * @param trapOid  注册时的Trap OID
+	 * @param listener 处理器
+	 * @return 如果存在并删除成功，返回true
+	 */
+	public boolean unregister(SnmpOID trapOid, TrapListener listener) {
+		return listeners.remove(trapOid, listener);
+	}
+
+	/**
+	 * 设置没有任何处理器匹配时使用的处理器，可以为null
+	 *
+	 * @param defaultListener
+	 */
+	public void setDefaultListener(TrapListener defaultListener) {
+		this.defaultListener = defaultListener;
+	}
+
+	public void onTrap(SnmpTrap trap) {
+		if (dispatchAll) {
+			List<TrapListener> matched = listeners.findAll(trap.getTrapOid());
+			if (!matched.isEmpty()) {
+				for (TrapListener listener : matched)
+					dispatch(listener, trap);
+				return;
+			}
+		} else {
+			TrapListener listener = listeners.findMostSpecific(trap.getTrapOid());
+			if (listener != null) {
+				dispatch(listener, trap);
+				return;
+			}
+		}
+
+		TrapListener listener = defaultListener;
+		if (listener != null)
+			dispatch(listener, trap);
+	}
+
+	private void dispatch(TrapListener listener, SnmpTrap trap) {
+		try {
+			listener.onTrap(trap);
+		} catch (Throwable e) {
+			ErrorUtil.warn(logger, "Trap处理失败：" + trap, e);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package uyun.common.snmp.trap;
+
+import uyun.common.snmp.entity.SnmpTrap;
+
+/**
+ * Trap处理接口
+ * <p>
+ * 由TrapReceiver的工作线程调用，同一个实例可能被多个工作线程并发调用，实现类需要保证线程安全
+ */
+public interface TrapListener {
+	/**
+	 * 处理一个接收到的Trap或Inform
+	 *
+	 * @param trap
+	 */
+	void onTrap(SnmpTrap trap);
+}
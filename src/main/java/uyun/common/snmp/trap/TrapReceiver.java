@@ -0,0 +1,463 @@
+package uyun.common.snmp.trap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.*;
+import org.snmp4j.mp.*;
+import org.snmp4j.smi.*;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTrap;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpVersion;
+import uyun.common.snmp.error.ErrorUtil;
+import uyun.common.snmp.error.SnmpException;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trap与Inform接收器
+ * <p>
+ * 基于snmp4j协议栈监听UDP端口，将接收到的Trap解码为SnmpTrap后放入有界队列，由固定数量的工作线程交给TrapListener处理。
+ * 主要行为如下：
+ * 1.Inform在成功放入队列后立即在接收线程中应答，不等待TrapListener处理完成
+ * 2.队列满时，Trap最多等待offerTimeout毫秒，仍无法放入则丢弃并计数；Inform则直接不应答，由发送方重传，以此形成反压
+ * 3.v3 Trap需要对应的用户已注册到USM，即该用户的SnmpTarget已被Snmp使用过
+ * <p>
+ * 使用方式如下：
+ * <pre>
+ * TrapReceiver receiver = new TrapReceiver("0.0.0.0", 162, listener);
+ * receiver.setWorkerCount(4);
+ * receiver.start();
+ * ...
+ * receiver.close();
+ * </pre>
+ */
+public class TrapReceiver {
+	private static final Logger logger = LoggerFactory.getLogger(TrapReceiver.class);
+	/**
+	 * 默认Trap端口
+	 */
+	public static final int PORT_DEFAULT = 162;
+	/**
+	 * 默认队列容量
+	 */
+	public static final int QUEUE_CAPACITY_DEFAULT = 100000;
+	/**
+	 * 默认工作线程数
+	 */
+	public static final int WORKER_COUNT_DEFAULT = 2;
+	private static final OID SNMP_TRAPS = SnmpConstants.snmpTraps;
+	/**
+	 * 工作线程等待队列的间隔，单位毫秒，关闭时最多经过此时间发现已停止接收
+	 */
+	private static final long WORKER_POLL_INTERVAL = 100;
+
+	private final String ip;
+	private final int port;
+	private final TrapListener listener;
+	private int workerCount = WORKER_COUNT_DEFAULT;
+	private int decoderCount = 1;
+	private int queueCapacity = QUEUE_CAPACITY_DEFAULT;
+	private long offerTimeout;
+	private int receiveBufferSize;
+	private Charset charset;
+
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong informsAcked = new AtomicLong();
+
+	private BlockingQueue<SnmpTrap> queue;
+	private Thread[] workers;
+	private ThreadPool decoderPool;
+	private DefaultUdpTransportMapping transport;
+	private org.snmp4j.Snmp snmp;
+	private volatile boolean running;
+	/**
+	 * 已停止接收，工作线程处理完队列后结束
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * 构建一个Trap接收器
+	 *
+	 * @param ip       监听地址，如0.0.0.0
+	 * @param port     监听端口，默认162
+	 * @param listener Trap处理接口
+	 */
+	public TrapReceiver(String ip, int port, TrapListener listener) {
+		this.ip = ip;
+		this.port = port;
+		this.listener = listener;
+	}
+
+	/**
+	 * 启动监听与工作线程
+	 *
+	 * @throws SnmpException 如果端口监听失败，则弹出此异常
+	 */
+	public synchronized void start() throws SnmpException {
+		if (running)
+			return;
+
+		queue = new ArrayBlockingQueue<SnmpTrap>(queueCapacity);
+		stopped = false;
+		try {
+			transport = new DefaultUdpTransportMapping(new UdpAddress(InetAddress.getByName(ip), port), true);
+			if (receiveBufferSize > 0)
+				transport.setReceiveBufferSize(receiveBufferSize);
+			transport.setThreadName("snmp-trap-listener-" + port);
+
+			MessageDispatcher dispatcher = new MessageDispatcherImpl();
+			if (decoderCount > 1) {
+				decoderPool = ThreadPool.create("snmp-trap-decoder", decoderCount);
+				dispatcher = new MultiThreadedMessageDispatcher(decoderPool, dispatcher);
+			}
+			dispatcher.addMessageProcessingModel(new MPv1());
+			dispatcher.addMessageProcessingModel(new MPv2c());
+			dispatcher.addMessageProcessingModel(new MPv3());
+
+			snmp = new org.snmp4j.Snmp(dispatcher, transport);
+			snmp.addCommandResponder(new CommandResponder() {
+				public void processPdu(CommandResponderEvent event) {
+					receive(event);
+				}
+			});
+			running = true;
+			transport.listen();
+		} catch (IOException e) {
+			running = false;
+			closeQuietly();
+			throw new SnmpException(SnmpException.ERR_IOERROR, String.format("Trap监听[%s/%d]失败", ip, port), e);
+		}
+
+		workers = new Thread[workerCount];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					work();
+				}
+			}, "snmp-trap-worker-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		logger.debug("Trap接收器已启动：{}/{}", ip, port);
+	}
+
+	/**
+	 * 停止监听，并等待工作线程处理完队列中剩余的Trap。不中断正在执行的TrapListener
+	 */
+	public synchronized void close() {
+		if (!running)
+			return;
+		running = false;
+		closeQuietly();
+		// 监听关闭后队列不再增加，工作线程取空队列后自行结束
+		stopped = true;
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		logger.debug("Trap接收器已关闭：{}/{}", ip, port);
+	}
+
+	private void closeQuietly() {
+		try {
+			if (snmp != null)
+				snmp.close();
+			else if (transport != null)
+				transport.close();
+		} catch (IOException e) {
+			ErrorUtil.warn(logger, "关闭Trap监听失败", e);
+		}
+		if (decoderPool != null)
+			decoderPool.stop();
+	}
+
+	private void receive(CommandResponderEvent event) {
+		PDU pdu = event.getPDU();
+		if (pdu == null)
+			return;
+		int type = pdu.getType();
+		if (type != PDU.TRAP && type != PDU.V1TRAP && type != PDU.INFORM)
+			return;
+		event.setProcessed(true);
+		received.incrementAndGet();
+
+		SnmpTrap trap;
+		try {
+			trap = decode(event);
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			ErrorUtil.warn(logger, "Trap解码失败：" + event.getPeerAddress(), e);
+			return;
+		}
+
+		boolean accepted;
+		if (type == PDU.INFORM)
+			accepted = queue.offer(trap);
+		else {
+			try {
+				accepted = offerTimeout > 0 ? queue.offer(trap, offerTimeout, TimeUnit.MILLISECONDS) : queue.offer(trap);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				accepted = false;
+			}
+		}
+		if (!accepted) {
+			dropped.incrementAndGet();
+			return;
+		}
+
+		if (type == PDU.INFORM)
+			acknowledge(event);
+	}
+
+	private void acknowledge(CommandResponderEvent event) {
+		PDU response = (PDU) event.getPDU().clone();
+		response.setType(PDU.RESPONSE);
+		response.setErrorStatus(PDU.noError);
+		response.setErrorIndex(0);
+		// 先计数再应答，发送方收到应答时计数已可见
+		informsAcked.incrementAndGet();
+		try {
+			event.getMessageDispatcher().returnResponsePdu(event.getMessageProcessingModel(),
+					event.getSecurityModel(), event.getSecurityName(), event.getSecurityLevel(), response,
+					event.getMaxSizeResponsePDU(), event.getStateReference(), new StatusInformation());
+		} catch (MessageException e) {
+			informsAcked.decrementAndGet();
+			ErrorUtil.warn(logger, "Inform应答失败：" + event.getPeerAddress(), e);
+		}
+	}
+
+	private SnmpTrap decode(CommandResponderEvent event) {
+		PDU pdu = event.getPDU();
+		String source = null;
+		int sourcePort = 0;
+		Address address = event.getPeerAddress();
+		if (address instanceof IpAddress) {
+			source = ((IpAddress) address).getInetAddress().getHostAddress();
+			if (address instanceof TransportIpAddress)
+				sourcePort = ((TransportIpAddress) address).getPort();
+		} else if (address != null)
+			source = address.toString();
+
+		SnmpVersion version;
+		switch (event.getMessageProcessingModel()) {
+			case MPv1.ID:
+				version = SnmpVersion.V1;
+				break;
+			case MPv2c.ID:
+				version = SnmpVersion.V2C;
+				break;
+			default:
+				version = SnmpVersion.V3;
+		}
+		String securityName = event.getSecurityName() == null ? null : new String(event.getSecurityName());
+
+		int size = pdu.size();
+		if (pdu instanceof PDUv1 && pdu.getType() == PDU.V1TRAP) {
+			PDUv1 v1 = (PDUv1) pdu;
+			SnmpVarBind[] varBinds = new SnmpVarBind[size];
+			for (int i = 0; i < size; i++)
+				varBinds[i] = toVarBind(pdu.get(i));
+			SnmpTrap trap = new SnmpTrap(source, sourcePort, version, securityName, v1TrapOid(v1),
+					v1.getTimestamp(), varBinds, false, System.currentTimeMillis());
+			if (v1.getAgentAddress() != null)
+				trap.setAgentAddress(v1.getAgentAddress().toString());
+			return trap;
+		}
+
+		long uptime = -1;
+		SnmpOID trapOid = null;
+		int start = 0;
+		if (start < size && SnmpConstants.sysUpTime.equals(pdu.get(start).getOid())) {
+			uptime = pdu.get(start).getVariable().toLong();
+			start++;
+		}
+		if (start < size && SnmpConstants.snmpTrapOID.equals(pdu.get(start).getOid())) {
+			Variable value = pdu.get(start).getVariable();
+			if (value instanceof OID)
+				trapOid = new SnmpOID((OID) value);
+			start++;
+		}
+		if (trapOid == null)
+			trapOid = new SnmpOID();
+
+		SnmpVarBind[] varBinds = new SnmpVarBind[size - start];
+		for (int i = start; i < size; i++)
+			varBinds[i - start] = toVarBind(pdu.get(i));
+		return new SnmpTrap(source, sourcePort, version, securityName, trapOid, uptime, varBinds,
+				pdu.getType() == PDU.INFORM, System.currentTimeMillis());
+	}
+
+	/**
+	 * 按RFC3584 3.1节将v1 Trap转换为snmpTrapOID
+	 */
+	private static SnmpOID v1TrapOid(PDUv1 pdu) {
+		OID oid;
+		if (pdu.getGenericTrap() != PDUv1.ENTERPRISE_SPECIFIC) {
+			oid = new OID(SNMP_TRAPS);
+			oid.append(pdu.getGenericTrap() + 1);
+		} else {
+			oid = new OID(pdu.getEnterprise());
+			oid.append(0);
+			oid.append(pdu.getSpecificTrap());
+		}
+		return new SnmpOID(oid);
+	}
+
+	private SnmpVarBind toVarBind(VariableBinding vb) {
+		return new SnmpVarBind(vb.getOid(), vb.getVariable(), charset);
+	}
+
+	private void work() {
+		while (true) {
+			SnmpTrap trap;
+			try {
+				trap = queue.poll(WORKER_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (trap == null) {
+				if (stopped)
+					return;
+				continue;
+			}
+
+			try {
+				listener.onTrap(trap);
+				processed.incrementAndGet();
+			} catch (Throwable e) {
+				failed.incrementAndGet();
+				ErrorUtil.warn(logger, "Trap处理失败：" + trap, e);
+			}
+		}
+	}
+
+	/**
+	 * 工作线程数，默认为2，需要在start前设置
+	 *
+	 * @param workerCount
+	 */
+	public void setWorkerCount(int workerCount) {
+		this.workerCount = workerCount;
+	}
+
+	/**
+	 * 解码线程数，默认为1，即在UDP接收线程中直接解码。v3加密Trap较多时可适当增加，需要在start前设置
+	 *
+	 * @param decoderCount
+	 */
+	public void setDecoderCount(int decoderCount) {
+		this.decoderCount = decoderCount;
+	}
+
+	/**
+	 * 队列容量，默认为100000，需要在start前设置
+	 *
+	 * @param queueCapacity
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * 队列满时Trap等待入队的最长时间，单位毫秒，<=0表示立即丢弃。等待期间UDP接收线程阻塞，Trap由操作系统接收缓冲区暂存
+	 *
+	 * @param offerTimeout
+	 */
+	public void setOfferTimeout(long offerTimeout) {
+		this.offerTimeout = offerTimeout;
+	}
+
+	/**
+	 * UDP接收缓冲区大小，单位字节，<=0表示使用系统默认值。Trap风暴时建议设置为数MB，需要在start前设置
+	 *
+	 * @param receiveBufferSize
+	 */
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	/**
+	 * 文本类型变量的解码字符集，为null表示使用平台默认字符集，需要在start前设置
+	 *
+	 * @param charsetName
+	 */
+	public void setCharset(String charsetName) {
+		this.charset = charsetName == null ? null : Charset.forName(charsetName);
+	}
+
+	/**
+	 * 已接收的Trap与Inform数量
+	 *
+	 * @return
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * 由于队列满而丢弃（Inform为未应答）的数量
+	 *
+	 * @return
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * TrapListener成功处理的数量
+	 *
+	 * @return
+	 */
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	/**
+	 * 解码或处理失败的数量
+	 *
+	 * @return
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * 已应答的Inform数量
+	 *
+	 * @return
+	 */
+	public long getInformsAcked() {
+		return informsAcked.get();
+	}
+
+	/**
+	 * 当前队列中等待处理的数量
+	 *
+	 * @return
+	 */
+	public int getQueueSize() {
+		return queue == null ? 0 : queue.size();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+}
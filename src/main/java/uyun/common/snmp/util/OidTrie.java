@@ -0,0 +1,215 @@
+package uyun.common.snmp.util;
+
+import uyun.common.snmp.entity.SnmpOID;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按OID前缀注册与查找的字典树
+ * <p>
+ * 每个注册的值对应一个OID子树，查找时沿输入OID的各个数字逐级向下，只遍历一次，
+ * 耗时与OID长度成正比，与注册数量无关。前缀匹配包含OID自身，即前缀.1.3.6注册的值可以匹配.1.3.6与.1.3.6.1。
+ * <p>
+ * 查找不加锁：每个节点的子节点与值都保存在不可变数组中，修改时复制后整体替换。修改操作之间互斥，适用于读多写少的场景，
+ * 如Trap与变量处理器的路由。
+ *
+ * @param <T> 注册值的类型
+ */
+public class OidTrie<T> {
+	private static final Object[] NO_VALUES = new Object[0];
+
+	private final Node root = new Node();
+	private int size;
+
+	/**
+	 * 为指定的OID子树注册一个值，同一个前缀可以注册多个值
+	 *
+	 * @param prefix 子树根OID
+	 * @param value  注册值
+	 */
+	public synchronized void add(SnmpOID prefix, T value) {
+		if (value == null)
+			throw new IllegalArgumentException("注册值不能为空");
+
+		Node node = root;
+		int[] arcs = prefix.oid().getValue();
+		for (int i = 0; i < arcs.length; i++) {
+			Children children = node.children;
+			int index = Arrays.binarySearch(children.arcs, arcs[i]);
+			if (index >= 0)
+				node = children.nodes[index];
+			else {
+				Node child = new Node();
+				node.children = children.insert(-index - 1, arcs[i], child);
+				node = child;
+			}
+		}
+
+		Object[] values = Arrays.copyOf(node.values, node.values.length + 1);
+		values[values.length - 1] = value;
+		node.values = values;
+		size++;
+	}
+
+	/**
+	 * 删除指定OID子树上注册的值
+	 *
+	 * @param prefix 子树根OID
+	 * @param value  注册值
+	 * @return 如果存在并删除成功，返回true
+	 */
+	public synchronized boolean remove(SnmpOID prefix, T value) {
+		Node node = find(prefix.oid().getValue());
+		if (node == null)
+			return false;
+
+		Object[] values = node.values;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i].equals(value)) {
+				Object[] copy = new Object[values.length - 1];
+				System.arraycopy(values, 0, copy, 0, i);
+				System.arraycopy(values, i + 1, copy, i, values.length - i - 1);
+				node.values = copy.length == 0 ? NO_VALUES : copy;
+				size--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 返回与oid匹配的最具体（前缀最长）子树上注册的第一个值
+	 *
+	 * @param oid 输入oid
+	 * @return 没有任何匹配时返回null
+	 */
+	@SuppressWarnings("unchecked")
+	public T findMostSpecific(SnmpOID oid) {
+		Node node = root;
+		Object found = first(node.values);
+		int[] arcs = oid.oid().getValue();
+		for (int i = 0; i < arcs.length; i++) {
+			node = node.children.get(arcs[i]);
+			if (node == null)
+				break;
+			Object value = first(node.values);
+			if (value != null)
+				found = value;
+		}
+		return (T) found;
+	}
+
+	/**
+	 * 返回与oid匹配的所有子树上注册的值，按前缀由短到长排列
+	 *
+	 * @param oid 输入oid
+	 * @return 没有任何匹配时返回空列表
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> findAll(SnmpOID oid) {
+		List<T> result = null;
+		Node node = root;
+		int[] arcs = oid.oid().getValue();
+		for (int i = 0; ; i++) {
+			Object[] values = node.values;
+			if (values.length > 0) {
+				if (result == null)
+					result = new ArrayList<T>(values.length);
+				for (Object value : values)
+					result.add((T) value);
+			}
+			if (i >= arcs.length)
+				break;
+			node = node.children.get(arcs[i]);
+			if (node == null)
+				break;
+		}
+		return result == null ? Collections.<T>emptyList() : result;
+	}
+
+	/**
+	 * 返回指定前缀上精确注册的值，不做前缀匹配
+	 *
+	 * @param prefix 子树根OID
+	 * @return 没有注册时返回空列表
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> get(SnmpOID prefix) {
+		Node node = find(prefix.oid().getValue());
+		if (node == null || node.values.length == 0)
+			return Collections.emptyList();
+		return (List<T>) Collections.unmodifiableList(Arrays.asList(node.values));
+	}
+
+	/**
+	 * 返回注册值的数量
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private Node find(int[] arcs) {
+		Node node = root;
+		for (int i = 0; i < arcs.length && node != null; i++)
+			node = node.children.get(arcs[i]);
+		return node;
+	}
+
+	private static Object first(Object[] values) {
+		return values.length == 0 ? null : values[0];
+	}
+
+	private static class Node {
+		volatile Children children = Children.EMPTY;
+		volatile Object[] values = NO_VALUES;
+	}
+
+	/**
+	 * 不可变的子节点集合，arcs有序，与nodes一一对应
+	 */
+	private static class Children {
+		static final Children EMPTY = new Children(new int[0], new Node[0]);
+
+		final int[] arcs;
+		final Node[] nodes;
+
+		Children(int[] arcs, Node[] nodes) {
+			this.arcs = arcs;
+			this.nodes = nodes;
+		}
+
+		Node get(int arc) {
+			int[] a = arcs;
+			int low = 0;
+			int high = a.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int value = a[mid];
+				if (value < arc)
+					low = mid + 1;
+				else if (value > arc)
+					high = mid - 1;
+				else
+					return nodes[mid];
+			}
+			return null;
+		}
+
+		Children insert(int index, int arc, Node node) {
+			int[] newArcs = new int[arcs.length + 1];
+			Node[] newNodes = new Node[nodes.length + 1];
+			System.arraycopy(arcs, 0, newArcs, 0, index);
+			System.arraycopy(nodes, 0, newNodes, 0, index);
+			newArcs[index] = arc;
+			newNodes[index] = node;
+			System.arraycopy(arcs, index, newArcs, index + 1, arcs.length - index);
+			System.arraycopy(nodes, index, newNodes, index + 1, nodes.length - index);
+			return new Children(newArcs, newNodes);
+		}
+	}
+}
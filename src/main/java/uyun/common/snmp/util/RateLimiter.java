@@ -0,0 +1,42 @@
+package uyun.common.snmp.util;
+
+/**
+ * 简单的发包速率限制器
+ * <p>
+ * 按固定间隔发放许可，acquire在下一个许可可用前阻塞。所有线程共享一个时间线，因此多线程并发调用时总速率仍不超过设定值。
+ */
+public class RateLimiter {
+	private final long intervalNanos;
+	private long next;
+
+	/**
+	 * 构建一个限制器
+	 *
+	 * @param permitsPerSecond 每秒许可数，小于等于0表示不限制
+	 */
+	public RateLimiter(int permitsPerSecond) {
+		this.intervalNanos = permitsPerSecond > 0 ? 1000000000L / permitsPerSecond : 0;
+		this.next = System.nanoTime();
+	}
+
+	/**
+	 * 获取一个许可，必要时阻塞等待
+	 *
+	 * @throws InterruptedException 等待时被中断
+	 */
+	public void acquire() throws InterruptedException {
+		if (intervalNanos <= 0)
+			return;
+
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (next < now)
+				next = now;
+			wait = next - now;
+			next += intervalNanos;
+		}
+		if (wait > 0)
+			Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+	}
+}
@@ -0,0 +1,126 @@
+package uyun.common.snmp.util;
+
+import uyun.common.snmp.error.SnmpException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并相同的并发调用
+ * <p>
+ * 同一键的调用进行中时，后到的调用不再执行，而是等待进行中的调用完成并共享其结果或异常。
+ * 调用完成后立即移除，之后到达的调用重新执行，因此不会返回过期的结果。等待使用CountDownLatch，
+ * 在虚拟线程上等待时不会占住载体线程。
+ *
+ * @param <V> 结果类型
+ */
+public class SingleFlight<V> {
+	private final ConcurrentMap<String, Flight<V>> flights = new ConcurrentHashMap<String, Flight<V>>();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * 被合并的调用
+	 */
+	public interface Call<V> {
+		V call() throws SnmpException;
+	}
+
+	/**
+	 * 执行调用，同一键已有调用进行中时等待并共享其结果
+	 *
+	 * @param key  调用的键，键相同的调用视为相同
+	 * @param call 调用
+	 * @return 执行调用的一方得到调用的返回值，共享的一方得到share返回的值
+	 * @throws SnmpException 调用弹出的异常，共享的一方得到以其为原因的新异常；等待时被中断也弹出此异常
+	 */
+	public V execute(String key, Call<V> call) throws SnmpException {
+		calls.incrementAndGet();
+		Flight<V> flight = new Flight<V>();
+		Flight<V> existing = flights.putIfAbsent(key, flight);
+		if (existing != null)
+			return await(existing);
+
+		try {
+			flight.value = call.call();
+			return flight.value;
+		} catch (SnmpException e) {
+			flight.error = e;
+			throw e;
+		} catch (RuntimeException e) {
+			flight.error = e;
+			throw e;
+		} catch (Error e) {
+			flight.error = e;
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+			flight.done.countDown();
+		}
+	}
+
+	private V await(Flight<V> flight) throws SnmpException {
+		shared.incrementAndGet();
+		try {
+			flight.done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SnmpException(SnmpException.ERR_UNKNOWN, "等待合并调用的结果时被中断", e);
+		}
+		Throwable error = flight.error;
+		if (error instanceof SnmpException) {
+			SnmpException cause = (SnmpException) error;
+			throw new SnmpException(cause.getErrorCode(), cause.getMessage(), cause);
+		} else if (error instanceof RuntimeException)
+			throw (RuntimeException) error;
+		else if (error instanceof Error)
+			throw (Error) error;
+		return share(flight.value);
+	}
+
+	/**
+	 * 返回给共享一方的结果，默认直接返回同一实例，结果可变时可以覆盖此方法返回副本
+	 *
+	 * @param value 调用的返回值
+	 * @return
+	 */
+	protected V share(V value) {
+		return value;
+	}
+
+	/**
+	 * 返回进行中的调用数
+	 *
+	 * @return
+	 */
+	public int getInFlight() {
+		return flights.size();
+	}
+
+	/**
+	 * 返回调用总数，包括共享结果的调用
+	 *
+	 * @return
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * 返回共享了其它调用结果的调用数
+	 *
+	 * @return
+	 */
+	public long getShared() {
+		return shared.get();
+	}
+
+	private static class Flight<V> {
+		final CountDownLatch done = new CountDownLatch(1);
+		// 由done的countDown与await保证可见性
+		V value;
+		Throwable error;
+	}
+}
@@ -3,21 +3,53 @@ package uyun.common.snmp.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uyun.common.snmp.error.SnmpException;
+
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class SpeedController {
 	private static final Logger logger = LoggerFactory.getLogger(SpeedController.class);
 	private static final String KEY_PREFIX_IS_BATCH = "isBatch.";
 	private static final String KEY_PREFIX_SNMP_INTERVAL = "snmp.interval.";
+	private static final String KEY_PREFIX_BATCH_WINDOW = "batchWindow.";
+	private static final String KEY_PREFIX_MAX_VARBINDS = "maxVarBinds.";
+	private static final String KEY_PREFIX_CONCURRENCY = "concurrency.";
+	private static final String KEY_PREFIX_CONCURRENCY_QUEUE = "concurrencyQueue.";
+	/**
+	 * 系统属性中的前缀，如-Dsnmp.batchWindow.10.0.0.1=5，对应配置文件中的batchWindow.10.0.0.1=5
+	 */
+	private static final String KEY_PREFIX_SNMP = "snmp.";
+	/**
+	 * 默认的单个PDU最大变量数
+	 */
+	public static final int MAX_VARBINDS_DEFAULT = 32;
 
 	private static SpeedController inst = new SpeedController();
 	private Properties pro = null;
 	private int defaultTime = 50;
 	private boolean isBatchDef = true;
-	private Map<String, Date> synTimeMapInfo = new HashMap<String, Date>();
+	private volatile int batchWindowDef = 0;
+	private volatile int maxVarBindsDef = MAX_VARBINDS_DEFAULT;
+	private volatile int concurrencyDef = 0;
+	private volatile int concurrencyQueueDef = -1;
+	/**
+	 * 每个ip下一次允许发包的时间，单位纳秒
+	 */
+	private final ConcurrentMap<String, AtomicLong> nextSendTimes = new ConcurrentHashMap<String, AtomicLong>();
+	/**
+	 * 每个ip的并发请求限制，配置改变后替换为新的实例
+	 */
+	private final ConcurrentMap<String, DeviceLimit> limits = new ConcurrentHashMap<String, DeviceLimit>();
 
 	public SpeedController() {
 		String file = System.getProperty("user.dir") + "/conf/SnmpSynTime.properties";
@@ -39,6 +71,10 @@ public class SpeedController {
 
 		defaultTime = getTimeByIp("0.0.0.0", defaultTime);
 		isBatchDef = isBatch("0.0.0.0", isBatchDef);
+		batchWindowDef = getIntByIp(KEY_PREFIX_BATCH_WINDOW, "0.0.0.0", batchWindowDef);
+		maxVarBindsDef = getIntByIp(KEY_PREFIX_MAX_VARBINDS, "0.0.0.0", maxVarBindsDef);
+		concurrencyDef = getIntByIp(KEY_PREFIX_CONCURRENCY, "0.0.0.0", concurrencyDef);
+		concurrencyQueueDef = getIntByIp(KEY_PREFIX_CONCURRENCY_QUEUE, "0.0.0.0", concurrencyQueueDef);
 	}
 
 	private void logProperties() {
@@ -56,6 +92,10 @@ public class SpeedController {
 				pro.put(key, System.getProperty(key));
 			else if (key.startsWith(KEY_PREFIX_SNMP_INTERVAL))
 				pro.put(key.substring(KEY_PREFIX_SNMP_INTERVAL.length()), System.getProperty(key));
+			else if (key.startsWith(KEY_PREFIX_SNMP + KEY_PREFIX_BATCH_WINDOW) || key.startsWith(KEY_PREFIX_SNMP + KEY_PREFIX_MAX_VARBINDS)
+					|| key.startsWith(KEY_PREFIX_SNMP + KEY_PREFIX_CONCURRENCY)
+					|| key.startsWith(KEY_PREFIX_SNMP + KEY_PREFIX_CONCURRENCY_QUEUE))
+				pro.put(key.substring(KEY_PREFIX_SNMP.length()), System.getProperty(key));
 		}
 	}
 
@@ -76,22 +116,197 @@ public class SpeedController {
 		return defaultTime;
 	}
 
+	/**
+	 * 等待到ip允许发包的时间
+	 * <p>
+	 * 每个调用者先预订下一个发包时间再等待，多个线程并发访问同一ip时也保持发包间隔。
+	 * 等待使用LockSupport.parkNanos，不占用锁，在虚拟线程上等待时不会占住载体线程。
+	 *
+	 * @param ip 设备ip
+	 */
 	public void synTime(String ip) {
-		while (synTimeMapInfo.get(ip) != null
-				&& System.currentTimeMillis() - ((Date) synTimeMapInfo.get(ip)).getTime() < getTimeByIp(ip, defaultTime)) {
-			try {
-				Thread.sleep(System.currentTimeMillis() - ((Date) synTimeMapInfo.get(ip)).getTime() > 0 ? System
-						.currentTimeMillis() - ((Date) synTimeMapInfo.get(ip)).getTime() : 1);
-			} catch (Exception e) {
-			}
+		long interval = getTimeByIp(ip, defaultTime) * 1000000L;
+		AtomicLong next = nextSendTimes.get(ip);
+		if (next == null) {
+			AtomicLong created = new AtomicLong(System.nanoTime());
+			next = nextSendTimes.putIfAbsent(ip, created);
+			if (next == null)
+				next = created;
+		}
+
+		long now = System.nanoTime();
+		long slot;
+		while (true) {
+			long current = next.get();
+			slot = current - now > 0 ? current : now;
+			if (next.compareAndSet(current, slot + interval))
+				break;
+		}
+
+		long wait;
+		while ((wait = slot - System.nanoTime()) > 0) {
+			LockSupport.parkNanos(this, wait);
+			// 被中断时不再等待，保留中断状态
+			if (Thread.currentThread().isInterrupted())
+				break;
 		}
-		updateSynTimeInfo(ip);
 	}
 
-	private void updateSynTimeInfo(String ip) {
-		synchronized (synTimeMapInfo) {
-			synTimeMapInfo.put(ip, new Date());
+	/**
+	 * 返回对ip的get请求合并等待时间，单位毫秒，见配置batchWindow.&lt;ip&gt;，默认为0即不合并
+	 *
+	 * @param ip 设备ip
+	 * @return
+	 */
+	public int getBatchWindow(String ip) {
+		return getIntByIp(KEY_PREFIX_BATCH_WINDOW, ip, batchWindowDef);
+	}
+
+	/**
+	 * 返回对ip发送的单个PDU最大变量数，见配置maxVarBinds.&lt;ip&gt;，默认为MAX_VARBINDS_DEFAULT
+	 *
+	 * @param ip 设备ip
+	 * @return
+	 */
+	public int getMaxVarBinds(String ip) {
+		return getIntByIp(KEY_PREFIX_MAX_VARBINDS, ip, maxVarBindsDef);
+	}
+
+	/**
+	 * 运行时设置对ip的get请求合并等待时间，ip为0.0.0.0时设置默认值
+	 *
+	 * @param ip     设备ip
+	 * @param window 等待时间，单位毫秒，0表示不合并
+	 */
+	public void setBatchWindow(String ip, int window) {
+		pro.put(KEY_PREFIX_BATCH_WINDOW + ip, String.valueOf(window));
+		if ("0.0.0.0".equals(ip))
+			batchWindowDef = window;
+	}
+
+	/**
+	 * 运行时设置对ip发送的单个PDU最大变量数，ip为0.0.0.0时设置默认值
+	 *
+	 * @param ip          设备ip
+	 * @param maxVarBinds 最大变量数
+	 */
+	public void setMaxVarBinds(String ip, int maxVarBinds) {
+		pro.put(KEY_PREFIX_MAX_VARBINDS + ip, String.valueOf(maxVarBinds));
+		if ("0.0.0.0".equals(ip))
+			maxVarBindsDef = maxVarBinds;
+	}
+
+	/**
+	 * 返回对ip同时在途的请求数上限，见配置concurrency.&lt;ip&gt;，默认为0即不限制
+	 *
+	 * @param ip 设备ip
+	 * @return
+	 */
+	public int getConcurrency(String ip) {
+		return getIntByIp(KEY_PREFIX_CONCURRENCY, ip, concurrencyDef);
+	}
+
+	/**
+	 * 返回对ip超出并发上限时允许排队等待的请求数，见配置concurrencyQueue.&lt;ip&gt;，
+	 * 默认为-1即不限制，为0时超出并发上限的请求立即被拒绝
+	 *
+	 * @param ip 设备ip
+	 * @return
+	 */
+	public int getConcurrencyQueue(String ip) {
+		return getIntByIp(KEY_PREFIX_CONCURRENCY_QUEUE, ip, concurrencyQueueDef);
+	}
+
+	/**
+	 * 运行时设置对ip同时在途的请求数上限，ip为0.0.0.0时设置默认值
+	 * <p>
+	 * 已有的限制就地调整，在途的请求仍计入新的上限；上限调低时，在途请求数降到新上限以下后才放行新的请求。
+	 *
+	 * @param ip          设备ip
+	 * @param concurrency 并发上限，0表示不限制
+	 * @param queue       允许排队等待的请求数，-1表示不限制，0表示超出上限时立即拒绝
+	 */
+	public void setConcurrency(String ip, int concurrency, int queue) {
+		pro.put(KEY_PREFIX_CONCURRENCY + ip, String.valueOf(concurrency));
+		pro.put(KEY_PREFIX_CONCURRENCY_QUEUE + ip, String.valueOf(queue));
+		if ("0.0.0.0".equals(ip)) {
+			concurrencyDef = concurrency;
+			concurrencyQueueDef = queue;
 		}
+		for (DeviceLimit limit : limits.values()) {
+			int current = getConcurrency(limit.ip);
+			// 不再限制时移除，持有许可的请求仍在原对象上释放
+			if (current <= 0)
+				limits.remove(limit.ip, limit);
+			else
+				limit.resize(current, getConcurrencyQueue(limit.ip));
+		}
+	}
+
+	/**
+	 * 取得对ip发送一个请求的许可，超出并发上限时按先来先到排队等待
+	 * <p>
+	 * 等待使用公平的Semaphore，不占用锁，在虚拟线程上等待时不会占住载体线程。
+	 * 取得许可后须在请求结束时调用DeviceLimit.release。
+	 *
+	 * @param ip      设备ip
+	 * @param timeout 最长等待时间，单位毫秒
+	 * @return 取得的许可，ip未设置并发上限时返回null
+	 * @throws SnmpException 等待队列已满或等待超时时弹出ERR_REJECTED，与设备超时的ERR_TIMEOUT区分
+	 */
+	public DeviceLimit acquire(String ip, long timeout) throws SnmpException {
+		DeviceLimit limit = getLimit(ip);
+		if (limit == null)
+			return null;
+		limit.acquire(timeout);
+		return limit;
+	}
+
+	/**
+	 * 返回ip当前在途的请求数，未设置并发上限时返回0
+	 *
+	 * @param ip 设备ip
+	 * @return
+	 */
+	public int getInFlight(String ip) {
+		DeviceLimit limit = limits.get(ip);
+		return limit == null ? 0 : limit.getInFlight();
+	}
+
+	/**
+	 * 返回ip当前排队等待许可的请求数，未设置并发上限时返回0
+	 *
+	 * @param ip 设备ip
+	 * @return
+	 */
+	public int getQueueDepth(String ip) {
+		DeviceLimit limit = limits.get(ip);
+		return limit == null ? 0 : limit.getQueued();
+	}
+
+	private DeviceLimit getLimit(String ip) {
+		DeviceLimit limit = limits.get(ip);
+		if (limit != null)
+			return limit;
+		int concurrency = getConcurrency(ip);
+		if (concurrency <= 0)
+			return null;
+		DeviceLimit created = new DeviceLimit(ip, concurrency, getConcurrencyQueue(ip));
+		limit = limits.putIfAbsent(ip, created);
+		return limit == null ? created : limit;
+	}
+
+	private int getIntByIp(String prefix, String ip, int def) {
+		if (pro != null) {
+			try {
+				Object value = pro.get(prefix + ip);
+				if (value == null)
+					return def;
+				return Integer.parseInt(value.toString());
+			} catch (Exception e) {
+			}
+		}
+		return def;
 	}
 
 	public boolean isBatch(String ip) {
@@ -111,4 +326,97 @@ public class SpeedController {
 		return bol;
 	}
 
+	/**
+	 * 单个设备的并发请求限制
+	 */
+	public static class DeviceLimit {
+		private final String ip;
+		private volatile int concurrency;
+		private volatile int maxQueued;
+		private final Permits permits;
+		private final AtomicInteger queued = new AtomicInteger();
+
+		DeviceLimit(String ip, int concurrency, int maxQueued) {
+			this.ip = ip;
+			this.concurrency = concurrency;
+			this.maxQueued = maxQueued;
+			this.permits = new Permits(concurrency);
+		}
+
+		/**
+		 * 调整上限，调低时可用许可数可能暂时为负，由在途请求释放后补回
+		 */
+		synchronized void resize(int concurrency, int maxQueued) {
+			int delta = concurrency - this.concurrency;
+			if (delta > 0)
+				permits.release(delta);
+			else if (delta < 0)
+				permits.reducePermits(-delta);
+			this.concurrency = concurrency;
+			this.maxQueued = maxQueued;
+		}
+
+		void acquire(long timeout) throws SnmpException {
+			// 无参数的tryAcquire不遵守公平性，会插到已排队的请求之前
+			try {
+				if (permits.tryAcquire(0, TimeUnit.MILLISECONDS))
+					return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SnmpException(SnmpException.ERR_UNKNOWN, "等待设备[" + ip + "]的并发请求许可时被中断", e);
+			}
+			// 先占用排队名额，超出时拒绝，不进入等待
+			int depth;
+			do {
+				depth = queued.get();
+				if (maxQueued >= 0 && depth >= maxQueued)
+					throw new SnmpException(SnmpException.ERR_REJECTED, "超出设备[" + ip + "]的并发请求限制" + concurrency + "，排队请求数：" + depth);
+			} while (!queued.compareAndSet(depth, depth + 1));
+			try {
+				// 排队超时不是设备无应答，使用ERR_REJECTED，避免walk当作设备超时而截断结果
+				if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+					throw new SnmpException(SnmpException.ERR_REJECTED, "等待设备[" + ip + "]的并发请求许可超时，排队请求数：" + depth);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SnmpException(SnmpException.ERR_UNKNOWN, "等待设备[" + ip + "]的并发请求许可时被中断", e);
+			} finally {
+				queued.decrementAndGet();
+			}
+		}
+
+		/**
+		 * 释放许可，须与取得许可成对调用
+		 */
+		public void release() {
+			permits.release();
+		}
+
+		public int getConcurrency() {
+			return concurrency;
+		}
+
+		public synchronized int getInFlight() {
+			return concurrency - permits.availablePermits();
+		}
+
+		public int getQueued() {
+			return queued.get();
+		}
+	}
+
+	/**
+	 * 可调低许可数的公平Semaphore
+	 */
+	private static class Permits extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		Permits(int permits) {
+			super(permits, true);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
 }
@@ -0,0 +1,71 @@
+package uyun.common.snmp.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 字符串驻留池
+ * <p>
+ * 大规模采集时，ifType、ifDescr等文本在不同行、不同设备间大量重复，通过本类将相同内容的字符串收敛为同一个实例以减少堆占用。
+ * 池中只保存弱引用，当字符串不再被任何采集结果使用时，会随GC自动回收，不会造成内存泄漏。
+ * 池按哈希值分段加锁，以减少多线程采集时的锁竞争。
+ */
+public class StringPool {
+	private static final int SEGMENT_COUNT = 32;
+	private static final StringPool inst = new StringPool();
+
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+	public StringPool() {
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment();
+	}
+
+	public static StringPool getInstance() {
+		return inst;
+	}
+
+	/**
+	 * 返回与value内容相同的共享实例，如果池中不存在，则以value作为共享实例
+	 *
+	 * @param value 要驻留的字符串，可以为null
+	 * @return 共享实例，value为null时返回null
+	 */
+	public String intern(String value) {
+		if (value == null)
+			return null;
+
+		int hash = value.hashCode();
+		Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+		synchronized (segment) {
+			WeakReference<String> ref = segment.map.get(value);
+			if (ref != null) {
+				String exist = ref.get();
+				if (exist != null)
+					return exist;
+			}
+			segment.map.put(value, new WeakReference<String>(value));
+			return value;
+		}
+	}
+
+	/**
+	 * 返回池中当前驻留的字符串数量，仅用于监控，结果为近似值
+	 *
+	 * @return 驻留数量
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.map.size();
+			}
+		}
+		return size;
+	}
+
+	private static class Segment {
+		final Map<String, WeakReference<String>> map = new WeakHashMap<String, WeakReference<String>>();
+	}
+}
@@ -0,0 +1,98 @@
+package uyun.common.snmp.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uyun.common.snmp.error.ErrorUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程支持
+ * <p>
+ * 类库以Java 11为编译目标，虚拟线程相关的API通过反射调用。运行在Java 21及以上时使用虚拟线程，
+ * 否则退回到平台守护线程。
+ */
+public class VirtualThreads {
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+	private static final Method IS_VIRTUAL;
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+
+	static {
+		Method isVirtual = null;
+		Method ofVirtual = null;
+		Method builderName = null;
+		Method builderFactory = null;
+		try {
+			isVirtual = Thread.class.getMethod("isVirtual");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			builderName = builder.getMethod("name", String.class, long.class);
+			builderFactory = builder.getMethod("factory");
+		} catch (Exception e) {
+			logger.debug("当前JVM不支持虚拟线程：{}", e.toString());
+			isVirtual = null;
+		}
+		IS_VIRTUAL = isVirtual;
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = builderName;
+		BUILDER_FACTORY = builderFactory;
+	}
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * 当前JVM是否支持虚拟线程
+	 *
+	 * @return
+	 */
+	public static boolean isSupported() {
+		return IS_VIRTUAL != null;
+	}
+
+	/**
+	 * 检查线程是否为虚拟线程
+	 *
+	 * @param thread
+	 * @return 不支持虚拟线程时总是返回false
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null)
+			return false;
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 返回线程工厂，支持虚拟线程时创建虚拟线程，否则创建平台守护线程
+	 *
+	 * @param prefix 线程名前缀，线程名为前缀加序号
+	 * @return
+	 */
+	public static ThreadFactory factory(final String prefix) {
+		if (isSupported()) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+				return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+			} catch (Exception e) {
+				ErrorUtil.warn(logger, "创建虚拟线程工厂失败，使用平台线程", e);
+			}
+		}
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
@@ -0,0 +1,168 @@
+package uyun.common.snmp.v3;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SecurityLevel;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVersion;
+import uyun.common.snmp.error.ErrorUtil;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.util.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SNMPv3引擎预热
+ * <p>
+ * snmp4j在对V3设备的第一个请求中串行完成引擎ID发现与引擎时间同步，采集进程重启后的第一轮采集因此很慢，且容易超时。
+ * 本类在采集开始前并发地对一批设备完成这些步骤：
+ * <ol>
+ * <li>发现权威引擎ID，加入snmp4j的engineID缓存</li>
+ * <li>按发现的engineID预先生成本地化密钥，见Snmp.prelocalize</li>
+ * <li>对需要验证的用户，GET一次sysUpTime.0，由snmp4j完成引擎时间同步</li>
+ * </ol>
+ * 并发数与每秒请求数可以配置，每个设备的耗时与失败原因见WarmupResult。非V3参数会被忽略。
+ */
+public class EngineWarmup {
+	private static final Logger logger = LoggerFactory.getLogger(EngineWarmup.class);
+	/**
+	 * 默认并发数
+	 */
+	public static final int CONCURRENCY_DEFAULT = 32;
+	/**
+	 * 默认每秒请求数
+	 */
+	public static final int RATE_DEFAULT = 200;
+	private static final SnmpOID SYS_UPTIME = new SnmpOID(".1.3.6.1.2.1.1.3.0");
+
+	private int concurrency = CONCURRENCY_DEFAULT;
+	private int rate = RATE_DEFAULT;
+	private boolean timeSync = true;
+
+	/**
+	 * 设置并发数
+	 *
+	 * @param concurrency
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency <= 0)
+			throw new IllegalArgumentException("并发数必须大于0");
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * 设置每秒最多发出的请求数，包括引擎ID发现与时间同步请求
+	 *
+	 * @param rate 小于等于0表示不限制
+	 */
+	public void setRate(int rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * 设置是否进行引擎时间同步，默认为true
+	 *
+	 * @param timeSync
+	 */
+	public void setTimeSync(boolean timeSync) {
+		this.timeSync = timeSync;
+	}
+
+	/**
+	 * 对一批设备进行预热，阻塞直到全部完成
+	 *
+	 * @param targets SNMPv3访问参数
+	 * @return 每个V3设备的预热结果，与targets中V3参数的顺序一致
+	 * @throws InterruptedException 等待时被中断
+	 */
+	public List<WarmupResult> warmup(Collection<? extends SnmpTarget> targets) throws InterruptedException {
+		final RateLimiter limiter = new RateLimiter(rate);
+		List<Callable<WarmupResult>> tasks = new ArrayList<Callable<WarmupResult>>(targets.size());
+		for (final SnmpTarget target : targets) {
+			if (target.getVersion() != SnmpVersion.V3)
+				continue;
+			tasks.add(new Callable<WarmupResult>() {
+				public WarmupResult call() throws InterruptedException {
+					return warmup(target, limiter);
+				}
+			});
+		}
+
+		List<WarmupResult> results = new ArrayList<WarmupResult>(tasks.size());
+		if (tasks.isEmpty())
+			return results;
+
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, tasks.size()), new WarmupThreadFactory());
+		try {
+			for (Future<WarmupResult> future : executor.invokeAll(tasks)) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("SNMPv3预热任务失败", e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		int failed = 0;
+		for (WarmupResult result : results) {
+			if (!result.isSuccess())
+				failed++;
+		}
+		logger.info("SNMPv3预热完成，设备数：{}，失败：{}，耗时：{}ms", results.size(), failed, System.currentTimeMillis() - start);
+		return results;
+	}
+
+	private WarmupResult warmup(SnmpTarget target, RateLimiter limiter) throws InterruptedException {
+		WarmupResult result = new WarmupResult(target);
+		try {
+			limiter.acquire();
+			long start = System.currentTimeMillis();
+			byte[] engineID;
+			try {
+				engineID = Snmp.discoverEngineId(target);
+			} finally {
+				result.setDiscoveryTime(System.currentTimeMillis() - start);
+			}
+			result.setEngineID(engineID);
+
+			Snmp.prelocalize(target, engineID);
+
+			if (timeSync && target.getSecurityLevel() != SecurityLevel.noAuthNoPriv) {
+				limiter.acquire();
+				start = System.currentTimeMillis();
+				try {
+					Snmp.get(target, SYS_UPTIME);
+				} finally {
+					result.setSyncTime(System.currentTimeMillis() - start);
+				}
+			}
+		} catch (SnmpException e) {
+			result.setError(e);
+		} catch (RuntimeException e) {
+			result.setError(new SnmpException(SnmpException.ERR_UNKNOWN, ErrorUtil.createMessage("未知错误", e), e));
+		}
+
+		if (!result.isSuccess() && logger.isDebugEnabled())
+			logger.debug("SNMPv3预热失败：{}", result);
+		return result;
+	}
+
+	private static class WarmupThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "snmp-warmup-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
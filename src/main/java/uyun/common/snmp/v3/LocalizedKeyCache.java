@@ -0,0 +1,282 @@
+package uyun.common.snmp.v3;
+
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * SNMPv3本地化密钥缓存
+ * <p>
+ * 由口令生成本地化密钥（RFC3414 A.2）需要对口令重复哈希1MB数据，在大量设备上新增或轮换V3凭据时开销很大。
+ * 本类以 (口令, 协议, engineID) 为键缓存生成结果，所有用户与设备共享，相同口令在同一engineID下只计算一次，
+ * 并发请求同一个键时只有一个线程计算，其它线程等待其结果。
+ * <p>
+ * 键中不保存口令原文，只保存其SHA-256摘要。
+ */
+public class LocalizedKeyCache {
+	/**
+	 * 默认最大缓存数量
+	 */
+	public static final int MAX_SIZE_DEFAULT = 100000;
+	private static final LocalizedKeyCache inst = new LocalizedKeyCache(SecurityProtocols.getInstance(), MAX_SIZE_DEFAULT);
+
+	private final SecurityProtocols protocols;
+	private final int maxSize;
+	private final ConcurrentMap<Key, FutureTask<byte[]>> keys = new ConcurrentHashMap<Key, FutureTask<byte[]>>();
+
+	public LocalizedKeyCache(SecurityProtocols protocols, int maxSize) {
+		this.protocols = protocols;
+		this.maxSize = maxSize;
+	}
+
+	public static LocalizedKeyCache getInstance() {
+		return inst;
+	}
+
+	/**
+	 * 返回验证口令在指定engineID下的本地化密钥
+	 *
+	 * @param authProtocol 验证协议OID
+	 * @param password     验证口令
+	 * @param engineID     权威引擎ID
+	 * @return 本地化密钥，调用方不得修改
+	 */
+	public byte[] getAuthKey(final OID authProtocol, final String password, final byte[] engineID) {
+		return get(new Key(authProtocol, null, digest(password), engineID), new Callable<byte[]>() {
+			public byte[] call() {
+				return protocols.passwordToKey(authProtocol, new OctetString(password), engineID);
+			}
+		});
+	}
+
+	/**
+	 * 返回加密口令在指定engineID下的本地化密钥，密钥长度已按加密协议扩展
+	 *
+	 * @param authProtocol 验证协议OID
+	 * @param privProtocol 加密协议OID
+	 * @param password     加密口令
+	 * @param engineID     权威引擎ID
+	 * @return 本地化密钥，调用方不得修改
+	 */
+	public byte[] getPrivKey(final OID authProtocol, final OID privProtocol, final String password, final byte[] engineID) {
+		return get(new Key(authProtocol, privProtocol, digest(password), engineID), new Callable<byte[]>() {
+			public byte[] call() {
+				return protocols.passwordToKey(privProtocol, authProtocol, new OctetString(password), engineID);
+			}
+		});
+	}
+
+	private byte[] get(Key key, Callable<byte[]> generator) {
+		FutureTask<byte[]> task = keys.get(key);
+		if (task == null) {
+			FutureTask<byte[]> created = new FutureTask<byte[]>(generator);
+			evictIfFull();
+			task = keys.putIfAbsent(key, created);
+			if (task == null) {
+				task = created;
+				created.run();
+			}
+		}
+
+		try {
+			byte[] result = task.get();
+			if (result == null)
+				keys.remove(key, task);
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("等待本地化密钥生成时被中断", e);
+		} catch (ExecutionException e) {
+			keys.remove(key, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException("本地化密钥生成失败", cause);
+		}
+	}
+
+	/**
+	 * 超出上限时随机淘汰约1/8的缓存
+	 */
+	private void evictIfFull() {
+		if (keys.size() < maxSize)
+			return;
+		int remove = Math.max(1, maxSize / 8);
+		for (Iterator<Key> iter = keys.keySet().iterator(); iter.hasNext() && remove > 0; remove--) {
+			iter.next();
+			iter.remove();
+		}
+	}
+
+	/**
+	 * 返回所有已生成的密钥，用于保存到本地文件
+	 *
+	 * @return
+	 */
+	public List<Entry> entries() {
+		List<Entry> result = new ArrayList<Entry>(keys.size());
+		for (Map.Entry<Key, FutureTask<byte[]>> entry : keys.entrySet()) {
+			FutureTask<byte[]> task = entry.getValue();
+			if (!task.isDone())
+				continue;
+			try {
+				byte[] value = task.get();
+				if (value != null) {
+					Key key = entry.getKey();
+					result.add(new Entry(key.authProtocol, key.privProtocol, key.passwordDigest, key.engineID, value));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				// 生成失败的密钥不导出
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 加入一个已生成的密钥，用于从本地文件恢复。已存在的键不会被覆盖
+	 *
+	 * @param entry
+	 */
+	public void put(Entry entry) {
+		final byte[] value = entry.getKey();
+		FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+			public byte[] call() {
+				return value;
+			}
+		});
+		task.run();
+		evictIfFull();
+		keys.putIfAbsent(new Key(entry.getAuthProtocol(), entry.getPrivProtocol(), entry.getPasswordDigest(),
+				entry.getEngineID()), task);
+	}
+
+	/**
+	 * 返回当前缓存数量
+	 *
+	 * @return
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void clear() {
+		keys.clear();
+	}
+
+	/**
+	 * 计算口令摘要
+	 *
+	 * @param password 口令
+	 * @return SHA-256摘要
+	 */
+	public static byte[] digest(String password) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 导出的密钥条目，口令以SHA-256摘要表示
+	 */
+	public static class Entry {
+		private final OID authProtocol;
+		private final OID privProtocol;
+		private final byte[] passwordDigest;
+		private final byte[] engineID;
+		private final byte[] key;
+
+		/**
+		 * @param authProtocol   验证协议OID
+		 * @param privProtocol   加密协议OID，验证密钥为null
+		 * @param passwordDigest 口令摘要，见digest(String)
+		 * @param engineID       权威引擎ID
+		 * @param key            本地化密钥
+		 */
+		public Entry(OID authProtocol, OID privProtocol, byte[] passwordDigest, byte[] engineID, byte[] key) {
+			this.authProtocol = authProtocol;
+			this.privProtocol = privProtocol;
+			this.passwordDigest = passwordDigest;
+			this.engineID = engineID;
+			this.key = key;
+		}
+
+		public OID getAuthProtocol() {
+			return authProtocol;
+		}
+
+		public OID getPrivProtocol() {
+			return privProtocol;
+		}
+
+		public byte[] getPasswordDigest() {
+			return passwordDigest;
+		}
+
+		public byte[] getEngineID() {
+			return engineID;
+		}
+
+		public byte[] getKey() {
+			return key;
+		}
+	}
+
+	private static class Key {
+		final OID authProtocol;
+		final OID privProtocol;
+		final byte[] passwordDigest;
+		final byte[] engineID;
+		final int hash;
+
+		Key(OID authProtocol, OID privProtocol, byte[] passwordDigest, byte[] engineID) {
+			this.authProtocol = authProtocol;
+			this.privProtocol = privProtocol;
+			this.passwordDigest = passwordDigest;
+			this.engineID = engineID.clone();
+			int h = authProtocol.hashCode();
+			h = h * 31 + (privProtocol == null ? 0 : privProtocol.hashCode());
+			h = h * 31 + Arrays.hashCode(passwordDigest);
+			h = h * 31 + Arrays.hashCode(engineID);
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key another = (Key) obj;
+			return hash == another.hash
+					&& authProtocol.equals(another.authProtocol)
+					&& (privProtocol == null ? another.privProtocol == null : privProtocol.equals(another.privProtocol))
+					&& Arrays.equals(passwordDigest, another.passwordDigest)
+					&& Arrays.equals(engineID, another.engineID);
+		}
+	}
+}
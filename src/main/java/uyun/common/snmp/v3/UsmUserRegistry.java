@@ -0,0 +1,86 @@
+package uyun.common.snmp.v3;
+
+import uyun.common.snmp.entity.SnmpTarget;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SNMPv3用户注册表
+ * <p>
+ * 以securityUser为键保存每个用户当前生效的V3参数。读取不加锁；修改按用户名分段加锁，
+ * 不同用户的修改互不阻塞，同一用户的修改串行执行。保存的参数为调用方参数的副本，不受调用方后续修改的影响。
+ */
+public class UsmUserRegistry {
+	private static final int STRIPE_COUNT = 64;
+
+	private final ConcurrentMap<String, SnmpTarget> users = new ConcurrentHashMap<String, SnmpTarget>();
+	private final Lock[] locks = new Lock[STRIPE_COUNT];
+
+	public UsmUserRegistry() {
+		for (int i = 0; i < locks.length; i++)
+			locks[i] = new ReentrantLock();
+	}
+
+	/**
+	 * 返回用户当前生效的V3参数，不加锁
+	 *
+	 * @param user securityUser
+	 * @return 不存在时返回null，调用方不得修改返回的对象
+	 */
+	public SnmpTarget get(String user) {
+		return users.get(user);
+	}
+
+	/**
+	 * 检查用户当前生效的参数是否与param的V3参数相同，不加锁
+	 *
+	 * @param param V3访问参数
+	 * @return 相同返回true
+	 */
+	public boolean matches(SnmpTarget param) {
+		SnmpTarget exist = users.get(param.getSecurityUser());
+		return exist != null && exist.equalsV3Param(param);
+	}
+
+	/**
+	 * 设置用户的V3参数，调用方应先持有lockFor(user)返回的锁
+	 *
+	 * @param param V3访问参数
+	 * @return 之前生效的参数，不存在时返回null
+	 */
+	public SnmpTarget put(SnmpTarget param) {
+		return users.put(param.getSecurityUser(), param.clone());
+	}
+
+	/**
+	 * 删除用户，调用方应先持有lockFor(user)返回的锁
+	 *
+	 * @param user securityUser
+	 * @return 之前生效的参数，不存在时返回null
+	 */
+	public SnmpTarget remove(String user) {
+		return users.remove(user);
+	}
+
+	/**
+	 * 返回用户所在分段的锁
+	 *
+	 * @param user securityUser
+	 * @return
+	 */
+	public Lock lockFor(String user) {
+		int hash = user.hashCode();
+		return locks[(hash ^ (hash >>> 16)) & (STRIPE_COUNT - 1)];
+	}
+
+	public int size() {
+		return users.size();
+	}
+
+	public void clear() {
+		users.clear();
+	}
+}
@@ -0,0 +1,86 @@
+package uyun.common.snmp.v3;
+
+import org.snmp4j.smi.OctetString;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.error.SnmpException;
+
+/**
+ * 单个设备的SNMPv3预热结果
+ */
+public class WarmupResult {
+	private final SnmpTarget target;
+	private byte[] engineID;
+	private long discoveryTime = -1;
+	private long syncTime = -1;
+	private SnmpException error;
+
+	public WarmupResult(SnmpTarget target) {
+		this.target = target;
+	}
+
+	public SnmpTarget getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return 发现的权威引擎ID，失败时为null
+	 */
+	public byte[] getEngineID() {
+		return engineID;
+	}
+
+	void setEngineID(byte[] engineID) {
+		this.engineID = engineID;
+	}
+
+	/**
+	 * @return 引擎ID发现耗时，包括失败的发现，单位毫秒，未执行时为-1
+	 */
+	public long getDiscoveryTime() {
+		return discoveryTime;
+	}
+
+	void setDiscoveryTime(long discoveryTime) {
+		this.discoveryTime = discoveryTime;
+	}
+
+	/**
+	 * @return 引擎时间同步耗时，包括失败的同步，单位毫秒，未执行时为-1
+	 */
+	public long getSyncTime() {
+		return syncTime;
+	}
+
+	void setSyncTime(long syncTime) {
+		this.syncTime = syncTime;
+	}
+
+	/**
+	 * @return 失败原因，成功时为null
+	 */
+	public SnmpException getError() {
+		return error;
+	}
+
+	void setError(SnmpException error) {
+		this.error = error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(target.getIp()).append(":").append(target.getPort());
+		if (engineID != null)
+			sb.append(" engineID=").append(new OctetString(engineID).toHexString());
+		sb.append(" discovery=").append(discoveryTime).append("ms");
+		if (syncTime >= 0)
+			sb.append(" sync=").append(syncTime).append("ms");
+		if (error != null)
+			sb.append(" error=").append(error.getMessage());
+		return sb.toString();
+	}
+}
@@ -0,0 +1,92 @@
+import org.junit.Test;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Counter64;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpValue;
+import uyun.common.snmp.rate.CounterRateEngine;
+import uyun.common.snmp.rate.RateSample;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestCounterRateEngine {
+	private static final String IP = "10.1.1.1";
+	private static final SnmpOID IF_IN_OCTETS_1 = new SnmpOID(".1.3.6.1.2.1.2.2.1.10.1");
+
+	@Test
+	public void testRate() {
+		CounterRateEngine engine = new CounterRateEngine();
+		RateSample sample = new RateSample();
+
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(1000)), 100, 10000, sample);
+		assertEquals(RateSample.Status.FIRST, sample.getStatus());
+		assertFalse(sample.isValid());
+
+		// sysUpTime前进了10秒，增量5000，速率应为500/s
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(6000)), 1100, 20050, sample);
+		assertEquals(RateSample.Status.OK, sample.getStatus());
+		assertEquals(5000, sample.getDelta());
+		assertEquals(10000, sample.getInterval());
+		assertEquals(500.0, sample.getRate(), 0.001);
+	}
+
+	@Test
+	public void testCounterWrap() {
+		CounterRateEngine engine = new CounterRateEngine();
+		RateSample sample = new RateSample();
+
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(0xffffff00L)), 100, 10000, sample);
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(0x100)), 200, 11000, sample);
+		assertEquals(RateSample.Status.WRAPPED, sample.getStatus());
+		assertEquals(0x200, sample.getDelta());
+
+		SnmpOID hc = new SnmpOID(".1.3.6.1.2.1.31.1.1.1.6.1");
+		engine.update(IP, hc, new SnmpValue(new Counter64(-16)), 100, 10000, sample);
+		engine.update(IP, hc, new SnmpValue(new Counter64(16)), 200, 11000, sample);
+		assertEquals(RateSample.Status.WRAPPED, sample.getStatus());
+		assertEquals(32, sample.getDelta());
+
+		// Counter64非回绕的变小视为清零
+		engine.update(IP, hc, new SnmpValue(new Counter64(8)), 300, 12000, sample);
+		assertEquals(RateSample.Status.DISCONTINUITY, sample.getStatus());
+	}
+
+	@Test
+	public void testRestart() {
+		CounterRateEngine engine = new CounterRateEngine();
+		RateSample sample = new RateSample();
+
+		// sysUpTime回退，设备已重启
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(50000)), 500000, 10000, sample);
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(100)), 300, 20000, sample);
+		assertEquals(RateSample.Status.DISCONTINUITY, sample.getStatus());
+
+		// 重启后的基线正常工作
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(1100)), 1300, 30000, sample);
+		assertEquals(RateSample.Status.OK, sample.getStatus());
+		assertEquals(100.0, sample.getRate(), 0.001);
+
+		// 设备时间只前进1秒，本地时间前进了1小时，说明期间重启过
+		engine.update(IP, IF_IN_OCTETS_1, new SnmpValue(new Counter32(2100)), 1400, 3630000, sample);
+		assertEquals(RateSample.Status.DISCONTINUITY, sample.getStatus());
+	}
+
+	@Test
+	public void testPrune() {
+		CounterRateEngine engine = new CounterRateEngine(10, 60000);
+		RateSample sample = new RateSample();
+		for (int i = 0; i < 1000; i++)
+			engine.update(IP, SnmpOID.join(IF_IN_OCTETS_1, new SnmpOID(new int[]{i})), new SnmpValue(new Counter32(i)),
+					CounterRateEngine.UPTIME_UNKNOWN, i < 500 ? 0 : 100000, sample);
+		assertEquals(1000, engine.size());
+
+		assertEquals(500, engine.prune(120000));
+		assertEquals(500, engine.size());
+
+		engine.update(IP, SnmpOID.join(IF_IN_OCTETS_1, new SnmpOID(new int[]{999})), new SnmpValue(new Counter32(1999)),
+				CounterRateEngine.UPTIME_UNKNOWN, 101000, sample);
+		assertTrue(sample.isValid());
+		assertEquals(1000.0, sample.getRate(), 0.001);
+	}
+}
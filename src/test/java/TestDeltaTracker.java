@@ -0,0 +1,200 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.Counter64;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import uyun.common.snmp.PduSender;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.delta.DeltaTracker;
+import uyun.common.snmp.delta.TableDeltaListener;
+import uyun.common.snmp.delta.WalkDeltaListener;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkRequest;
+import uyun.common.snmp.entity.SnmpWalkResult;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestDeltaTracker {
+	private SimulatedFarm farm;
+	private SimulatedMib mib;
+	private SnmpTarget target;
+
+	@Before
+	public void setUp() throws Exception {
+		farm = new SimulatedFarm(1);
+		mib = SimulatedMib.synthetic("sim-1", 10);
+		target = farm.add(mib, new DeviceProfile()).getTarget();
+		target.setTimeout(1000);
+	}
+
+	@After
+	public void tearDown() {
+		farm.close();
+	}
+
+	@Test
+	public void testWalk() throws Exception {
+		DeltaTracker tracker = new DeltaTracker();
+		SnmpOID root = new SnmpOID(SimulatedMib.IF_DESCR);
+		Recorder recorder = new Recorder();
+		tracker.walk(target, root, recorder);
+		assertEquals(10, recorder.added.size());
+
+		recorder = new Recorder();
+		tracker.walk(target, root, recorder);
+		assertEquals("", recorder.toString());
+
+		mib.put(SimulatedMib.IF_DESCR + ".3", new OctetString("changed"));
+		mib.remove(new OID(SimulatedMib.IF_DESCR + ".5"));
+		mib.remove(new OID(SimulatedMib.IF_DESCR + ".10"));
+		mib.put(SimulatedMib.IF_DESCR + ".11", new OctetString("new"));
+		recorder = new Recorder();
+		tracker.walk(target, root, recorder);
+		assertEquals("+[.1.3.6.1.2.1.2.2.1.2.11] ~[.1.3.6.1.2.1.2.2.1.2.3] -[.1.3.6.1.2.1.2.2.1.2.5, .1.3.6.1.2.1.2.2.1.2.10]",
+				recorder.toString());
+
+		// 未完整结束时不报告之后的删除，下次完整walk时再报告
+		mib.remove(new OID(SimulatedMib.IF_DESCR + ".9"));
+		recorder = new Recorder();
+		assertEquals(SnmpWalkResult.State.EXCEED, tracker.walk(target, new SnmpWalkRequest(4, 0), root, recorder));
+		assertEquals("", recorder.toString());
+		recorder = new Recorder();
+		tracker.walk(target, root, recorder);
+		assertEquals("-[.1.3.6.1.2.1.2.2.1.2.9]", recorder.toString());
+
+		assertEquals(1, tracker.forget(target));
+		recorder = new Recorder();
+		tracker.walk(target, root, recorder);
+		assertEquals(8, recorder.added.size());
+	}
+
+	@Test
+	public void testTable() throws Exception {
+		DeltaTracker tracker = new DeltaTracker();
+		SnmpOID[] columns = {new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)};
+		final List<String> events = new ArrayList<String>();
+		TableDeltaListener listener = new TableDeltaListener() {
+			public void onRowAdded(SnmpRow row) {
+				events.add("+" + row.getInstance());
+			}
+
+			public void onRowChanged(SnmpRow row, boolean[] changed) {
+				events.add("~" + row.getInstance() + Arrays.toString(changed));
+			}
+
+			public void onRowRemoved(SnmpOID instance) {
+				events.add("-" + instance);
+			}
+		};
+		tracker.walkTable(target, columns, listener);
+		assertEquals(10, events.size());
+		events.clear();
+
+		mib.put(new OID(SimulatedMib.IF_HC_IN_OCTETS + ".2"), new Counter64(123));
+		mib.remove(new OID(SimulatedMib.IF_DESCR + ".4"));
+		mib.remove(new OID(SimulatedMib.IF_HC_IN_OCTETS + ".4"));
+		tracker.walkTable(target, columns, listener);
+		assertEquals(Arrays.asList("~.2[false, true]", "-.4"), events);
+		assertEquals(1, tracker.size());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		DeltaTracker tracker = new DeltaTracker();
+		SnmpOID root = new SnmpOID(SimulatedMib.IF_DESCR);
+		tracker.walk(target, root, new Recorder());
+		SnmpOID[] columns = {new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)};
+		tracker.walkTable(target, columns, new TableDeltaListener() {
+			public void onRowAdded(SnmpRow row) {
+			}
+
+			public void onRowChanged(SnmpRow row, boolean[] changed) {
+			}
+
+			public void onRowRemoved(SnmpOID instance) {
+			}
+		});
+
+		// 设备在第3个请求之后不再应答，未取得的部分不作为删除
+		final AtomicInteger sent = new AtomicInteger();
+		Snmp.setSender(new PduSender() {
+			public PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+				if (sent.incrementAndGet() > 3)
+					throw new SnmpException(SnmpException.ERR_TIMEOUT, "模拟超时");
+				return Snmp.NETWORK.send(param, pdu);
+			}
+		});
+		final List<String> events = new ArrayList<String>();
+		try {
+			Recorder recorder = new Recorder();
+			assertEquals(SnmpWalkResult.State.OVERTIME, tracker.walk(target, root, recorder));
+			assertEquals("", recorder.toString());
+
+			sent.set(0);
+			assertEquals(SnmpWalkResult.State.OVERTIME, tracker.walkTable(target, columns, new TableDeltaListener() {
+				public void onRowAdded(SnmpRow row) {
+					events.add("+" + row.getInstance());
+				}
+
+				public void onRowChanged(SnmpRow row, boolean[] changed) {
+					events.add("~" + row.getInstance());
+				}
+
+				public void onRowRemoved(SnmpOID instance) {
+					events.add("-" + instance);
+				}
+			}));
+			assertEquals(0, events.size());
+		} finally {
+			Snmp.setSender(null);
+		}
+
+		// 基线保留了未取得的尾部，恢复后的完整walk没有变化
+		Recorder recorder = new Recorder();
+		assertEquals(SnmpWalkResult.State.OK, tracker.walk(target, root, recorder));
+		assertEquals("", recorder.toString());
+	}
+
+	private static class Recorder implements WalkDeltaListener {
+		final List<SnmpOID> added = new ArrayList<SnmpOID>();
+		final List<SnmpOID> changed = new ArrayList<SnmpOID>();
+		final List<SnmpOID> removed = new ArrayList<SnmpOID>();
+
+		public void onAdded(SnmpVarBind varBind) {
+			added.add(varBind.getOid());
+		}
+
+		public void onChanged(SnmpVarBind varBind) {
+			changed.add(varBind.getOid());
+		}
+
+		public void onRemoved(SnmpOID oid) {
+			removed.add(oid);
+		}
+
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			if (!added.isEmpty())
+				sb.append("+").append(added);
+			if (!changed.isEmpty())
+				sb.append(sb.length() > 0 ? " " : "").append("~").append(changed);
+			if (!removed.isEmpty())
+				sb.append(sb.length() > 0 ? " " : "").append("-").append(removed);
+			return sb.toString();
+		}
+	}
+}
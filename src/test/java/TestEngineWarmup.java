@@ -0,0 +1,114 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.AuthProtocol;
+import uyun.common.snmp.entity.PrivProtocol;
+import uyun.common.snmp.entity.SecurityLevel;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpTargetSpec;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedAgent;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+import uyun.common.snmp.state.DeviceState;
+import uyun.common.snmp.v3.EngineWarmup;
+import uyun.common.snmp.v3.WarmupResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestEngineWarmup {
+	private static final byte[] ENGINE_ID = {(byte) 0x80, 0, 0x1f, (byte) 0x88, 4, 's', 'i', 'm'};
+
+	private SimulatedFarm farm;
+
+	@Before
+	public void setUp() {
+		farm = new SimulatedFarm(1);
+	}
+
+	@After
+	public void tearDown() {
+		farm.close();
+	}
+
+	@Test
+	public void testWarmup() throws Exception {
+		// 模拟设备只支持v1/v2c，不响应V3的引擎ID发现
+		SimulatedAgent silent = farm.add(SimulatedMib.synthetic("sim-1", 1), new DeviceProfile());
+		SimulatedAgent known = farm.add(SimulatedMib.synthetic("sim-2", 1), new DeviceProfile());
+		DeviceState state = new DeviceState(known.getTarget().getIp(), known.getTarget().getPort());
+		state.setEngine(ENGINE_ID, 0, 0);
+		Snmp.importEngineState(state, 0);
+
+		List<SnmpTargetSpec> targets = new ArrayList<SnmpTargetSpec>();
+		targets.add(v3(silent, "warmup-a"));
+		targets.add(new SnmpTargetSpec.Builder(silent.getTarget().getIp()).port(silent.getTarget().getPort())
+				.community("public").build());
+		targets.add(v3(known, "warmup-b"));
+
+		EngineWarmup warmup = new EngineWarmup();
+		warmup.setTimeSync(false);
+		List<WarmupResult> results = warmup.warmup(targets);
+
+		// 非V3参数被忽略
+		assertEquals(2, results.size());
+		WarmupResult failed = results.get(0);
+		assertSame(targets.get(0), failed.getTarget());
+		assertFalse(failed.isSuccess());
+		assertEquals(SnmpException.ERR_TIMEOUT, failed.getError().getErrorCode());
+		assertNull(failed.getEngineID());
+		assertTrue(failed.getDiscoveryTime() >= 0);
+		assertEquals(-1, failed.getSyncTime());
+
+		WarmupResult success = results.get(1);
+		assertTrue(success.isSuccess());
+		assertArrayEquals(ENGINE_ID, success.getEngineID());
+	}
+
+	@Test
+	public void testDiscoveryAndTimeSync() throws Exception {
+		byte[] engineID = {(byte) 0x80, 0, 0x1f, (byte) 0x88, 4, 'u', 's', 'm'};
+		SimulatedAgent agent = new SimulatedAgent(SimulatedMib.synthetic("sim-3", 1));
+		agent.setEngineID(engineID);
+		agent.addUser(new SnmpTarget("127.0.0.1", SecurityLevel.authPriv, "warmup-c",
+				AuthProtocol.SHA, "authpass1", PrivProtocol.AES128, "privpass1"));
+		agent.start("127.0.0.1", 0);
+		try {
+			List<SnmpTargetSpec> targets = new ArrayList<SnmpTargetSpec>();
+			targets.add(v3(agent, "warmup-c"));
+			List<WarmupResult> results = new EngineWarmup().warmup(targets);
+
+			// 由设备应答完成引擎ID发现，再以验证加密的请求完成引擎时间同步
+			assertEquals(1, results.size());
+			WarmupResult result = results.get(0);
+			assertNull(result.getError());
+			assertTrue(result.isSuccess());
+			assertArrayEquals(engineID, result.getEngineID());
+			assertTrue(result.getDiscoveryTime() >= 0);
+			assertTrue(result.getSyncTime() >= 0);
+			assertTrue(agent.getResponded() >= 1);
+
+			// 之后的请求直接使用已发现的引擎ID与本地化密钥
+			assertEquals("sim-3", Snmp.get(targets.get(0), new SnmpOID("1.3.6.1.2.1.1.5.0")).getValue().toText());
+		} finally {
+			agent.close();
+		}
+	}
+
+	private static SnmpTargetSpec v3(SimulatedAgent agent, String user) {
+		return new SnmpTargetSpec.Builder(agent.getTarget().getIp()).port(agent.getTarget().getPort())
+				.v3(SecurityLevel.authPriv, user, AuthProtocol.SHA, "authpass1", PrivProtocol.AES128, "privpass1")
+				.timeout(300).retryTime(0).build();
+	}
+}
@@ -0,0 +1,121 @@
+import org.junit.Test;
+import org.snmp4j.security.AuthMD5;
+import org.snmp4j.security.AuthSHA;
+import org.snmp4j.security.PrivAES128;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import uyun.common.snmp.v3.LocalizedKeyCache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestLocalizedKeyCache {
+	private static final byte[] ENGINE_ID = OctetString.fromHexString("00:00:00:00:00:00:00:00:00:00:00:02").getValue();
+
+	@Test
+	public void testLocalizedKey() {
+		SecurityProtocols protocols = SecurityProtocols.getInstance().addDefaultProtocols();
+		LocalizedKeyCache cache = new LocalizedKeyCache(protocols, 100);
+
+		// RFC3414 A.3.1、A.3.2中的示例
+		assertArrayEquals(OctetString.fromHexString("52:6f:5e:ed:9f:cc:e2:6f:89:64:c2:93:07:87:d8:2b").getValue(),
+				cache.getAuthKey(AuthMD5.ID, "maplesyrup", ENGINE_ID));
+		assertArrayEquals(OctetString.fromHexString("66:95:fe:bc:92:88:e3:62:82:23:5f:c7:15:1f:12:84:97:b3:8f:3f").getValue(),
+				cache.getAuthKey(AuthSHA.ID, "maplesyrup", ENGINE_ID));
+		assertArrayEquals(protocols.passwordToKey(PrivAES128.ID, AuthSHA.ID, new OctetString("maplesyrup"), ENGINE_ID),
+				cache.getPrivKey(AuthSHA.ID, PrivAES128.ID, "maplesyrup", ENGINE_ID));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testConcurrentLookup() throws Exception {
+		final AtomicInteger computed = new AtomicInteger();
+		SecurityProtocols protocols = new SecurityProtocols() {
+			@Override
+			public byte[] passwordToKey(OID authProtocolID, OctetString passwordString, byte[] engineID) {
+				computed.incrementAndGet();
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.passwordToKey(authProtocolID, passwordString, engineID);
+			}
+		};
+		protocols.addDefaultProtocols();
+		final LocalizedKeyCache cache = new LocalizedKeyCache(protocols, 100);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReferenceArray<byte[]> keys = new AtomicReferenceArray<byte[]>(8);
+		Thread[] threads = new Thread[keys.length()];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						keys.set(index, cache.getAuthKey(AuthSHA.ID, "maplesyrup", ENGINE_ID));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		// 同时请求同一个键时只计算一次，所有线程得到同一个结果
+		assertEquals(1, computed.get());
+		for (int i = 0; i < keys.length(); i++)
+			assertSame(keys.get(0), keys.get(i));
+	}
+
+	@Test
+	public void testEviction() {
+		final AtomicInteger computed = new AtomicInteger();
+		SecurityProtocols protocols = new SecurityProtocols() {
+			@Override
+			public byte[] passwordToKey(OID authProtocolID, OctetString passwordString, byte[] engineID) {
+				computed.incrementAndGet();
+				return super.passwordToKey(authProtocolID, passwordString, engineID);
+			}
+		};
+		protocols.addDefaultProtocols();
+		LocalizedKeyCache cache = new LocalizedKeyCache(protocols, 16);
+
+		for (int i = 0; i < 16; i++)
+			cache.getAuthKey(AuthMD5.ID, "maplesyrup", engineID(i));
+		assertEquals(16, cache.size());
+
+		// 超出上限时淘汰1/8，即2个
+		cache.getAuthKey(AuthMD5.ID, "maplesyrup", engineID(16));
+		assertEquals(15, cache.size());
+		assertEquals(17, computed.get());
+
+		// 被淘汰的键再次请求时重新计算，结果不变
+		byte[] expected = protocols.passwordToKey(AuthMD5.ID, new OctetString("maplesyrup"), engineID(3));
+		computed.set(0);
+		for (int i = 0; i <= 16; i++) {
+			byte[] key = cache.getAuthKey(AuthMD5.ID, "maplesyrup", engineID(i));
+			if (i == 3)
+				assertArrayEquals(expected, key);
+			assertTrue(cache.size() <= 16);
+		}
+		assertTrue(computed.get() >= 2);
+	}
+
+	private static byte[] engineID(int i) {
+		byte[] engineID = ENGINE_ID.clone();
+		engineID[engineID.length - 1] = (byte) i;
+		return engineID;
+	}
+}
@@ -0,0 +1,45 @@
+import org.junit.Test;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.util.OidTrie;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestOidTrie {
+	@Test
+	public void testFind() {
+		OidTrie<String> trie = new OidTrie<String>();
+		trie.add(new SnmpOID(".1.3.6.1.6.3.1.1.5"), "standard");
+		trie.add(new SnmpOID(".1.3.6.1.6.3.1.1.5.3"), "linkDown");
+		trie.add(new SnmpOID(".1.3.6.1.4.1.9"), "cisco");
+		trie.add(new SnmpOID(".1.3.6.1.4.1.9"), "cisco2");
+
+		assertEquals("linkDown", trie.findMostSpecific(new SnmpOID(".1.3.6.1.6.3.1.1.5.3")));
+		assertEquals("standard", trie.findMostSpecific(new SnmpOID(".1.3.6.1.6.3.1.1.5.4")));
+		assertEquals("cisco", trie.findMostSpecific(new SnmpOID(".1.3.6.1.4.1.9.9.41.2.0.1")));
+		assertNull(trie.findMostSpecific(new SnmpOID(".1.3.6.1.4.1.2011")));
+		assertNull(trie.findMostSpecific(new SnmpOID(".1.3.6.1.6.3.1.1")));
+
+		assertEquals(Arrays.asList("standard", "linkDown"), trie.findAll(new SnmpOID(".1.3.6.1.6.3.1.1.5.3.1")));
+		assertEquals(Arrays.asList("cisco", "cisco2"), trie.findAll(new SnmpOID(".1.3.6.1.4.1.9.1")));
+		assertEquals(Collections.emptyList(), trie.findAll(new SnmpOID(".1.3.6.1.4.1.2011")));
+		assertEquals(4, trie.size());
+	}
+
+	@Test
+	public void testRemove() {
+		OidTrie<String> trie = new OidTrie<String>();
+		trie.add(new SnmpOID(".1.3.6.1.6.3.1.1.5"), "standard");
+		trie.add(new SnmpOID(".1.3.6.1.6.3.1.1.5.3"), "linkDown");
+
+		assertTrue(trie.remove(new SnmpOID(".1.3.6.1.6.3.1.1.5.3"), "linkDown"));
+		assertFalse(trie.remove(new SnmpOID(".1.3.6.1.6.3.1.1.5.3"), "linkDown"));
+		assertEquals("standard", trie.findMostSpecific(new SnmpOID(".1.3.6.1.6.3.1.1.5.3")));
+		assertEquals(1, trie.size());
+	}
+}
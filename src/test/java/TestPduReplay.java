@@ -0,0 +1,98 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.replay.PduRecorder;
+import uyun.common.snmp.replay.PduReplayer;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestPduReplay {
+	private static final SnmpOID[] COLUMNS = {new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)};
+
+	private SimulatedFarm farm;
+	private SnmpTarget target;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		farm = new SimulatedFarm(1);
+		target = farm.add(SimulatedMib.synthetic("sim-1", 5), new DeviceProfile()).getTarget();
+		target.setTimeout(1000);
+		file = File.createTempFile("snmp-capture", ".bin");
+		file.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		Snmp.setSender(null);
+		farm.close();
+	}
+
+	@Test
+	public void testReplayExchanges() throws Exception {
+		SnmpTable recorded = record(PduRecorder.Mode.EXCHANGES);
+		SnmpTarget missing = target.clone();
+		missing.setPort(target.getPort() + 1);
+
+		Snmp.setSender(PduReplayer.load(file));
+		assertTable(recorded, Snmp.walkTable(target, COLUMNS));
+		// 回放可以重复进行
+		assertTable(recorded, Snmp.walkTable(target, COLUMNS));
+		assertEquals(Collections.singleton(target.getIp() + "/" + target.getPort()), PduReplayer.load(file).getDevices());
+
+		try {
+			Snmp.get(missing, new SnmpOID("1.3.6.1.2.1.1.5.0"));
+			fail();
+		} catch (SnmpException e) {
+			assertEquals(SnmpException.ERR_TIMEOUT, e.getErrorCode());
+		}
+	}
+
+	@Test
+	public void testReplayVarBinds() throws Exception {
+		SnmpTable recorded = record(PduRecorder.Mode.VARBINDS);
+
+		Snmp.setSender(PduReplayer.load(file));
+		// 只录制变量时，不同的请求方式也可以得到相同的结果
+		SnmpVarBind[] walked = Snmp.walk(target, new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS));
+		assertEquals(5, walked.length);
+		assertEquals(recorded.getRow(new SnmpOID("3")).get(1).getValue().toLong(), walked[2].getValue().toLong());
+		assertTrue(Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + ".6")).getValue().isNull());
+	}
+
+	private SnmpTable record(PduRecorder.Mode mode) throws Exception {
+		PduRecorder recorder = new PduRecorder(file, mode);
+		Snmp.setSender(recorder);
+		try {
+			return Snmp.walkTable(target, COLUMNS);
+		} finally {
+			Snmp.setSender(null);
+			recorder.close();
+			farm.close();
+		}
+	}
+
+	private static void assertTable(SnmpTable expected, SnmpTable actual) {
+		assertEquals(expected.getRows().size(), actual.getRows().size());
+		for (SnmpRow row : expected) {
+			SnmpRow other = actual.getRow(row.getInstance());
+			for (int i = 0; i < row.size(); i++)
+				assertEquals(row.get(i).getValue(), other.get(i).getValue());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+import org.junit.Test;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.poll.PollJob;
+import uyun.common.snmp.poll.PollListener;
+import uyun.common.snmp.poll.PollOutcome;
+import uyun.common.snmp.poll.PollScheduler;
+import uyun.common.snmp.poll.TargetTask;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestPollScheduler {
+	private static final long INTERVAL = 400;
+
+	@Test
+	public void testSpread() throws Exception {
+		PollScheduler scheduler = new PollScheduler("test-poll", 5, 64, null);
+		final ConcurrentMap<String, Long> firstRuns = new ConcurrentHashMap<String, Long>();
+		final AtomicInteger results = new AtomicInteger();
+		PollListener<Long> listener = new PollListener<Long>() {
+			public void onResult(PollJob<Long> job, PollOutcome<Long> outcome) {
+				firstRuns.putIfAbsent(job.getId(), outcome.getResult());
+				results.incrementAndGet();
+			}
+
+			public void onOverrun(PollJob<Long> job, long running) {
+			}
+		};
+		for (int i = 0; i < 10; i++)
+			scheduler.schedule(new PollJob<Long>("job-" + i, new SnmpTarget("10.0.0." + i, "public"), INTERVAL, new TargetTask<Long>() {
+				public Long poll(SnmpTarget target) {
+					return System.currentTimeMillis();
+				}
+			}, listener));
+		scheduler.start();
+		Thread.sleep(INTERVAL * 3 + 100);
+		scheduler.close();
+
+		// 10个任务在周期内均匀错开，而不是在同一时刻执行
+		assertEquals(10, firstRuns.size());
+		assertTrue(results.get() >= 30);
+		List<Long> phases = new ArrayList<Long>();
+		for (long time : firstRuns.values())
+			phases.add(time % INTERVAL);
+		Collections.sort(phases);
+		long maxGap = phases.get(0) + INTERVAL - phases.get(phases.size() - 1);
+		for (int i = 1; i < phases.size(); i++)
+			maxGap = Math.max(maxGap, phases.get(i) - phases.get(i - 1));
+		assertTrue("最大相位间隔：" + maxGap, maxGap < INTERVAL / 4);
+	}
+
+	@Test
+	public void testOverrun() throws Exception {
+		PollScheduler scheduler = new PollScheduler("test-poll", 5, 64, null);
+		final AtomicInteger overruns = new AtomicInteger();
+		final AtomicInteger results = new AtomicInteger();
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		PollListener<Object> listener = new PollListener<Object>() {
+			public void onResult(PollJob<Object> job, PollOutcome<Object> outcome) {
+				results.incrementAndGet();
+			}
+
+			public void onOverrun(PollJob<Object> job, long running) {
+				overruns.incrementAndGet();
+			}
+		};
+		scheduler.schedule(new PollJob<Object>("slow", new SnmpTarget("10.0.0.1", "public"), 50, new TargetTask<Object>() {
+			public Object poll(SnmpTarget target) throws SnmpException {
+				maxConcurrent.set(Math.max(maxConcurrent.get(), concurrent.incrementAndGet()));
+				try {
+					Thread.sleep(180);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				concurrent.decrementAndGet();
+				return null;
+			}
+		}, listener));
+		scheduler.start();
+		Thread.sleep(1000);
+		scheduler.close();
+
+		// 超时运行的采集被跳过，同一任务不会并发执行
+		assertTrue(overruns.get() >= 10);
+		assertTrue(scheduler.getOverruns() >= overruns.get());
+		assertEquals(1, maxConcurrent.get());
+		assertTrue(results.get() <= 6);
+	}
+}
@@ -0,0 +1,392 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.smi.OctetString;
+import uyun.common.snmp.PduSender;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkRequest;
+import uyun.common.snmp.entity.SnmpWalkResult;
+import uyun.common.snmp.entity.SnmpWalkToken;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.poll.PollOutcome;
+import uyun.common.snmp.poll.TargetPoller;
+import uyun.common.snmp.poll.TargetTask;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedAgent;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+import uyun.common.snmp.util.SpeedController;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestSimulatedAgent {
+	private SimulatedFarm farm;
+
+	@Before
+	public void setUp() {
+		farm = new SimulatedFarm(1);
+	}
+
+	@After
+	public void tearDown() {
+		farm.close();
+	}
+
+	@Test
+	public void testWalkTable() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setLatency(2);
+		profile.setJitter(3);
+		SimulatedAgent agent = farm.add(SimulatedMib.synthetic("sim-1", 8), profile);
+		SnmpTarget target = agent.getTarget();
+		target.setTimeout(1000);
+
+		SnmpTable table = Snmp.walkTable(target, new SnmpOID[]{
+				new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)});
+		assertEquals(8, table.getRows().size());
+		assertEquals("eth7", table.getRow(new SnmpOID("8")).get(0).getValue().toText());
+		assertEquals(8000000L, table.getRow(new SnmpOID("8")).get(1).getValue().toLong());
+
+		SnmpVarBind[] system = Snmp.walk(target, new SnmpOID("1.3.6.1.2.1.1"));
+		assertEquals(4, system.length);
+		assertEquals("sim-1", system[3].getValue().toText());
+	}
+
+	@Test
+	public void testResumeWalk() throws Exception {
+		SnmpTarget target = farm.add(SimulatedMib.synthetic("sim-1", 10), new DeviceProfile()).getTarget();
+		target.setTimeout(1000);
+		SnmpWalkRequest slice = new SnmpWalkRequest(4, 0);
+
+		SnmpWalkResult<SnmpVarBind[]> walked = Snmp.walk(target, slice, new SnmpOID(SimulatedMib.IF_DESCR));
+		int count = walked.getData().length;
+		while (walked.getToken() != null) {
+			// 令牌可以保存为文本，在下一个采集周期继续
+			SnmpWalkToken token = SnmpWalkToken.parse(walked.getToken().toString());
+			walked = Snmp.walk(target, slice, token);
+			count += walked.getData().length;
+			if (walked.getData().length > 0)
+				assertEquals(token.getLast(), new SnmpOID(SimulatedMib.IF_DESCR + "." + token.getCount()));
+		}
+		assertEquals(10, count);
+
+		SnmpOID[] columns = {new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)};
+		SnmpWalkResult<SnmpTable> first = Snmp.walkTable(target, slice, columns);
+		assertEquals(SnmpWalkResult.State.EXCEED, first.getState());
+		assertEquals(new SnmpOID("4"), first.getToken().getLast());
+		SnmpWalkResult<SnmpTable> rest = Snmp.walkTable(target, new SnmpWalkRequest(), first.getToken());
+		assertEquals(6, rest.getData().getRows().size());
+		assertEquals("eth4", rest.getData().getRows().iterator().next().get(0).getValue().toText());
+		assertNull(rest.getToken());
+	}
+
+	@Test
+	public void testResumeRepeatingWalk() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setRepeatEvery(1);
+		SnmpTarget target = farm.add(SimulatedMib.synthetic("sim-1", 10), profile).getTarget();
+		target.setTimeout(1000);
+		SnmpOID root = new SnmpOID(SimulatedMib.IF_DESCR);
+		int expected = Snmp.walk(target, root).length;
+
+		// 每段只取1个时，重复次数跨段累计，与一次完整walk在同一处结束
+		SnmpWalkRequest slice = new SnmpWalkRequest(1, 0);
+		SnmpWalkResult<SnmpVarBind[]> walked = Snmp.walk(target, slice, root);
+		int count = walked.getData().length;
+		for (int i = 0; walked.getToken() != null && i < 50; i++) {
+			walked = Snmp.walk(target, slice, SnmpWalkToken.parse(walked.getToken().toString()));
+			count += walked.getData().length;
+		}
+		assertNull(walked.getToken());
+		assertEquals(SnmpWalkResult.State.OK, walked.getState());
+		assertEquals(expected, count);
+	}
+
+	@Test
+	public void testParkingWaitPoller() throws Exception {
+		farm.addAll(20, SimulatedMib.synthetic("sim", 2));
+		List<SnmpTarget> targets = farm.getTargets();
+		targets.get(3).setCommunity("wrong");
+		for (SnmpTarget target : targets) {
+			target.setTimeout(300);
+			target.setRetryTime(0);
+		}
+
+		Snmp.setParkingWait(true);
+		try {
+			List<PollOutcome<String>> outcomes = new TargetPoller("poll", 4).pollAll(targets, new TargetTask<String>() {
+				public String poll(SnmpTarget target) throws SnmpException {
+					return Snmp.get(target, new SnmpOID("1.3.6.1.2.1.1.5.0")).getValue().toText();
+				}
+			});
+			assertEquals(20, outcomes.size());
+			for (int i = 0; i < outcomes.size(); i++) {
+				if (i == 3)
+					assertEquals(SnmpException.ERR_TIMEOUT, ((SnmpException) outcomes.get(i).getError()).getErrorCode());
+				else
+					assertEquals("sim", outcomes.get(i).getResult());
+			}
+		} finally {
+			Snmp.setParkingWait(false);
+		}
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setLatency(100);
+		final SimulatedAgent agent = farm.add(SimulatedMib.synthetic("sim-1", 3), profile);
+		final SnmpTarget target = agent.getTarget();
+		target.setTimeout(1000);
+		final SnmpOID[] columns = {new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)};
+
+		Snmp.setSingleFlight(true);
+		try {
+			long shared = Snmp.getSingleFlightShared();
+			final List<SnmpTable> tables = new CopyOnWriteArrayList<SnmpTable>();
+			runConcurrently(8, new Task() {
+				public void run(int index) throws Exception {
+					tables.add(Snmp.walkTable(target, columns));
+				}
+			});
+
+			// 同时到达的相同walkTable只向设备请求一次
+			assertEquals(8, tables.size());
+			for (SnmpTable table : tables)
+				assertEquals(3, table.getRows().size());
+			assertTrue(Snmp.getSingleFlightShared() - shared >= 6);
+			assertTrue(agent.getReceived() <= 8);
+		} finally {
+			Snmp.setSingleFlight(false);
+		}
+	}
+
+	@Test
+	public void testGetBatching() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setMaxVarBinds(8);
+		final SimulatedAgent agent = farm.add(SimulatedMib.synthetic("sim-1", 16), profile);
+		final SnmpTarget target = agent.getTarget();
+		target.setTimeout(1000);
+
+		SpeedController.getInstance().setBatchWindow(target.getIp(), 50);
+		SpeedController.getInstance().setMaxVarBinds(target.getIp(), 8);
+		try {
+			long batches = Snmp.getGetBatcher().getBatches();
+			final String[] names = new String[16];
+			runConcurrently(names.length, new Task() {
+				public void run(int index) throws Exception {
+					names[index] = Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + "." + (index + 1))).getValue().toText();
+				}
+			});
+
+			// 16个独立的get按每个PDU最多8个变量合并发送
+			for (int i = 0; i < names.length; i++)
+				assertEquals("eth" + i, names[i]);
+			assertTrue(Snmp.getGetBatcher().getBatches() - batches <= 4);
+			assertTrue(agent.getReceived() <= 4);
+		} finally {
+			SpeedController.getInstance().setBatchWindow(target.getIp(), 0);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testGetBatchingFailures() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setMaxVarBinds(2);
+		SimulatedAgent agent = farm.add(SimulatedMib.synthetic("sim-1", 8), profile);
+		final SnmpTarget target = agent.getTarget();
+		target.setTimeout(1000);
+
+		SpeedController.getInstance().setBatchWindow(target.getIp(), 50);
+		SpeedController.getInstance().setMaxVarBinds(target.getIp(), 8);
+		try {
+			// 合并后超出设备限制而响应tooBig，拆开重发后各请求仍然成功
+			long splits = Snmp.getGetBatcher().getSplits();
+			final String[] names = new String[6];
+			runConcurrently(names.length, new Task() {
+				public void run(int index) throws Exception {
+					names[index] = Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + "." + (index + 1))).getValue().toText();
+				}
+			});
+			for (int i = 0; i < names.length; i++)
+				assertEquals("eth" + i, names[i]);
+			assertTrue(Snmp.getGetBatcher().getSplits() > splits);
+
+			// 发送时弹出Error，本批调用者都收到该Error，之后的请求不受影响
+			final AtomicInteger calls = new AtomicInteger();
+			Snmp.setSender(new PduSender() {
+				public PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+					if (calls.getAndIncrement() == 0)
+						throw new AssertionError("sender failure");
+					return Snmp.NETWORK.send(param, pdu);
+				}
+			});
+			final AtomicInteger errors = new AtomicInteger();
+			runConcurrently(2, new Task() {
+				public void run(int index) throws Exception {
+					try {
+						Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + "." + (index + 1)));
+					} catch (AssertionError e) {
+						errors.incrementAndGet();
+					}
+				}
+			});
+			assertTrue(errors.get() >= 1);
+			assertEquals("eth2", Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + ".3")).getValue().toText());
+			assertEquals(0, Snmp.getGetBatcher().getQueued());
+		} finally {
+			Snmp.setSender(null);
+			SpeedController.getInstance().setBatchWindow(target.getIp(), 0);
+		}
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setLatency(300);
+		final SimulatedAgent agent = farm.add(SimulatedMib.synthetic("sim-1", 4), profile);
+		final SnmpTarget target = agent.getTarget();
+		target.setTimeout(2000);
+
+		// 同时只允许一个在途请求、一个排队请求，第三个请求被拒绝
+		SpeedController.getInstance().setConcurrency(target.getIp(), 1, 1);
+		try {
+			final int[] errors = new int[3];
+			Concurrent running = startConcurrently(errors.length, new Task() {
+				public void run(int index) throws Exception {
+					try {
+						Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + "." + (index + 1)));
+						errors[index] = -1;
+					} catch (SnmpException e) {
+						errors[index] = e.getErrorCode();
+					}
+				}
+			});
+			long deadline = System.currentTimeMillis() + 2000;
+			while (SpeedController.getInstance().getQueueDepth(target.getIp()) < 1 && System.currentTimeMillis() < deadline)
+				Thread.sleep(5);
+			assertEquals(1, SpeedController.getInstance().getInFlight(target.getIp()));
+			assertEquals(1, SpeedController.getInstance().getQueueDepth(target.getIp()));
+			running.join();
+
+			int rejected = 0;
+			for (int error : errors) {
+				if (error == SnmpException.ERR_REJECTED)
+					rejected++;
+				else
+					assertEquals(-1, error);
+			}
+			assertEquals(1, rejected);
+			assertEquals(2, agent.getReceived());
+			assertEquals(0, SpeedController.getInstance().getInFlight(target.getIp()));
+		} finally {
+			SpeedController.getInstance().setConcurrency(target.getIp(), 0, -1);
+		}
+	}
+
+	@Test
+	public void testRecordedMibAndQuirks() throws Exception {
+		SimulatedMib mib = SimulatedMib.load(new StringReader("# recorded\n"
+				+ "1.3.6.1.2.1.1.5.0|4|router-1\n"
+				+ "1.3.6.1.2.1.2.2.1.6.1|4x|00e04c680001\n"
+				+ "1.3.6.1.2.1.2.2.1.10.1|65|4294967295\n"
+				+ "1.3.6.1.2.1.31.1.1.1.6.1|70|18446744073709551615\n"));
+		StringWriter saved = new StringWriter();
+		mib.save(saved);
+		assertEquals(mib.size(), SimulatedMib.load(new StringReader(saved.toString())).size());
+		assertTrue(saved.toString().contains("1.3.6.1.2.1.31.1.1.1.6.1|70|18446744073709551615"));
+
+		DeviceProfile profile = new DeviceProfile();
+		profile.setNoBatch(true);
+		profile.setCommunity("private");
+		SimulatedAgent agent = farm.add(mib, profile);
+		SnmpTarget target = agent.getTarget();
+		target.setTimeout(1000);
+
+		// 不支持批量请求时自动改为逐个请求
+		SnmpVarBind[] values = Snmp.get(target, new SnmpOID[]{
+				new SnmpOID("1.3.6.1.2.1.1.5.0"), new SnmpOID("1.3.6.1.2.1.2.2.1.6.1")});
+		assertEquals("router-1", values[0].getValue().toText());
+		assertEquals(new OctetString(new byte[]{0, (byte) 0xe0, 0x4c, 0x68, 0, 1}).toHexString(),
+				values[1].getValue().toMac().toLowerCase());
+
+		// 团体名不符的请求被丢弃
+		target.setCommunity("public");
+		target.setRetryTime(0);
+		target.setTimeout(200);
+		long dropped = agent.getDropped();
+		try {
+			Snmp.get(target, new SnmpOID[]{new SnmpOID("1.3.6.1.2.1.1.5.0")});
+		} catch (Exception e) {
+			// 超时
+		}
+		assertEquals(dropped + 1, agent.getDropped());
+	}
+
+	private interface Task {
+		void run(int index) throws Exception;
+	}
+
+	/**
+	 * 同时开始执行n个任务并等待全部结束，弹出第一个任务异常
+	 */
+	private static void runConcurrently(int n, Task task) throws Exception {
+		startConcurrently(n, task).join();
+	}
+
+	private static Concurrent startConcurrently(int n, final Task task) {
+		final Concurrent concurrent = new Concurrent(n);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int i = 0; i < n; i++) {
+			final int index = i;
+			concurrent.threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+						task.run(index);
+					} catch (Throwable e) {
+						concurrent.failure.compareAndSet(null, e);
+					}
+				}
+			});
+			concurrent.threads[i].start();
+		}
+		start.countDown();
+		return concurrent;
+	}
+
+	private static class Concurrent {
+		final Thread[] threads;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Concurrent(int n) {
+			threads = new Thread[n];
+		}
+
+		void join() throws Exception {
+			for (Thread thread : threads)
+				thread.join();
+			Throwable e = failure.get();
+			if (e instanceof Exception)
+				throw (Exception) e;
+			if (e instanceof Error)
+				throw (Error) e;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+import org.junit.Test;
+import org.snmp4j.smi.*;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTable;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkResult;
+import uyun.common.snmp.store.SnapshotStore;
+import uyun.common.snmp.store.TableSnapshot;
+import uyun.common.snmp.store.WalkSnapshot;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestSnapshotStore {
+	private static final Variable[] VALUES = {
+			new Integer32(-5), new OctetString("eth0"), new OctetString(new byte[]{0, (byte) 0xe0, 0x4c}),
+			new Counter32(4294967295L), new Gauge32(1000), new TimeTicks(123456), new Counter64(-1L),
+			new OID("1.3.6.1.4.1.9"), new IpAddress("10.0.0.1"), new Opaque(new byte[]{1, 2}), Null.noSuchInstance
+	};
+
+	@Test
+	public void testWalk() throws Exception {
+		SnmpTarget param = new SnmpTarget("10.0.0.1", "public");
+		SnmpOID root = new SnmpOID("1.3.6.1.2.1.2.2.1");
+		SnmpVarBind[] data = new SnmpVarBind[100];
+		for (int i = 0; i < data.length; i++) {
+			// 倒序写入，快照按oid升序保存
+			OID oid = new OID(root.oid());
+			oid.append(new OID(new int[]{i % 10 + 1, data.length - i}));
+			data[i] = new SnmpVarBind(oid, VALUES[i % VALUES.length]);
+		}
+
+		File dir = Files.createTempDirectory("snmp-snapshot").toFile();
+		SnapshotStore store = new SnapshotStore(dir);
+		assertNull(store.openWalk(param, root));
+		store.saveWalk(param, root, new SnmpWalkResult<SnmpVarBind[]>(SnmpWalkResult.State.EXCEED, data));
+
+		WalkSnapshot snapshot = store.openWalk(param, root);
+		assertEquals(100, snapshot.size());
+		assertEquals(SnmpWalkResult.State.EXCEED, snapshot.getState());
+		for (SnmpVarBind vb : data)
+			assertEquals(vb.getValue(), snapshot.find(vb.getOid()).getValue());
+		assertNull(snapshot.find(new SnmpOID("1.3.6.1.2.1.2.2.1.11.1")));
+		assertEquals(new SnmpOID("1.3.6.1.2.1.2.2.1.1.10"), snapshot.get(0).getOid());
+		assertEquals(new SnmpOID("1.3.6.1.2.1.2.2.1.10.91"), snapshot.get(99).getOid());
+		SnmpVarBind[] decoded = snapshot.toResult().getData();
+		for (int i = 0; i < decoded.length; i++)
+			assertEquals(decoded[i].getOid(), snapshot.get(i).getOid());
+		snapshot.close();
+		assertEquals(1, store.delete(param));
+	}
+
+	@Test
+	public void testTable() throws Exception {
+		SnmpTarget param = new SnmpTarget("10.0.0.2", "public");
+		SnmpOID[] columns = {new SnmpOID("1.3.6.1.2.1.2.2.1.2"), new SnmpOID("1.3.6.1.2.1.31.1.1.1.6")};
+		SnmpTable table = new SnmpTable(columns);
+		for (int i = 1; i <= 50; i++) {
+			SnmpRow row = new SnmpRow(new SnmpOID(new int[]{i}), 2);
+			row.set(0, new SnmpVarBind(new OID(columns[0] + "." + i), new OctetString(("端口" + i).getBytes("UTF-8"))));
+			if (i % 7 != 0)
+				row.set(1, new SnmpVarBind(new OID(columns[1] + "." + i), new Counter64(i * 1000L)));
+			table.addRow(row);
+		}
+
+		SnapshotStore store = new SnapshotStore(Files.createTempDirectory("snmp-snapshot").toFile());
+		store.saveTable(param, new SnmpWalkResult<SnmpTable>(table));
+		param.setCharset("UTF-8");
+		TableSnapshot snapshot = store.openTable(param, columns);
+		assertEquals(50, snapshot.size());
+		SnmpRow row = snapshot.getRow(new SnmpOID("35"));
+		assertEquals("端口35", row.get(0).getValue().toText());
+		assertEquals(new SnmpOID("1.3.6.1.2.1.2.2.1.2.35"), row.get(0).getOid());
+		assertNull(row.get(1));
+		assertEquals(36000L, snapshot.getRow(35).get(1).getValue().toLong());
+		assertEquals(50, snapshot.toResult().getData().getRows().size());
+		snapshot.close();
+
+		// 文件中保存的列与请求的列不同时，不返回其它表格的数据
+		SnmpOID[] others = {new SnmpOID("1.3.6.1.2.1.2.2.1.2"), new SnmpOID("1.3.6.1.2.1.31.1.1.1.10")};
+		File otherFile = store.saveTable(param, new SnmpWalkResult<SnmpTable>(new SnmpTable(others)));
+		File file = store.saveTable(param, new SnmpWalkResult<SnmpTable>(table));
+		Files.copy(file.toPath(), otherFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertNull(store.openTable(param, others));
+		assertEquals(50, store.openTable(param, columns).size());
+	}
+}
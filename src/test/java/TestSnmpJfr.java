@@ -0,0 +1,108 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedAgent;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+import uyun.common.snmp.util.SpeedController;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSnmpJfr {
+	private SimulatedFarm farm;
+	private Recording recording;
+
+	@Before
+	public void setUp() {
+		farm = new SimulatedFarm(1);
+		recording = new Recording();
+		recording.enable("uyun.snmp.Request");
+		recording.start();
+	}
+
+	@After
+	public void tearDown() {
+		recording.close();
+		farm.close();
+	}
+
+	@Test
+	public void testRetries() throws Exception {
+		// 超时200毫秒、响应延迟300毫秒：首次请求超时后重试一次，随后收到首次请求的响应
+		DeviceProfile profile = new DeviceProfile();
+		profile.setLatency(300);
+		SimulatedAgent agent = farm.add(SimulatedMib.synthetic("sim-1", 2), profile);
+		SnmpTarget target = agent.getTarget();
+		target.setTimeout(200);
+		target.setRetryTime(3);
+		Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + ".1"));
+		Thread.sleep(200);
+
+		List<RecordedEvent> events = events(target.getIp());
+		assertEquals(1, events.size());
+		assertEquals(1, events.get(0).getInt("retries"));
+		assertEquals(2, agent.getReceived());
+	}
+
+	@Test
+	public void testQueueWait() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setLatency(300);
+		final SnmpTarget target = farm.add(SimulatedMib.synthetic("sim-1", 2), profile).getTarget();
+		target.setTimeout(2000);
+
+		// 并发上限为1，后一个请求等待前一个完成，等待时间计入queueWait
+		SpeedController.getInstance().setConcurrency(target.getIp(), 1, -1);
+		try {
+			Thread[] threads = new Thread[2];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(new Runnable() {
+					public void run() {
+						try {
+							Snmp.get(target, new SnmpOID(SimulatedMib.IF_DESCR + ".1"));
+						} catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread thread : threads)
+				thread.join();
+		} finally {
+			SpeedController.getInstance().setConcurrency(target.getIp(), 0, -1);
+		}
+
+		List<RecordedEvent> events = events(target.getIp());
+		assertEquals(2, events.size());
+		long maxWait = Math.max(events.get(0).getDuration("queueWait").toMillis(),
+				events.get(1).getDuration("queueWait").toMillis());
+		assertTrue("queueWait: " + maxWait, maxWait >= 250);
+		assertEquals(0, events.get(0).getInt("retries"));
+	}
+
+	private List<RecordedEvent> events(String ip) throws Exception {
+		recording.stop();
+		File file = File.createTempFile("snmp", ".jfr");
+		file.deleteOnExit();
+		recording.dump(file.toPath());
+		List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+			if (ip.equals(event.getString("target")))
+				events.add(event);
+		}
+		return events;
+	}
+}
@@ -0,0 +1,42 @@
+import org.junit.Test;
+import org.snmp4j.PDU;
+import uyun.common.snmp.metrics.DefaultSnmpMetrics;
+import uyun.common.snmp.metrics.LatencyHistogram;
+import uyun.common.snmp.metrics.SnmpMetrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestSnmpMetrics {
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++)
+			histogram.record(i * 1000000L);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(100000, histogram.getMax());
+		long p50 = histogram.getPercentile(0.5);
+		assertTrue(p50 >= 50000 && p50 <= 75000);
+		long p99 = histogram.getPercentile(0.99);
+		assertTrue(p99 >= 99000 && p99 <= 100000);
+	}
+
+	@Test
+	public void testCounts() {
+		DefaultSnmpMetrics metrics = new DefaultSnmpMetrics();
+		metrics.onRequest("10.0.0.1", PDU.GET, SnmpMetrics.Outcome.SUCCESS, 1000000);
+		metrics.onRequest("10.0.0.1", PDU.GET, SnmpMetrics.Outcome.TIMEOUT, 4000000000L);
+		metrics.onRequest("10.0.0.2", PDU.GETNEXT, SnmpMetrics.Outcome.SUCCESS, 2000000);
+		metrics.onRetry("10.0.0.1");
+		metrics.onBatchFallback("10.0.0.2", PDU.GET);
+
+		assertEquals(3, metrics.getRequestCount());
+		assertEquals(1, metrics.getTimeoutCount());
+		assertEquals(1, metrics.getRetryCount());
+		assertEquals(Long.valueOf(1), metrics.getRequestCountByOperation().get("GETNEXT.SUCCESS"));
+		assertEquals(Long.valueOf(1), metrics.getDeviceCounts("10.0.0.1").get("GET.TIMEOUT"));
+		assertEquals(Long.valueOf(1), metrics.getDeviceCounts("10.0.0.2").get("batchFallbacks"));
+		assertEquals(2, metrics.getDevice("10.0.0.1").getOperation(PDU.GET).getTotal());
+	}
+}
@@ -0,0 +1,42 @@
+import org.junit.Test;
+import uyun.common.snmp.entity.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestSnmpTargetSpec {
+	@Test
+	public void testIntern() {
+		SnmpTargetSpec a = new SnmpTargetSpec.Builder("127.0.0.1").community("public").timeout(1000).build();
+		SnmpTargetSpec b = new SnmpTargetSpec.Builder("127.0.0.1").community("public").timeout(1000).build();
+		SnmpTargetSpec c = new SnmpTargetSpec.Builder("127.0.0.1").community("private").timeout(1000).build();
+		assertSame(a, b);
+		assertSame(a.getTarget(), b.getTarget());
+		assertNotSame(a, c);
+		assertEquals("127.0.0.1/161", a.getAddress().toString());
+
+		SnmpTarget param = new SnmpTarget("127.0.0.1", "public");
+		param.setTimeout(1000);
+		assertSame(a, SnmpTargetSpec.of(param));
+	}
+
+	@Test
+	public void testV3() {
+		SnmpTargetSpec spec = new SnmpTargetSpec.Builder("127.0.0.1")
+				.v3(SecurityLevel.authPriv, "user", AuthProtocol.SHA, "authpass1", PrivProtocol.AES128, "privpass1")
+				.build();
+		assertEquals(SnmpVersion.V3, spec.getVersion());
+		assertSame(spec.getTarget(), spec.getTarget());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testImmutable() {
+		new SnmpTargetSpec.Builder("127.0.0.1").build().setPort(1161);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIncompleteV3() {
+		new SnmpTargetSpec.Builder("127.0.0.1").v3(SecurityLevel.authNoPriv, "user", AuthProtocol.MD5, null, null, null).build();
+	}
+}
@@ -0,0 +1,78 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.smi.OctetString;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpPDU;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpValue;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class TestSnmpValue {
+	private SimulatedFarm farm;
+
+	@Before
+	public void setUp() {
+		farm = new SimulatedFarm(1);
+	}
+
+	@After
+	public void tearDown() {
+		farm.close();
+	}
+
+	@Test
+	public void testTargetCharset() throws Exception {
+		SimulatedMib mib = SimulatedMib.load(new StringReader("1.3.6.1.2.1.1.5.0|4x|bacbd0c4bdbbbbbbbbfa\n"
+				+ "1.3.6.1.2.1.2.2.1.2.1|4x|e7abafe58fa331\n"));
+		SnmpTarget target = farm.add(mib, new DeviceProfile()).getTarget();
+		target.setTimeout(1000);
+		target.setCharset("GBK");
+
+		// 按采集参数的字符集解码，也可以为个别节点指定字符集
+		SnmpVarBind[] values = Snmp.get(target, new SnmpOID[]{
+				new SnmpOID("1.3.6.1.2.1.1.5.0"), new SnmpOID("1.3.6.1.2.1.2.2.1.2.1")});
+		assertEquals("核心交换机", values[0].getValue().toText());
+		assertEquals("端口1", values[1].getValue().toText("UTF-8"));
+		assertEquals("核心交换机", values[0].getValue().toText("GBK"));
+	}
+
+	@Test
+	public void testAddStringVarBind() throws Exception {
+		SnmpPDU pdu = new SnmpPDU();
+		pdu.addStringVarBind("1.3.6.1.2.1.1.5.0", "端口1", "UTF-8");
+		pdu.addStringVarBind("1.3.6.1.2.1.1.6.0", "端口1");
+		assertArrayEquals("端口1".getBytes("UTF-8"), ((OctetString) pdu.get(0).getVariable()).getValue());
+		// 未指定字符集时使用GBK
+		assertArrayEquals("端口1".getBytes("GBK"), ((OctetString) pdu.get(1).getVariable()).getValue());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddStringVarBindUnknownCharset() {
+		new SnmpPDU().addStringVarBind("1.3.6.1.2.1.1.5.0", "端口1", "NO-SUCH-CHARSET");
+	}
+
+	@Test
+	public void testInternedText() throws Exception {
+		Charset gbk = Charset.forName("GBK");
+		SnmpValue a = new SnmpValue(new OctetString("核心交换机".getBytes("GBK")), gbk);
+		SnmpValue b = new SnmpValue(new OctetString("核心交换机".getBytes("GBK")), gbk);
+		// toText不驻留，只有toInternedText返回共享实例
+		assertEquals(a.toText(), b.toText());
+		assertNotSame(a.toText(), b.toText());
+		assertSame(a.toInternedText(), b.toInternedText());
+		assertSame(a.toInternedText(), a.toText());
+	}
+}
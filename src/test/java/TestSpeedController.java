@@ -0,0 +1,77 @@
+import org.junit.After;
+import org.junit.Test;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.util.SpeedController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestSpeedController {
+	private static final String[] KEYS = {
+			"snmp.concurrency.10.0.0.1", "snmp.concurrencyQueue.10.0.0.1",
+			"snmp.concurrency.0.0.0.0", "snmp.concurrencyQueue.0.0.0.0"
+	};
+
+	@After
+	public void tearDown() {
+		for (String key : KEYS)
+			System.clearProperty(key);
+	}
+
+	@Test
+	public void testConcurrencyFromSystemProperties() {
+		System.setProperty("snmp.concurrency.10.0.0.1", "2");
+		System.setProperty("snmp.concurrencyQueue.10.0.0.1", "0");
+		System.setProperty("snmp.concurrency.0.0.0.0", "8");
+		System.setProperty("snmp.concurrencyQueue.0.0.0.0", "16");
+
+		SpeedController controller = new SpeedController();
+		assertEquals(2, controller.getConcurrency("10.0.0.1"));
+		assertEquals(0, controller.getConcurrencyQueue("10.0.0.1"));
+		assertEquals(8, controller.getConcurrency("10.0.0.2"));
+		assertEquals(16, controller.getConcurrencyQueue("10.0.0.2"));
+	}
+
+	@Test
+	public void testResizeInPlace() throws Exception {
+		SpeedController controller = new SpeedController();
+		controller.setConcurrency("10.0.0.1", 2, -1);
+		SpeedController.DeviceLimit first = controller.acquire("10.0.0.1", 0);
+		SpeedController.DeviceLimit second = controller.acquire("10.0.0.1", 0);
+
+		// 调低上限后在途请求仍然计入，降到新上限以下前不放行新的请求
+		controller.setConcurrency("10.0.0.1", 1, -1);
+		assertEquals(2, controller.getInFlight("10.0.0.1"));
+		assertRejected(controller);
+		first.release();
+		assertEquals(1, controller.getInFlight("10.0.0.1"));
+		assertRejected(controller);
+		second.release();
+		SpeedController.DeviceLimit third = controller.acquire("10.0.0.1", 0);
+		assertEquals(1, controller.getInFlight("10.0.0.1"));
+
+		// 调高上限立即生效
+		controller.setConcurrency("10.0.0.1", 2, -1);
+		SpeedController.DeviceLimit fourth = controller.acquire("10.0.0.1", 0);
+		assertEquals(2, controller.getInFlight("10.0.0.1"));
+		third.release();
+		fourth.release();
+		assertEquals(0, controller.getInFlight("10.0.0.1"));
+
+		controller.setConcurrency("10.0.0.1", 0, -1);
+		assertNull(controller.acquire("10.0.0.1", 0));
+	}
+
+	/**
+	 * 排队超时以ERR_REJECTED弹出，与设备超时区分
+	 */
+	private static void assertRejected(SpeedController controller) {
+		try {
+			controller.acquire("10.0.0.1", 20);
+			fail("超出并发上限时应拒绝");
+		} catch (SnmpException e) {
+			assertEquals(SnmpException.ERR_REJECTED, e.getErrorCode());
+		}
+	}
+}
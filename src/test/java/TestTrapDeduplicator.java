@@ -0,0 +1,126 @@
+import org.junit.Test;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTrap;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpVersion;
+import uyun.common.snmp.trap.AggregatedTrap;
+import uyun.common.snmp.trap.AggregatedTrapListener;
+import uyun.common.snmp.trap.TrapDeduplicator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestTrapDeduplicator {
+	private static final SnmpOID LINK_DOWN = new SnmpOID(".1.3.6.1.6.3.1.1.5.3");
+	private static final SnmpOID IF_INDEX = new SnmpOID(".1.3.6.1.2.1.2.2.1.1");
+
+	private static SnmpTrap linkDown(String source, int ifIndex, long time) {
+		SnmpVarBind[] varBinds = new SnmpVarBind[]{
+				new SnmpVarBind(new OID(IF_INDEX + "." + ifIndex), new Integer32(ifIndex))
+		};
+		return new SnmpTrap(source, 162, SnmpVersion.V2C, "public", LINK_DOWN, 100, varBinds, false, time);
+	}
+
+	@Test
+	public void testWindow() {
+		final List<AggregatedTrap> events = new ArrayList<AggregatedTrap>();
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, new SnmpOID[]{IF_INDEX}, new AggregatedTrapListener() {
+			public void onAggregatedTrap(AggregatedTrap trap) {
+				events.add(trap);
+			}
+		});
+
+		for (int i = 0; i < 100; i++) {
+			dedup.onTrap(linkDown("10.1.1.1", 1, i));
+			dedup.onTrap(linkDown("10.1.1.1", 2, i));
+			dedup.onTrap(linkDown("10.1.1.2", 1, i));
+		}
+		assertEquals(0, dedup.flush(999));
+		assertEquals(3, dedup.flush(1000));
+		assertEquals(3, events.size());
+		for (AggregatedTrap event : events) {
+			assertEquals(100, event.getCount());
+			assertEquals(0, event.getFirst().getReceivedTime());
+			assertEquals(99, event.getLast().getReceivedTime());
+		}
+
+		// 上个窗口结束后，开启新的窗口
+		dedup.onTrap(linkDown("10.1.1.1", 1, 1500));
+		assertEquals(1, dedup.getPending());
+		dedup.close();
+		assertEquals(4, events.size());
+		assertEquals(1, events.get(3).getCount());
+	}
+
+	@Test
+	public void testOverflow() {
+		final List<AggregatedTrap> events = new ArrayList<AggregatedTrap>();
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, new SnmpOID[]{IF_INDEX}, new AggregatedTrapListener() {
+			public void onAggregatedTrap(AggregatedTrap trap) {
+				events.add(trap);
+			}
+		}, 10);
+
+		for (int i = 0; i < 20; i++)
+			dedup.onTrap(linkDown("10.1.1.1", i, 0));
+		assertEquals(10, dedup.getPending());
+		assertEquals(10, dedup.getOverflow());
+		assertEquals(10, events.size());
+	}
+
+	@Test
+	public void testOutOfOrder() {
+		final List<AggregatedTrap> events = new ArrayList<AggregatedTrap>();
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, new SnmpOID[]{IF_INDEX}, new AggregatedTrapListener() {
+			public void onAggregatedTrap(AggregatedTrap trap) {
+				events.add(trap);
+			}
+		});
+
+		// 多个接收线程处理时，接收时间较晚的Trap可能先到达，不能挡住之后已结束的窗口
+		dedup.onTrap(linkDown("10.1.1.1", 1, 500));
+		dedup.onTrap(linkDown("10.1.1.1", 2, 0));
+		dedup.onTrap(linkDown("10.1.1.1", 3, 100));
+		assertEquals(2, dedup.flush(1100));
+		assertEquals(0, events.get(0).getFirst().getReceivedTime());
+		assertEquals(100, events.get(1).getFirst().getReceivedTime());
+		assertEquals(1, dedup.getPending());
+
+		// 已输出的键重新开启窗口
+		dedup.onTrap(linkDown("10.1.1.1", 2, 1200));
+		assertEquals(1, dedup.flush(1500));
+		assertEquals(500, events.get(2).getFirst().getReceivedTime());
+		assertEquals(1, dedup.getPending());
+	}
+
+	@Test
+	public void testLateTrap() {
+		final List<AggregatedTrap> events = new ArrayList<AggregatedTrap>();
+		TrapDeduplicator dedup = new TrapDeduplicator(1000, new SnmpOID[]{IF_INDEX}, new AggregatedTrapListener() {
+			public void onAggregatedTrap(AggregatedTrap trap) {
+				events.add(trap);
+			}
+		});
+
+		// 窗口已结束但尚未flush时到达的Trap，不能计入旧窗口
+		dedup.onTrap(linkDown("10.1.1.1", 1, 0));
+		dedup.onTrap(linkDown("10.1.1.1", 1, 999));
+		dedup.onTrap(linkDown("10.1.1.1", 1, 1000));
+		assertEquals(1, events.size());
+		assertEquals(2, events.get(0).getCount());
+		assertEquals(999, events.get(0).getLast().getReceivedTime());
+		assertEquals(1, dedup.getPending());
+		assertEquals(1, dedup.getEmitted());
+
+		assertEquals(0, dedup.flush(1999));
+		dedup.onTrap(linkDown("10.1.1.1", 1, 1500));
+		assertEquals(1, dedup.flush(2000));
+		assertEquals(2, events.size());
+		assertEquals(1000, events.get(1).getFirst().getReceivedTime());
+		assertEquals(2, events.get(1).getCount());
+	}
+}
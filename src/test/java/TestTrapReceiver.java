@@ -0,0 +1,161 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.CommunityTarget;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TimeTicks;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpTrap;
+import uyun.common.snmp.trap.TrapListener;
+import uyun.common.snmp.trap.TrapReceiver;
+
+import java.net.DatagramSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTrapReceiver {
+	private static final OID IF_INDEX = new OID("1.3.6.1.2.1.2.2.1.1.3");
+
+	private org.snmp4j.Snmp sender;
+	private CommunityTarget target;
+	private TrapReceiver receiver;
+
+	@Before
+	public void setUp() throws Exception {
+		DatagramSocket socket = new DatagramSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+
+		DefaultUdpTransportMapping transport = new DefaultUdpTransportMapping();
+		sender = new org.snmp4j.Snmp(transport);
+		transport.listen();
+		target = new CommunityTarget();
+		target.setCommunity(new OctetString("public"));
+		target.setAddress(new UdpAddress("127.0.0.1/" + port));
+		target.setVersion(SnmpConstants.version2c);
+		target.setTimeout(1000);
+		target.setRetries(0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (receiver != null)
+			receiver.close();
+		sender.close();
+	}
+
+	@Test
+	public void testTrapAndInform() throws Exception {
+		final List<SnmpTrap> traps = new CopyOnWriteArrayList<SnmpTrap>();
+		final CountDownLatch done = new CountDownLatch(2);
+		receiver = new TrapReceiver("127.0.0.1", ((UdpAddress) target.getAddress()).getPort(), new TrapListener() {
+			public void onTrap(SnmpTrap trap) {
+				traps.add(trap);
+				done.countDown();
+			}
+		});
+		receiver.start();
+
+		sender.send(pdu(PDU.TRAP), target);
+		// Inform在入队后即应答
+		ResponseEvent event = sender.send(pdu(PDU.INFORM), target);
+		assertNotNull(event.getResponse());
+		assertEquals(PDU.RESPONSE, event.getResponse().getType());
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+
+		assertEquals(2, receiver.getReceived());
+		assertEquals(1, receiver.getInformsAcked());
+		assertEquals(0, receiver.getDropped());
+		for (SnmpTrap trap : traps) {
+			assertEquals("127.0.0.1", trap.getSource());
+			assertEquals(new SnmpOID(SnmpConstants.linkDown), trap.getTrapOid());
+			assertEquals(12345, trap.getUptime());
+			assertEquals(3, trap.getVarBind(new SnmpOID(IF_INDEX)).getValue().toInteger());
+		}
+		assertTrue(traps.get(0).isInform() != traps.get(1).isInform());
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean interrupted = new AtomicBoolean();
+		receiver = new TrapReceiver("127.0.0.1", ((UdpAddress) target.getAddress()).getPort(), new TrapListener() {
+			public void onTrap(SnmpTrap trap) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					interrupted.set(true);
+				}
+			}
+		});
+		receiver.setWorkerCount(1);
+		receiver.setQueueCapacity(1);
+		receiver.start();
+
+		// 第一个Trap占住工作线程，第二个放入队列，其余的丢弃
+		sender.send(pdu(PDU.TRAP), target);
+		assertTrue(entered.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 5; i++)
+			sender.send(pdu(PDU.TRAP), target);
+		// 队列满时Inform不应答，由发送方重传
+		ResponseEvent event = sender.send(pdu(PDU.INFORM), target);
+		assertNull(event.getResponse());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (receiver.getReceived() < 7 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(7, receiver.getReceived());
+		assertEquals(5, receiver.getDropped());
+		assertEquals(1, receiver.getQueueSize());
+		assertEquals(0, receiver.getInformsAcked());
+
+		// 关闭时不中断正在处理的Trap，处理完队列中剩余的Trap，工作线程结束后才返回
+		final TrapReceiver closing = receiver;
+		Thread closer = new Thread(new Runnable() {
+			public void run() {
+				closing.close();
+			}
+		});
+		closer.start();
+		closer.join(300);
+		assertTrue(closer.isAlive());
+		release.countDown();
+		closer.join(5000);
+		assertFalse(closer.isAlive());
+		assertFalse(interrupted.get());
+		assertFalse(receiver.isRunning());
+		assertEquals(2, receiver.getProcessed());
+		assertEquals(0, receiver.getQueueSize());
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			assertFalse(thread.getName().startsWith("snmp-trap-worker-"));
+		receiver = null;
+	}
+
+	private static PDU pdu(int type) {
+		PDU pdu = new PDU();
+		pdu.setType(type);
+		pdu.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(12345)));
+		pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, SnmpConstants.linkDown));
+		pdu.add(new VariableBinding(IF_INDEX, new Integer32(3)));
+		return pdu;
+	}
+}
@@ -0,0 +1,82 @@
+import org.junit.Test;
+import uyun.common.snmp.entity.AuthProtocol;
+import uyun.common.snmp.entity.PrivProtocol;
+import uyun.common.snmp.entity.SecurityLevel;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.v3.UsmUserRegistry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestUsmUserRegistry {
+	private static final SnmpTarget A = new SnmpTarget("10.0.0.1", SecurityLevel.authPriv, "monitor",
+			AuthProtocol.MD5, "authA1234", PrivProtocol.DES, "privA1234");
+	private static final SnmpTarget B = new SnmpTarget("10.0.0.1", SecurityLevel.authPriv, "monitor",
+			AuthProtocol.SHA, "authB5678", PrivProtocol.AES128, "privB5678");
+
+	@Test
+	public void testConcurrentUpdate() throws Exception {
+		final UsmUserRegistry registry = new UsmUserRegistry();
+		registry.put(A);
+		final long deadline = System.currentTimeMillis() + 500;
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		final AtomicLong reads = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+
+		Thread[] threads = new Thread[6];
+		for (int i = 0; i < threads.length; i++) {
+			final boolean writer = i < 2;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					// 写入方逐个字段修改同一个对象，注册表保存副本，读取方不会看到修改到一半的参数
+					SnmpTarget param = A.clone();
+					boolean toB = true;
+					while (System.currentTimeMillis() < deadline && failure.get() == null) {
+						if (writer) {
+							SnmpTarget next = toB ? B : A;
+							param.setAuthProtocol(next.getAuthProtocol());
+							param.setAuthPassword(next.getAuthPassword());
+							param.setPrivProtocol(next.getPrivProtocol());
+							param.setPrivPassword(next.getPrivPassword());
+							Lock lock = registry.lockFor(param.getSecurityUser());
+							lock.lock();
+							try {
+								registry.put(param);
+							} finally {
+								lock.unlock();
+							}
+							toB = !toB;
+						} else {
+							SnmpTarget exist = registry.get("monitor");
+							if (exist == null)
+								failure.compareAndSet(null, "读取到null");
+							else if (!exist.equalsV3Param(A) && !exist.equalsV3Param(B))
+								failure.compareAndSet(null, "读取到修改到一半的参数：" + exist.getAuthProtocol() + "/"
+										+ exist.getAuthPassword() + "/" + exist.getPrivProtocol() + "/" + exist.getPrivPassword());
+							reads.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		assertNull(failure.get());
+		assertTrue(reads.get() > 0);
+		assertEquals(1, registry.size());
+	}
+}
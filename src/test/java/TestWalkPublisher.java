@@ -0,0 +1,190 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.snmp4j.PDU;
+import uyun.common.snmp.PduSender;
+import uyun.common.snmp.Snmp;
+import uyun.common.snmp.entity.SnmpOID;
+import uyun.common.snmp.entity.SnmpRow;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.entity.SnmpVarBind;
+import uyun.common.snmp.entity.SnmpWalkRequest;
+import uyun.common.snmp.entity.SnmpWalkResult;
+import uyun.common.snmp.error.SnmpException;
+import uyun.common.snmp.flow.WalkPublisher;
+import uyun.common.snmp.sim.DeviceProfile;
+import uyun.common.snmp.sim.SimulatedAgent;
+import uyun.common.snmp.sim.SimulatedFarm;
+import uyun.common.snmp.sim.SimulatedMib;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestWalkPublisher {
+	private SimulatedFarm farm;
+	private SimulatedAgent agent;
+	private SnmpTarget target;
+
+	@Before
+	public void setUp() throws Exception {
+		farm = new SimulatedFarm(1);
+		agent = farm.add(SimulatedMib.synthetic("sim-1", 20), new DeviceProfile());
+		target = agent.getTarget();
+		target.setTimeout(1000);
+	}
+
+	@After
+	public void tearDown() {
+		farm.close();
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		Collector<SnmpVarBind> collector = new Collector<SnmpVarBind>();
+		WalkPublisher.walk(target, new SnmpWalkRequest(), new SnmpOID(SimulatedMib.IF_DESCR), null).subscribe(collector);
+		collector.subscription.request(5);
+		collector.awaitItems(5);
+		Thread.sleep(200);
+		// 没有新的请求数时不再向设备发送请求
+		long received = agent.getReceived();
+		assertEquals(5, collector.items.size());
+		Thread.sleep(200);
+		assertEquals(received, agent.getReceived());
+
+		collector.subscription.request(Long.MAX_VALUE);
+		assertTrue(collector.await());
+		assertEquals(20, collector.items.size());
+		assertEquals(new SnmpOID(SimulatedMib.IF_DESCR + ".20"), collector.items.get(19).getOid());
+		WalkPublisher<?>.WalkSubscription subscription = (WalkPublisher<?>.WalkSubscription) collector.subscription;
+		assertEquals(SnmpWalkResult.State.OK, subscription.getState());
+		assertNull(subscription.getToken());
+	}
+
+	@Test
+	public void testTableLimit() throws Exception {
+		Collector<SnmpRow> collector = new Collector<SnmpRow>();
+		WalkPublisher<SnmpRow> publisher = WalkPublisher.walkTable(target, new SnmpWalkRequest(12, 0),
+				new SnmpOID[]{new SnmpOID(SimulatedMib.IF_DESCR), new SnmpOID(SimulatedMib.IF_HC_IN_OCTETS)}, null);
+		publisher.setSliceSize(5);
+		publisher.subscribe(collector);
+		collector.subscription.request(100);
+		assertTrue(collector.await());
+		assertEquals(12, collector.items.size());
+		WalkPublisher<?>.WalkSubscription subscription = (WalkPublisher<?>.WalkSubscription) collector.subscription;
+		assertEquals(SnmpWalkResult.State.EXCEED, subscription.getState());
+		assertNotNull(subscription.getToken());
+		assertEquals(new SnmpOID("12"), subscription.getToken().getLast());
+	}
+
+	@Test
+	public void testRepeatingDevice() throws Exception {
+		DeviceProfile profile = new DeviceProfile();
+		profile.setRepeatEvery(1);
+		SnmpTarget repeating = farm.add(SimulatedMib.synthetic("sim-2", 10), profile).getTarget();
+		repeating.setTimeout(1000);
+		SnmpOID root = new SnmpOID(SimulatedMib.IF_DESCR);
+		int expected = Snmp.walk(repeating, root).length;
+
+		// 每次只请求1个，重复oid的次数跨段累计，与一次完整walk在同一处结束
+		final Collector<SnmpVarBind> collector = new Collector<SnmpVarBind>() {
+			public void onNext(SnmpVarBind item) {
+				super.onNext(item);
+				subscription.request(1);
+			}
+		};
+		WalkPublisher.walk(repeating, new SnmpWalkRequest(), root, null).subscribe(collector);
+		collector.subscription.request(1);
+		assertTrue(collector.await());
+		assertEquals(expected, collector.items.size());
+		assertEquals(SnmpWalkResult.State.OK, ((WalkPublisher<?>.WalkSubscription) collector.subscription).getState());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		final AtomicInteger sent = new AtomicInteger();
+		final AtomicInteger limit = new AtomicInteger(4);
+		Snmp.setSender(new PduSender() {
+			public PDU send(SnmpTarget param, PDU pdu) throws SnmpException {
+				if (sent.incrementAndGet() > limit.get())
+					throw new SnmpException(SnmpException.ERR_TIMEOUT, "模拟超时");
+				return Snmp.NETWORK.send(param, pdu);
+			}
+		});
+		try {
+			// 已发布部分结果后设备不再应答，以OVERTIME结束并保留令牌
+			Collector<SnmpVarBind> collector = new Collector<SnmpVarBind>();
+			WalkPublisher<SnmpVarBind> publisher = WalkPublisher.walk(target, new SnmpWalkRequest(), new SnmpOID(SimulatedMib.IF_DESCR), null);
+			publisher.setSliceSize(2);
+			publisher.subscribe(collector);
+			collector.subscription.request(Long.MAX_VALUE);
+			assertTrue(collector.await());
+			assertEquals(4, collector.items.size());
+			WalkPublisher<?>.WalkSubscription subscription = (WalkPublisher<?>.WalkSubscription) collector.subscription;
+			assertEquals(SnmpWalkResult.State.OVERTIME, subscription.getState());
+			assertEquals(new SnmpOID(SimulatedMib.IF_DESCR + ".4"), subscription.getToken().getLast());
+
+			// 尚未取得任何结果时超时
+			sent.set(0);
+			limit.set(0);
+			collector = new Collector<SnmpVarBind>();
+			collector.expectError = true;
+			publisher.subscribe(collector);
+			collector.subscription.request(Long.MAX_VALUE);
+			assertTrue(collector.await());
+			assertTrue(collector.error instanceof SnmpException);
+			assertEquals(SnmpException.ERR_TIMEOUT, ((SnmpException) collector.error).getErrorCode());
+		} finally {
+			Snmp.setSender(null);
+		}
+	}
+
+	private static class Collector<T> implements Flow.Subscriber<T> {
+		final List<T> items = new CopyOnWriteArrayList<T>();
+		final CountDownLatch terminated = new CountDownLatch(1);
+		volatile Flow.Subscription subscription;
+		volatile Throwable error;
+		boolean expectError;
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		public void onNext(T item) {
+			items.add(item);
+		}
+
+		public void onError(Throwable throwable) {
+			error = throwable;
+			terminated.countDown();
+		}
+
+		public void onComplete() {
+			terminated.countDown();
+		}
+
+		/**
+		 * 等待walk结束，未预期onError时以断言失败报告收到的异常
+		 */
+		boolean await() throws InterruptedException {
+			boolean done = terminated.await(5, TimeUnit.SECONDS);
+			if (!expectError && error != null)
+				throw new AssertionError("walk失败：" + error, error);
+			return done;
+		}
+
+		void awaitItems(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (items.size() < count && System.currentTimeMillis() < deadline)
+				Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+import org.junit.Assume;
+import org.junit.Test;
+import uyun.common.snmp.entity.SnmpTarget;
+import uyun.common.snmp.state.DeviceState;
+import uyun.common.snmp.state.DeviceStateRegistry;
+import uyun.common.snmp.state.WarmStartStore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestWarmStartStore {
+	@Test
+	public void testSaveAndRestore() throws Exception {
+		File file = File.createTempFile("snmp-state", ".bin");
+		file.deleteOnExit();
+
+		DeviceStateRegistry registry = new DeviceStateRegistry();
+		SnmpTarget target = new SnmpTarget("10.0.0.1", "public");
+		registry.responded(target, 2000000);
+		registry.responded(target, 4000000);
+		registry.setBatchUnsupported(target);
+		new WarmStartStore(file, registry).save();
+
+		DeviceStateRegistry restored = new DeviceStateRegistry();
+		assertEquals(1, new WarmStartStore(file, restored).restore());
+		DeviceState state = restored.get("10.0.0.1", 161);
+		// 响应时间不保存，重启后重新统计
+		assertEquals(-1, state.getRtt());
+		assertTrue(restored.isBatchUnsupported(target));
+		assertNull(state.getEngineID());
+
+		// 过期的设备不恢复
+		WarmStartStore store = new WarmStartStore(file, new DeviceStateRegistry());
+		Thread.sleep(5);
+		store.setMaxAge(1);
+		assertEquals(0, store.restore());
+	}
+
+	@Test
+	public void testCorrupted() throws Exception {
+		File file = File.createTempFile("snmp-state", ".bin");
+		file.deleteOnExit();
+
+		DeviceStateRegistry registry = new DeviceStateRegistry();
+		registry.responded(new SnmpTarget("10.0.0.1", "public"), 1000000);
+		new WarmStartStore(file, registry).save();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(20);
+		raf.write(0xFF);
+		raf.close();
+
+		DeviceStateRegistry restored = new DeviceStateRegistry();
+		assertEquals(0, new WarmStartStore(file, restored).restore());
+		assertFalse(restored.isBatchUnsupported(new SnmpTarget("10.0.0.1", "public")));
+	}
+
+	@Test
+	public void testVersion1() throws Exception {
+		File file = File.createTempFile("snmp-state", ".bin");
+		file.deleteOnExit();
+
+		// 版本1的快照带有响应时间，读取时跳过
+		long now = System.currentTimeMillis();
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(0x534E5753);
+		out.writeByte(1);
+		out.writeLong(now);
+		out.writeInt(1);
+		out.writeUTF("10.0.0.1");
+		out.writeInt(161);
+		out.writeLong(now);
+		out.writeLong(3000);
+		out.writeLong(now);
+		out.writeShort(0);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeInt(0);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.toByteArray());
+		out.writeLong(crc.getValue());
+		Files.write(file.toPath(), buffer.toByteArray());
+
+		DeviceStateRegistry restored = new DeviceStateRegistry();
+		assertEquals(1, new WarmStartStore(file, restored).restore());
+		assertEquals(-1, restored.get("10.0.0.1", 161).getRtt());
+		assertTrue(restored.isBatchUnsupported(new SnmpTarget("10.0.0.1", "public")));
+	}
+
+	@Test
+	public void testOwnerOnlyWithKeys() throws Exception {
+		File file = File.createTempFile("snmp-state", ".bin");
+		file.deleteOnExit();
+		Assume.assumeTrue(file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+		Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+
+		WarmStartStore store = new WarmStartStore(file, new DeviceStateRegistry());
+		store.setPersistKeys(true);
+		store.save();
+		assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+	}
+}